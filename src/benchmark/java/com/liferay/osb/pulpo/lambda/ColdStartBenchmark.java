@@ -0,0 +1,226 @@
+package com.liferay.osb.pulpo.lambda;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.CountRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Measures the cold start of the Lambda handler in a fresh JVM whose
+ * classpath is an extracted deployment zip.
+ *
+ * It starts stub Elasticsearch and Slack servers, invokes the handler once
+ * and prints a single line with the size of the zip, the number of classes
+ * loaded and the time from the start of the JVM to the first response. It is
+ * run by the <code>coldStartBenchmark</code> Gradle task. The Slack stub
+ * listens on the port of <code>WEB_HOOK_URL</code>. It only uses the handler
+ * and its request, so it also measures zips built from earlier revisions.
+ *
+ * @author Ruben Pulido
+ */
+public class ColdStartBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		File zipFile = new File(args[0]);
+
+		URI webHookURI = URI.create(System.getenv("WEB_HOOK_URL"));
+
+		HttpServer elasticSearchHttpServer = _startHttpServer(
+			0, ColdStartBenchmark::_handleElasticSearchRequest);
+		HttpServer slackHttpServer = _startHttpServer(
+			webHookURI.getPort(),
+			httpExchange -> _sendResponse(httpExchange, "ok"));
+
+		CountRequest countRequest = new CountRequest();
+
+		countRequest.setEnvironment("prod");
+		countRequest.setHost(
+			"http://127.0.0.1:" +
+				elasticSearchHttpServer.getAddress().getPort());
+		countRequest.setInterval("1h");
+
+		long handlerStartTime = System.nanoTime();
+
+		LambdaHandler lambdaHandler = new LambdaHandler();
+
+		List<String> messages = lambdaHandler.handleRequest(
+			countRequest, _getContext());
+
+		long handlerTime = System.nanoTime() - handlerStartTime;
+
+		RuntimeMXBean runtimeMXBean = ManagementFactory.getRuntimeMXBean();
+
+		long firstResponseTime =
+			System.currentTimeMillis() - runtimeMXBean.getStartTime();
+
+		ClassLoadingMXBean classLoadingMXBean =
+			ManagementFactory.getClassLoadingMXBean();
+
+		System.out.println(
+			String.format(
+				"%s: %d bytes, %d classes loaded, %d ms to first response " +
+					"(%.1f ms in the handler), %d messages",
+				zipFile.getName(), zipFile.length(),
+				classLoadingMXBean.getTotalLoadedClassCount(),
+				firstResponseTime, handlerTime / 1000000.0, messages.size()));
+
+		elasticSearchHttpServer.stop(0);
+		slackHttpServer.stop(0);
+
+		// The pooled connections of the handler keep non daemon threads alive
+
+		System.exit(0);
+	}
+
+	private static Context _getContext() {
+		return new Context() {
+
+			@Override
+			public String getAwsRequestId() {
+				return null;
+			}
+
+			@Override
+			public ClientContext getClientContext() {
+				return null;
+			}
+
+			@Override
+			public String getFunctionName() {
+				return null;
+			}
+
+			@Override
+			public String getFunctionVersion() {
+				return null;
+			}
+
+			@Override
+			public CognitoIdentity getIdentity() {
+				return null;
+			}
+
+			@Override
+			public String getInvokedFunctionArn() {
+				return null;
+			}
+
+			@Override
+			public LambdaLogger getLogger() {
+				return message -> {
+				};
+			}
+
+			@Override
+			public String getLogGroupName() {
+				return null;
+			}
+
+			@Override
+			public String getLogStreamName() {
+				return null;
+			}
+
+			@Override
+			public int getMemoryLimitInMB() {
+				return 512;
+			}
+
+			@Override
+			public int getRemainingTimeInMillis() {
+				return 30000;
+			}
+
+		};
+	}
+
+	private static void _handleElasticSearchRequest(HttpExchange httpExchange)
+		throws IOException {
+
+		String body = _read(httpExchange.getRequestBody());
+
+		String[] lines = body.split("\n");
+
+		StringBuilder sb = new StringBuilder("{\"responses\":[");
+
+		for (int i = 1; i < lines.length; i += 2) {
+			if (i > 1) {
+				sb.append(",");
+			}
+
+			if (lines[i].contains("errorGroups")) {
+				sb.append("{\"status\":200,\"hits\":{\"total\":5},");
+				sb.append("\"aggregations\":{\"errorGroups\":{\"buckets\":[");
+				sb.append("{\"key\":\"java.lang.NullPointerException\",");
+				sb.append("\"doc_count\":5}]}}}");
+			}
+			else {
+				sb.append("{\"status\":200,\"hits\":{\"total\":5}}");
+			}
+		}
+
+		sb.append("]}");
+
+		_sendResponse(httpExchange, sb.toString());
+	}
+
+	private static String _read(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream =
+			new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[8192];
+
+		int read;
+
+		while ((read = inputStream.read(buffer)) != -1) {
+			byteArrayOutputStream.write(buffer, 0, read);
+		}
+
+		return new String(
+			byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void _sendResponse(HttpExchange httpExchange, String body)
+		throws IOException {
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		httpExchange.sendResponseHeaders(200, bytes.length);
+
+		try (OutputStream outputStream = httpExchange.getResponseBody()) {
+			outputStream.write(bytes);
+		}
+	}
+
+	private static HttpServer _startHttpServer(
+			int port, HttpHandler httpHandler)
+		throws IOException {
+
+		HttpServer httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", port), 0);
+
+		httpServer.createContext("/", httpHandler);
+
+		httpServer.start();
+
+		return httpServer;
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
+import com.liferay.osb.pulpo.lambda.handler.http.GzipUtil;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the bytes transferred and the latency of a large errors search
+ * response served by a local Elasticsearch stand-in with and without gzip.
+ *
+ * @author Ruben Pulido
+ */
+public class GzipCompressionBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		byte[] searchResponse = _getSearchResponse();
+
+		byte[] gzipSearchResponse = GzipUtil.compress(searchResponse);
+
+		AtomicLong bytesSent = new AtomicLong();
+
+		HttpServer httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		httpServer.createContext("/", httpExchange -> {
+			_drain(httpExchange.getRequestBody());
+
+			byte[] body = searchResponse;
+
+			String acceptEncoding = httpExchange.getRequestHeaders().getFirst(
+				"Accept-Encoding");
+
+			if ((acceptEncoding != null) && acceptEncoding.contains("gzip")) {
+				body = gzipSearchResponse;
+
+				httpExchange.getResponseHeaders().add(
+					"Content-Encoding", "gzip");
+			}
+
+			bytesSent.addAndGet(body.length);
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		httpServer.start();
+
+		URI endpointURI = URI.create(
+			"http://127.0.0.1:" + httpServer.getAddress().getPort());
+
+		ElasticSearchClient plainElasticSearchClient = _createClient(false);
+		ElasticSearchClient gzipElasticSearchClient = _createClient(true);
+
+		for (int i = 0; i < _WARMUP_ITERATIONS; i++) {
+			_execute(plainElasticSearchClient, endpointURI);
+			_execute(gzipElasticSearchClient, endpointURI);
+		}
+
+		bytesSent.set(0);
+
+		long plainStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_execute(plainElasticSearchClient, endpointURI);
+		}
+
+		long plainTime = (System.nanoTime() - plainStartTime) / _ITERATIONS;
+		long plainBytes = bytesSent.getAndSet(0) / _ITERATIONS;
+
+		long gzipStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_execute(gzipElasticSearchClient, endpointURI);
+		}
+
+		long gzipTime = (System.nanoTime() - gzipStartTime) / _ITERATIONS;
+		long gzipBytes = bytesSent.getAndSet(0) / _ITERATIONS;
+
+		plainElasticSearchClient.shutdown();
+		gzipElasticSearchClient.shutdown();
+
+		httpServer.stop(0);
+
+		System.out.println(
+			String.format(
+				"Plain response: %d bytes, %.3f ms%n" +
+					"Gzip response: %d bytes, %.3f ms",
+				plainBytes, plainTime / 1000000.0, gzipBytes,
+				gzipTime / 1000000.0));
+	}
+
+	private static ElasticSearchClient _createClient(boolean useGzip) {
+		ClientConfiguration clientConfiguration =
+			ElasticSearchClient.createClientConfiguration();
+
+		clientConfiguration.setUseGzip(useGzip);
+
+		return new ElasticSearchClient(clientConfiguration);
+	}
+
+	private static void _drain(InputStream inputStream) throws IOException {
+		byte[] buffer = new byte[8192];
+
+		while (inputStream.read(buffer) != -1) {
+		}
+	}
+
+	private static void _execute(
+		ElasticSearchClient elasticSearchClient, URI endpointURI) {
+
+		Request<Void> request = new DefaultRequest<>("es");
+
+		request.setEndpoint(endpointURI);
+		request.setHttpMethod(HttpMethodName.GET);
+		request.setResourcePath("_search");
+
+		elasticSearchClient.execute(
+			request,
+			new MessagePrefixCountResponseHandler(_MAX_MESSAGE_PREFIX_LENGTH));
+	}
+
+	private static byte[] _getSearchResponse() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("{\"hits\":{\"total\":");
+		sb.append(_HITS);
+		sb.append(",\"hits\":[");
+
+		for (int i = 0; i < _HITS; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+
+			sb.append("{\"_source\":{\"message\":\"Unable to process contact ");
+			sb.append(i * 7919);
+			sb.append("\\n");
+			sb.append(_STACK_TRACE);
+			sb.append("\"}}");
+		}
+
+		sb.append("]}}");
+
+		String searchResponse = sb.toString();
+
+		return searchResponse.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static final int _HITS = 1000;
+
+	private static final int _ITERATIONS = 20;
+
+	private static final int _MAX_MESSAGE_PREFIX_LENGTH = 200;
+
+	private static final String _STACK_TRACE =
+		"java.lang.IllegalStateException: Data source is not available\\n" +
+			"\\tat com.liferay.osb.pulpo.engine.contacts.ContactsProcessor." +
+				"process(ContactsProcessor.java:128)\\n" +
+			"\\tat java.lang.Thread.run(Thread.java:748)";
+
+	private static final int _WARMUP_ITERATIONS = 5;
+
+}
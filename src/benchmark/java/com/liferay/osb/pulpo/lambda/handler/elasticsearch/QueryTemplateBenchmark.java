@@ -0,0 +1,66 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.file.FileUtil;
+
+import java.io.IOException;
+
+/**
+ * Compares the time to build a query from a precompiled template with the
+ * time to read the template from the classpath and format it, as every query
+ * did before the templates were compiled.
+ *
+ * @author Ruben Pulido
+ */
+public class QueryTemplateBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		FileUtil fileUtil = new FileUtil();
+
+		for (int i = 0; i < _WARMUP_ITERATIONS; i++) {
+			_readAndFormat(fileUtil, i);
+			_build(i);
+		}
+
+		long readAndFormatStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_readAndFormat(fileUtil, i);
+		}
+
+		long readAndFormatTime =
+			(System.nanoTime() - readAndFormatStartTime) / _ITERATIONS;
+
+		long buildStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_build(i);
+		}
+
+		long buildTime = (System.nanoTime() - buildStartTime) / _ITERATIONS;
+
+		System.out.println(
+			String.format(
+				"Read and format: %.3f us per query%n" +
+					"Precompiled template: %.3f us per query",
+				readAndFormatTime / 1000.0, buildTime / 1000.0));
+	}
+
+	private static String _build(int i) {
+		return QueryTemplateUtil.getQuery(
+			"searchErrorsQueryTemplate.json", "prod", (i % 60) + "m");
+	}
+
+	private static String _readAndFormat(FileUtil fileUtil, int i)
+		throws IOException {
+
+		String template = fileUtil.fileInClasspathToString(
+			"searchErrorsQueryTemplate.json");
+
+		return String.format(template, "prod", (i % 60) + "m");
+	}
+
+	private static final int _ITERATIONS = 2000;
+
+	private static final int _WARMUP_ITERATIONS = 500;
+
+}
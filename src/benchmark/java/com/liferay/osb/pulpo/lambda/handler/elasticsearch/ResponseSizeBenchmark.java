@@ -0,0 +1,210 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.HttpResponseHandler;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.liferay.osb.pulpo.lambda.handler.http.StringResponseHandler;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Compares the bytes transferred and the parse time of a 1000 hits errors
+ * search response with and without <code>_source</code> filtering and
+ * <code>filter_path</code>.
+ *
+ * @author Ruben Pulido
+ */
+public class ResponseSizeBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		byte[] fullResponse = _getSearchResponse(true);
+		byte[] filteredResponse = _getSearchResponse(false);
+
+		for (int i = 0; i < _WARMUP_ITERATIONS; i++) {
+			_parseFullResponse(fullResponse);
+			_handle(
+				new MessagePrefixCountResponseHandler(
+					_MAX_MESSAGE_PREFIX_LENGTH),
+				filteredResponse);
+		}
+
+		long fullStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_parseFullResponse(fullResponse);
+		}
+
+		long fullParseTime = (System.nanoTime() - fullStartTime) / _ITERATIONS;
+
+		long filteredStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_handle(
+				new MessagePrefixCountResponseHandler(
+					_MAX_MESSAGE_PREFIX_LENGTH),
+				filteredResponse);
+		}
+
+		long filteredParseTime =
+			(System.nanoTime() - filteredStartTime) / _ITERATIONS;
+
+		System.out.println(
+			String.format(
+				"Full response: %d bytes, %.3f ms to parse%n" +
+					"Filtered response: %d bytes, %.3f ms to parse",
+				fullResponse.length, fullParseTime / 1000000.0,
+				filteredResponse.length, filteredParseTime / 1000000.0));
+	}
+
+	private static byte[] _getSearchResponse(boolean full) {
+		JsonArrayBuilder hitsJsonArrayBuilder = Json.createArrayBuilder();
+
+		for (int i = 0; i < _HITS; i++) {
+			String message = String.format(
+				"Unable to process contact %d in data source %d%n%s", i * 7919,
+				i % 13, _STACK_TRACE);
+
+			JsonObjectBuilder sourceJsonObjectBuilder =
+				Json.createObjectBuilder();
+
+			if (full) {
+				sourceJsonObjectBuilder.add(
+					"@timestamp", "2018-07-25T10:15:30." + (i % 1000) + "Z");
+				sourceJsonObjectBuilder.add("@log_group", _LOG_GROUP);
+				sourceJsonObjectBuilder.add(
+					"@log_stream", "i-0a1b2c3d4e5f6a7b" + (i % 4));
+				sourceJsonObjectBuilder.add(
+					"@message", "{\"level\":\"ERROR\",\"message\":\"" +
+						message.replace("\n", "\\n") + "\"}");
+				sourceJsonObjectBuilder.add("level", "ERROR");
+				sourceJsonObjectBuilder.add(
+					"logger_name",
+					"com.liferay.osb.pulpo.engine.contacts.ContactsProcessor");
+				sourceJsonObjectBuilder.add(
+					"thread_name", "pool-3-thread-" + i);
+				sourceJsonObjectBuilder.add(
+					"traceId", Long.toHexString(i * 2654435761L));
+			}
+
+			sourceJsonObjectBuilder.add("message", message);
+
+			JsonObjectBuilder hitJsonObjectBuilder = Json.createObjectBuilder();
+
+			if (full) {
+				hitJsonObjectBuilder.add("_index", "cwl-2018.07.25");
+				hitJsonObjectBuilder.add("_type", "log");
+				hitJsonObjectBuilder.add("_id", String.valueOf(i));
+				hitJsonObjectBuilder.add("_score", 1.0);
+			}
+
+			hitJsonObjectBuilder.add("_source", sourceJsonObjectBuilder);
+
+			hitsJsonArrayBuilder.add(hitJsonObjectBuilder);
+		}
+
+		JsonObjectBuilder hitsJsonObjectBuilder = Json.createObjectBuilder();
+
+		hitsJsonObjectBuilder.add("total", _HITS);
+
+		if (full) {
+			hitsJsonObjectBuilder.add("max_score", 1.0);
+		}
+
+		hitsJsonObjectBuilder.add("hits", hitsJsonArrayBuilder);
+
+		JsonObjectBuilder responseJsonObjectBuilder =
+			Json.createObjectBuilder();
+
+		if (full) {
+			responseJsonObjectBuilder.add("took", 42);
+			responseJsonObjectBuilder.add("timed_out", false);
+			responseJsonObjectBuilder.add(
+				"_shards",
+				Json.createObjectBuilder(
+				).add(
+					"total", 5
+				).add(
+					"successful", 5
+				).add(
+					"skipped", 0
+				).add(
+					"failed", 0
+				));
+		}
+
+		responseJsonObjectBuilder.add("hits", hitsJsonObjectBuilder);
+
+		JsonObject responseJsonObject = responseJsonObjectBuilder.build();
+
+		String response = responseJsonObject.toString();
+
+		return response.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static <T> T _handle(
+			HttpResponseHandler<AmazonWebServiceResponse<T>>
+				httpResponseHandler,
+			byte[] content)
+		throws Exception {
+
+		HttpResponse httpResponse = new HttpResponse(null, null);
+
+		httpResponse.setContent(new ByteArrayInputStream(content));
+
+		AmazonWebServiceResponse<T> awsResponse = httpResponseHandler.handle(
+			httpResponse);
+
+		return awsResponse.getResult();
+	}
+
+	private static Map<Long, ErrorGroupCount> _parseFullResponse(
+			byte[] fullResponse)
+		throws Exception {
+
+		String result = _handle(new StringResponseHandler(), fullResponse);
+
+		JsonReader jsonReader = Json.createReader(new StringReader(result));
+
+		JsonObject responseJsonObject = jsonReader.readObject();
+
+		jsonReader.close();
+
+		return ElasticSearchAWSUtil.getErrorGroupCounts(
+			responseJsonObject, _MAX_MESSAGE_PREFIX_LENGTH);
+	}
+
+	private static final int _HITS = 1000;
+
+	private static final int _ITERATIONS = 20;
+
+	private static final String _LOG_GROUP =
+		"/aws/elasticbeanstalk/osb-pulpo-engine-contacts-prod/var/log/" +
+			"containers/osb-pulpo-engine-contacts/" +
+				"osb-pulpo-engine-contacts.log";
+
+	private static final int _MAX_MESSAGE_PREFIX_LENGTH = 200;
+
+	private static final String _STACK_TRACE =
+		"java.lang.IllegalStateException: Data source is not available\n" +
+			"\tat com.liferay.osb.pulpo.engine.contacts.ContactsProcessor." +
+				"process(ContactsProcessor.java:128)\n" +
+			"\tat com.liferay.osb.pulpo.engine.contacts.ContactsProcessor." +
+				"lambda$run$0(ContactsProcessor.java:87)\n" +
+			"\tat java.util.concurrent.ThreadPoolExecutor.runWorker(" +
+				"ThreadPoolExecutor.java:1149)\n" +
+			"\tat java.util.concurrent.ThreadPoolExecutor$Worker.run(" +
+				"ThreadPoolExecutor.java:624)\n" +
+			"\tat java.lang.Thread.run(Thread.java:748)";
+
+	private static final int _WARMUP_ITERATIONS = 5;
+
+}
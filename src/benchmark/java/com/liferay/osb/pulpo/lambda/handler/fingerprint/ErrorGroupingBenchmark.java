@@ -0,0 +1,119 @@
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compares the throughput and the number of groups of grouping error
+ * messages by their fingerprint and by their first 200 characters.
+ *
+ * @author Ruben Pulido
+ */
+public class ErrorGroupingBenchmark {
+
+	public static void main(String[] args) {
+		List<String> messages = _getMessages();
+
+		for (int i = 0; i < _WARMUP_ITERATIONS; i++) {
+			_groupByPrefix(messages);
+			_groupByFingerprint(messages);
+		}
+
+		long prefixStartTime = System.nanoTime();
+
+		Map<String, Long> countByPrefix = null;
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			countByPrefix = _groupByPrefix(messages);
+		}
+
+		long prefixTime = (System.nanoTime() - prefixStartTime) / _ITERATIONS;
+
+		long fingerprintStartTime = System.nanoTime();
+
+		Map<String, Long> countByFingerprint = null;
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			countByFingerprint = _groupByFingerprint(messages);
+		}
+
+		long fingerprintTime =
+			(System.nanoTime() - fingerprintStartTime) / _ITERATIONS;
+
+		System.out.println(
+			String.format(
+				"Prefix grouping: %d groups, %.0f messages/s%n" +
+					"Fingerprint grouping: %d groups, %.0f messages/s",
+				countByPrefix.size(), messages.size() * 1e9 / prefixTime,
+				countByFingerprint.size(),
+				messages.size() * 1e9 / fingerprintTime));
+	}
+
+	private static List<String> _getMessages() {
+		List<String> messages = new ArrayList<>();
+
+		for (int i = 0; i < _MESSAGES; i++) {
+			if ((i % 2) == 0) {
+				messages.add(
+					String.format(
+						"Unable to process contact %d in data source %d " +
+							"(request %s)%n%s",
+						i, i % 13, UUID.randomUUID(), _STACK_TRACE));
+			}
+			else {
+				messages.add(
+					String.format(
+						"Timeout after %d ms waiting for data source %d%n%s",
+						i % 5000, i % 13, _STACK_TRACE));
+			}
+		}
+
+		return messages;
+	}
+
+	private static Map<String, Long> _groupByFingerprint(
+		List<String> messages) {
+
+		ErrorGroups errorGroups = new ErrorGroups(_MAX_MESSAGE_PREFIX_LENGTH);
+
+		for (String message : messages) {
+			errorGroups.add(message, 1);
+		}
+
+		return errorGroups.getCountByMessagePrefix();
+	}
+
+	private static Map<String, Long> _groupByPrefix(List<String> messages) {
+		Map<String, Long> countByMessagePrefix = new HashMap<>();
+
+		for (String message : messages) {
+			if (message.length() > _MAX_MESSAGE_PREFIX_LENGTH) {
+				message =
+					message.substring(0, _MAX_MESSAGE_PREFIX_LENGTH) +
+						" (...)";
+			}
+
+			countByMessagePrefix.merge(message, 1L, Long::sum);
+		}
+
+		return countByMessagePrefix;
+	}
+
+	private static final int _ITERATIONS = 10;
+
+	private static final int _MAX_MESSAGE_PREFIX_LENGTH = 200;
+
+	private static final int _MESSAGES = 100000;
+
+	private static final String _STACK_TRACE =
+		"java.lang.IllegalStateException: Data source is not available\n" +
+			"\tat com.liferay.osb.pulpo.engine.contacts.ContactsProcessor." +
+				"process(ContactsProcessor.java:128)\n" +
+			"\tat java.lang.Thread.run(Thread.java:748)";
+
+	private static final int _WARMUP_ITERATIONS = 3;
+
+}
@@ -0,0 +1,98 @@
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Compares the latency of posting to a local webhook stand-in through the
+ * pooled client with the latency of opening a new connection for every
+ * message, as the previous transport did.
+ *
+ * @author Ruben Pulido
+ */
+public class SlackWebhookClientBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		HttpServer httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		httpServer.createContext("/", httpExchange -> {
+			_drain(httpExchange.getRequestBody());
+
+			byte[] body = {'o', 'k'};
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		httpServer.start();
+
+		String webHookUrl =
+			"http://127.0.0.1:" + httpServer.getAddress().getPort() +
+				"/services/T000/B000/XXXX";
+
+		SlackWebhookClient slackWebhookClient = new SlackWebhookClient();
+
+		for (int i = 0; i < _WARMUP_ITERATIONS; i++) {
+			_postWithNewClient(webHookUrl);
+			slackWebhookClient.post(webHookUrl, _BODY);
+		}
+
+		long newClientStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			_postWithNewClient(webHookUrl);
+		}
+
+		long newClientTime =
+			(System.nanoTime() - newClientStartTime) / _ITERATIONS;
+
+		long pooledClientStartTime = System.nanoTime();
+
+		for (int i = 0; i < _ITERATIONS; i++) {
+			slackWebhookClient.post(webHookUrl, _BODY);
+		}
+
+		long pooledClientTime =
+			(System.nanoTime() - pooledClientStartTime) / _ITERATIONS;
+
+		slackWebhookClient.shutdown();
+
+		httpServer.stop(0);
+
+		System.out.println(
+			String.format(
+				"New connection per message: %.3f ms per message%n" +
+					"Pooled connection: %.3f ms per message",
+				newClientTime / 1000000.0, pooledClientTime / 1000000.0));
+	}
+
+	private static void _drain(InputStream inputStream) throws IOException {
+		byte[] buffer = new byte[1024];
+
+		while (inputStream.read(buffer) != -1) {
+		}
+	}
+
+	private static void _postWithNewClient(String webHookUrl) {
+		SlackWebhookClient slackWebhookClient = new SlackWebhookClient();
+
+		slackWebhookClient.post(webHookUrl, _BODY);
+
+		slackWebhookClient.shutdown();
+	}
+
+	private static final String _BODY = "{\"text\":\"3 errors found\"}";
+
+	private static final int _ITERATIONS = 200;
+
+	private static final int _WARMUP_ITERATIONS = 50;
+
+}
@@ -14,26 +14,51 @@
 
 package com.liferay.osb.pulpo.lambda;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 
 import com.liferay.osb.pulpo.lambda.handler.SendMessageToSlackRequest;
+import com.liferay.osb.pulpo.lambda.handler.anomaly.AlertMode;
+import com.liferay.osb.pulpo.lambda.handler.anomaly.AnomalyDetector;
+import com.liferay.osb.pulpo.lambda.handler.check.CheckResult;
+import com.liferay.osb.pulpo.lambda.handler.check.CheckRunner;
+import com.liferay.osb.pulpo.lambda.handler.dedup.AlertDeduplicator;
 import com.liferay.osb.pulpo.lambda.handler.elasticsearch.CountRequest;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.CountResponse;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.CountTarget;
 import com.liferay.osb.pulpo.lambda.handler.elasticsearch.ElasticSearchAWSUtil;
-import com.liferay.osb.pulpo.lambda.handler.file.FileUtil;
-import com.liferay.osb.pulpo.lambda.handler.slack.SlackAWSUtil;
-
-import java.io.IOException;
-import java.net.URISyntaxException;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.ErrorGroupingMode;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.MultiIntervalCounter;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.MultiSearchCounter;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.QueryMode;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.QueryTemplateUtil;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.SearchResponse;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.SlidingWindowCounter;
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.TopErrorGroups;
+import com.liferay.osb.pulpo.lambda.handler.slack.SlackNotifier;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.json.JsonObject;
 
 /**
  * Lambda which checks periodically (by default, every hour) whether there are
@@ -55,11 +80,46 @@ import java.util.stream.Stream;
  *
  * If there are truncated messages it sends a message to a Slack channel.
  *
+ * If any of these counts can not be retrieved, the failed checks are sent to
+ * a Slack channel, since the alerts they would have raised could be missing.
+ *
+ * Several environments can be checked in the same invocation. Their queries
+ * are batched in the same multi search request.
+ *
+ * Several Elasticsearch domains can be checked in parallel, each one before
+ * the deadline of the invocation.
+ *
+ * In anomaly alert mode, errors and truncated messages are only sent to Slack
+ * when their counts are significantly higher than usual.
+ *
+ * Several intervals can be checked in the same invocation. In histogram query
+ * mode, the counts of all of them are computed from the same date histogram.
+ *
  * @author Ruben Pulido
  */
 public class LambdaHandler
 	implements RequestHandler<CountRequest, List<String>> {
 
+	/**
+	 * Creates a handler which sends the messages to the Slack web hook and
+	 * channel of the WEB_HOOK_URL and CHANNEL environment variables.
+	 */
+	public LambdaHandler() {
+		this(System.getenv("WEB_HOOK_URL"), System.getenv("CHANNEL"));
+	}
+
+	/**
+	 * Creates a handler which sends the messages to a Slack web hook and
+	 * channel.
+	 *
+	 * @param webHookUrl the URL of the Slack web hook
+	 * @param channel the Slack channel
+	 */
+	public LambdaHandler(String webHookUrl, String channel) {
+		_webHookUrl = webHookUrl;
+		_channel = channel;
+	}
+
 	@Override
 	public List<String> handleRequest(
 		CountRequest inputCountRequest, Context context) {
@@ -71,89 +131,866 @@ public class LambdaHandler
 
 		Optional<String> hostOptional = Optional.empty();
 
-		Optional<String> environmentOptional = Optional.empty();
+		List<String> environments = new ArrayList<>();
 
-		Optional<String> intervalOptional = Optional.empty();
+		List<String> intervals = new ArrayList<>();
 
 		if (optionalInputCountRequest.isPresent()) {
 
 			hostOptional = Optional.ofNullable(
 				inputCountRequest.getHost());
 
-			environmentOptional = Optional.ofNullable(
-				inputCountRequest.getEnvironment());
+			environments = _getEnvironments(inputCountRequest);
+
+			intervals = _getIntervals(inputCountRequest);
+		}
+
+		if (environments.isEmpty()) {
+			environments.add(_DEFAULT_ENVIRONMENT);
+		}
+
+		if (intervals.isEmpty()) {
+			intervals.add(_DEFAULT_INTERVAL);
+		}
+
+		String host = hostOptional.orElse(_DEFAULT_ES_HOST);
+
+		long deadlineMillis = _getDeadlineMillis(context);
 
-			intervalOptional = Optional.ofNullable(
-				inputCountRequest.getInterval());
+		ElasticSearchAWSUtil.setDeadline(deadlineMillis);
+
+		List<CountTarget> countTargets = null;
+
+		if (optionalInputCountRequest.isPresent()) {
+			countTargets = inputCountRequest.getTargets();
 		}
 
-		String interval = intervalOptional.orElse(_DEFAULT_INTERVAL);
+		SlackNotifier slackNotifier = new SlackNotifier();
+
+		List<String> messages;
+
+		if ((countTargets != null) && !countTargets.isEmpty()) {
+			messages = _getMessagesFromTargets(
+				logger, slackNotifier, countTargets, intervals,
+				deadlineMillis);
+		}
+		else {
+			messages = _getMessages(
+				logger, slackNotifier, host, intervals, environments,
+				deadlineMillis);
+		}
+
+		if (messages.size() == 0) {
+			logger.log("NO message was sent to slack\n");
+		}
+
+		// Also sends the messages that previous invocations left in the
+		// outbox
+
+		slackNotifier.send(deadlineMillis, logger);
+
+		try {
+			_alertDeduplicator.save();
+		}
+		catch (UncheckedIOException uioe) {
+			logger.log(
+				"Could not persist the sent alerts: " + uioe.getMessage() +
+					"\n");
+		}
+
+		return messages;
+	}
+
+	private List<String> _getMessages(
+		LambdaLogger logger, SlackNotifier slackNotifier, String host,
+		List<String> intervals, List<String> environments,
+		long deadlineMillis) {
+
+		return _sendMessagesToSlack(
+			logger, slackNotifier, host,
+			_getCountResponsesByInterval(
+				logger, host, intervals, environments, deadlineMillis));
+	}
+
+	private List<String> _getMessagesFromTargets(
+		LambdaLogger logger, SlackNotifier slackNotifier,
+		List<CountTarget> countTargets, List<String> intervals,
+		long deadlineMillis) {
+
+		// The environments of the same host share a multi search request
+
+		Map<String, Set<String>> environmentsByHost = new LinkedHashMap<>();
+		Map<String, String> regionsByHost = new HashMap<>();
+
+		for (CountTarget countTarget : countTargets) {
+			String host = countTarget.getHost();
+
+			if ((host == null) || host.isEmpty()) {
+				host = _DEFAULT_ES_HOST;
+			}
+
+			String region = countTarget.getRegion();
+
+			if ((region != null) && !region.isEmpty()) {
+				String hostRegion = regionsByHost.putIfAbsent(host, region);
+
+				// The requests to a host are all signed for the same region
+
+				if ((hostRegion != null) && !hostRegion.equals(region)) {
+					throw new IllegalArgumentException(
+						"Host " + host + " has targets in regions " +
+							hostRegion + " and " + region);
+				}
+			}
+
+			String environment = countTarget.getEnvironment();
+
+			if ((environment == null) || environment.isEmpty()) {
+				environment = _DEFAULT_ENVIRONMENT;
+			}
 
-		String environment = environmentOptional.orElse(_DEFAULT_ENVIRONMENT);
+			Set<String> environments = environmentsByHost.computeIfAbsent(
+				host, key -> new LinkedHashSet<>());
+
+			environments.add(environment);
+		}
+
+		regionsByHost.forEach(ElasticSearchAWSUtil::setRegion);
+
+		// A host that does not answer in time must leave time to send the
+		// messages of the others
+
+		CheckRunner checkRunner = new CheckRunner(
+			_fanOutExecutorService,
+			deadlineMillis - _FAN_OUT_MESSAGES_MARGIN_MILLIS, logger);
+
+		Map<String, Callable<Map<String, Map<String, CountResponse>>>>
+			callables = new LinkedHashMap<>();
+
+		environmentsByHost.forEach(
+			(host, environments) -> callables.put(
+				host,
+				() -> _getCountResponsesByInterval(
+					logger, host, intervals, new ArrayList<>(environments),
+					deadlineMillis)));
+
+		List<String> messages = new ArrayList<>();
+
+		Map<String, CheckResult<Map<String, Map<String, CountResponse>>>>
+			checkResults = checkRunner.runAll(callables);
+
+		checkResults.forEach(
+			(host, checkResult) -> {
+				if (!checkResult.isSuccessful()) {
+					logger.log(
+						"Could not check host " + host + ": " +
+							checkResult.getThrowable() + "\n");
+
+					// A host that is down or too slow must not disappear from
+					// the monitoring
+
+					messages.add(
+						_sendHostFailureMessageToSlack(
+							logger, slackNotifier, host,
+							checkResult.getThrowable()));
+
+					return;
+				}
+
+				messages.addAll(
+					_sendMessagesToSlack(
+						logger, slackNotifier, host, checkResult.getValue()));
+			});
+
+		return messages;
+	}
+
+	private CountResponse _getCountResponse(
+		LambdaLogger logger, String host, String interval, String environment,
+		long deadlineMillis) {
+
+		if (_QUERY_MODE == QueryMode.CONCURRENT) {
+			return _getCountResponseConcurrently(
+				logger, host, interval, environment, deadlineMillis);
+		}
+
+		CountResponse countResponse = new CountResponse();
 
 		long logEntriesCount = _getLogEntriesCount(
-			logger, hostOptional, interval, environment);
+			logger, host, interval, environment);
+
+		countResponse.setLogEntriesCount(logEntriesCount);
+
+		if (logEntriesCount > 0) {
+			countResponse.setErrorsCount(
+				_getErrorsCount(logger, host, interval, environment));
+			countResponse.setTruncatedMessagesCount(
+				_getTruncatedMessagesCount(
+					logger, host, interval, environment));
+		}
+
+		return countResponse;
+	}
+
+	private Map<String, CountResponse> _getCountResponses(
+		LambdaLogger logger, String host, String interval,
+		List<String> environments, long deadlineMillis) {
+
+		// The queries of all the environments are batched in a single multi
+		// search request
+
+		if ((_QUERY_MODE == QueryMode.INCREMENTAL) &&
+			(SlidingWindowCounter.getIntervalMillis(interval) > 0)) {
+
+			return _getCountResponsesIncrementally(
+				logger, host, interval, environments);
+		}
+
+		if ((_QUERY_MODE == QueryMode.AGGREGATION) ||
+			(_QUERY_MODE == QueryMode.HISTOGRAM) ||
+			(_QUERY_MODE == QueryMode.INCREMENTAL)) {
+
+			return _getCountResponsesWithMultiSearch(
+				logger, host, interval, environments, true);
+		}
+
+		if (_QUERY_MODE == QueryMode.MULTI_SEARCH) {
+			return _getCountResponsesWithMultiSearch(
+				logger, host, interval, environments, false);
+		}
+
+		Map<String, CountResponse> countResponses = new LinkedHashMap<>();
+
+		for (String environment : environments) {
+			countResponses.put(
+				environment,
+				_getCountResponse(
+					logger, host, interval, environment, deadlineMillis));
+		}
+
+		return countResponses;
+	}
+
+	private Map<String, Map<String, CountResponse>>
+		_getCountResponsesByInterval(
+			LambdaLogger logger, String host, List<String> intervals,
+			List<String> environments, long deadlineMillis) {
+
+		logger.log(
+			"Query mode: " + _QUERY_MODE + ", intervals: " + intervals +
+				", environments: " + environments + "\n");
+
+		Map<String, Map<String, CountResponse>> countResponsesByInterval;
+
+		if ((_QUERY_MODE == QueryMode.HISTOGRAM) &&
+			MultiIntervalCounter.isSupported(intervals, _MAX_BUCKETS)) {
+
+			countResponsesByInterval = _getCountResponsesWithHistogram(
+				logger, host, intervals, environments);
+		}
+		else {
+			countResponsesByInterval = new LinkedHashMap<>();
+
+			for (String interval : intervals) {
+				countResponsesByInterval.put(
+					interval,
+					_getCountResponses(
+						logger, host, interval, environments,
+						deadlineMillis));
+			}
+		}
+
+		// The errors are grouped while checking the host, so that the
+		// deadline of the host also bounds the queries grouping them
+
+		countResponsesByInterval.forEach(
+			(interval, countResponses) -> countResponses.forEach(
+				(environment, countResponse) -> _groupErrors(
+					logger, host, interval, environment, countResponse)));
+
+		return countResponsesByInterval;
+	}
+
+	private Map<String, Map<String, CountResponse>>
+		_getCountResponsesWithHistogram(
+			LambdaLogger logger, String host, List<String> intervals,
+			List<String> environments) {
+
+		long nowMillis = System.currentTimeMillis();
 
-		System.out.println(logEntriesCount);
+		List<MultiIntervalCounter> multiIntervalCounters = new ArrayList<>();
+		List<String> queries = new ArrayList<>();
 
-		List<String> messages = new ArrayList();
+		// The errors of all the intervals are grouped by a single query in
+		// the same request
+
+		boolean groupErrors =
+			_ERROR_GROUPING_MODE == ErrorGroupingMode.AGGREGATION;
+
+		for (String environment : environments) {
+			MultiIntervalCounter multiIntervalCounter =
+				new MultiIntervalCounter(environment, intervals, nowMillis);
+
+			multiIntervalCounters.add(multiIntervalCounter);
+			queries.add(multiIntervalCounter.getQuery());
+
+			if (groupErrors) {
+				queries.add(
+					multiIntervalCounter.getErrorsQuery(
+						_ERROR_GROUPING_FIELD, _ERROR_GROUPING_SIZE));
+			}
+		}
+
+		List<SearchResponse> searchResponses =
+			ElasticSearchAWSUtil.multiSearch(
+				host, queries, _DEFAULT_MAX_PREFIX_LENGTH, logger);
+
+		Map<String, Map<String, CountResponse>> countResponsesByInterval =
+			new LinkedHashMap<>();
+
+		for (String interval : intervals) {
+			countResponsesByInterval.put(interval, new LinkedHashMap<>());
+		}
+
+		int offset = 0;
+
+		for (int i = 0; i < environments.size(); i++) {
+			MultiIntervalCounter multiIntervalCounter =
+				multiIntervalCounters.get(i);
+
+			Map<String, Map<String, Long>> countsByInterval =
+				multiIntervalCounter.getCounts(
+					searchResponses.get(offset).getJsonObject());
+
+			offset++;
+
+			Map<String, JsonObject> errorsSearchResponses;
+
+			if (groupErrors) {
+				errorsSearchResponses = _getErrorsSearchResponses(
+					logger, multiIntervalCounter,
+					searchResponses.get(offset));
+
+				offset++;
+			}
+			else {
+				errorsSearchResponses = Collections.emptyMap();
+			}
+
+			String environment = environments.get(i);
+
+			countsByInterval.forEach(
+				(interval, countsByBucketName) -> {
+					CountResponse countResponse = _createCountResponse(
+						countsByBucketName);
+
+					JsonObject errorsSearchResponse =
+						errorsSearchResponses.get(interval);
+
+					if (errorsSearchResponse != null) {
+						countResponse.setErrorGroupCounts(
+							_getErrorGroupCounts(
+								logger,
+								new SearchResponse(
+									errorsSearchResponse, null)));
+					}
+
+					logger.log(
+						"countResponse for " + environment + " in the last " +
+							interval + ": \n" + countResponse + "\n");
+
+					Map<String, CountResponse> countResponses =
+						countResponsesByInterval.get(interval);
+
+					countResponses.put(environment, countResponse);
+				});
+		}
+
+		return countResponsesByInterval;
+	}
+
+	private Map<String, CountResponse> _getCountResponsesIncrementally(
+		LambdaLogger logger, String host, String interval,
+		List<String> environments) {
+
+		long nowMillis = System.currentTimeMillis();
+
+		List<SlidingWindowCounter> slidingWindowCounters = new ArrayList<>();
+		List<String> queries = new ArrayList<>();
+
+		for (String environment : environments) {
+			SlidingWindowCounter slidingWindowCounter =
+				new SlidingWindowCounter(
+					_minuteCountsStateStore,
+					host + "|" + environment + "|" + interval, environment,
+					interval, nowMillis, _INCREMENTAL_SETTLE_MINUTES);
+
+			logger.log(
+				"Counting " + environment + " from minute " +
+					slidingWindowCounter.getFetchFromMinute() + "\n");
+
+			slidingWindowCounters.add(slidingWindowCounter);
+			queries.add(slidingWindowCounter.getQuery());
+		}
+
+		List<SearchResponse> searchResponses =
+			ElasticSearchAWSUtil.multiSearch(
+				host, queries, _DEFAULT_MAX_PREFIX_LENGTH, logger);
+
+		Map<String, CountResponse> countResponses = new LinkedHashMap<>();
+
+		for (int i = 0; i < environments.size(); i++) {
+			SlidingWindowCounter slidingWindowCounter =
+				slidingWindowCounters.get(i);
+
+			CountResponse countResponse = _createCountResponse(
+				slidingWindowCounter.getCounts(
+					searchResponses.get(i).getJsonObject(), logger));
+
+			logger.log(
+				"countResponse for " + environments.get(i) + ": \n" +
+					countResponse + "\n");
+
+			countResponses.put(environments.get(i), countResponse);
+		}
+
+		return countResponses;
+	}
+
+	private CountResponse _getCountResponseConcurrently(
+		LambdaLogger logger, String host, String interval, String environment,
+		long deadlineMillis) {
+
+		CountResponse countResponse = new CountResponse();
+
+		long logEntriesCount = _getLogEntriesCount(
+			logger, host, interval, environment);
+
+		countResponse.setLogEntriesCount(logEntriesCount);
 
 		if (logEntriesCount == 0) {
-			String message = _sendNoLogsFoundMessageToSlack(
-				logger, interval, environment);
+			return countResponse;
+		}
+
+		CheckRunner checkRunner = new CheckRunner(
+			CheckRunner.getDefaultExecutorService(), deadlineMillis, logger);
+
+		Future<Long> errorsCountFuture = checkRunner.submit(
+			_ERRORS_COUNT_CHECK,
+			() -> _getErrorsCount(logger, host, interval, environment));
+
+		Future<Map<Long, ErrorGroupCount>> errorGroupCountsFuture =
+			checkRunner.submit(
+				_ERRORS_GROUPING_CHECK,
+				() -> _getErrorGroupCounts(
+					logger, host, interval, environment));
+
+		Future<Long> truncatedMessagesCountFuture = checkRunner.submit(
+			_TRUNCATED_MESSAGES_COUNT_CHECK,
+			() -> _getTruncatedMessagesCount(
+				logger, host, interval, environment));
+
+		CheckResult<Long> errorsCountCheckResult = checkRunner.join(
+			_ERRORS_COUNT_CHECK, errorsCountFuture);
 
-			messages.add(message);
+		if (errorsCountCheckResult.isSuccessful()) {
+			countResponse.setErrorsCount(errorsCountCheckResult.getValue());
 		}
 		else {
-			long errorsCount = _getErrorsCount(
-				logger, hostOptional, interval, environment);
+			_addCheckFailure(countResponse, errorsCountCheckResult);
+		}
 
-			if (errorsCount > 0) {
+		CheckResult<Map<Long, ErrorGroupCount>> errorGroupCountsCheckResult =
+			checkRunner.join(_ERRORS_GROUPING_CHECK, errorGroupCountsFuture);
 
-				String errorsMessage = _groupErrorsAndSendMessageToSlack(
-					logger, hostOptional, interval, environment, errorsCount);
+		if (errorGroupCountsCheckResult.isSuccessful()) {
+			countResponse.setErrorGroupCounts(
+				errorGroupCountsCheckResult.getValue());
+		}
+		else {
+			_addCheckFailure(countResponse, errorGroupCountsCheckResult);
+
+			countResponse.setErrorGroupCounts(Collections.emptyMap());
+		}
+
+		CheckResult<Long> truncatedMessagesCountCheckResult =
+			checkRunner.join(
+				_TRUNCATED_MESSAGES_COUNT_CHECK, truncatedMessagesCountFuture);
+
+		if (truncatedMessagesCountCheckResult.isSuccessful()) {
+			countResponse.setTruncatedMessagesCount(
+				truncatedMessagesCountCheckResult.getValue());
+		}
+		else {
+			_addCheckFailure(countResponse, truncatedMessagesCountCheckResult);
+		}
+
+		logger.log("countResponse: \n" + countResponse + "\n");
+
+		return countResponse;
+	}
+
+	private Map<String, CountResponse> _getCountResponsesWithMultiSearch(
+		LambdaLogger logger, String host, String interval,
+		List<String> environments, boolean countWithAggregation) {
 
-				messages.add(errorsMessage);
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter(
+			interval, countWithAggregation);
+
+		// Paginated errors are searched only if there are any errors
+
+		for (String environment : environments) {
+			String errorsQuery = null;
+
+			if (_ERROR_GROUPING_MODE != ErrorGroupingMode.SEARCH_AFTER) {
+				errorsQuery = _getErrorsQuery(interval, environment);
 			}
 
-			long truncatedMessagesCount = _getTruncatedMessagesCount(
-				logger, hostOptional, interval, environment);
+			multiSearchCounter.addEnvironment(environment, errorsQuery);
+		}
 
-			if (truncatedMessagesCount > 0) {
+		List<SearchResponse> searchResponses =
+			ElasticSearchAWSUtil.multiSearch(
+				host, multiSearchCounter.getQueries(),
+				_DEFAULT_MAX_PREFIX_LENGTH, logger);
 
-				String truncatedMessagesMessage =
-					_getTruncatedMessagesCountAndSendMessageToSlack(
-						logger, interval, environment, truncatedMessagesCount);
+		Map<String, CountResponse> countResponses =
+			multiSearchCounter.getCountResponses(
+				searchResponses,
+				searchResponse -> _getErrorGroupCounts(
+					logger, searchResponse));
 
-				messages.add(truncatedMessagesMessage);
+		countResponses.forEach(
+			(environment, countResponse) -> logger.log(
+				"countResponse for " + environment + ": \n" + countResponse +
+					"\n"));
+
+		return countResponses;
+	}
+
+	private void _addCheckFailure(
+		CountResponse countResponse, CheckResult<?> checkResult) {
+
+		Throwable throwable = checkResult.getThrowable();
+
+		countResponse.addCheckFailure(
+			checkResult.getCheckName(), String.valueOf(throwable));
+	}
+
+	private CountResponse _createCountResponse(
+		Map<String, Long> countsByBucketName) {
+
+		CountResponse countResponse = new CountResponse();
+
+		countResponse.setLogEntriesCount(
+			countsByBucketName.getOrDefault("logEntries", 0L));
+		countResponse.setErrorsCount(
+			countsByBucketName.getOrDefault("errors", 0L));
+		countResponse.setTruncatedMessagesCount(
+			countsByBucketName.getOrDefault("truncatedMessages", 0L));
+
+		return countResponse;
+	}
+
+	private long _getDeadlineMillis(Context context) {
+		long remainingTimeMillis = context.getRemainingTimeInMillis();
+
+		if (remainingTimeMillis <= 0) {
+			remainingTimeMillis = _DEFAULT_REMAINING_TIME_MILLIS;
+		}
+
+		return System.currentTimeMillis() + remainingTimeMillis -
+			_DEADLINE_SAFETY_MARGIN_MILLIS;
+	}
+
+	private List<String> _getEnvironments(CountRequest countRequest) {
+		Set<String> environments = new LinkedHashSet<>();
+
+		String environment = countRequest.getEnvironment();
+
+		if ((environment != null) && !environment.isEmpty()) {
+			environments.add(environment);
+		}
+
+		List<String> requestEnvironments = countRequest.getEnvironments();
+
+		if (requestEnvironments != null) {
+			for (String requestEnvironment : requestEnvironments) {
+				if ((requestEnvironment != null) &&
+					!requestEnvironment.isEmpty()) {
+
+					environments.add(requestEnvironment);
+				}
 			}
 		}
 
-		if (messages.size() == 0) {
-			logger.log("NO message was sent to slack\n");
+		return new ArrayList<>(environments);
+	}
+
+	private List<String> _getIntervals(CountRequest countRequest) {
+		Set<String> intervals = new LinkedHashSet<>();
+
+		String interval = countRequest.getInterval();
+
+		if ((interval != null) && !interval.isEmpty()) {
+			intervals.add(interval);
 		}
 
-		return messages;
+		List<String> requestIntervals = countRequest.getIntervals();
+
+		if (requestIntervals != null) {
+			for (String requestInterval : requestIntervals) {
+				if ((requestInterval != null) && !requestInterval.isEmpty()) {
+					intervals.add(requestInterval);
+				}
+			}
+		}
+
+		return new ArrayList<>(intervals);
+	}
+
+	private boolean _isAlert(
+		LambdaLogger logger, String host, String interval, String environment,
+		CountResponse countResponse, String checkName, long count) {
+
+		if (_ALERT_MODE == AlertMode.THRESHOLD) {
+			return count > 0;
+		}
+
+		Map<String, String> checkFailures = countResponse.getCheckFailures();
+
+		// The count of a failed check is unknown, it must not lower the
+		// baseline
+
+		if (checkFailures.containsKey(checkName)) {
+			return false;
+		}
+
+		return _anomalyDetector.evaluate(
+			String.join("|", host, environment, interval, checkName), count,
+			logger);
+	}
+
+	private boolean _isNewAlert(
+		LambdaLogger logger, long alertKey, String environment, String check,
+		String group, long count) {
+
+		if (_alertDeduplicator.isNew(
+				alertKey, count, System.currentTimeMillis())) {
+
+			return true;
+		}
+
+		logger.log(
+			"Not sending alert already sent for " + check + " in " +
+				environment + ": " + group + " (" + count + ")\n");
+
+		return false;
+	}
+
+	private void _markAlertsSent(Map<Long, Long> countsByAlertKey) {
+		// Only the alerts delivered to Slack are recorded, so that the ones
+		// dropped or left in the outbox are not suppressed
+
+		long nowMillis = System.currentTimeMillis();
+
+		countsByAlertKey.forEach(
+			(alertKey, count) -> _alertDeduplicator.markSent(
+				alertKey, count, nowMillis));
 	}
 
 	private long _getLogEntriesCount(
-		LambdaLogger logger, Optional<String> hostOptional, String interval,
+		LambdaLogger logger, String host, String interval,
 		String environment) {
 
 		String queryTemplateFileName = "queryTemplate.json";
 
-		String countLogsQuery = _getQuery(
-			logger, queryTemplateFileName, environment, interval);
+		String countLogsQuery = QueryTemplateUtil.getQuery(
+			queryTemplateFileName, environment, interval);
 
 		long logEntriesCount = ElasticSearchAWSUtil.getCount(
-			hostOptional.orElse(_DEFAULT_ES_HOST), countLogsQuery, logger);
+			host, countLogsQuery, logger);
 
 		logger.log("countLogEntriesResponse: \n" + logEntriesCount);
 		return logEntriesCount;
 	}
 
+	private List<String> _sendMessagesToSlack(
+		LambdaLogger logger, SlackNotifier slackNotifier, String host,
+		Map<String, Map<String, CountResponse>> countResponsesByInterval) {
+
+		List<String> messages = new ArrayList<>();
+
+		countResponsesByInterval.forEach(
+			(interval, countResponses) -> countResponses.forEach(
+				(environment, countResponse) -> messages.addAll(
+					_sendMessagesToSlack(
+						logger, slackNotifier, host, interval, environment,
+						countResponse))));
+
+		return messages;
+	}
+
+	private List<String> _sendMessagesToSlack(
+		LambdaLogger logger, SlackNotifier slackNotifier, String host,
+		String interval, String environment, CountResponse countResponse) {
+
+		List<String> messages = new ArrayList<>();
+
+		Map<String, String> checkFailures = countResponse.getCheckFailures();
+
+		if (countResponse.getLogEntriesCount() == 0) {
+
+			// The log entries of a failed check are unknown, not missing
+
+			if (!checkFailures.containsKey(_LOG_ENTRIES_COUNT_CHECK)) {
+				String message = _sendNoLogsFoundMessageToSlack(
+					logger, slackNotifier, interval, environment);
+
+				messages.add(message);
+			}
+		}
+		else {
+			long errorsCount = countResponse.getErrorsCount();
+
+			if (_isAlert(
+					logger, host, interval, environment, countResponse,
+					_ERRORS_COUNT_CHECK, errorsCount)) {
+
+				Map<Long, ErrorGroupCount> errorGroupCounts =
+					countResponse.getErrorGroupCounts();
+
+				if (errorGroupCounts == null) {
+					errorGroupCounts = Collections.emptyMap();
+				}
+
+				String errorsMessage = _groupErrorsAndSendMessageToSlack(
+					logger, slackNotifier, host, interval, environment,
+					errorsCount, errorGroupCounts);
+
+				if (errorsMessage != null) {
+					messages.add(errorsMessage);
+				}
+			}
+
+			long truncatedMessagesCount =
+				countResponse.getTruncatedMessagesCount();
+
+			long truncatedMessagesAlertKey = _alertDeduplicator.getKey(
+				host, environment, interval, _TRUNCATED_MESSAGES_COUNT_CHECK,
+				0);
+
+			if (_isAlert(
+					logger, host, interval, environment, countResponse,
+					_TRUNCATED_MESSAGES_COUNT_CHECK, truncatedMessagesCount) &&
+				_isNewAlert(
+					logger, truncatedMessagesAlertKey, environment,
+					_TRUNCATED_MESSAGES_COUNT_CHECK, "",
+					truncatedMessagesCount)) {
+
+				String truncatedMessagesMessage =
+					_getTruncatedMessagesCountAndSendMessageToSlack(
+						logger, slackNotifier, interval, environment,
+						truncatedMessagesCount,
+						() -> _markAlertsSent(
+							Collections.singletonMap(
+								truncatedMessagesAlertKey,
+								truncatedMessagesCount)));
+
+				messages.add(truncatedMessagesMessage);
+			}
+		}
+
+		if (!checkFailures.isEmpty()) {
+			logger.log(
+				"Failed checks in " + environment + ": " + checkFailures +
+					"\n");
+
+			String checkFailuresMessage = _sendCheckFailuresMessageToSlack(
+				logger, slackNotifier, interval, environment, checkFailures);
+
+			messages.add(checkFailuresMessage);
+		}
+
+		return messages;
+	}
+
+	private String _sendCheckFailuresMessageToSlack(
+		LambdaLogger logger, SlackNotifier slackNotifier, String interval,
+		String environment, Map<String, String> checkFailures) {
+
+		// The counts of the failed checks are unknown, so the alerts they
+		// would have raised are reported as missing
+
+		StringBuilder sb = new StringBuilder();
+
+		Map<String, String> sortedCheckFailures = new TreeMap<>(
+			checkFailures);
+
+		sortedCheckFailures.forEach(
+			(checkName, checkFailure) -> {
+				if (sb.length() > 0) {
+					sb.append("\n");
+				}
+
+				sb.append(
+					String.format(
+						"\u2022 *%s*: %s", checkName,
+						_truncate(checkFailure, _CHECK_FAILURE_MAX_LENGTH)));
+			});
+
+		String message = String.format(
+			"*%s* checks failed in *%s* environment in the last *%s*, " +
+				"their alerts may be missing\n>>>\n %s",
+			checkFailures.size(), environment, interval, sb.toString());
+
+		String kibanaUrl = String.format(
+			_KIBANA_URL_TEMPLATE, interval, environment, environment,
+			environment);
+
+		SendMessageToSlackRequest sendMessageToSlackRequest =
+			_getSendMessageToSlackRequest(message, kibanaUrl, logger);
+
+		logger.log(
+			"Adding slack message: " + sendMessageToSlackRequest + "\n");
+
+		slackNotifier.add(sendMessageToSlackRequest);
+
+		return message;
+	}
+
+	private String _sendHostFailureMessageToSlack(
+		LambdaLogger logger, SlackNotifier slackNotifier, String host,
+		Throwable throwable) {
+
+		String message = String.format(
+			"Could not check host *%s*, its alerts may be missing\n>>>\n %s",
+			host,
+			_truncate(String.valueOf(throwable), _CHECK_FAILURE_MAX_LENGTH));
+
+		SendMessageToSlackRequest sendMessageToSlackRequest =
+			_getSendMessageToSlackRequest(
+				message, host + _KIBANA_PATH, logger);
+
+		logger.log(
+			"Adding slack message: " + sendMessageToSlackRequest + "\n");
+
+		slackNotifier.add(sendMessageToSlackRequest);
+
+		return message;
+	}
+
+	private String _truncate(String text, int maxLength) {
+		if (text.length() <= maxLength) {
+			return text;
+		}
+
+		return text.substring(0, maxLength) + " (...)";
+	}
+
 	private String _sendNoLogsFoundMessageToSlack(
-		LambdaLogger logger, String interval, String environment) {
+		LambdaLogger logger, SlackNotifier slackNotifier, String interval,
+		String environment) {
 
 		String kibanaUrl = String.format(
 			_KIBANA_URL_TEMPLATE, interval, environment, environment,
@@ -168,15 +1005,17 @@ public class LambdaHandler
 			_getSendMessageToSlackRequest(message, kibanaUrl, logger);
 
 		logger.log(
-			"Sending slack message: " + sendMessageToSlackRequest + "\n");
+			"Adding slack message: " + sendMessageToSlackRequest + "\n");
+
+		slackNotifier.add(sendMessageToSlackRequest);
 
-		SlackAWSUtil.sendMessageToSlack(sendMessageToSlackRequest, logger);
 		return message;
 	}
 
 	private String _getTruncatedMessagesCountAndSendMessageToSlack(
-		LambdaLogger logger, String interval, String environment,
-		long truncatedMessagesCount) {
+		LambdaLogger logger, SlackNotifier slackNotifier, String interval,
+		String environment, long truncatedMessagesCount,
+		Runnable deliveredCallback) {
 
 		String truncatedMessagesMessage = String.format(
 			"*%s* messages truncated in *%s* environment in the last " +
@@ -197,28 +1036,27 @@ public class LambdaHandler
 				encodedKibanaTruncatedMessagesUrl, logger);
 
 		logger.log(
-			"Sending slack message: " + sendMessageToSlackRequest
+			"Adding slack message: " + sendMessageToSlackRequest
 				+ "\n");
 
-		SlackAWSUtil.sendMessageToSlack(
-			sendMessageToSlackRequest, logger);
+		slackNotifier.add(sendMessageToSlackRequest, deliveredCallback);
+
 		return truncatedMessagesMessage;
 	}
 
 	private long _getTruncatedMessagesCount(
-		LambdaLogger logger, Optional<String> hostOptional, String interval,
+		LambdaLogger logger, String host, String interval,
 		String environment) {
 
 		String countTruncatedMessagesQueryTemplateFileName =
 			"countTruncatedMessagesQueryTemplate.json";
 
-		String countTruncatedMessagesQuery = _getQuery(
-			logger, countTruncatedMessagesQueryTemplateFileName, environment,
+		String countTruncatedMessagesQuery = QueryTemplateUtil.getQuery(
+			countTruncatedMessagesQueryTemplateFileName, environment,
 			interval);
 
 		long truncatedMessagesCount = ElasticSearchAWSUtil.getCount(
-			hostOptional.orElse(_DEFAULT_ES_HOST), countTruncatedMessagesQuery,
-			logger);
+			host, countTruncatedMessagesQuery, logger);
 
 		logger.log(
 			"countTruncatedMessagesResponse: \n" + truncatedMessagesCount);
@@ -227,132 +1065,280 @@ public class LambdaHandler
 	}
 
 	private long _getErrorsCount(
-		LambdaLogger logger, Optional<String> hostOptional, String interval,
+		LambdaLogger logger, String host, String interval,
 		String environment) {
 
 		String countErrorsQueryTemplateFileName =
 			"countErrorsQueryTemplate.json";
 
-		String countErrorsQuery = _getQuery(
-			logger, countErrorsQueryTemplateFileName, environment,
-			interval);
+		String countErrorsQuery = QueryTemplateUtil.getQuery(
+			countErrorsQueryTemplateFileName, environment, interval);
 
 		long errorsCount = ElasticSearchAWSUtil.getCount(
-			hostOptional.orElse(_DEFAULT_ES_HOST), countErrorsQuery,
-			logger);
+			host, countErrorsQuery, logger);
 
 		logger.log("countErrorsResponse: \n" + errorsCount);
 		return errorsCount;
 	}
 
-	private String _groupErrorsAndSendMessageToSlack(
-		LambdaLogger logger, Optional<String> hostOptional, String interval,
-		String environment, long errorsCount) {
+	private Map<String, JsonObject> _getErrorsSearchResponses(
+		LambdaLogger logger, MultiIntervalCounter multiIntervalCounter,
+		SearchResponse searchResponse) {
 
-		String searchErrorsQueryTemplateFileName =
-			"searchErrorsQueryTemplate.json";
+		// Errors which could not be grouped for all the intervals are grouped
+		// by a query per interval
 
-		String searchErrorsQuery = _getQuery(
-			logger, searchErrorsQueryTemplateFileName, environment,
-			interval);
+		try {
+			return multiIntervalCounter.getErrorsSearchResponses(
+				searchResponse.getJsonObject());
+		}
+		catch (AmazonServiceException ase) {
+			logger.log(
+				"Could not group the errors of all the intervals: " +
+					ase.getMessage() + "\n");
 
-		Map<String, Long> errorsCountByMessagePrefix =
-			ElasticSearchAWSUtil.getErrorsCountByMessagePrefix(
-				hostOptional.orElse(_DEFAULT_ES_HOST),
-				searchErrorsQuery, _DEFAULT_MAX_PREFIX_LENGTH, logger
-			);
+			return Collections.emptyMap();
+		}
+	}
 
-		Set<Map.Entry<String, Long>> messagePrefixErrorCountEntrySet =
-			errorsCountByMessagePrefix.entrySet();
+	private String _getErrorsQuery(String interval, String environment) {
+		if (_ERROR_GROUPING_MODE == ErrorGroupingMode.AGGREGATION) {
+			return QueryTemplateUtil.getQuery(
+				"groupErrorsQueryTemplate.json", environment, interval,
+				_ERROR_GROUPING_FIELD, _ERROR_GROUPING_SIZE);
+		}
 
-		Stream<Map.Entry<String, Long>> messagePrefixErrorCountStream =
-			messagePrefixErrorCountEntrySet.stream();
+		return QueryTemplateUtil.getQuery(
+			"searchErrorsQueryTemplate.json", environment, interval);
+	}
 
-		Stream<Map.Entry<String, Long>>
-			messagePrefixErrorCountStreamOrderedByDescCount =
-				messagePrefixErrorCountStream.sorted(_getComparator());
+	private Map<Long, ErrorGroupCount> _getErrorGroupCounts(
+		LambdaLogger logger, SearchResponse searchResponse) {
 
-		String messsageDetails =
-			messagePrefixErrorCountStreamOrderedByDescCount.map(
-				entry -> String.format(
-					"\u2022 *%s*: %s", entry.getValue(), entry.getKey())
-			).collect(
-				Collectors.joining("\n")
-			);
+		// Errors which could not be grouped in the multi search request are
+		// grouped by a query of their own
 
-		String message = String.format(
-			"*%s* errors found in *%s* environment in the last *%s*" +
-				"\n>>>\n %s",
-			errorsCount, environment, interval, messsageDetails);
+		try {
+			if (_ERROR_GROUPING_MODE == ErrorGroupingMode.HITS) {
+				return ElasticSearchAWSUtil.getErrorGroupCounts(searchResponse);
+			}
 
-		String kibanaErrorsUrl = String.format(
-			_KIBANA_ERRORS_URL_TEMPLATE, interval, environment,
-			environment, environment
-		);
+			return ElasticSearchAWSUtil.getErrorsCountByTermsAggregation(
+				searchResponse.getJsonObject(),
+				_ERROR_GROUPING_AGGREGATION_NAME,
+				_DEFAULT_MAX_PREFIX_LENGTH);
+		}
+		catch (AmazonServiceException ase) {
+			logger.log(
+				"Could not group errors in the multi search request: " +
+					ase.getMessage() + "\n");
 
-		SendMessageToSlackRequest sendMessageToSlackRequest =
-			_getSendMessageToSlackRequest(
-				message, kibanaErrorsUrl, logger);
+			return null;
+		}
+	}
 
-		logger.log(
-			"Sending slack message: " + sendMessageToSlackRequest
-				+ "\n");
+	private Map<Long, ErrorGroupCount> _getErrorGroupCounts(
+		LambdaLogger logger, String host, String interval,
+		String environment) {
 
-		SlackAWSUtil.sendMessageToSlack(
-			sendMessageToSlackRequest, logger);
+		if (_ERROR_GROUPING_MODE == ErrorGroupingMode.AGGREGATION) {
+			try {
+				return ElasticSearchAWSUtil.getErrorsCountByTermsAggregation(
+					host, _getErrorsQuery(interval, environment),
+					_ERROR_GROUPING_AGGREGATION_NAME,
+					_DEFAULT_MAX_PREFIX_LENGTH, logger);
+			}
+			catch (AmazonServiceException ase) {
+				logger.log(
+					"Could not group errors with a terms aggregation, " +
+						"falling back to grouping the hits: " +
+							ase.getMessage() + "\n");
+			}
+		}
+		else if (_ERROR_GROUPING_MODE == ErrorGroupingMode.SEARCH_AFTER) {
+			return ElasticSearchAWSUtil.getErrorGroupCounts(
+				host,
+				QueryTemplateUtil.getQuery(
+					"searchErrorsQueryTemplate.json", environment, interval),
+				_DEFAULT_MAX_PREFIX_LENGTH, _PAGING_TIEBREAKER_FIELD,
+				_PAGING_MAX_PAGES, _PAGING_MAX_TIME_MILLIS, logger);
+		}
 
-		return message;
+		String searchErrorsQueryTemplateFileName =
+			"searchErrorsQueryTemplate.json";
+
+		String searchErrorsQuery = QueryTemplateUtil.getQuery(
+			searchErrorsQueryTemplateFileName, environment, interval);
+
+		return ElasticSearchAWSUtil.getErrorGroupCounts(
+			host, searchErrorsQuery, _DEFAULT_MAX_PREFIX_LENGTH, logger);
 	}
 
-	private Comparator<Map.Entry<String, Long>> _getComparator() {
-		return new Comparator<Map.Entry<String, Long>>() {
-			@Override
-			public int compare(
-				Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+	private void _groupErrors(
+		LambdaLogger logger, String host, String interval, String environment,
+		CountResponse countResponse) {
 
-				boolean isGreaterThan = o1.getValue() > o2.getValue();
+		// Errors are grouped whenever there are any, since in anomaly alert
+		// mode it is not known yet whether they are sent
 
-				if (isGreaterThan) {
-					return -1;
-				}
-				else {
-					return 1;
-				}
+		if ((countResponse.getLogEntriesCount() == 0) ||
+			(countResponse.getErrorsCount() == 0)) {
+
+			return;
+		}
+
+		Map<Long, ErrorGroupCount> errorGroupCounts =
+			countResponse.getErrorGroupCounts();
+
+		try {
+			if (errorGroupCounts == null) {
+				errorGroupCounts = _getErrorGroupCounts(
+					logger, host, interval, environment);
 			}
-		};
-	}
 
-	private String _getQuery(
-		LambdaLogger logger, String queryTemplateFileName, String environment,
-		String interval) {
+			if (_ERROR_GROUPING_MODE == ErrorGroupingMode.AGGREGATION) {
+				errorGroupCounts = _groupUngroupedErrors(
+					logger, host, interval, environment, errorGroupCounts);
+			}
+		}
+		catch (SdkClientException sce) {
+			countResponse.addCheckFailure(
+				_ERRORS_GROUPING_CHECK, String.valueOf(sce));
 
-		FileUtil fileUtil = new FileUtil();
+			errorGroupCounts = Collections.emptyMap();
+		}
+
+		countResponse.setErrorGroupCounts(errorGroupCounts);
+	}
 
-		String query = null;
+	private Map<Long, ErrorGroupCount> _groupUngroupedErrors(
+		LambdaLogger logger, String host, String interval, String environment,
+		Map<Long, ErrorGroupCount> errorGroupCounts) {
+
+		// Messages longer than the ignore_above of a keyword field are not
+		// aggregated, so their hits are grouped instead
 
 		try {
-			String queryTemplate = fileUtil.fileInClasspathToString(
-				queryTemplateFileName);
+			return ElasticSearchAWSUtil.groupUngroupedErrors(
+				host, errorGroupCounts,
+				QueryTemplateUtil.getQuery(
+					"searchUngroupedErrorsQueryTemplate.json", environment,
+					interval, _ERROR_GROUPING_FIELD),
+				_DEFAULT_MAX_PREFIX_LENGTH, logger);
+		}
+		catch (SdkClientException sce) {
+			logger.log(
+				"Could not group the errors without a value for field " +
+					_ERROR_GROUPING_FIELD + ": " + sce.getMessage() + "\n");
+
+			return errorGroupCounts;
+		}
+	}
+
+	private String _groupErrorsAndSendMessageToSlack(
+		LambdaLogger logger, SlackNotifier slackNotifier, String host,
+		String interval, String environment, long errorsCount,
+		Map<Long, ErrorGroupCount> errorGroupCounts) {
+
+		// The groups already reported are only summarized. A group is
+		// identified by the fingerprint computed when it was grouped, not by
+		// its truncated sample message.
+
+		Map<Long, Long> countsByAlertKey = new HashMap<>();
+		Map<Long, ErrorGroupCount> newErrorGroupCounts = new HashMap<>();
+
+		long knownErrorsCount = 0;
+		int knownGroupsCount = 0;
 
-			logger.log("Query template: \n" + queryTemplate + "\n");
+		for (Map.Entry<Long, ErrorGroupCount> entry :
+				errorGroupCounts.entrySet()) {
 
-			logger.log("Environment: \n" + environment + "\n");
+			ErrorGroupCount errorGroupCount = entry.getValue();
 
-			logger.log("interval: \n" + interval + "\n");
+			long alertKey = _alertDeduplicator.getKey(
+				host, environment, interval, _ERRORS_COUNT_CHECK,
+				entry.getKey());
 
-			query = String.format(queryTemplate, environment, interval);
+			if (_isNewAlert(
+					logger, alertKey, environment, _ERRORS_COUNT_CHECK,
+					errorGroupCount.getSampleMessage(),
+					errorGroupCount.getCount())) {
+
+				countsByAlertKey.put(alertKey, errorGroupCount.getCount());
+				newErrorGroupCounts.put(entry.getKey(), errorGroupCount);
+			}
+			else {
+				knownErrorsCount += errorGroupCount.getCount();
+				knownGroupsCount++;
+			}
 		}
-		catch (URISyntaxException | IOException e) {
+
+		if (newErrorGroupCounts.isEmpty() &&
+			(knownGroupsCount > 0)) {
+
 			logger.log(
-				"Could not read from classpath file: " + queryTemplateFileName +
-					"Exception: " + e.getMessage() + "\n");
+				"All the " + knownGroupsCount + " error groups in " +
+					environment + " were already reported\n");
+
+			return null;
+		}
+
+		TopErrorGroups topErrorGroups = TopErrorGroups.select(
+			ErrorGroupCount.getCountByMessagePrefix(newErrorGroupCounts),
+			_SLACK_MAX_ERROR_GROUPS);
+
+		StringBuilder sb = new StringBuilder();
+
+		for (Map.Entry<String, Long> entry : topErrorGroups.getEntries()) {
+			if (sb.length() > 0) {
+				sb.append("\n");
+			}
 
-			throw new RuntimeException(e);
+			sb.append(
+				String.format(
+					"\u2022 *%s*: %s", entry.getValue(), entry.getKey()));
 		}
 
-		logger.log("ElasticSearch Query: \n" + query + "\n");
+		if (topErrorGroups.getRemainingGroupsCount() > 0) {
+			sb.append(
+				String.format(
+					"\n_and %d more groups (%d errors)_",
+					topErrorGroups.getRemainingGroupsCount(),
+					topErrorGroups.getRemainingErrorsCount()));
+		}
+
+		if (knownGroupsCount > 0) {
+			sb.append(
+				String.format(
+					"\n_and %d groups already reported (%d errors)_",
+					knownGroupsCount, knownErrorsCount));
+		}
+
+		String messsageDetails = sb.toString();
+
+		String message = String.format(
+			"*%s* errors found in *%s* environment in the last *%s*" +
+				"\n>>>\n %s",
+			errorsCount, environment, interval, messsageDetails);
+
+		String kibanaErrorsUrl = String.format(
+			_KIBANA_ERRORS_URL_TEMPLATE, interval, environment,
+			environment, environment
+		);
+
+		SendMessageToSlackRequest sendMessageToSlackRequest =
+			_getSendMessageToSlackRequest(
+				message, kibanaErrorsUrl, logger);
+
+		logger.log(
+			"Adding slack message: " + sendMessageToSlackRequest
+				+ "\n");
+
+		slackNotifier.add(
+			sendMessageToSlackRequest,
+			() -> _markAlertsSent(countsByAlertKey));
 
-		return query;
+		return message;
 	}
 
 	private SendMessageToSlackRequest _getSendMessageToSlackRequest(
@@ -363,23 +1349,26 @@ public class LambdaHandler
 
 		sendMessageToSlackRequest.setMessage(message);
 
-		String webHookUrl = System.getenv("WEB_HOOK_URL");
-
-		logger.log("WEB_HOOK_URL env variable: " + webHookUrl + "\n");
-
-		sendMessageToSlackRequest.setWebHookUrl(webHookUrl);
+		logger.log("Slack web hook URL: " + _webHookUrl + "\n");
 
-		String channel = System.getenv("CHANNEL");
+		sendMessageToSlackRequest.setWebHookUrl(_webHookUrl);
 
-		logger.log("CHANNEL env variable: " + channel + "\n");
+		logger.log("Slack channel: " + _channel + "\n");
 
-		sendMessageToSlackRequest.setChannel(channel);
+		sendMessageToSlackRequest.setChannel(_channel);
 
 		sendMessageToSlackRequest.setButtonUrl(buttonUrl);
 
 		return sendMessageToSlackRequest;
 	}
 
+	private static final AlertMode _ALERT_MODE = AlertMode.parse(
+		System.getenv("ALERT_MODE"), AlertMode.THRESHOLD);
+
+	private static final int _CHECK_FAILURE_MAX_LENGTH = 500;
+
+	private static final long _DEADLINE_SAFETY_MARGIN_MILLIS = 2000;
+
 	private static final String _DEFAULT_ENVIRONMENT = "prod";
 
 	private static final String _DEFAULT_ES_HOST =
@@ -390,6 +1379,34 @@ public class LambdaHandler
 
 	private static final int _DEFAULT_MAX_PREFIX_LENGTH = 200;
 
+	private static final long _DEFAULT_REMAINING_TIME_MILLIS = 60000;
+
+	private static final String _ERRORS_COUNT_CHECK = "errorsCount";
+
+	private static final String _ERRORS_GROUPING_CHECK = "errorsGrouping";
+
+	private static final String _ERROR_GROUPING_AGGREGATION_NAME =
+		"errorGroups";
+
+	private static final String _ERROR_GROUPING_FIELD =
+		EnvironmentUtil.getString(
+			"ES_ERROR_GROUPING_FIELD", "message.keyword");
+
+	private static final ErrorGroupingMode _ERROR_GROUPING_MODE =
+		ErrorGroupingMode.parse(
+			System.getenv("ES_ERROR_GROUPING_MODE"),
+			ErrorGroupingMode.AGGREGATION);
+
+	private static final int _ERROR_GROUPING_SIZE = EnvironmentUtil.getInt(
+		"ES_ERROR_GROUPING_SIZE", 100);
+
+	private static final long _FAN_OUT_MESSAGES_MARGIN_MILLIS = 3000;
+
+	private static final int _INCREMENTAL_SETTLE_MINUTES =
+		EnvironmentUtil.getInt("ES_INCREMENTAL_SETTLE_MINUTES", 2);
+
+	private static final String _KIBANA_PATH = "/_plugin/kibana/app/kibana";
+
 	private static final String _KIBANA_URL_TEMPLATE =
 		"https://search-pulpo-elasticsearch-log-bu5rbksghqwcoha4yj4sebrx7y." +
 			"us-east-1.es.amazonaws.com/_plugin/kibana/app/kibana#/discover/" +
@@ -448,4 +1465,42 @@ public class LambdaHandler
 			"type:phrase))))),index:c708e7c0-8e69-11e8-8cdd-5fdfb14faa84," +
 			"interval:auto,query:(language:lucene,query:'')," +
 			"sort:!('@timestamp',desc))";
+
+	private static final String _LOG_ENTRIES_COUNT_CHECK = "logEntriesCount";
+
+	private static final int _MAX_BUCKETS = EnvironmentUtil.getInt(
+		"ES_MAX_BUCKETS", 10000);
+
+	private static final int _PAGING_MAX_PAGES = EnvironmentUtil.getInt(
+		"ES_PAGING_MAX_PAGES", 50);
+
+	private static final long _PAGING_MAX_TIME_MILLIS =
+		EnvironmentUtil.getLong("ES_PAGING_MAX_TIME_MILLIS", 20000);
+
+	private static final String _PAGING_TIEBREAKER_FIELD =
+		EnvironmentUtil.getString("ES_PAGING_TIEBREAKER_FIELD", "_doc");
+
+	private static final QueryMode _QUERY_MODE = QueryMode.parse(
+		System.getenv("ES_QUERY_MODE"), QueryMode.MULTI_SEARCH);
+
+	private static final int _SLACK_MAX_ERROR_GROUPS = EnvironmentUtil.getInt(
+		"SLACK_MAX_ERROR_GROUPS", 20);
+
+	private static final String _TRUNCATED_MESSAGES_COUNT_CHECK =
+		"truncatedMessagesCount";
+
+	private static final AlertDeduplicator _alertDeduplicator =
+		new AlertDeduplicator(new StateStore("sent-alerts.json"));
+
+	private static final AnomalyDetector _anomalyDetector =
+		new AnomalyDetector(new StateStore("baselines.json"));
+	private static final ExecutorService _fanOutExecutorService =
+		CheckRunner.createExecutorService(
+			"fan-out", EnvironmentUtil.getInt("FAN_OUT_THREADS", 4));
+	private static final StateStore _minuteCountsStateStore = new StateStore(
+		"minute-counts.json");
+
+	private final String _channel;
+	private final String _webHookUrl;
+
 }
\ No newline at end of file
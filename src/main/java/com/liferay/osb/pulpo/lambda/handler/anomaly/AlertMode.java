@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.anomaly;
+
+/**
+ * The rules used to decide whether the errors and truncated messages counts
+ * are sent to Slack.
+ *
+ * @author Ruben Pulido
+ */
+public enum AlertMode {
+
+	/**
+	 * A count is sent only if it is significantly higher than its usual
+	 * value, as learnt by an {@link AnomalyDetector}.
+	 */
+	ANOMALY,
+
+	/**
+	 * Any count greater than 0 is sent.
+	 */
+	THRESHOLD;
+
+	/**
+	 * Gets the alert mode with the given name, ignoring case.
+	 *
+	 * @param name the name of the alert mode
+	 * @param defaultAlertMode the alert mode returned if the name is empty or
+	 *        unknown
+	 * @return the alert mode
+	 */
+	public static AlertMode parse(String name, AlertMode defaultAlertMode) {
+		if (name == null) {
+			return defaultAlertMode;
+		}
+
+		for (AlertMode alertMode : values()) {
+			if (alertMode.name().equalsIgnoreCase(name.trim())) {
+				return alertMode;
+			}
+		}
+
+		return defaultAlertMode;
+	}
+
+}
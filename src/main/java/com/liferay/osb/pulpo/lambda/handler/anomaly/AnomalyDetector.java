@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.anomaly;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+
+import java.io.UncheckedIOException;
+
+import javax.json.JsonObject;
+
+/**
+ * Decides whether a count is an anomaly by comparing it with the
+ * {@link EwmaBaseline} of the previous counts with the same key, and then
+ * updates the baseline with it.
+ *
+ * The baselines are persisted in a {@link StateStore}, which lives in the
+ * /tmp directory of the Lambda container. They survive the warm invocations
+ * but are lost when the container is recycled or when several containers run
+ * at the same time, and are then learnt again from ANOMALY_MIN_SAMPLES
+ * counts. A baseline that can not be written is kept in memory only, it never
+ * fails the evaluation.
+ *
+ * It can be tuned with the following environment variables:
+ *
+ * - ANOMALY_ALPHA: weight of every new count in the baseline.
+ * - ANOMALY_THRESHOLD: number of standard deviations above the average from
+ *   which a count is an anomaly.
+ * - ANOMALY_MIN_SAMPLES: number of counts needed before the baseline is
+ *   trusted. Until then every count greater than 0 is an anomaly.
+ * - ANOMALY_MIN_STANDARD_DEVIATION: standard deviation used when the
+ *   counts have barely changed.
+ *
+ * @author Ruben Pulido
+ */
+public class AnomalyDetector {
+
+	/**
+	 * Creates a detector configured from the environment variables.
+	 *
+	 * @param stateStore the store of the baselines
+	 */
+	public AnomalyDetector(StateStore stateStore) {
+		this(
+			stateStore,
+			EnvironmentUtil.getDouble("ANOMALY_ALPHA", _DEFAULT_ALPHA),
+			EnvironmentUtil.getDouble(
+				"ANOMALY_THRESHOLD", _DEFAULT_THRESHOLD),
+			EnvironmentUtil.getInt(
+				"ANOMALY_MIN_SAMPLES", _DEFAULT_MIN_SAMPLES),
+			EnvironmentUtil.getDouble(
+				"ANOMALY_MIN_STANDARD_DEVIATION",
+				_DEFAULT_MIN_STANDARD_DEVIATION));
+	}
+
+	/**
+	 * Creates a detector.
+	 *
+	 * @param stateStore the store of the baselines
+	 * @param alpha the weight of every new count in the baseline
+	 * @param threshold the number of standard deviations above the average
+	 *        from which a count is an anomaly
+	 * @param minSamples the number of counts needed before the baseline is
+	 *        trusted
+	 * @param minStandardDeviation the minimum standard deviation
+	 */
+	public AnomalyDetector(
+		StateStore stateStore, double alpha, double threshold, int minSamples,
+		double minStandardDeviation) {
+
+		_stateStore = stateStore;
+		_alpha = alpha;
+		_threshold = threshold;
+		_minSamples = minSamples;
+		_minStandardDeviation = minStandardDeviation;
+	}
+
+	/**
+	 * Returns whether a count is an anomaly, and updates the baseline of its
+	 * key with it.
+	 *
+	 * @param key the key of the baseline
+	 * @param count the count
+	 * @param lambdaLogger lambda logger
+	 * @return <code>true</code> if the count is an anomaly
+	 */
+	public boolean evaluate(String key, long count, LambdaLogger lambdaLogger) {
+		EwmaBaseline ewmaBaseline = getBaseline(key);
+
+		boolean anomaly;
+
+		if (ewmaBaseline.getSamples() < _minSamples) {
+			anomaly = count > 0;
+		}
+		else {
+			double deviation = ewmaBaseline.getDeviation(
+				count, _minStandardDeviation);
+
+			lambdaLogger.log(
+				String.format(
+					"Count %d of %s deviates %.2f from %s\n", count, key,
+					deviation, ewmaBaseline));
+
+			anomaly = (count > 0) && (deviation >= _threshold);
+		}
+
+		try {
+			_stateStore.put(
+				key, ewmaBaseline.update(count, _alpha).toJsonObject());
+		}
+		catch (UncheckedIOException uioe) {
+			lambdaLogger.log(
+				"Could not persist the baseline of " + key + ": " +
+					uioe.getMessage() + "\n");
+		}
+
+		return anomaly;
+	}
+
+	/**
+	 * Gets the baseline of a key.
+	 *
+	 * @param key the key of the baseline
+	 * @return the baseline, empty if there are no counts with the key yet
+	 */
+	public EwmaBaseline getBaseline(String key) {
+		JsonObject jsonObject = _stateStore.get(key);
+
+		if (jsonObject != null) {
+			try {
+				return EwmaBaseline.fromJsonObject(jsonObject);
+			}
+			catch (RuntimeException re) {
+
+				// An unusable baseline is learnt again
+
+			}
+		}
+
+		return new EwmaBaseline();
+	}
+
+	private static final double _DEFAULT_ALPHA = 0.1;
+
+	private static final int _DEFAULT_MIN_SAMPLES = 5;
+
+	private static final double _DEFAULT_MIN_STANDARD_DEVIATION = 1;
+
+	private static final double _DEFAULT_THRESHOLD = 3;
+
+	private final double _alpha;
+	private final int _minSamples;
+	private final double _minStandardDeviation;
+	private final StateStore _stateStore;
+	private final double _threshold;
+
+}
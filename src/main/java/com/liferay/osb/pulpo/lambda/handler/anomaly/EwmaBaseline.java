@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.anomaly;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Exponentially weighted moving average and variance of a count.
+ *
+ * Both are updated incrementally with every new value, so the baseline never
+ * needs the history of the count, and recent values weigh more than older
+ * ones.
+ *
+ * @author Ruben Pulido
+ */
+public class EwmaBaseline {
+
+	/**
+	 * Reads a baseline from its JSON representation.
+	 *
+	 * @param jsonObject the JSON representation
+	 * @return the baseline
+	 */
+	public static EwmaBaseline fromJsonObject(JsonObject jsonObject) {
+		JsonNumber meanJsonNumber = jsonObject.getJsonNumber("mean");
+		JsonNumber varianceJsonNumber = jsonObject.getJsonNumber("variance");
+
+		return new EwmaBaseline(
+			meanJsonNumber.doubleValue(), varianceJsonNumber.doubleValue(),
+			jsonObject.getInt("samples"));
+	}
+
+	/**
+	 * Creates an empty baseline.
+	 */
+	public EwmaBaseline() {
+		this(0, 0, 0);
+	}
+
+	/**
+	 * Creates a baseline.
+	 *
+	 * @param mean the moving average
+	 * @param variance the moving variance
+	 * @param samples the number of values the baseline was updated with
+	 */
+	public EwmaBaseline(double mean, double variance, int samples) {
+		_mean = mean;
+		_variance = variance;
+		_samples = samples;
+	}
+
+	/**
+	 * Gets how many standard deviations a value is above the moving average.
+	 *
+	 * @param value the value
+	 * @param minStandardDeviation the minimum standard deviation, so that a
+	 *        count which has always been the same does not make any small
+	 *        change an anomaly
+	 * @return the number of standard deviations, negative if the value is
+	 *         below the moving average
+	 */
+	public double getDeviation(double value, double minStandardDeviation) {
+		double standardDeviation = Math.max(
+			Math.sqrt(_variance), minStandardDeviation);
+
+		return (value - _mean) / standardDeviation;
+	}
+
+	/**
+	 * Gets the moving average.
+	 *
+	 * @return the moving average
+	 */
+	public double getMean() {
+		return _mean;
+	}
+
+	/**
+	 * Gets the number of values the baseline was updated with.
+	 *
+	 * @return the number of values
+	 */
+	public int getSamples() {
+		return _samples;
+	}
+
+	/**
+	 * Gets the moving variance.
+	 *
+	 * @return the moving variance
+	 */
+	public double getVariance() {
+		return _variance;
+	}
+
+	/**
+	 * Gets the JSON representation of the baseline.
+	 *
+	 * @return the JSON representation
+	 */
+	public JsonObject toJsonObject() {
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		jsonObjectBuilder.add("mean", _mean);
+		jsonObjectBuilder.add("variance", _variance);
+		jsonObjectBuilder.add("samples", _samples);
+
+		return jsonObjectBuilder.build();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"EwmaBaseline{_mean=%.3f, _variance=%.3f, _samples=%d}", _mean,
+			_variance, _samples);
+	}
+
+	/**
+	 * Gets the baseline updated with a new value.
+	 *
+	 * @param value the new value
+	 * @param alpha the weight of the new value, between 0 and 1
+	 * @return the updated baseline
+	 */
+	public EwmaBaseline update(double value, double alpha) {
+		if (_samples == 0) {
+			return new EwmaBaseline(value, 0, 1);
+		}
+
+		double difference = value - _mean;
+
+		double increment = alpha * difference;
+
+		return new EwmaBaseline(
+			_mean + increment,
+			(1 - alpha) * (_variance + (difference * increment)),
+			_samples + 1);
+	}
+
+	private final double _mean;
+	private final int _samples;
+	private final double _variance;
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.check;
+
+/**
+ * The result of a check run by a {@link CheckRunner}: either its value or
+ * the reason it failed.
+ *
+ * @author Ruben Pulido
+ */
+public class CheckResult<T> {
+
+	/**
+	 * Creates the result of a failed check.
+	 *
+	 * @param checkName the check name
+	 * @param throwable the reason the check failed
+	 * @return the result
+	 */
+	public static <T> CheckResult<T> failure(
+		String checkName, Throwable throwable) {
+
+		return new CheckResult<>(checkName, null, throwable);
+	}
+
+	/**
+	 * Creates the result of a successful check.
+	 *
+	 * @param checkName the check name
+	 * @param value the value returned by the check
+	 * @return the result
+	 */
+	public static <T> CheckResult<T> success(String checkName, T value) {
+		return new CheckResult<>(checkName, value, null);
+	}
+
+	/**
+	 * Gets the check name.
+	 *
+	 * @return the check name
+	 */
+	public String getCheckName() {
+		return _checkName;
+	}
+
+	/**
+	 * Gets the reason the check failed.
+	 *
+	 * @return the reason the check failed, or <code>null</code> if it was
+	 *         successful
+	 */
+	public Throwable getThrowable() {
+		return _throwable;
+	}
+
+	/**
+	 * Gets the value returned by the check.
+	 *
+	 * @return the value, or <code>null</code> if the check failed
+	 */
+	public T getValue() {
+		return _value;
+	}
+
+	/**
+	 * Returns whether the check was successful.
+	 *
+	 * @return <code>true</code> if the check was successful
+	 */
+	public boolean isSuccessful() {
+		return _throwable == null;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(7);
+
+		sb.append("CheckResult{");
+		sb.append("_checkName='");
+		sb.append(_checkName);
+		sb.append("', _throwable=");
+		sb.append(_throwable);
+		sb.append(", _value=");
+		sb.append(_value);
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	private CheckResult(String checkName, T value, Throwable throwable) {
+		_checkName = checkName;
+		_value = value;
+		_throwable = throwable;
+	}
+
+	private final String _checkName;
+	private final Throwable _throwable;
+	private final T _value;
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.check;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent checks in parallel on a bounded pool of threads and joins
+ * them before a deadline.
+ *
+ * Every check is joined separately, so a check which fails or does not
+ * finish before the deadline is reported as a failed {@link CheckResult}
+ * without affecting the results of the others.
+ *
+ * The pool is shared by all the invocations of a warm Lambda container and
+ * its size can be set with the CHECK_THREADS environment variable.
+ *
+ * @author Ruben Pulido
+ */
+public class CheckRunner {
+
+	/**
+	 * Creates a pool of daemon threads.
+	 *
+	 * @param threadNamePrefix the prefix of the thread names
+	 * @param threads the number of threads
+	 * @return the executor service
+	 */
+	public static ExecutorService createExecutorService(
+		String threadNamePrefix, int threads) {
+
+		return Executors.newFixedThreadPool(
+			threads,
+			new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(
+						runnable,
+						threadNamePrefix + "-" +
+							_threadCount.incrementAndGet());
+
+					thread.setDaemon(true);
+
+					return thread;
+				}
+
+				private final AtomicInteger _threadCount = new AtomicInteger();
+
+			});
+	}
+
+	/**
+	 * Gets the pool of threads shared by all the invocations.
+	 *
+	 * @return the executor service
+	 */
+	public static ExecutorService getDefaultExecutorService() {
+		return _defaultExecutorService;
+	}
+
+	/**
+	 * Creates a runner.
+	 *
+	 * @param executorService the executor service running the checks
+	 * @param deadlineMillis the time, in milliseconds since the epoch, by
+	 *        which all the checks must have finished
+	 * @param lambdaLogger lambda logger
+	 */
+	public CheckRunner(
+		ExecutorService executorService, long deadlineMillis,
+		LambdaLogger lambdaLogger) {
+
+		_executorService = executorService;
+		_deadlineMillis = deadlineMillis;
+		_lambdaLogger = lambdaLogger;
+	}
+
+	/**
+	 * Waits until a check finishes or the deadline is reached and returns its
+	 * result. If the deadline is reached the check is cancelled.
+	 *
+	 * @param checkName the check name
+	 * @param future the future returned when the check was submitted
+	 * @return the result of the check
+	 */
+	public <T> CheckResult<T> join(String checkName, Future<T> future) {
+		long timeoutMillis = _deadlineMillis - System.currentTimeMillis();
+
+		try {
+			return CheckResult.success(
+				checkName,
+				future.get(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS));
+		}
+		catch (ExecutionException ee) {
+			_lambdaLogger.log(
+				"Check " + checkName + " failed: " + ee.getCause() + "\n");
+
+			return CheckResult.failure(checkName, ee.getCause());
+		}
+		catch (TimeoutException te) {
+			future.cancel(true);
+
+			_lambdaLogger.log(
+				"Check " + checkName + " did not finish before the " +
+					"deadline\n");
+
+			return CheckResult.failure(checkName, te);
+		}
+		catch (InterruptedException ie) {
+			Thread currentThread = Thread.currentThread();
+
+			currentThread.interrupt();
+
+			return CheckResult.failure(checkName, ie);
+		}
+	}
+
+	/**
+	 * Runs several checks in parallel and joins all of them before the
+	 * deadline.
+	 *
+	 * @param callables the checks by check name
+	 * @return the results of the checks by check name, in the order of the
+	 *         checks
+	 */
+	public <T> Map<String, CheckResult<T>> runAll(
+		Map<String, Callable<T>> callables) {
+
+		Map<String, Future<T>> futures = new LinkedHashMap<>();
+
+		callables.forEach(
+			(checkName, callable) -> futures.put(
+				checkName, submit(checkName, callable)));
+
+		Map<String, CheckResult<T>> checkResults = new LinkedHashMap<>();
+
+		futures.forEach(
+			(checkName, future) -> checkResults.put(
+				checkName, join(checkName, future)));
+
+		return checkResults;
+	}
+
+	/**
+	 * Starts running a check.
+	 *
+	 * @param checkName the check name
+	 * @param callable the check
+	 * @return the future to join the check
+	 */
+	public <T> Future<T> submit(String checkName, Callable<T> callable) {
+		return _executorService.submit(
+			() -> {
+				long startTime = System.currentTimeMillis();
+
+				try {
+					return callable.call();
+				}
+				finally {
+					_lambdaLogger.log(
+						"Check " + checkName + " took " +
+							(System.currentTimeMillis() - startTime) +
+								" ms\n");
+				}
+			});
+	}
+
+	private static final ExecutorService _defaultExecutorService =
+		createExecutorService(
+			"check", EnvironmentUtil.getInt("CHECK_THREADS", 4));
+
+	private final long _deadlineMillis;
+	private final ExecutorService _executorService;
+	private final LambdaLogger _lambdaLogger;
+
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.dedup;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroups;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+/**
+ * Decides whether an alert has to be sent or it was already sent recently,
+ * so that the same groups of errors are not announced on every run.
+ *
+ * Every alert is identified by a 64 bit hash of its host, environment,
+ * interval and check, and the fingerprint of its group computed by {@link
+ * ErrorGroups}. For every hash, the time the alert was last sent and its
+ * count then are kept. An alert is sent again only after
+ * ALERT_DEDUP_TTL_MILLIS, or earlier if its count has grown by
+ * ALERT_DEDUP_GROWTH_FACTOR since it was last sent.
+ *
+ * An alert is only recorded with {@link #markSent(long, long, long)} once
+ * it has been delivered, so an alert that was dropped or is still waiting
+ * in an outbox is not suppressed.
+ *
+ * The alerts are kept in memory in access order, so lookups take constant
+ * time and, when there are more than ALERT_DEDUP_MAX_ENTRIES, the least
+ * recently used ones are evicted. They are persisted in a {@link
+ * StateStore} when {@link #save()} is called. A TTL of <code>0</code>
+ * disables the deduplication.
+ *
+ * @author Ruben Pulido
+ */
+public class AlertDeduplicator {
+
+	/**
+	 * Creates a deduplicator configured from the environment variables.
+	 *
+	 * @param stateStore the store of the sent alerts
+	 */
+	public AlertDeduplicator(StateStore stateStore) {
+		this(
+			stateStore,
+			EnvironmentUtil.getLong(
+				"ALERT_DEDUP_TTL_MILLIS", _DEFAULT_TTL_MILLIS),
+			EnvironmentUtil.getDouble(
+				"ALERT_DEDUP_GROWTH_FACTOR", _DEFAULT_GROWTH_FACTOR),
+			EnvironmentUtil.getInt(
+				"ALERT_DEDUP_MAX_ENTRIES", _DEFAULT_MAX_ENTRIES));
+	}
+
+	/**
+	 * Creates a deduplicator.
+	 *
+	 * @param stateStore the store of the sent alerts
+	 * @param ttlMillis the time during which an alert is not sent again
+	 * @param growthFactor the factor by which the count of an alert has to
+	 *        grow to be sent again before its TTL
+	 * @param maxEntries the maximum number of sent alerts kept
+	 */
+	public AlertDeduplicator(
+		StateStore stateStore, long ttlMillis, double growthFactor,
+		int maxEntries) {
+
+		_stateStore = stateStore;
+		_ttlMillis = ttlMillis;
+		_growthFactor = growthFactor;
+		_maxEntries = maxEntries;
+	}
+
+	/**
+	 * Gets the hash that identifies an alert.
+	 *
+	 * @param host the host
+	 * @param environment the environment
+	 * @param interval the interval
+	 * @param check the check
+	 * @param groupFingerprint the fingerprint of the group of errors, or
+	 *        <code>0</code> if the check has no groups
+	 * @return the hash
+	 */
+	public long getKey(
+		String host, String environment, String interval, String check,
+		long groupFingerprint) {
+
+		long hash = _FNV_OFFSET_BASIS;
+
+		hash = _hash(hash, host);
+		hash = _hash(hash, environment);
+		hash = _hash(hash, interval);
+		hash = _hash(hash, check);
+
+		for (int i = 0; i < 8; i++) {
+			hash =
+				(hash ^ ((groupFingerprint >>> (i * 8)) & 0xff)) * _FNV_PRIME;
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Returns whether an alert has to be sent, that is, it was not sent
+	 * within the TTL or its count has grown enough since then. It is not
+	 * recorded as sent.
+	 *
+	 * @param key the hash that identifies the alert
+	 * @param count the count of the alert
+	 * @param nowMillis the current time in milliseconds
+	 * @return <code>true</code> if the alert has to be sent
+	 */
+	public synchronized boolean isNew(long key, long count, long nowMillis) {
+		if (_ttlMillis <= 0) {
+			return true;
+		}
+
+		SentAlert sentAlert = _getSentAlerts().get(key);
+
+		if ((sentAlert != null) &&
+			((nowMillis - sentAlert._sentMillis) < _ttlMillis) &&
+			(count < (sentAlert._count * _growthFactor))) {
+
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Records an alert as sent.
+	 *
+	 * @param key the hash that identifies the alert
+	 * @param count the count of the alert
+	 * @param nowMillis the time the alert was sent, in milliseconds
+	 */
+	public synchronized void markSent(long key, long count, long nowMillis) {
+		if (_ttlMillis <= 0) {
+			return;
+		}
+
+		Map<Long, SentAlert> sentAlerts = _getSentAlerts();
+
+		sentAlerts.put(key, new SentAlert(nowMillis, count));
+
+		_changed = true;
+
+		if (sentAlerts.size() > _maxEntries) {
+			Iterator<SentAlert> iterator = sentAlerts.values().iterator();
+
+			iterator.next();
+
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Persists the sent alerts, if they changed, discarding those older than
+	 * the TTL.
+	 */
+	public synchronized void save() {
+		if (!_changed) {
+			return;
+		}
+
+		long minSentMillis = System.currentTimeMillis() - _ttlMillis;
+
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		_sentAlerts.forEach(
+			(key, sentAlert) -> {
+				if (sentAlert._sentMillis >= minSentMillis) {
+					jsonObjectBuilder.add(
+						Long.toHexString(key),
+						Json.createArrayBuilder(
+						).add(
+							sentAlert._sentMillis
+						).add(
+							sentAlert._count
+						));
+				}
+			});
+
+		_stateStore.put(_SENT_ALERTS_KEY, jsonObjectBuilder.build());
+
+		_changed = false;
+	}
+
+	/**
+	 * Gets the number of sent alerts kept.
+	 *
+	 * @return the number of sent alerts
+	 */
+	public synchronized int size() {
+		return _getSentAlerts().size();
+	}
+
+	private Map<Long, SentAlert> _getSentAlerts() {
+		if (_sentAlerts == null) {
+			_sentAlerts = new LinkedHashMap<>(16, 0.75F, true);
+
+			JsonObject jsonObject = _stateStore.get(_SENT_ALERTS_KEY);
+
+			if (jsonObject != null) {
+				jsonObject.forEach(this::_readSentAlert);
+			}
+		}
+
+		return _sentAlerts;
+	}
+
+	private long _hash(long hash, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			hash = (hash ^ s.charAt(i)) * _FNV_PRIME;
+		}
+
+		// Separates the fields, so that "ab" + "c" differs from "a" + "bc"
+
+		return hash * _FNV_PRIME;
+	}
+
+	private void _readSentAlert(String key, JsonValue jsonValue) {
+		if ((_sentAlerts.size() >= _maxEntries) ||
+			(jsonValue.getValueType() != JsonValue.ValueType.ARRAY)) {
+
+			return;
+		}
+
+		JsonArray jsonArray = (JsonArray)jsonValue;
+
+		try {
+			_sentAlerts.put(
+				Long.parseUnsignedLong(key, 16),
+				new SentAlert(
+					jsonArray.getJsonNumber(0).longValue(),
+					jsonArray.getJsonNumber(1).longValue()));
+		}
+		catch (RuntimeException re) {
+
+			// An unusable entry only means the alert may be sent again
+
+		}
+	}
+
+	private static final double _DEFAULT_GROWTH_FACTOR = 2;
+
+	private static final int _DEFAULT_MAX_ENTRIES = 10000;
+
+	private static final long _DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000;
+
+	private static final long _FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long _FNV_PRIME = 0x100000001b3L;
+
+	private static final String _SENT_ALERTS_KEY = "sentAlerts";
+
+	private boolean _changed;
+	private final double _growthFactor;
+	private final int _maxEntries;
+	private Map<Long, SentAlert> _sentAlerts;
+	private final StateStore _stateStore;
+	private final long _ttlMillis;
+
+	private static class SentAlert {
+
+		private SentAlert(long sentMillis, long count) {
+			_sentMillis = sentMillis;
+			_count = count;
+		}
+
+		private final long _count;
+		private final long _sentMillis;
+
+	}
+
+}
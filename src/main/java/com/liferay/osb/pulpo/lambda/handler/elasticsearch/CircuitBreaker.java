@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker that stops sending requests to an Elasticsearch domain
+ * after a number of consecutive failures.
+ *
+ * While the circuit is open all the requests are rejected. Once the open time
+ * has elapsed a single trial request is let through: the circuit closes again
+ * if it succeeds and stays open for another period if it fails.
+ *
+ * Instances are kept by the {@link ElasticSearchClient}, so the state survives
+ * across invocations handled by the same warm container.
+ *
+ * @author Ruben Pulido
+ */
+public class CircuitBreaker {
+
+	/**
+	 * Creates a closed circuit breaker.
+	 *
+	 * @param failureThreshold the number of consecutive failures that opens
+	 *        the circuit
+	 * @param openMillis the time the circuit stays open before a trial request
+	 *        is let through
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		_failureThreshold = failureThreshold;
+		_openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+	}
+
+	/**
+	 * Returns whether a request can be sent. When the open time has elapsed,
+	 * only the first caller is allowed to send the trial request.
+	 *
+	 * @return <code>true</code> if the request can be sent
+	 */
+	public synchronized boolean allowRequest() {
+		if (_state == State.CLOSED) {
+			return true;
+		}
+
+		if ((_state == State.OPEN) &&
+			((System.nanoTime() - _openedTime) >= _openNanos)) {
+
+			_state = State.HALF_OPEN;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the current state of the circuit.
+	 *
+	 * @return the state
+	 */
+	public synchronized State getState() {
+		return _state;
+	}
+
+	/**
+	 * Records a failed request, opening the circuit if the trial request
+	 * failed or the failure threshold has been reached.
+	 */
+	public synchronized void recordFailure() {
+		_consecutiveFailures++;
+
+		if ((_state == State.HALF_OPEN) ||
+			(_consecutiveFailures >= _failureThreshold)) {
+
+			_state = State.OPEN;
+			_openedTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Records a successful request, closing the circuit.
+	 */
+	public synchronized void recordSuccess() {
+		_consecutiveFailures = 0;
+		_state = State.CLOSED;
+	}
+
+	public enum State {
+
+		CLOSED, HALF_OPEN, OPEN
+
+	}
+
+	private int _consecutiveFailures;
+	private final int _failureThreshold;
+	private long _openedTime;
+	private final long _openNanos;
+	private State _state = State.CLOSED;
+
+}
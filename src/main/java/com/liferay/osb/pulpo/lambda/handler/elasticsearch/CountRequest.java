@@ -14,6 +14,8 @@
 
 package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
 
+import java.util.List;
+
 /**
  * The type count request.
  *
@@ -30,6 +32,16 @@ public class CountRequest {
 		return _environment;
 	}
 
+	/**
+	 * Gets the environment names. All of them are evaluated in the same
+	 * invocation.
+	 *
+	 * @return the environment names
+	 */
+	public List<String> getEnvironments() {
+		return _environments;
+	}
+
 	/**
 	 * Gets host.
 	 *
@@ -48,6 +60,17 @@ public class CountRequest {
 		_environment = environment;
 	}
 
+	/**
+	 * Sets the environment names. All of them are evaluated in the same
+	 * invocation, together with the one set with
+	 * {@link #setEnvironment(String)}, if any.
+	 *
+	 * @param environments a list with the environment names
+	 */
+	public void setEnvironments(List<String> environments) {
+		_environments = environments;
+	}
+
 	/**
 	 * Sets host.
 	 *
@@ -59,20 +82,46 @@ public class CountRequest {
 
 	@Override
 	public String toString() {
-		final StringBuilder sb = new StringBuilder(8);
+		final StringBuilder sb = new StringBuilder(14);
 
 		sb.append("CountRequest{");
 		sb.append("_environment='");
 		sb.append(_environment);
-		sb.append("', _host='");
+		sb.append("', _environments=");
+		sb.append(_environments);
+		sb.append(", _host='");
 		sb.append(_host);
 		sb.append("', _interval='");
 		sb.append(_interval);
+		sb.append("', _intervals=");
+		sb.append(_intervals);
+		sb.append(", _targets=");
+		sb.append(_targets);
 		sb.append("}");
 
 		return sb.toString();
 	}
 
+	/**
+	 * Gets the targets checked in parallel when several Elasticsearch domains
+	 * are monitored from the same invocation.
+	 *
+	 * @return the targets
+	 */
+	public List<CountTarget> getTargets() {
+		return _targets;
+	}
+
+	/**
+	 * Sets the targets checked in parallel. When there are targets, the host
+	 * and environments of this request are ignored.
+	 *
+	 * @param targets a list with the targets
+	 */
+	public void setTargets(List<CountTarget> targets) {
+		_targets = targets;
+	}
+
 	/**
 	 * Gets interval.
 	 *
@@ -91,9 +140,31 @@ public class CountRequest {
 		_interval = interval;
 	}
 
+	/**
+	 * Gets the intervals. All of them are evaluated in the same invocation.
+	 *
+	 * @return the intervals
+	 */
+	public List<String> getIntervals() {
+		return _intervals;
+	}
+
+	/**
+	 * Sets the intervals. All of them are evaluated in the same invocation,
+	 * together with the one set with {@link #setInterval(String)}, if any.
+	 *
+	 * @param intervals a list with the intervals
+	 */
+	public void setIntervals(List<String> intervals) {
+		_intervals = intervals;
+	}
+
 	private String _environment;
+	private List<String> _environments;
 	private String _host;
 	private String _interval;
+	private List<String> _intervals;
+	private List<CountTarget> _targets;
 
 
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The counts found in Elasticsearch for an environment in an interval.
+ *
+ * The errors count and the truncated messages count are only set if there are
+ * log entries. The counts of the checks which failed are left at 0 and the
+ * reasons of the failures are available by check name.
+ *
+ * @author Ruben Pulido
+ */
+public class CountResponse {
+
+	/**
+	 * Adds the reason a check failed.
+	 *
+	 * @param checkName the check name
+	 * @param reason the reason the check failed
+	 */
+	public void addCheckFailure(String checkName, String reason) {
+		_checkFailures.put(checkName, reason);
+	}
+
+	/**
+	 * Gets the reasons of the checks which failed by check name.
+	 *
+	 * @return the reasons of the checks which failed
+	 */
+	public Map<String, String> getCheckFailures() {
+		return _checkFailures;
+	}
+
+	/**
+	 * Gets the count and the sample message of every error group by its
+	 * fingerprint, if the errors were already grouped when the counts were
+	 * retrieved.
+	 *
+	 * @return the count of every error group by fingerprint, or
+	 *         <code>null</code>
+	 */
+	public Map<Long, ErrorGroupCount> getErrorGroupCounts() {
+		return _errorGroupCounts;
+	}
+
+	/**
+	 * Gets the errors count.
+	 *
+	 * @return the errors count
+	 */
+	public long getErrorsCount() {
+		return _errorsCount;
+	}
+
+	/**
+	 * Gets the log entries count.
+	 *
+	 * @return the log entries count
+	 */
+	public long getLogEntriesCount() {
+		return _logEntriesCount;
+	}
+
+	/**
+	 * Gets the truncated messages count.
+	 *
+	 * @return the truncated messages count
+	 */
+	public long getTruncatedMessagesCount() {
+		return _truncatedMessagesCount;
+	}
+
+	/**
+	 * Sets the count and the sample message of every error group by its
+	 * fingerprint.
+	 *
+	 * @param errorGroupCounts the count of every error group by fingerprint
+	 */
+	public void setErrorGroupCounts(
+		Map<Long, ErrorGroupCount> errorGroupCounts) {
+
+		_errorGroupCounts = errorGroupCounts;
+	}
+
+	/**
+	 * Sets the errors count.
+	 *
+	 * @param errorsCount the errors count
+	 */
+	public void setErrorsCount(long errorsCount) {
+		_errorsCount = errorsCount;
+	}
+
+	/**
+	 * Sets the log entries count.
+	 *
+	 * @param logEntriesCount the log entries count
+	 */
+	public void setLogEntriesCount(long logEntriesCount) {
+		_logEntriesCount = logEntriesCount;
+	}
+
+	/**
+	 * Sets the truncated messages count.
+	 *
+	 * @param truncatedMessagesCount the truncated messages count
+	 */
+	public void setTruncatedMessagesCount(long truncatedMessagesCount) {
+		_truncatedMessagesCount = truncatedMessagesCount;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(11);
+
+		sb.append("CountResponse{");
+		sb.append("_checkFailures=");
+		sb.append(_checkFailures);
+		sb.append(", _errorsCount=");
+		sb.append(_errorsCount);
+		sb.append(", _logEntriesCount=");
+		sb.append(_logEntriesCount);
+		sb.append(", _truncatedMessagesCount=");
+		sb.append(_truncatedMessagesCount);
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	private final Map<String, String> _checkFailures = new HashMap<>();
+	private Map<Long, ErrorGroupCount> _errorGroupCounts;
+	private long _errorsCount;
+	private long _logEntriesCount;
+	private long _truncatedMessagesCount;
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.http.JsonParserResponseHandler;
+
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+
+/**
+ * Extracts the <code>count</code> of a count response while it is being
+ * read.
+ *
+ * @author Ruben Pulido
+ */
+public class CountResponseHandler extends JsonParserResponseHandler<Long> {
+
+	@Override
+	protected Long parse(JsonParser jsonParser) {
+		int depth = 0;
+
+		while (jsonParser.hasNext()) {
+			JsonParser.Event event = jsonParser.next();
+
+			if ((event == JsonParser.Event.START_OBJECT) ||
+				(event == JsonParser.Event.START_ARRAY)) {
+
+				depth++;
+			}
+			else if ((event == JsonParser.Event.END_OBJECT) ||
+					 (event == JsonParser.Event.END_ARRAY)) {
+
+				depth--;
+			}
+			else if ((event == JsonParser.Event.KEY_NAME) && (depth == 1) &&
+					 "count".equals(jsonParser.getString())) {
+
+				jsonParser.next();
+
+				return jsonParser.getLong();
+			}
+		}
+
+		throw new JsonException("The response does not contain a count");
+	}
+
+}
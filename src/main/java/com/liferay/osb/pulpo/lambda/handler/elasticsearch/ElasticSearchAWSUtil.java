@@ -14,37 +14,39 @@
 
 package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceResponse;
-import com.amazonaws.ClientConfiguration;
 import com.amazonaws.DefaultRequest;
 import com.amazonaws.Request;
 import com.amazonaws.Response;
 import com.amazonaws.SDKGlobalConfiguration;
-import com.amazonaws.auth.AWS4Signer;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.http.AmazonHttpClient;
-import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.http.HttpResponseHandler;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.util.StringUtils;
-import com.liferay.osb.pulpo.lambda.handler.http.SimpleHttpErrorResponseHandler;
-import com.liferay.osb.pulpo.lambda.handler.http.StringResponseHandler;
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorFingerprinter;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroups;
+import com.liferay.osb.pulpo.lambda.handler.http.GzipUtil;
+import com.liferay.osb.pulpo.lambda.handler.http.JsonObjectResponseHandler;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonValue;
 
@@ -64,127 +66,726 @@ public class ElasticSearchAWSUtil {
 	public static long getCount(
 		String host, String query, LambdaLogger lambdaLogger) {
 
-		Request<Void> awsRequest = _createAwsRequest(
-			host, _COUNT_REQUEST_PATH, null, HttpMethodName.GET, query);
+		long count = _executeQuery(
+			host, QueryType.COUNT, query, new CountResponseHandler(),
+			lambdaLogger);
 
-		lambdaLogger.log(
-			"Executing AWS Request: " + awsRequest + "\n for query: " + query +
-				"\n");
+		lambdaLogger.log("Number of results: " + count + "\n");
 
-		Response<AmazonWebServiceResponse<String>> response =
-			_executeAwsRequest(awsRequest);
+		return count;
+	}
 
-		AmazonWebServiceResponse<String> awsResponse =
-			response.getAwsResponse();
+	/**
+	 * Executes a search query and returns the the number of hits per error
+	 * group. The hits are grouped by {@link ErrorGroups}.
+	 *
+	 * @param host the host
+	 * @param query the query
+	 * @param lambdaLogger lambda logger
+	 * @return the count and the sample message of every group by fingerprint
+	 */
+	public static Map<Long, ErrorGroupCount> getErrorGroupCounts(
+		String host, String query, 	int maxMessagePrefixLength,
+		LambdaLogger lambdaLogger) {
+
+		Map<Long, ErrorGroupCount> errorGroupCounts = _executeQuery(
+			host, QueryType.HITS, query,
+			new MessagePrefixCountResponseHandler(maxMessagePrefixLength),
+			lambdaLogger);
+
+		lambdaLogger.log("errorGroupCounts: " + errorGroupCounts + "\n");
+
+		return errorGroupCounts;
+	}
+
+	/**
+	 * Walks all the hits of a search query page by page with
+	 * <code>search_after</code> and returns the number of hits per error
+	 * group.
+	 *
+	 * Every page is folded into the running counts and discarded, so memory
+	 * is proportional to the number of error groups, not to the number of
+	 * hits. The hits are sorted by <code>@timestamp</code> and the tiebreaker
+	 * field, and the size of the query is used as the page size. The pages
+	 * are read until one is not full, as the total number of hits may be
+	 * capped. Only the first page tracks the exact total number of hits, so
+	 * that if the maximum number of pages or the maximum time is reached,
+	 * the hits which were not read are reported under a single entry.
+	 *
+	 * @param host the host
+	 * @param query the query
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 * @param tiebreakerField a field with doc values which breaks the ties of
+	 *        the hits with the same <code>@timestamp</code>, like
+	 *        <code>_doc</code>
+	 * @param maxPages the maximum number of pages
+	 * @param maxTimeMillis the maximum time spent requesting pages
+	 * @param lambdaLogger lambda logger
+	 * @return the count and the sample message of every group by fingerprint
+	 */
+	public static Map<Long, ErrorGroupCount> getErrorGroupCounts(
+		String host, String query, int maxMessagePrefixLength,
+		String tiebreakerField, int maxPages, long maxTimeMillis,
+		LambdaLogger lambdaLogger) {
+
+		JsonObject queryJsonObject = _readJsonObject(query);
+
+		int pageSize = queryJsonObject.getInt("size", _DEFAULT_PAGE_SIZE);
+
+		ErrorGroups errorGroups = new ErrorGroups(maxMessagePrefixLength);
+
+		long startTime = System.currentTimeMillis();
+
+		JsonArray searchAfterJsonArray = null;
+		int pages = 0;
+		long readHitsCount = 0;
+		long totalHitsCount = -1;
+
+		while (true) {
+			String pageQuery = _getPageQuery(
+				queryJsonObject, tiebreakerField, searchAfterJsonArray,
+				pages == 0);
 
-		String result = awsResponse.getResult();
+			MessagePrefixCountResponseHandler
+				messagePrefixCountResponseHandler =
+					new MessagePrefixCountResponseHandler(errorGroups);
+
+			_executeQuery(
+				host, QueryType.HITS_PAGE, pageQuery,
+				messagePrefixCountResponseHandler, lambdaLogger);
+
+			pages++;
+
+			int hitsCount = messagePrefixCountResponseHandler.getHitsCount();
+
+			readHitsCount += hitsCount;
+
+			if (totalHitsCount < 0) {
+				totalHitsCount =
+					messagePrefixCountResponseHandler.getTotalHitsCount();
+			}
+
+			searchAfterJsonArray =
+				messagePrefixCountResponseHandler.getLastSortValues();
+
+			if ((hitsCount < pageSize) || (searchAfterJsonArray == null)) {
+				break;
+			}
+
+			if (pages >= maxPages) {
+				lambdaLogger.log(
+					"Stopped reading errors after reaching the maximum " +
+						"number of pages: " + maxPages + "\n");
+
+				break;
+			}
+
+			if ((System.currentTimeMillis() - startTime) >= maxTimeMillis) {
+				lambdaLogger.log(
+					"Stopped reading errors after reaching the maximum " +
+						"time: " + maxTimeMillis + " ms\n");
+
+				break;
+			}
+		}
+
+		Map<Long, ErrorGroupCount> errorGroupCounts =
+			errorGroups.getCountByFingerprint();
+
+		if (totalHitsCount > readHitsCount) {
+			_addErrorGroupCount(
+				errorGroupCounts, _UNGROUPED_ERRORS_FINGERPRINT,
+				_UNGROUPED_ERRORS_KEY, totalHitsCount - readHitsCount);
+		}
 
 		lambdaLogger.log(
-			"Amazon Web Service Response result: \n" + result + "\n");
+			"Read " + readHitsCount + " errors in " + pages + " pages " +
+				"into " + errorGroups.size() + " groups (counts " +
+					"overestimated by at most " +
+						errorGroups.getMaxOverestimation() + "). " +
+							"errorGroupCounts: " + errorGroupCounts + "\n");
 
-		long count = _getCountFromResult(result);
+		return errorGroupCounts;
+	}
 
-		lambdaLogger.log("Number of results: " + count + "\n");
+	/**
+	 * Executes a search query with a filters aggregation and returns the
+	 * number of documents in every bucket of the aggregation.
+	 *
+	 * @param host the host
+	 * @param query the query
+	 * @param aggregationName the name of the filters aggregation
+	 * @param lambdaLogger lambda logger
+	 * @return the number of documents per bucket name
+	 */
+	public static Map<String, Long> getFiltersAggregationCounts(
+		String host, String query, String aggregationName,
+		LambdaLogger lambdaLogger) {
 
-		return count;
+		JsonObject searchResponse = _executeQuery(
+			host, QueryType.AGGREGATION, query, new JsonObjectResponseHandler(),
+			lambdaLogger);
+
+		Map<String, Long> countsByBucketName = getFiltersAggregationCounts(
+			searchResponse, aggregationName);
+
+		lambdaLogger.log("countsByBucketName: " + countsByBucketName + "\n");
+
+		return countsByBucketName;
 	}
 
 	/**
-	 * Executes a search query and returns the the number of hits per message
-	 * prefix.
+	 * Gets the number of documents in every bucket of the filters aggregation
+	 * of a search response.
+	 *
+	 * @param searchResponse the search response
+	 * @param aggregationName the name of the filters aggregation
+	 * @return the number of documents per bucket name
+	 */
+	public static Map<String, Long> getFiltersAggregationCounts(
+		JsonObject searchResponse, String aggregationName) {
+
+		_validateSearchResponse(searchResponse);
+
+		JsonObject aggregationsJsonObject = searchResponse.getJsonObject(
+			"aggregations");
+
+		JsonObject aggregationJsonObject =
+			aggregationsJsonObject.getJsonObject(aggregationName);
+
+		JsonObject bucketsJsonObject = aggregationJsonObject.getJsonObject(
+			"buckets");
+
+		Map<String, Long> countsByBucketName = new HashMap<>();
+
+		bucketsJsonObject.forEach(
+			(bucketName, bucketJsonValue) -> {
+				JsonObject bucketJsonObject = (JsonObject)bucketJsonValue;
+
+				JsonNumber docCountJsonNumber =
+					bucketJsonObject.getJsonNumber("doc_count");
+
+				countsByBucketName.put(
+					bucketName, docCountJsonNumber.longValue());
+			});
+
+		return countsByBucketName;
+	}
+
+	/**
+	 * Executes a search query with a terms aggregation on the error messages
+	 * and returns the number of errors per error group.
 	 *
 	 * @param host the host
 	 * @param query the query
+	 * @param aggregationName the name of the terms aggregation
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
 	 * @param lambdaLogger lambda logger
-	 * @return long the result of the request
+	 * @return the count and the sample message of every group by fingerprint
 	 */
-	public static Map<String, Long>  getErrorsCountByMessagePrefix(
-		String host, String query, 	int maxMessagePrefixLength,
+	public static Map<Long, ErrorGroupCount> getErrorsCountByTermsAggregation(
+		String host, String query, String aggregationName,
+		int maxMessagePrefixLength, LambdaLogger lambdaLogger) {
+
+		JsonObject searchResponse = _executeQuery(
+			host, QueryType.AGGREGATION, query, new JsonObjectResponseHandler(),
+			lambdaLogger);
+
+		Map<Long, ErrorGroupCount> errorGroupCounts =
+			getErrorsCountByTermsAggregation(
+				searchResponse, aggregationName, maxMessagePrefixLength);
+
+		lambdaLogger.log("errorGroupCounts: " + errorGroupCounts + "\n");
+
+		return errorGroupCounts;
+	}
+
+	/**
+	 * Gets the number of errors per error group from the terms aggregation of
+	 * a search response.
+	 *
+	 * Bucket keys with the same fingerprint are merged in the same
+	 * {@link ErrorGroups} group. Elasticsearch buckets the exact messages, so
+	 * only the most frequent ones up to the size of the aggregation are
+	 * fingerprinted: messages which only differ in an ID are usually one
+	 * error each and end up beyond the bucket limit. Those errors are
+	 * reported under a single entry, and the errors without a value for the
+	 * aggregated field, like messages longer than the
+	 * <code>ignore_above</code> of a keyword field, under another one which
+	 * can be grouped later with {@link #groupUngroupedErrors}.
+	 *
+	 * @param searchResponse the search response
+	 * @param aggregationName the name of the terms aggregation
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 * @return the count and the sample message of every group by fingerprint
+	 */
+	public static Map<Long, ErrorGroupCount> getErrorsCountByTermsAggregation(
+		JsonObject searchResponse, String aggregationName,
+		int maxMessagePrefixLength) {
+
+		long hitsCount = getHitsCount(searchResponse);
+
+		JsonObject aggregationJsonObject = _getAggregation(
+			searchResponse, aggregationName);
+
+		JsonArray bucketsJsonArray = JsonValue.EMPTY_JSON_ARRAY;
+		long otherErrorsCount = 0;
+
+		if (aggregationJsonObject != null) {
+			if (aggregationJsonObject.containsKey("buckets")) {
+				bucketsJsonArray = aggregationJsonObject.getJsonArray(
+					"buckets");
+			}
+
+			JsonNumber sumOtherDocCountJsonNumber =
+				aggregationJsonObject.getJsonNumber("sum_other_doc_count");
+
+			if (sumOtherDocCountJsonNumber != null) {
+				otherErrorsCount = sumOtherDocCountJsonNumber.longValue();
+			}
+		}
+
+		ErrorGroups errorGroups = new ErrorGroups(maxMessagePrefixLength);
+
+		long groupedErrorsCount = 0;
+
+		for (int i = 0; i < bucketsJsonArray.size(); i++) {
+			JsonObject bucketJsonObject = bucketsJsonArray.getJsonObject(i);
+
+			JsonNumber docCountJsonNumber = bucketJsonObject.getJsonNumber(
+				"doc_count");
+
+			long docCount = docCountJsonNumber.longValue();
+
+			errorGroups.add(bucketJsonObject.getString("key"), docCount);
+
+			groupedErrorsCount += docCount;
+		}
+
+		Map<Long, ErrorGroupCount> errorGroupCounts =
+			errorGroups.getCountByFingerprint();
+
+		if (otherErrorsCount > 0) {
+			_addErrorGroupCount(
+				errorGroupCounts, _OTHER_ERRORS_FINGERPRINT, _OTHER_ERRORS_KEY,
+				otherErrorsCount);
+		}
+
+		long ungroupedErrorsCount =
+			hitsCount - groupedErrorsCount - otherErrorsCount;
+
+		if (ungroupedErrorsCount > 0) {
+			_addErrorGroupCount(
+				errorGroupCounts, _UNGROUPED_ERRORS_FINGERPRINT,
+				_UNGROUPED_ERRORS_KEY, ungroupedErrorsCount);
+		}
+
+		return errorGroupCounts;
+	}
+
+	/**
+	 * Gets the number of hits of a search response.
+	 *
+	 * @param searchResponse the search response
+	 * @return the number of hits
+	 */
+	public static long getHitsCount(JsonObject searchResponse) {
+		_validateSearchResponse(searchResponse);
+
+		JsonObject hitsJsonObject = searchResponse.getJsonObject("hits");
+
+		JsonValue totalJsonValue = hitsJsonObject.get("total");
+
+		if (totalJsonValue instanceof JsonObject) {
+			JsonObject totalJsonObject = (JsonObject)totalJsonValue;
+
+			totalJsonValue = totalJsonObject.get("value");
+		}
+
+		JsonNumber jsonNumber = (JsonNumber)totalJsonValue;
+
+		return jsonNumber.longValue();
+	}
+
+	/**
+	 * Gets the number of hits per error group of a search response. The hits
+	 * are grouped by {@link ErrorGroups}.
+	 *
+	 * @param searchResponse the search response
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 * @return the count and the sample message of every group by fingerprint
+	 */
+	public static Map<Long, ErrorGroupCount> getErrorGroupCounts(
+		JsonObject searchResponse, int maxMessagePrefixLength) {
+
+		_validateSearchResponse(searchResponse);
+
+		JsonObject hitsJsonObject = searchResponse.getJsonObject("hits");
+
+		JsonArray hitsJsonArray = hitsJsonObject.getJsonArray("hits");
+
+		ErrorGroups errorGroups = new ErrorGroups(maxMessagePrefixLength);
+
+		if (hitsJsonArray != null) {
+			for (JsonValue hitJsonValue : hitsJsonArray) {
+				JsonObject hitJsonObject = (JsonObject)hitJsonValue;
+
+				JsonObject sourceJsonObject = hitJsonObject.getJsonObject(
+					"_source");
+
+				errorGroups.add(sourceJsonObject.getString("message"), 1);
+			}
+		}
+
+		return errorGroups.getCountByFingerprint();
+	}
+
+	/**
+	 * Gets the number of hits per error group of a response of a multi search
+	 * request. The hits were grouped by {@link ErrorGroups} when the response
+	 * was read.
+	 *
+	 * @param searchResponse the search response
+	 * @return the count and the sample message of every group by fingerprint
+	 */
+	public static Map<Long, ErrorGroupCount> getErrorGroupCounts(
+		SearchResponse searchResponse) {
+
+		_validateSearchResponse(searchResponse.getJsonObject());
+
+		ErrorGroups errorGroups = searchResponse.getErrorGroups();
+
+		if (errorGroups == null) {
+			return new HashMap<>();
+		}
+
+		return errorGroups.getCountByFingerprint();
+	}
+
+	/**
+	 * Groups by the fingerprint of their messages the errors which a terms
+	 * aggregation could not group because they have no value for the
+	 * aggregated field. Their hits are searched only if there are any, and
+	 * the ones beyond the size of the query are still reported under a single
+	 * entry.
+	 *
+	 * @param host the host
+	 * @param errorGroupCounts the number of errors per error group returned
+	 *        by {@link
+	 *        #getErrorsCountByTermsAggregation(JsonObject, String, int)}
+	 * @param query the search query of the errors without a value for the
+	 *        aggregated field
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 * @param lambdaLogger lambda logger
+	 * @return the count and the sample message of every group by fingerprint
+	 */
+	public static Map<Long, ErrorGroupCount> groupUngroupedErrors(
+		String host, Map<Long, ErrorGroupCount> errorGroupCounts, String query,
+		int maxMessagePrefixLength, LambdaLogger lambdaLogger) {
+
+		ErrorGroupCount ungroupedErrorGroupCount = errorGroupCounts.get(
+			_UNGROUPED_ERRORS_FINGERPRINT);
+
+		if (ungroupedErrorGroupCount == null) {
+			return errorGroupCounts;
+		}
+
+		MessagePrefixCountResponseHandler messagePrefixCountResponseHandler =
+			new MessagePrefixCountResponseHandler(maxMessagePrefixLength);
+
+		Map<Long, ErrorGroupCount> ungroupedErrorGroupCounts = _executeQuery(
+			host, QueryType.HITS, query, messagePrefixCountResponseHandler,
+			lambdaLogger);
+
+		Map<Long, ErrorGroupCount> groupedErrorGroupCounts = new HashMap<>(
+			errorGroupCounts);
+
+		groupedErrorGroupCounts.remove(_UNGROUPED_ERRORS_FINGERPRINT);
+
+		ungroupedErrorGroupCounts.forEach(
+			(fingerprint, errorGroupCount) -> _addErrorGroupCount(
+				groupedErrorGroupCounts, fingerprint,
+				errorGroupCount.getSampleMessage(),
+				errorGroupCount.getCount()));
+
+		long unreadErrorsCount =
+			ungroupedErrorGroupCount.getCount() -
+				messagePrefixCountResponseHandler.getHitsCount();
+
+		if (unreadErrorsCount > 0) {
+			_addErrorGroupCount(
+				groupedErrorGroupCounts, _UNGROUPED_ERRORS_FINGERPRINT,
+				_UNGROUPED_ERRORS_KEY, unreadErrorsCount);
+		}
+
+		lambdaLogger.log(
+			"Grouped " + messagePrefixCountResponseHandler.getHitsCount() +
+				" of " + ungroupedErrorGroupCount.getCount() + " errors " +
+					"without a value for the aggregated field\n");
+
+		return groupedErrorGroupCounts;
+	}
+
+	/**
+	 * Converts a count query into a search query which returns no hits, so
+	 * that it can be sent in a multi search request. The total number of hits
+	 * is tracked exactly, as Elasticsearch 7 only counts them up to 10000 by
+	 * default.
+	 *
+	 * @param countQuery the count query
+	 * @return the search query
+	 */
+	public static String getCountSearchQuery(String countQuery) {
+		JsonObject countQueryJsonObject = _readJsonObject(countQuery);
+
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		countQueryJsonObject.forEach(jsonObjectBuilder::add);
+
+		jsonObjectBuilder.add("size", 0);
+		jsonObjectBuilder.add("track_total_hits", true);
+
+		JsonObject searchQueryJsonObject = jsonObjectBuilder.build();
+
+		return searchQueryJsonObject.toString();
+	}
+
+	/**
+	 * Executes several search queries in a single multi search request and
+	 * returns the response of every query, in the same order as the queries.
+	 *
+	 * The responses are read while the body is being received, grouping the
+	 * messages of their hits. The response of a failed query contains an
+	 * error, which is thrown when its results are read, so that a failed
+	 * query does not prevent reading the results of the others.
+	 *
+	 * @param host the host
+	 * @param queries the search queries
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 *        of the hits
+	 * @param lambdaLogger lambda logger
+	 * @return the responses of the queries
+	 */
+	public static List<SearchResponse> multiSearch(
+		String host, List<String> queries, int maxMessagePrefixLength,
 		LambdaLogger lambdaLogger) {
 
+		StringBuilder sb = new StringBuilder();
+
+		for (String query : queries) {
+			JsonObject queryJsonObject = _readJsonObject(query);
+
+			sb.append("{}\n");
+			sb.append(queryJsonObject.toString());
+			sb.append("\n");
+		}
+
+		String content = sb.toString();
+
 		Request<Void> awsRequest = _createAwsRequest(
-			host, _SEARCH_REQUEST_PATH, null, HttpMethodName.GET, query);
+			host, QueryType.MULTI_SEARCH.getPath(),
+			QueryType.MULTI_SEARCH.getParameters(), HttpMethodName.POST,
+			content, _NDJSON_CONTENT_TYPE, lambdaLogger);
 
 		lambdaLogger.log(
-			"Executing AWS Request: " + awsRequest + "\n for query: " + query +
-				"\n");
+			"Executing AWS Request: " + awsRequest + "\n for queries: " +
+				content + "\n");
 
-		Response<AmazonWebServiceResponse<String>> response =
-			_executeAwsRequest(awsRequest);
+		ElasticSearchClient elasticSearchClient = _getElasticSearchClient(
+			awsRequest.getEndpoint());
 
-		AmazonWebServiceResponse<String> awsResponse =
+		Response<AmazonWebServiceResponse<List<SearchResponse>>> response =
+			elasticSearchClient.execute(
+				awsRequest,
+				new MultiSearchResponseHandler(maxMessagePrefixLength),
+				_deadlineMillis, lambdaLogger);
+
+		AmazonWebServiceResponse<List<SearchResponse>> awsResponse =
 			response.getAwsResponse();
 
-		String result = awsResponse.getResult();
+		List<SearchResponse> searchResponses = awsResponse.getResult();
 
 		lambdaLogger.log(
-			"Amazon Web Service Response result: \n" + result + "\n");
+			"Read " + searchResponses.size() + " multi search responses\n");
+
+		return searchResponses;
+	}
+
+	/**
+	 * Sets the region used to sign the requests to a host. Requests to hosts
+	 * without a region are signed for the region of the Lambda. A host has a
+	 * single region, so the region replaces the one set by a previous
+	 * invocation.
+	 *
+	 * @param host the host
+	 * @param region the region name
+	 */
+	public static void setRegion(String host, String region) {
+		_regionsByHost.put(host, region);
+	}
+
+	/**
+	 * Sets the time after which failed queries are not retried anymore. It is
+	 * set at the beginning of every invocation from the remaining time of the
+	 * Lambda.
+	 *
+	 * @param deadlineMillis the time in milliseconds since the epoch
+	 */
+	public static void setDeadline(long deadlineMillis) {
+		_deadlineMillis = deadlineMillis;
+	}
+
+	/**
+	 * Sets whether the bodies of the queries are sent gzipped. It is set from
+	 * the ES_GZIP_REQUESTS environment variable when the class is loaded.
+	 *
+	 * @param gzipRequests whether the bodies of the queries are gzipped
+	 */
+	public static void setGzipRequests(boolean gzipRequests) {
+		_gzipRequests = gzipRequests;
+	}
+
+	/**
+	 * Closes the pooled connections of the Elasticsearch clients shared by all
+	 * the queries executed in this container.
+	 */
+	public static void shutdown() {
+		_elasticSearchClients.forEach(
+			(authority, elasticSearchClient) ->
+				elasticSearchClient.shutdown());
+	}
+
+	private static void _addErrorGroupCount(
+		Map<Long, ErrorGroupCount> errorGroupCounts, long fingerprint,
+		String sampleMessage, long count) {
 
-		Map<String, Long> errorsCountByMessagePrefix =
-			_getErrorsCountByMessagePrefix(result, maxMessagePrefixLength);
+		// The sample message of a group already counted is kept
+
+		ErrorGroupCount errorGroupCount = errorGroupCounts.get(fingerprint);
+
+		if (errorGroupCount != null) {
+			sampleMessage = errorGroupCount.getSampleMessage();
+			count += errorGroupCount.getCount();
+		}
+
+		errorGroupCounts.put(
+			fingerprint, new ErrorGroupCount(sampleMessage, count));
+	}
+
+	private static <T> T _executeQuery(
+		String host, QueryType queryType, String query,
+		HttpResponseHandler<AmazonWebServiceResponse<T>> httpResponseHandler,
+		LambdaLogger lambdaLogger) {
+
+		Request<Void> awsRequest = _createAwsRequest(
+			host, queryType.getPath(), queryType.getParameters(),
+			HttpMethodName.GET, query, _JSON_CONTENT_TYPE, lambdaLogger);
 
 		lambdaLogger.log(
-			"errorsCountByMessagePrefix: " + errorsCountByMessagePrefix + "\n");
+			"Executing AWS Request: " + awsRequest + "\n for query: " + query +
+				"\n");
+
+		ElasticSearchClient elasticSearchClient = _getElasticSearchClient(
+			awsRequest.getEndpoint());
+
+		Response<AmazonWebServiceResponse<T>> response =
+			elasticSearchClient.execute(
+				awsRequest, httpResponseHandler, _deadlineMillis,
+				lambdaLogger);
 
-		return errorsCountByMessagePrefix;
+		AmazonWebServiceResponse<T> awsResponse = response.getAwsResponse();
+
+		return awsResponse.getResult();
 	}
 
-	private static long _getCountFromResult(String result) {
+	private static String _getPageQuery(
+		JsonObject queryJsonObject, String tiebreakerField,
+		JsonArray searchAfterJsonArray, boolean trackTotalHits) {
 
-		StringReader stringReader = new StringReader(result);
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
 
-		JsonReader jsonReader = Json.createReader(stringReader);
+		queryJsonObject.forEach(
+			(name, jsonValue) -> {
+				if (!name.equals("from") && !name.equals("search_after") &&
+					!name.equals("sort") &&
+					!name.equals("track_total_hits")) {
 
-		JsonObject responseJsonObject = jsonReader.readObject();
+					jsonObjectBuilder.add(name, jsonValue);
+				}
+			});
 
-		jsonReader.close();
+		jsonObjectBuilder.add("track_total_hits", trackTotalHits);
 
-		JsonNumber jsonNumber = responseJsonObject.getJsonNumber("count");
+		JsonArrayBuilder sortJsonArrayBuilder = Json.createArrayBuilder();
 
-		return jsonNumber.longValue();
+		sortJsonArrayBuilder.add(
+			Json.createObjectBuilder().add("@timestamp", "asc"));
+		sortJsonArrayBuilder.add(
+			Json.createObjectBuilder().add(tiebreakerField, "asc"));
+
+		jsonObjectBuilder.add("sort", sortJsonArrayBuilder);
+
+		if (searchAfterJsonArray != null) {
+			jsonObjectBuilder.add("search_after", searchAfterJsonArray);
+		}
+
+		JsonObject pageQueryJsonObject = jsonObjectBuilder.build();
+
+		return pageQueryJsonObject.toString();
 	}
 
-	private static Map<String, Long> _getErrorsCountByMessagePrefix(
-		String result, int maxMessagePrefixLength) {
+	private static JsonObject _getAggregation(
+		JsonObject searchResponse, String aggregationName) {
 
-		StringReader stringReader = new StringReader(result);
+		JsonObject aggregationsJsonObject = searchResponse.getJsonObject(
+			"aggregations");
+
+		if (aggregationsJsonObject == null) {
+			return null;
+		}
+
+		return aggregationsJsonObject.getJsonObject(aggregationName);
+	}
+
+	private static JsonObject _readJsonObject(String json) {
+		StringReader stringReader = new StringReader(json);
 
 		JsonReader jsonReader = Json.createReader(stringReader);
 
-		JsonObject responseJsonObject = jsonReader.readObject();
+		JsonObject jsonObject = jsonReader.readObject();
 
 		jsonReader.close();
 
-		JsonObject hitsJsonObject = responseJsonObject.getJsonObject("hits");
+		return jsonObject;
+	}
 
-		JsonArray hitsJsonArray = hitsJsonObject.getJsonArray("hits");
+	private static void _validateSearchResponse(JsonObject searchResponse) {
+		if (!searchResponse.containsKey("error")) {
+			return;
+		}
 
-		Stream<JsonValue> hitsStream = hitsJsonArray.stream();
+		AmazonServiceException ase = new AmazonServiceException(
+			"Multi search query failed");
 
-		Map<String, Long> errorsCountByMessagePrefix = hitsStream.map(hit -> {
-			JsonObject hitJsonObject = (JsonObject) hit;
+		JsonNumber statusJsonNumber = searchResponse.getJsonNumber("status");
 
-			JsonObject sourceJsonObject =
-				hitJsonObject.getJsonObject("_source");
+		if (statusJsonNumber != null) {
+			ase.setStatusCode(statusJsonNumber.intValue());
+		}
 
-			String message = sourceJsonObject.getString("message");
+		ase.setServiceName("es");
 
-			if (message.length() > maxMessagePrefixLength) {
-				message =
-					message.substring(0, maxMessagePrefixLength) + " (...)";
-			}
+		JsonValue errorJsonValue = searchResponse.get("error");
 
-			return message;
-		}).collect(
-			Collectors.groupingBy(Function.identity(), Collectors.counting())
-		);
+		ase.setErrorMessage(errorJsonValue.toString());
 
-		return errorsCountByMessagePrefix;
+		throw ase;
 	}
 
 	private static Request<Void> _createAwsRequest(
 		String host, String path, Map<String, List<String>> params,
-		HttpMethodName httpMethodName, String content) {
+		HttpMethodName httpMethodName, String content, String contentType,
+		LambdaLogger lambdaLogger) {
 
 		Request<Void> request = new DefaultRequest<>("es");
 
@@ -192,7 +793,7 @@ public class ElasticSearchAWSUtil {
 
 		Map<String, String> headers = new HashMap<>();
 
-		headers.put("Content-Type", "application/json");
+		headers.put("Content-Type", contentType);
 
 		request.setHeaders(headers);
 
@@ -204,46 +805,47 @@ public class ElasticSearchAWSUtil {
 			request.setParameters(params);
 		}
 
+		byte[] contentBytes = null;
+
 		if (content != null) {
-			InputStream contentInputStream = new ByteArrayInputStream(
-				content.getBytes());
+			contentBytes = content.getBytes(StandardCharsets.UTF_8);
 
-			request.setContent(contentInputStream);
-		}
+			if (_gzipRequests) {
+
+				// The compressed body is the one signed
 
-		AWS4Signer signer = new AWS4Signer();
+				contentBytes = GzipUtil.compress(contentBytes);
 
-		signer.setServiceName(request.getServiceName());
-		signer.setRegionName(_REGION);
+				request.addHeader("Content-Encoding", "gzip");
+			}
+
+			request.setContent(new ByteArrayInputStream(contentBytes));
+		}
 
-		DefaultAWSCredentialsProviderChain defaultAWSCredentialsProviderChain =
-			new DefaultAWSCredentialsProviderChain();
+		ElasticSearchRequestSigner elasticSearchRequestSigner =
+			_getElasticSearchRequestSigner(host);
 
-		signer.sign(
-			request, defaultAWSCredentialsProviderChain.getCredentials());
+		elasticSearchRequestSigner.sign(request, contentBytes, lambdaLogger);
 
 		return request;
 	}
 
-	private static Response<AmazonWebServiceResponse<String>>
-		_executeAwsRequest(Request<Void> request) {
+	private static ElasticSearchClient _getElasticSearchClient(URI endpoint) {
+		return _elasticSearchClients.computeIfAbsent(
+			endpoint.getAuthority(), authority -> new ElasticSearchClient());
+	}
 
-		ClientConfiguration config = new ClientConfiguration();
+	private static ElasticSearchRequestSigner _getElasticSearchRequestSigner(
+		String host) {
 
-		AmazonHttpClient amazonHttpClient = new AmazonHttpClient(config);
+		String region = _regionsByHost.getOrDefault(host, _REGION);
 
-		AmazonHttpClient.RequestExecutionBuilder builder =
-			amazonHttpClient.requestExecutionBuilder();
+		// Without a region, the signer takes it from the endpoint
 
-		return builder.executionContext(
-			new ExecutionContext(true)
-		).request(
-			request
-		).errorResponseHandler(
-			new SimpleHttpErrorResponseHandler()
-		).execute(
-			new StringResponseHandler()
-		);
+		return _elasticSearchRequestSigners.computeIfAbsent(
+			region,
+			key -> new ElasticSearchRequestSigner(
+				key.isEmpty() ? null : key));
 	}
 
 	private static void _validateInputRequest(
@@ -264,11 +866,45 @@ public class ElasticSearchAWSUtil {
 		}
 	}
 
-	private static final String _REGION = System.getenv(
-		SDKGlobalConfiguration.AWS_REGION_ENV_VAR);
+	private static final Map<String, ElasticSearchClient>
+		_elasticSearchClients = new ConcurrentHashMap<>();
+
+	static {
+		Runtime runtime = Runtime.getRuntime();
+
+		runtime.addShutdownHook(new Thread(ElasticSearchAWSUtil::shutdown));
+	}
+
+	private static final String _REGION = EnvironmentUtil.getString(
+		SDKGlobalConfiguration.AWS_REGION_ENV_VAR, "");
+
+	private static final Map<String, ElasticSearchRequestSigner>
+		_elasticSearchRequestSigners = new ConcurrentHashMap<>();
+	private static final Map<String, String> _regionsByHost =
+		new ConcurrentHashMap<>();
+
+	private static final int _DEFAULT_PAGE_SIZE = 10;
+
+	private static final String _JSON_CONTENT_TYPE = "application/json";
+
+	private static final String _NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+	private static final String _OTHER_ERRORS_KEY =
+		"(errors with less frequent messages)";
+
+	private static final long _OTHER_ERRORS_FINGERPRINT =
+		ErrorFingerprinter.getFingerprint(
+			_OTHER_ERRORS_KEY, Integer.MAX_VALUE);
+
+	private static final String _UNGROUPED_ERRORS_KEY =
+		"(errors not grouped by message)";
 
-	private static final String _COUNT_REQUEST_PATH = "_count";
+	private static final long _UNGROUPED_ERRORS_FINGERPRINT =
+		ErrorFingerprinter.getFingerprint(
+			_UNGROUPED_ERRORS_KEY, Integer.MAX_VALUE);
 
-	private static final String _SEARCH_REQUEST_PATH = "_search";
+	private static volatile long _deadlineMillis = Long.MAX_VALUE;
+	private static volatile boolean _gzipRequests = EnvironmentUtil.getBoolean(
+		"ES_GZIP_REQUESTS", false);
 
 }
\ No newline at end of file
@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.http.AmazonHttpClient;
+import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.http.HttpResponseHandler;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.internal.AmazonWebServiceRequestAdapter;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.http.SimpleHttpErrorResponseHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client used to execute requests against Elasticsearch.
+ *
+ * It wraps a single {@link AmazonHttpClient} whose pool of keep-alive
+ * connections is meant to live as long as the Lambda container, so that
+ * consecutive queries and warm invocations reuse the same connections instead
+ * of paying for a new DNS lookup and TLS handshake every time.
+ *
+ * The pool can be tuned with the following environment variables:
+ *
+ * - ES_MAX_CONNECTIONS: maximum number of pooled connections.
+ * - ES_CONNECTION_MAX_IDLE_MILLIS: idle time after which a pooled connection
+ *   is discarded.
+ * - ES_CONNECTION_TTL: maximum time to live of a pooled connection (-1 means
+ *   no limit).
+ * - ES_TCP_KEEP_ALIVE: whether TCP keep-alive is enabled.
+ * - ES_GZIP_RESPONSES: whether gzip compressed responses are accepted. They
+ *   are decompressed while they are being read.
+ * - ES_CONNECTION_TIMEOUT_MILLIS: timeout to establish a connection.
+ * - ES_SOCKET_TIMEOUT_MILLIS: timeout waiting for data on an established
+ *   connection.
+ *
+ * A request with a deadline is aborted if it has not finished by then, and
+ * failed requests are retried following an {@link ElasticSearchRetryPolicy}
+ * as long as the retry can be done before the deadline. Every host has
+ * a {@link CircuitBreaker} that rejects requests while the host keeps failing
+ * (ES_CIRCUIT_BREAKER_FAILURE_THRESHOLD consecutive failures open it for
+ * ES_CIRCUIT_BREAKER_OPEN_MILLIS).
+ *
+ * @author Ruben Pulido
+ */
+public class ElasticSearchClient {
+
+	/**
+	 * Creates the client configuration from the environment variables.
+	 *
+	 * @return the client configuration
+	 */
+	public static ClientConfiguration createClientConfiguration() {
+		ClientConfiguration clientConfiguration = new ClientConfiguration();
+
+		clientConfiguration.setMaxConnections(
+			EnvironmentUtil.getInt(
+				"ES_MAX_CONNECTIONS", _DEFAULT_MAX_CONNECTIONS));
+		clientConfiguration.setConnectionMaxIdleMillis(
+			EnvironmentUtil.getLong(
+				"ES_CONNECTION_MAX_IDLE_MILLIS",
+				_DEFAULT_CONNECTION_MAX_IDLE_MILLIS));
+		clientConfiguration.setConnectionTTL(
+			EnvironmentUtil.getLong(
+				"ES_CONNECTION_TTL", _DEFAULT_CONNECTION_TTL));
+		clientConfiguration.setUseTcpKeepAlive(
+			EnvironmentUtil.getBoolean("ES_TCP_KEEP_ALIVE", true));
+		clientConfiguration.setUseGzip(
+			EnvironmentUtil.getBoolean("ES_GZIP_RESPONSES", true));
+		clientConfiguration.setConnectionTimeout(
+			EnvironmentUtil.getInt(
+				"ES_CONNECTION_TIMEOUT_MILLIS",
+				_DEFAULT_CONNECTION_TIMEOUT_MILLIS));
+		clientConfiguration.setSocketTimeout(
+			EnvironmentUtil.getInt(
+				"ES_SOCKET_TIMEOUT_MILLIS", _DEFAULT_SOCKET_TIMEOUT_MILLIS));
+
+		// Retries are done by this client, which knows the deadline
+
+		clientConfiguration.setRetryPolicy(
+			PredefinedRetryPolicies.NO_RETRY_POLICY);
+
+		return clientConfiguration;
+	}
+
+	/**
+	 * Creates a client configured from the environment variables.
+	 */
+	public ElasticSearchClient() {
+		this(createClientConfiguration());
+	}
+
+	/**
+	 * Creates a client with the given configuration.
+	 *
+	 * @param clientConfiguration the client configuration
+	 */
+	public ElasticSearchClient(ClientConfiguration clientConfiguration) {
+		this(
+			clientConfiguration, new ElasticSearchRetryPolicy(),
+			EnvironmentUtil.getInt(
+				"ES_CIRCUIT_BREAKER_FAILURE_THRESHOLD",
+				_DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD),
+			EnvironmentUtil.getLong(
+				"ES_CIRCUIT_BREAKER_OPEN_MILLIS",
+				_DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS));
+	}
+
+	/**
+	 * Creates a client.
+	 *
+	 * @param clientConfiguration the client configuration
+	 * @param elasticSearchRetryPolicy the policy to retry failed requests
+	 * @param circuitBreakerFailureThreshold the number of consecutive failures
+	 *        that opens the circuit of a host
+	 * @param circuitBreakerOpenMillis the time the circuit of a host stays
+	 *        open
+	 */
+	public ElasticSearchClient(
+		ClientConfiguration clientConfiguration,
+		ElasticSearchRetryPolicy elasticSearchRetryPolicy,
+		int circuitBreakerFailureThreshold, long circuitBreakerOpenMillis) {
+
+		_amazonHttpClient = new AmazonHttpClient(clientConfiguration);
+		_elasticSearchRetryPolicy = elasticSearchRetryPolicy;
+		_circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+		_circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+	}
+
+	/**
+	 * Executes a signed request using the pooled connections, without a
+	 * deadline for its retries.
+	 *
+	 * @param request the request
+	 * @param httpResponseHandler the handler of successful responses
+	 * @return the response
+	 */
+	public <T> Response<AmazonWebServiceResponse<T>> execute(
+		Request<Void> request,
+		HttpResponseHandler<AmazonWebServiceResponse<T>> httpResponseHandler) {
+
+		return execute(
+			request, httpResponseHandler, Long.MAX_VALUE, message -> {
+			});
+	}
+
+	/**
+	 * Executes a signed request using the pooled connections, retrying it
+	 * while there is time left before the deadline. Every attempt is aborted
+	 * if it has not finished by the deadline.
+	 *
+	 * @param request the request
+	 * @param httpResponseHandler the handler of successful responses
+	 * @param deadlineMillis the time, in milliseconds since the epoch, after
+	 *        which the request is aborted and not retried anymore
+	 * @param lambdaLogger lambda logger
+	 * @return the response
+	 */
+	public <T> Response<AmazonWebServiceResponse<T>> execute(
+		Request<Void> request,
+		HttpResponseHandler<AmazonWebServiceResponse<T>> httpResponseHandler,
+		long deadlineMillis, LambdaLogger lambdaLogger) {
+
+		if (_shutdown) {
+			throw new IllegalStateException(
+				"Elasticsearch client has been shut down");
+		}
+
+		if (deadlineMillis <= System.currentTimeMillis()) {
+			throw new ClientExecutionTimeoutException(
+				"Elasticsearch request not sent, its deadline has passed");
+		}
+
+		URI endpoint = request.getEndpoint();
+
+		String host = endpoint.getAuthority();
+
+		CircuitBreaker circuitBreaker = getCircuitBreaker(host);
+
+		for (int retry = 0;; retry++) {
+			if (!circuitBreaker.allowRequest()) {
+				throw new SdkClientException(
+					"Circuit breaker is open for Elasticsearch host " + host);
+			}
+
+			try {
+				Response<AmazonWebServiceResponse<T>> response = _execute(
+					request, httpResponseHandler, deadlineMillis);
+
+				circuitBreaker.recordSuccess();
+
+				return response;
+			}
+			catch (SdkClientException sce) {
+				if (_isAbortedAtDeadline(sce, deadlineMillis)) {
+					circuitBreaker.recordFailure();
+
+					lambdaLogger.log(
+						"Elasticsearch request aborted at the deadline\n");
+
+					if (sce instanceof ClientExecutionTimeoutException) {
+						throw sce;
+					}
+
+					ClientExecutionTimeoutException cete =
+						new ClientExecutionTimeoutException(
+							"Elasticsearch request aborted at the deadline");
+
+					cete.initCause(sce);
+
+					throw cete;
+				}
+
+				if (!_elasticSearchRetryPolicy.isRetryable(sce)) {
+
+					// The host answered, so it is not overloaded
+
+					circuitBreaker.recordSuccess();
+
+					throw sce;
+				}
+
+				circuitBreaker.recordFailure();
+
+				if (retry >= _elasticSearchRetryPolicy.getMaxRetries()) {
+					throw sce;
+				}
+
+				long delayMillis = _elasticSearchRetryPolicy.getDelayMillis(
+					retry, sce);
+
+				if ((System.currentTimeMillis() + delayMillis) >=
+						deadlineMillis) {
+
+					lambdaLogger.log(
+						"Not retrying Elasticsearch request, the deadline " +
+							"is too close\n");
+
+					throw sce;
+				}
+
+				lambdaLogger.log(
+					String.format(
+						"Elasticsearch request failed (%s), retry %d in %d " +
+							"ms\n",
+						sce.getMessage(), retry + 1, delayMillis));
+
+				_sleep(delayMillis, sce);
+			}
+		}
+	}
+
+	/**
+	 * Returns the circuit breaker of a host, creating it the first time.
+	 *
+	 * @param host the host and port of the Elasticsearch endpoint
+	 * @return the circuit breaker
+	 */
+	public CircuitBreaker getCircuitBreaker(String host) {
+		return _circuitBreakers.computeIfAbsent(
+			host,
+			key -> new CircuitBreaker(
+				_circuitBreakerFailureThreshold, _circuitBreakerOpenMillis));
+	}
+
+	/**
+	 * Returns whether the client has been shut down.
+	 *
+	 * @return <code>true</code> if the client has been shut down
+	 */
+	public boolean isShutdown() {
+		return _shutdown;
+	}
+
+	/**
+	 * Closes all the pooled connections. The client can not be used after
+	 * calling this method.
+	 */
+	public synchronized void shutdown() {
+		if (_shutdown) {
+			return;
+		}
+
+		_shutdown = true;
+
+		_amazonHttpClient.shutdown();
+	}
+
+	private <T> Response<AmazonWebServiceResponse<T>> _execute(
+		Request<Void> request,
+		HttpResponseHandler<AmazonWebServiceResponse<T>> httpResponseHandler,
+		long deadlineMillis) {
+
+		InputStream inputStream = request.getContent();
+
+		if ((inputStream != null) && inputStream.markSupported()) {
+			try {
+				inputStream.reset();
+			}
+			catch (IOException ioe) {
+				throw new SdkClientException(ioe);
+			}
+		}
+
+		AmazonWebServiceRequest amazonWebServiceRequest =
+			new AmazonWebServiceRequest() {
+			};
+
+		if (deadlineMillis != Long.MAX_VALUE) {
+
+			// The SDK buffers the whole response when there is a client
+			// execution timeout, unless the response handler closes the
+			// connection itself, like JsonParserResponseHandler does
+
+			long timeoutMillis = deadlineMillis - System.currentTimeMillis();
+
+			amazonWebServiceRequest.setSdkClientExecutionTimeout(
+				(int)Math.max(Math.min(timeoutMillis, Integer.MAX_VALUE), 1));
+		}
+
+		AmazonHttpClient.RequestExecutionBuilder builder =
+			_amazonHttpClient.requestExecutionBuilder();
+
+		return builder.executionContext(
+			new ExecutionContext(true)
+		).request(
+			request
+		).requestConfig(
+			new AmazonWebServiceRequestAdapter(amazonWebServiceRequest)
+		).errorResponseHandler(
+			new SimpleHttpErrorResponseHandler()
+		).execute(
+			httpResponseHandler
+		);
+	}
+
+	private boolean _isAbortedAtDeadline(
+		SdkClientException sce, long deadlineMillis) {
+
+		// The SDK only reports the requests aborted while waiting for the
+		// connection or the response as timed out, not the ones aborted while
+		// their response is being read
+
+		if (sce instanceof ClientExecutionTimeoutException) {
+			return true;
+		}
+
+		if ((sce instanceof AmazonServiceException) ||
+			(System.currentTimeMillis() < deadlineMillis)) {
+
+			return false;
+		}
+
+		return true;
+	}
+
+	private void _sleep(long delayMillis, SdkClientException sce) {
+		try {
+			Thread.sleep(delayMillis);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+
+			throw sce;
+		}
+	}
+
+	private static final int _DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+
+	private static final long _DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS = 30 * 1000;
+
+	private static final long _DEFAULT_CONNECTION_MAX_IDLE_MILLIS = 60 * 1000;
+
+	private static final int _DEFAULT_CONNECTION_TIMEOUT_MILLIS = 2 * 1000;
+
+	private static final long _DEFAULT_CONNECTION_TTL = -1;
+
+	private static final int _DEFAULT_MAX_CONNECTIONS = 10;
+
+	private static final int _DEFAULT_SOCKET_TIMEOUT_MILLIS = 10 * 1000;
+
+	private final AmazonHttpClient _amazonHttpClient;
+	private final int _circuitBreakerFailureThreshold;
+	private final long _circuitBreakerOpenMillis;
+	private final Map<String, CircuitBreaker> _circuitBreakers =
+		new ConcurrentHashMap<>();
+	private final ElasticSearchRetryPolicy _elasticSearchRetryPolicy;
+	private volatile boolean _shutdown;
+
+}
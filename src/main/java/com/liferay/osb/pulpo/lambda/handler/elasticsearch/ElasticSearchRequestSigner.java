@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.Request;
+import com.amazonaws.SignableRequest;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.util.BinaryUtils;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+
+/**
+ * Signs Elasticsearch requests with AWS Signature Version 4.
+ *
+ * A single instance is meant to be reused across queries and warm
+ * invocations:
+ *
+ * - The resolved credentials are cached, so the credentials provider chain
+ *   is not walked on every query. The credentials in the environment
+ *   variables of the Lambda do not change while the container lives, so
+ *   they are only resolved again every ES_CREDENTIALS_REFRESH_MILLIS
+ *   (5 minutes by default).
+ * - The same {@link AWS4Signer} is reused, which keeps the derived
+ *   per-day/region/service signing key cached for the cached credentials.
+ * - The body of a request is hashed only once, even if the request is signed
+ *   again.
+ *
+ * @author Ruben Pulido
+ */
+public class ElasticSearchRequestSigner {
+
+	/**
+	 * Creates a signer for the given region using the default credentials
+	 * provider chain.
+	 *
+	 * @param regionName the region name
+	 */
+	public ElasticSearchRequestSigner(String regionName) {
+		this(
+			new DefaultAWSCredentialsProviderChain(), regionName,
+			EnvironmentUtil.getLong(
+				"ES_CREDENTIALS_REFRESH_MILLIS",
+				_DEFAULT_CREDENTIALS_REFRESH_MILLIS));
+	}
+
+	/**
+	 * Creates a signer.
+	 *
+	 * @param awsCredentialsProvider the credentials provider
+	 * @param regionName the region name
+	 * @param credentialsRefreshMillis the time the resolved credentials are
+	 *        cached
+	 */
+	public ElasticSearchRequestSigner(
+		AWSCredentialsProvider awsCredentialsProvider, String regionName,
+		long credentialsRefreshMillis) {
+
+		_awsCredentialsProvider = awsCredentialsProvider;
+		_credentialsRefreshMillis = credentialsRefreshMillis;
+
+		_aws4Signer = new ContentHashCachingAWS4Signer();
+
+		_aws4Signer.setServiceName(_SERVICE_NAME);
+		_aws4Signer.setRegionName(regionName);
+	}
+
+	/**
+	 * Discards the cached credentials, so that they are resolved again the
+	 * next time a request is signed.
+	 */
+	public void invalidateCredentials() {
+		_cachedCredentials = null;
+	}
+
+	/**
+	 * Signs a request and logs the time spent signing it.
+	 *
+	 * @param request the request
+	 * @param content the content of the request, or <code>null</code> if it
+	 *        has no content
+	 * @param lambdaLogger lambda logger
+	 */
+	public void sign(
+		Request<?> request, byte[] content, LambdaLogger lambdaLogger) {
+
+		long startTime = System.nanoTime();
+
+		if (request.getHandlerContext(_CONTENT_SHA256) == null) {
+			byte[] bytes = (content == null) ? new byte[0] : content;
+
+			request.addHandlerContext(
+				_CONTENT_SHA256,
+				BinaryUtils.toHex(_aws4Signer.hash(bytes)));
+		}
+
+		_aws4Signer.sign(request, _getCredentials());
+
+		long signingTime = System.nanoTime() - startTime;
+
+		lambdaLogger.log(
+			String.format(
+				"Request signed in %.3f ms\n", signingTime / 1000000.0));
+	}
+
+	private AWSCredentials _getCredentials() {
+		CachedCredentials cachedCredentials = _cachedCredentials;
+
+		long now = System.currentTimeMillis();
+
+		if ((cachedCredentials == null) ||
+			(now >= cachedCredentials._refreshTime)) {
+
+			AWSCredentials awsCredentials =
+				_awsCredentialsProvider.getCredentials();
+
+			cachedCredentials = new CachedCredentials(
+				awsCredentials, now + _credentialsRefreshMillis);
+
+			_cachedCredentials = cachedCredentials;
+		}
+
+		return cachedCredentials._awsCredentials;
+	}
+
+	private static final HandlerContextKey<String> _CONTENT_SHA256 =
+		new HandlerContextKey<>("ContentSha256");
+
+	private static final long _DEFAULT_CREDENTIALS_REFRESH_MILLIS =
+		5 * 60 * 1000;
+
+	private static final String _SERVICE_NAME = "es";
+
+	private final AWS4Signer _aws4Signer;
+	private final AWSCredentialsProvider _awsCredentialsProvider;
+	private volatile CachedCredentials _cachedCredentials;
+	private final long _credentialsRefreshMillis;
+
+	private static class CachedCredentials {
+
+		private CachedCredentials(
+			AWSCredentials awsCredentials, long refreshTime) {
+
+			_awsCredentials = awsCredentials;
+			_refreshTime = refreshTime;
+		}
+
+		private final AWSCredentials _awsCredentials;
+		private final long _refreshTime;
+
+	}
+
+	private static class ContentHashCachingAWS4Signer extends AWS4Signer {
+
+		@Override
+		protected String calculateContentHash(SignableRequest<?> request) {
+			if (request instanceof Request) {
+				Request<?> handlerContextRequest = (Request<?>)request;
+
+				String contentSha256 = handlerContextRequest.getHandlerContext(
+					_CONTENT_SHA256);
+
+				if (contentSha256 != null) {
+					return contentSha256;
+				}
+			}
+
+			return super.calculateContentHash(request);
+		}
+
+	}
+
+}
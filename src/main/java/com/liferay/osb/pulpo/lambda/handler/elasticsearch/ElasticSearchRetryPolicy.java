@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed Elasticsearch requests are retried and how long to
+ * wait before each retry.
+ *
+ * Requests rejected with 429, 502, 503 or 504 and requests that failed with
+ * an I/O error (like a connect or socket timeout) are retried. The wait uses
+ * exponential backoff with full jitter, unless the response carries a
+ * Retry-After header. The wait of a Retry-After header is not capped, as the
+ * client does not retry a request whose wait ends after its deadline.
+ *
+ * The policy can be tuned with the following environment variables:
+ *
+ * - ES_MAX_RETRIES: maximum number of retries of a request.
+ * - ES_RETRY_BASE_DELAY_MILLIS: upper bound of the wait before the first
+ *   retry. It doubles on every retry.
+ * - ES_RETRY_MAX_DELAY_MILLIS: maximum wait of the exponential backoff.
+ *
+ * @author Ruben Pulido
+ */
+public class ElasticSearchRetryPolicy {
+
+	/**
+	 * Creates a policy configured from the environment variables.
+	 */
+	public ElasticSearchRetryPolicy() {
+		this(
+			EnvironmentUtil.getInt("ES_MAX_RETRIES", _DEFAULT_MAX_RETRIES),
+			EnvironmentUtil.getLong(
+				"ES_RETRY_BASE_DELAY_MILLIS", _DEFAULT_BASE_DELAY_MILLIS),
+			EnvironmentUtil.getLong(
+				"ES_RETRY_MAX_DELAY_MILLIS", _DEFAULT_MAX_DELAY_MILLIS));
+	}
+
+	/**
+	 * Creates a policy.
+	 *
+	 * @param maxRetries the maximum number of retries of a request
+	 * @param baseDelayMillis the upper bound of the wait before the first
+	 *        retry
+	 * @param maxDelayMillis the maximum wait of the exponential backoff
+	 */
+	public ElasticSearchRetryPolicy(
+		int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+
+		_maxRetries = maxRetries;
+		_baseDelayMillis = baseDelayMillis;
+		_maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Returns the time to wait before retrying a request.
+	 *
+	 * @param retry the number of the retry, starting at 0
+	 * @param exception the exception thrown by the failed attempt
+	 * @return the time to wait in milliseconds
+	 */
+	public long getDelayMillis(int retry, SdkClientException exception) {
+		long retryAfterMillis = _getRetryAfterMillis(exception);
+
+		if (retryAfterMillis >= 0) {
+			return retryAfterMillis;
+		}
+
+		long delayMillis = _maxDelayMillis;
+
+		if (retry < 31) {
+			delayMillis = Math.min(_baseDelayMillis << retry, _maxDelayMillis);
+		}
+
+		return ThreadLocalRandom.current().nextLong(delayMillis + 1);
+	}
+
+	/**
+	 * Returns the maximum number of retries of a request.
+	 *
+	 * @return the maximum number of retries
+	 */
+	public int getMaxRetries() {
+		return _maxRetries;
+	}
+
+	/**
+	 * Returns whether a request that failed with the given exception can be
+	 * retried.
+	 *
+	 * @param exception the exception thrown by the failed attempt
+	 * @return <code>true</code> if the request can be retried
+	 */
+	public boolean isRetryable(SdkClientException exception) {
+		if (exception instanceof AmazonServiceException) {
+			AmazonServiceException ase = (AmazonServiceException)exception;
+
+			int statusCode = ase.getStatusCode();
+
+			if ((statusCode == 429) || (statusCode == 502) ||
+				(statusCode == 503) || (statusCode == 504)) {
+
+				return true;
+			}
+
+			return false;
+		}
+
+		return exception.getCause() instanceof IOException;
+	}
+
+	private long _getRetryAfterMillis(SdkClientException exception) {
+		if (!(exception instanceof AmazonServiceException)) {
+			return -1;
+		}
+
+		AmazonServiceException ase = (AmazonServiceException)exception;
+
+		Map<String, String> httpHeaders = ase.getHttpHeaders();
+
+		if (httpHeaders == null) {
+			return -1;
+		}
+
+		for (Map.Entry<String, String> entry : httpHeaders.entrySet()) {
+			if ("Retry-After".equalsIgnoreCase(entry.getKey())) {
+				try {
+					return Long.parseLong(entry.getValue().trim()) * 1000;
+				}
+				catch (NumberFormatException nfe) {
+					return -1;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	private static final long _DEFAULT_BASE_DELAY_MILLIS = 100;
+
+	private static final long _DEFAULT_MAX_DELAY_MILLIS = 2000;
+
+	private static final int _DEFAULT_MAX_RETRIES = 3;
+
+	private final long _baseDelayMillis;
+	private final long _maxDelayMillis;
+	private final int _maxRetries;
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+/**
+ * The ways the errors can be grouped by message.
+ *
+ * @author Ruben Pulido
+ */
+public enum ErrorGroupingMode {
+
+	/**
+	 * The errors are grouped in Elasticsearch with a terms aggregation on a
+	 * keyword field of the message, so that only the groups and their exact
+	 * counts are returned.
+	 */
+	AGGREGATION,
+
+	/**
+	 * The error hits are retrieved and grouped by message prefix in the
+	 * Lambda. Used as a fallback for clusters without a usable keyword field.
+	 */
+	HITS,
+
+	/**
+	 * All the error hits are read page by page with search_after and grouped
+	 * by message prefix in the Lambda, so that errors are not undercounted
+	 * when there are more than the size of a single search.
+	 */
+	SEARCH_AFTER;
+
+	/**
+	 * Gets the error grouping mode with the given name, ignoring case.
+	 *
+	 * @param name the name of the error grouping mode
+	 * @param defaultErrorGroupingMode the error grouping mode returned if the
+	 *        name is empty or unknown
+	 * @return the error grouping mode
+	 */
+	public static ErrorGroupingMode parse(
+		String name, ErrorGroupingMode defaultErrorGroupingMode) {
+
+		if (name == null) {
+			return defaultErrorGroupingMode;
+		}
+
+		for (ErrorGroupingMode errorGroupingMode : values()) {
+			if (errorGroupingMode.name().equalsIgnoreCase(name.trim())) {
+				return errorGroupingMode;
+			}
+		}
+
+		return defaultErrorGroupingMode;
+	}
+
+}
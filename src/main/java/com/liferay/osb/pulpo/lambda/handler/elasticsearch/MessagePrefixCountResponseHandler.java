@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroups;
+import com.liferay.osb.pulpo.lambda.handler.http.JsonParserResponseHandler;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.stream.JsonParser;
+
+/**
+ * Groups the hits of a search response by the fingerprint of their
+ * <code>_source.message</code> while the response is being read, so that
+ * only one message is held in memory at a time. The result has the count and
+ * the sample message of every group by its fingerprint.
+ *
+ * The counts can be folded into existing {@link ErrorGroups}, so that the
+ * pages of a paginated search can be grouped without keeping any page in
+ * memory. The number of hits, the total number of hits and the sort values
+ * of the last hit of the response are available after it has been handled.
+ *
+ * @author Ruben Pulido
+ */
+public class MessagePrefixCountResponseHandler
+	extends JsonParserResponseHandler<Map<Long, ErrorGroupCount>> {
+
+	/**
+	 * Creates a handler.
+	 *
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 */
+	public MessagePrefixCountResponseHandler(int maxMessagePrefixLength) {
+		this(new ErrorGroups(maxMessagePrefixLength));
+	}
+
+	/**
+	 * Creates a handler which adds the counts to the given groups.
+	 *
+	 * @param errorGroups the groups the counts are added to
+	 */
+	public MessagePrefixCountResponseHandler(ErrorGroups errorGroups) {
+		_errorGroups = errorGroups;
+	}
+
+	/**
+	 * Gets the number of hits in the handled response.
+	 *
+	 * @return the number of hits
+	 */
+	public int getHitsCount() {
+		return _hitsCount;
+	}
+
+	/**
+	 * Gets the sort values of the last hit in the handled response.
+	 *
+	 * @return the sort values, or <code>null</code> if the hits have no sort
+	 *         values
+	 */
+	public JsonArray getLastSortValues() {
+		return _lastSortValues;
+	}
+
+	/**
+	 * Gets the total number of hits matching the query, or <code>-1</code> if
+	 * the handled response does not include it.
+	 *
+	 * @return the total number of hits
+	 */
+	public long getTotalHitsCount() {
+		return _totalHitsCount;
+	}
+
+	@Override
+	protected Map<Long, ErrorGroupCount> parse(JsonParser jsonParser) {
+		Deque<String> path = new ArrayDeque<>();
+
+		JsonArrayBuilder sortValuesJsonArrayBuilder = null;
+
+		String keyName = null;
+
+		while (jsonParser.hasNext()) {
+			JsonParser.Event event = jsonParser.next();
+
+			switch (event) {
+				case KEY_NAME:
+					keyName = jsonParser.getString();
+
+					break;
+				case START_ARRAY:
+					if ("sort".equals(keyName) && _isPath(path, _HIT_PATH)) {
+						sortValuesJsonArrayBuilder = Json.createArrayBuilder();
+					}
+
+					path.push((keyName == null) ? "" : keyName);
+
+					keyName = null;
+
+					break;
+				case START_OBJECT:
+					if (_isPath(path, _HITS_PATH)) {
+						_hitsCount++;
+					}
+
+					path.push((keyName == null) ? "" : keyName);
+
+					keyName = null;
+
+					break;
+				case END_ARRAY:
+					path.pop();
+
+					if ((sortValuesJsonArrayBuilder != null) &&
+						_isPath(path, _HIT_PATH)) {
+
+						_lastSortValues = sortValuesJsonArrayBuilder.build();
+
+						sortValuesJsonArrayBuilder = null;
+					}
+
+					keyName = null;
+
+					break;
+				case END_OBJECT:
+					path.pop();
+
+					keyName = null;
+
+					break;
+				case VALUE_NUMBER:
+					if (sortValuesJsonArrayBuilder != null) {
+						sortValuesJsonArrayBuilder.add(
+							jsonParser.getBigDecimal());
+					}
+					else if (("total".equals(keyName) &&
+							  _isPath(path, _HITS_OBJECT_PATH)) ||
+							 ("value".equals(keyName) &&
+							  _isPath(path, _TOTAL_PATH))) {
+
+						_totalHitsCount = jsonParser.getLong();
+					}
+
+					keyName = null;
+
+					break;
+				case VALUE_STRING:
+					if (sortValuesJsonArrayBuilder != null) {
+						sortValuesJsonArrayBuilder.add(jsonParser.getString());
+					}
+					else if ("message".equals(keyName) &&
+							 _isPath(path, _SOURCE_PATH)) {
+
+						_errorGroups.add(jsonParser.getString(), 1);
+					}
+
+					keyName = null;
+
+					break;
+				default:
+					keyName = null;
+			}
+		}
+
+		return _errorGroups.getCountByFingerprint();
+	}
+
+	private boolean _isPath(Deque<String> path, List<String> expectedPath) {
+		if (path.size() != expectedPath.size()) {
+			return false;
+		}
+
+		Iterator<String> iterator = path.descendingIterator();
+
+		for (String pathElement : expectedPath) {
+			if (!pathElement.equals(iterator.next())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static final List<String> _HIT_PATH = Arrays.asList(
+		"", "hits", "hits", "");
+
+	private static final List<String> _HITS_OBJECT_PATH = Arrays.asList(
+		"", "hits");
+
+	private static final List<String> _HITS_PATH = Arrays.asList(
+		"", "hits", "hits");
+
+	private static final List<String> _SOURCE_PATH = Arrays.asList(
+		"", "hits", "hits", "", "_source");
+
+	private static final List<String> _TOTAL_PATH = Arrays.asList(
+		"", "hits", "total");
+
+	private final ErrorGroups _errorGroups;
+	private int _hitsCount;
+	private JsonArray _lastSortValues;
+	private long _totalHitsCount = -1;
+
+}
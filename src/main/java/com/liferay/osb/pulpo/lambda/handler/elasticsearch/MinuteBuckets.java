@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Per-minute document counts of several checks over a sliding window of
+ * complete minutes.
+ *
+ * Minutes are numbered since the epoch. The buckets hold the minutes before
+ * the checkpoint, up to the capacity of the window, in one ring buffer per
+ * check.
+ *
+ * @author Ruben Pulido
+ */
+public class MinuteBuckets {
+
+	/**
+	 * Reads the buckets from their JSON representation.
+	 *
+	 * @param jsonObject the JSON representation
+	 * @return the buckets
+	 */
+	public static MinuteBuckets fromJsonObject(JsonObject jsonObject) {
+		MinuteBuckets minuteBuckets = new MinuteBuckets(
+			jsonObject.getInt("capacity"),
+			jsonObject.getJsonNumber("checkpoint").longValue());
+
+		JsonObject countsJsonObject = jsonObject.getJsonObject("counts");
+
+		long firstMinute = minuteBuckets.getFirstMinute();
+
+		countsJsonObject.forEach(
+			(checkName, countsJsonValue) -> {
+				JsonArray countsJsonArray = (JsonArray)countsJsonValue;
+
+				for (int i = 0; i < countsJsonArray.size(); i++) {
+					JsonNumber countJsonNumber =
+						countsJsonArray.getJsonNumber(i);
+
+					minuteBuckets.put(
+						checkName, firstMinute + i,
+						countJsonNumber.longValue());
+				}
+			});
+
+		return minuteBuckets;
+	}
+
+	/**
+	 * Creates empty buckets.
+	 *
+	 * @param capacity the number of minutes kept before the checkpoint
+	 * @param checkpointMinute the first minute not in the buckets yet
+	 */
+	public MinuteBuckets(int capacity, long checkpointMinute) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+				"Capacity must be positive: " + capacity);
+		}
+
+		_capacity = capacity;
+		_checkpointMinute = checkpointMinute;
+	}
+
+	/**
+	 * Moves the checkpoint forward. The minutes between the old and the new
+	 * checkpoint start with no documents.
+	 *
+	 * @param checkpointMinute the new checkpoint
+	 */
+	public void advance(long checkpointMinute) {
+		if (checkpointMinute <= _checkpointMinute) {
+			return;
+		}
+
+		long fromMinute = Math.max(
+			_checkpointMinute, checkpointMinute - _capacity);
+
+		for (long[] counts : _countsByCheckName.values()) {
+			for (long minute = fromMinute; minute < checkpointMinute;
+				 minute++) {
+
+				counts[_getIndex(minute)] = 0;
+			}
+		}
+
+		_checkpointMinute = checkpointMinute;
+	}
+
+	/**
+	 * Gets the number of minutes kept before the checkpoint.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return _capacity;
+	}
+
+	/**
+	 * Gets the first minute not in the buckets yet.
+	 *
+	 * @return the checkpoint minute
+	 */
+	public long getCheckpointMinute() {
+		return _checkpointMinute;
+	}
+
+	/**
+	 * Gets the oldest minute in the buckets.
+	 *
+	 * @return the first minute
+	 */
+	public long getFirstMinute() {
+		return _checkpointMinute - _capacity;
+	}
+
+	/**
+	 * Sets the documents count of a check in a minute.
+	 *
+	 * @param checkName the check name
+	 * @param minute the minute, between the first minute and the checkpoint
+	 * @param count the documents count
+	 */
+	public void put(String checkName, long minute, long count) {
+		_checkMinute(minute);
+
+		long[] counts = _countsByCheckName.computeIfAbsent(
+			checkName, key -> new long[_capacity]);
+
+		counts[_getIndex(minute)] = count;
+	}
+
+	/**
+	 * Sums the documents counts of a check in a range of minutes.
+	 *
+	 * @param checkName the check name
+	 * @param fromMinute the first minute, inclusive
+	 * @param toMinute the last minute, exclusive
+	 * @return the sum of the documents counts
+	 */
+	public long sum(String checkName, long fromMinute, long toMinute) {
+		if (fromMinute >= toMinute) {
+			return 0;
+		}
+
+		_checkMinute(fromMinute);
+		_checkMinute(toMinute - 1);
+
+		long[] counts = _countsByCheckName.get(checkName);
+
+		if (counts == null) {
+			return 0;
+		}
+
+		long sum = 0;
+
+		for (long minute = fromMinute; minute < toMinute; minute++) {
+			sum += counts[_getIndex(minute)];
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Gets the JSON representation of the buckets, with the counts of every
+	 * check ordered from the first minute to the checkpoint.
+	 *
+	 * @return the JSON representation
+	 */
+	public JsonObject toJsonObject() {
+		JsonObjectBuilder countsJsonObjectBuilder = Json.createObjectBuilder();
+
+		long firstMinute = getFirstMinute();
+
+		_countsByCheckName.forEach(
+			(checkName, counts) -> {
+				JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
+
+				for (long minute = firstMinute; minute < _checkpointMinute;
+					 minute++) {
+
+					jsonArrayBuilder.add(counts[_getIndex(minute)]);
+				}
+
+				countsJsonObjectBuilder.add(checkName, jsonArrayBuilder);
+			});
+
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		jsonObjectBuilder.add("capacity", _capacity);
+		jsonObjectBuilder.add("checkpoint", _checkpointMinute);
+		jsonObjectBuilder.add("counts", countsJsonObjectBuilder);
+
+		return jsonObjectBuilder.build();
+	}
+
+	private void _checkMinute(long minute) {
+		if ((minute < getFirstMinute()) || (minute >= _checkpointMinute)) {
+			throw new IllegalArgumentException(
+				"Minute " + minute + " is not between " + getFirstMinute() +
+					" and " + _checkpointMinute);
+		}
+	}
+
+	private int _getIndex(long minute) {
+		return (int)Math.floorMod(minute, (long)_capacity);
+	}
+
+	private final int _capacity;
+	private long _checkpointMinute;
+	private final Map<String, long[]> _countsByCheckName = new HashMap<>();
+
+}
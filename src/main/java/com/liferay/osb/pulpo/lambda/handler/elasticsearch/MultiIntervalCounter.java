@@ -0,0 +1,376 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+/**
+ * Counts the documents of every check in several intervals ending now with
+ * a single search request.
+ *
+ * The request has a date histogram over the widest interval whose buckets
+ * are as wide as the greatest common divisor of the intervals and are
+ * aligned with now, so the counts of every interval are exact sums of
+ * buckets computed in the Lambda.
+ *
+ * The errors of all the intervals can also be grouped by a single query,
+ * with a terms aggregation under a filter per interval.
+ *
+ * @author Ruben Pulido
+ */
+public class MultiIntervalCounter {
+
+	/**
+	 * Returns whether the counts of all the intervals can be computed from a
+	 * histogram.
+	 *
+	 * @param intervals the intervals
+	 * @return <code>true</code> if all the intervals are supported by {@link
+	 *         SlidingWindowCounter#getIntervalMillis(String)}
+	 */
+	public static boolean isSupported(List<String> intervals) {
+		if (intervals.isEmpty()) {
+			return false;
+		}
+
+		for (String interval : intervals) {
+			if (SlidingWindowCounter.getIntervalMillis(interval) < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether the counts of all the intervals can be computed from a
+	 * histogram without exceeding a maximum number of buckets, like the
+	 * <code>search.max_buckets</code> setting of Elasticsearch.
+	 *
+	 * @param intervals the intervals
+	 * @param maxBuckets the maximum number of buckets of a search
+	 * @return <code>true</code> if all the intervals are supported and the
+	 *         histograms of all the checks have at most the maximum number of
+	 *         buckets
+	 */
+	public static boolean isSupported(List<String> intervals, int maxBuckets) {
+		if (!isSupported(intervals)) {
+			return false;
+		}
+
+		long bucketMillis = 0;
+		long widestIntervalMillis = 0;
+
+		for (String interval : intervals) {
+			long intervalMillis = SlidingWindowCounter.getIntervalMillis(
+				interval);
+
+			bucketMillis = _gcd(bucketMillis, intervalMillis);
+			widestIntervalMillis = Math.max(
+				widestIntervalMillis, intervalMillis);
+		}
+
+		// Buckets are aligned with now, so the bucket of now is one more
+
+		long bucketsCount =
+			_CHECKS_COUNT * ((widestIntervalMillis / bucketMillis) + 1);
+
+		return bucketsCount <= maxBuckets;
+	}
+
+	/**
+	 * Creates a counter of the intervals ending now.
+	 *
+	 * @param environment the environment
+	 * @param intervals the intervals
+	 * @param nowMillis the end of the intervals, in milliseconds since the
+	 *        epoch
+	 * @throws IllegalArgumentException if any interval is not supported
+	 */
+	public MultiIntervalCounter(
+		String environment, List<String> intervals, long nowMillis) {
+
+		if (!isSupported(intervals)) {
+			throw new IllegalArgumentException(
+				"Unsupported intervals: " + intervals);
+		}
+
+		_environment = environment;
+		_intervals = new ArrayList<>(intervals);
+		_nowMillis = nowMillis;
+
+		long bucketMillis = 0;
+		long widestIntervalMillis = 0;
+		String widestInterval = null;
+
+		for (String interval : intervals) {
+			long intervalMillis = SlidingWindowCounter.getIntervalMillis(
+				interval);
+
+			bucketMillis = _gcd(bucketMillis, intervalMillis);
+
+			if (intervalMillis > widestIntervalMillis) {
+				widestIntervalMillis = intervalMillis;
+				widestInterval = interval;
+			}
+		}
+
+		_bucketMillis = bucketMillis;
+		_widestInterval = widestInterval;
+		_widestIntervalMillis = widestIntervalMillis;
+	}
+
+	/**
+	 * Gets the width of the histogram buckets.
+	 *
+	 * @return the width, in milliseconds
+	 */
+	public long getBucketMillis() {
+		return _bucketMillis;
+	}
+
+	/**
+	 * Gets the counts of every interval and check from the response to the
+	 * query of this counter.
+	 *
+	 * @param searchResponse the search response
+	 * @return the number of documents per check name, per interval, in the
+	 *         order of the intervals
+	 */
+	public Map<String, Map<String, Long>> getCounts(
+		JsonObject searchResponse) {
+
+		// Fails if the search failed
+
+		ElasticSearchAWSUtil.getFiltersAggregationCounts(
+			searchResponse, _AGGREGATION_NAME);
+
+		JsonObject aggregationsJsonObject = searchResponse.getJsonObject(
+			"aggregations");
+
+		JsonObject aggregationJsonObject =
+			aggregationsJsonObject.getJsonObject(_AGGREGATION_NAME);
+
+		JsonObject bucketsJsonObject = aggregationJsonObject.getJsonObject(
+			"buckets");
+
+		Map<String, Map<String, Long>> countsByInterval =
+			new LinkedHashMap<>();
+
+		for (String interval : _intervals) {
+			countsByInterval.put(interval, new HashMap<>());
+		}
+
+		bucketsJsonObject.forEach(
+			(checkName, bucketJsonValue) -> _addCounts(
+				countsByInterval, checkName, (JsonObject)bucketJsonValue));
+
+		return countsByInterval;
+	}
+
+	/**
+	 * Gets the query grouping the errors of every interval with a terms
+	 * aggregation.
+	 *
+	 * @param field the field of the terms aggregation
+	 * @param size the number of groups of every interval
+	 * @return the query
+	 */
+	public String getErrorsQuery(String field, int size) {
+		JsonObjectBuilder filtersJsonObjectBuilder = Json.createObjectBuilder();
+
+		for (String interval : _intervals) {
+			filtersJsonObjectBuilder.add(
+				interval,
+				Json.createObjectBuilder(
+				).add(
+					"range",
+					Json.createObjectBuilder(
+					).add(
+						"@timestamp",
+						Json.createObjectBuilder(
+						).add(
+							"gte",
+							_nowMillis -
+								SlidingWindowCounter.getIntervalMillis(
+									interval)
+						).add(
+							"lte", _nowMillis
+						).add(
+							"format", "epoch_millis"
+						)
+					)
+				));
+		}
+
+		JsonObject filtersJsonObject = filtersJsonObjectBuilder.build();
+
+		return QueryTemplateUtil.getQuery(
+			"groupErrorsByIntervalQueryTemplate.json", _environment,
+			_widestInterval, field, size, _nowMillis - _widestIntervalMillis,
+			_nowMillis, filtersJsonObject.toString());
+	}
+
+	/**
+	 * Gets the responses to the query grouping the errors of every interval,
+	 * from the response to the query returned by {@link #getErrorsQuery(String,
+	 * int)}. Every response has the total hits and the terms aggregation of a
+	 * query grouping the errors of its interval alone.
+	 *
+	 * @param searchResponse the search response
+	 * @return the responses per interval, in the order of the intervals
+	 * @throws com.amazonaws.AmazonServiceException if the search failed
+	 */
+	public Map<String, JsonObject> getErrorsSearchResponses(
+		JsonObject searchResponse) {
+
+		// Fails if the search failed
+
+		ElasticSearchAWSUtil.getHitsCount(searchResponse);
+
+		JsonObject aggregationsJsonObject = searchResponse.getJsonObject(
+			"aggregations");
+
+		JsonObject aggregationJsonObject =
+			aggregationsJsonObject.getJsonObject(_INTERVALS_AGGREGATION_NAME);
+
+		JsonObject bucketsJsonObject = aggregationJsonObject.getJsonObject(
+			"buckets");
+
+		Map<String, JsonObject> errorsSearchResponses = new LinkedHashMap<>();
+
+		for (String interval : _intervals) {
+			JsonObject bucketJsonObject = bucketsJsonObject.getJsonObject(
+				interval);
+
+			JsonObject errorsSearchResponse = Json.createObjectBuilder(
+			).add(
+				"hits",
+				Json.createObjectBuilder(
+				).add(
+					"total", bucketJsonObject.getJsonNumber("doc_count")
+				)
+			).add(
+				"aggregations",
+				Json.createObjectBuilder(
+				).add(
+					_ERROR_GROUPS_AGGREGATION_NAME,
+					bucketJsonObject.getJsonObject(
+						_ERROR_GROUPS_AGGREGATION_NAME)
+				)
+			).build();
+
+			errorsSearchResponses.put(interval, errorsSearchResponse);
+		}
+
+		return errorsSearchResponses;
+	}
+
+	/**
+	 * Gets the query with the histogram of every check over the widest
+	 * interval.
+	 *
+	 * @return the query
+	 */
+	public String getQuery() {
+		return QueryTemplateUtil.getQuery(
+			"countHistogramQueryTemplate.json", _environment, _widestInterval,
+			_nowMillis - _widestIntervalMillis, _nowMillis,
+			TimeUnit.MILLISECONDS.toMinutes(_bucketMillis) + "m",
+			"+" + Math.floorMod(_nowMillis, _bucketMillis) + "ms");
+	}
+
+	private void _addCounts(
+		Map<String, Map<String, Long>> countsByInterval, String checkName,
+		JsonObject bucketJsonObject) {
+
+		JsonObject histogramJsonObject = bucketJsonObject.getJsonObject(
+			"histogram");
+
+		JsonArray histogramBucketsJsonArray = histogramJsonObject.getJsonArray(
+			"buckets");
+
+		for (String interval : _intervals) {
+			long fromMillis =
+				_nowMillis - SlidingWindowCounter.getIntervalMillis(interval);
+
+			long count = 0;
+
+			for (JsonValue histogramBucketJsonValue :
+					histogramBucketsJsonArray) {
+
+				JsonObject histogramBucketJsonObject =
+					(JsonObject)histogramBucketJsonValue;
+
+				JsonNumber keyJsonNumber =
+					histogramBucketJsonObject.getJsonNumber("key");
+
+				// Buckets are aligned with now, so a bucket is either
+				// entirely inside the interval or entirely outside of it
+
+				if (keyJsonNumber.longValue() >= fromMillis) {
+					JsonNumber docCountJsonNumber =
+						histogramBucketJsonObject.getJsonNumber("doc_count");
+
+					count += docCountJsonNumber.longValue();
+				}
+			}
+
+			Map<String, Long> counts = countsByInterval.get(interval);
+
+			counts.put(checkName, count);
+		}
+	}
+
+	private static long _gcd(long a, long b) {
+		while (b != 0) {
+			long remainder = a % b;
+
+			a = b;
+			b = remainder;
+		}
+
+		return a;
+	}
+
+	private static final String _AGGREGATION_NAME = "checks";
+
+	private static final int _CHECKS_COUNT = 3;
+
+	private static final String _ERROR_GROUPS_AGGREGATION_NAME =
+		"errorGroups";
+
+	private static final String _INTERVALS_AGGREGATION_NAME = "intervals";
+
+	private final long _bucketMillis;
+	private final String _environment;
+	private final List<String> _intervals;
+	private final long _nowMillis;
+	private final String _widestInterval;
+	private final long _widestIntervalMillis;
+
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Counts the log entries, the errors and the truncated messages of several
+ * environments in an interval with a single multi search request.
+ *
+ * Every count is a search query which returns no hits or, when counting with
+ * an aggregation, the three counts of an environment are the filters of a
+ * single query. The errors of an environment can also be grouped by a query
+ * in the same request. The responses are split back by environment in the
+ * order of the queries. A failed query is reported as a failed check of its
+ * environment, so it does not prevent reading the results of the others.
+ *
+ * @author Ruben Pulido
+ */
+public class MultiSearchCounter {
+
+	/**
+	 * Creates a counter of the interval ending now.
+	 *
+	 * @param interval the interval
+	 */
+	public MultiSearchCounter(String interval) {
+		this(interval, false);
+	}
+
+	/**
+	 * Creates a counter of the interval ending now.
+	 *
+	 * @param interval the interval
+	 * @param countWithAggregation whether the counts of an environment are
+	 *        the filters of a single aggregation query
+	 */
+	public MultiSearchCounter(String interval, boolean countWithAggregation) {
+		_interval = interval;
+		_countWithAggregation = countWithAggregation;
+	}
+
+	/**
+	 * Adds an environment to count.
+	 *
+	 * @param environment the environment
+	 * @param errorsQuery the query grouping the errors of the environment, or
+	 *        <code>null</code> if they are not grouped in the same request
+	 */
+	public void addEnvironment(String environment, String errorsQuery) {
+		_environments.add(environment);
+		_errorsQueries.add(errorsQuery);
+
+		if (_countWithAggregation) {
+			_queries.add(
+				QueryTemplateUtil.getQuery(
+					"countAggregationQueryTemplate.json", environment,
+					_interval));
+		}
+		else {
+			_queries.add(
+				ElasticSearchAWSUtil.getCountSearchQuery(
+					QueryTemplateUtil.getQuery(
+						"queryTemplate.json", environment, _interval)));
+			_queries.add(
+				ElasticSearchAWSUtil.getCountSearchQuery(
+					QueryTemplateUtil.getQuery(
+						"countErrorsQueryTemplate.json", environment,
+						_interval)));
+			_queries.add(
+				ElasticSearchAWSUtil.getCountSearchQuery(
+					QueryTemplateUtil.getQuery(
+						"countTruncatedMessagesQueryTemplate.json",
+						environment, _interval)));
+		}
+
+		if (errorsQuery != null) {
+			_queries.add(errorsQuery);
+		}
+	}
+
+	/**
+	 * Gets the count responses of every environment from the responses to
+	 * the queries of this counter.
+	 *
+	 * @param searchResponses the responses, in the order of the queries
+	 * @param errorsGroupingFunction the function which groups the errors from
+	 *        the response to the errors query of an environment, returning
+	 *        <code>null</code> if they could not be grouped
+	 * @return the count response per environment, in the order the
+	 *         environments were added
+	 */
+	public Map<String, CountResponse> getCountResponses(
+		List<SearchResponse> searchResponses,
+		Function<SearchResponse, Map<Long, ErrorGroupCount>>
+			errorsGroupingFunction) {
+
+		if (searchResponses.size() != _queries.size()) {
+			throw new IllegalArgumentException(
+				"Expected " + _queries.size() + " responses, got " +
+					searchResponses.size());
+		}
+
+		Map<String, CountResponse> countResponses = new LinkedHashMap<>();
+
+		int offset = 0;
+
+		for (int i = 0; i < _environments.size(); i++) {
+			CountResponse countResponse;
+
+			if (_countWithAggregation) {
+				countResponse = _getAggregationCountResponse(
+					searchResponses.get(offset));
+
+				offset++;
+			}
+			else {
+				countResponse = _getCountResponse(searchResponses, offset);
+
+				offset += 3;
+			}
+
+			if (_errorsQueries.get(i) != null) {
+				countResponse.setErrorGroupCounts(
+					errorsGroupingFunction.apply(searchResponses.get(offset)));
+
+				offset++;
+			}
+
+			countResponses.put(_environments.get(i), countResponse);
+		}
+
+		return countResponses;
+	}
+
+	/**
+	 * Gets the queries of all the environments, in the order the environments
+	 * were added.
+	 *
+	 * @return the queries
+	 */
+	public List<String> getQueries() {
+		return _queries;
+	}
+
+	private CountResponse _getAggregationCountResponse(
+		SearchResponse searchResponse) {
+
+		CountResponse countResponse = new CountResponse();
+
+		Map<String, Long> countsByBucketName;
+
+		try {
+			countsByBucketName =
+				ElasticSearchAWSUtil.getFiltersAggregationCounts(
+					searchResponse.getJsonObject(), _AGGREGATION_NAME);
+		}
+		catch (AmazonServiceException ase) {
+
+			// All the counts come from the same query, so all of them failed
+
+			countResponse.addCheckFailure(
+				_LOG_ENTRIES_COUNT_CHECK, String.valueOf(ase));
+			countResponse.addCheckFailure(
+				_ERRORS_COUNT_CHECK, String.valueOf(ase));
+			countResponse.addCheckFailure(
+				_TRUNCATED_MESSAGES_COUNT_CHECK, String.valueOf(ase));
+
+			return countResponse;
+		}
+
+		countResponse.setLogEntriesCount(
+			countsByBucketName.getOrDefault("logEntries", 0L));
+		countResponse.setErrorsCount(
+			countsByBucketName.getOrDefault("errors", 0L));
+		countResponse.setTruncatedMessagesCount(
+			countsByBucketName.getOrDefault("truncatedMessages", 0L));
+
+		return countResponse;
+	}
+
+	private CountResponse _getCountResponse(
+		List<SearchResponse> searchResponses, int offset) {
+
+		CountResponse countResponse = new CountResponse();
+
+		Long logEntriesCount = _getHitsCount(
+			countResponse, _LOG_ENTRIES_COUNT_CHECK,
+			searchResponses.get(offset));
+
+		if (logEntriesCount != null) {
+			countResponse.setLogEntriesCount(logEntriesCount);
+		}
+
+		Long errorsCount = _getHitsCount(
+			countResponse, _ERRORS_COUNT_CHECK,
+			searchResponses.get(offset + 1));
+
+		if (errorsCount != null) {
+			countResponse.setErrorsCount(errorsCount);
+		}
+
+		Long truncatedMessagesCount = _getHitsCount(
+			countResponse, _TRUNCATED_MESSAGES_COUNT_CHECK,
+			searchResponses.get(offset + 2));
+
+		if (truncatedMessagesCount != null) {
+			countResponse.setTruncatedMessagesCount(truncatedMessagesCount);
+		}
+
+		return countResponse;
+	}
+
+	private Long _getHitsCount(
+		CountResponse countResponse, String checkName,
+		SearchResponse searchResponse) {
+
+		try {
+			return ElasticSearchAWSUtil.getHitsCount(
+				searchResponse.getJsonObject());
+		}
+		catch (AmazonServiceException ase) {
+			countResponse.addCheckFailure(checkName, String.valueOf(ase));
+
+			return null;
+		}
+	}
+
+	private static final String _AGGREGATION_NAME = "checks";
+
+	private static final String _ERRORS_COUNT_CHECK = "errorsCount";
+
+	private static final String _LOG_ENTRIES_COUNT_CHECK = "logEntriesCount";
+
+	private static final String _TRUNCATED_MESSAGES_COUNT_CHECK =
+		"truncatedMessagesCount";
+
+	private final boolean _countWithAggregation;
+	private final List<String> _environments = new ArrayList<>();
+	private final List<String> _errorsQueries = new ArrayList<>();
+	private final String _interval;
+	private final List<String> _queries = new ArrayList<>();
+
+}
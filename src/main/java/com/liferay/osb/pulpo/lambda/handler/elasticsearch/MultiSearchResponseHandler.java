@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroups;
+import com.liferay.osb.pulpo.lambda.handler.http.JsonParserResponseHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonParser;
+
+/**
+ * Reads the responses of a multi search request one after another while the
+ * body is being read, without materializing it as a String.
+ *
+ * The messages of the hits of every response are grouped by {@link
+ * ErrorGroups} as they are read, so that only one message is held in memory
+ * at a time. The rest of every response is small, as the queries return no
+ * hits or only aggregations, and is kept as a JSON object.
+ *
+ * @author Ruben Pulido
+ */
+public class MultiSearchResponseHandler
+	extends JsonParserResponseHandler<List<SearchResponse>> {
+
+	/**
+	 * Creates a handler.
+	 *
+	 * @param maxMessagePrefixLength the maximum length of the message prefix
+	 */
+	public MultiSearchResponseHandler(int maxMessagePrefixLength) {
+		_maxMessagePrefixLength = maxMessagePrefixLength;
+	}
+
+	@Override
+	protected List<SearchResponse> parse(JsonParser jsonParser) {
+		List<SearchResponse> searchResponses = new ArrayList<>();
+
+		if (!jsonParser.hasNext() ||
+			(jsonParser.next() != JsonParser.Event.START_OBJECT)) {
+
+			return searchResponses;
+		}
+
+		JsonParser.Event event = jsonParser.next();
+
+		while (event == JsonParser.Event.KEY_NAME) {
+			String keyName = jsonParser.getString();
+
+			event = jsonParser.next();
+
+			if (keyName.equals("responses") &&
+				(event == JsonParser.Event.START_ARRAY)) {
+
+				event = jsonParser.next();
+
+				while (event == JsonParser.Event.START_OBJECT) {
+					searchResponses.add(_readSearchResponse(jsonParser));
+
+					event = jsonParser.next();
+				}
+			}
+			else {
+				_skip(jsonParser, event);
+			}
+
+			event = jsonParser.next();
+		}
+
+		return searchResponses;
+	}
+
+	private void _addMessages(JsonParser jsonParser, ErrorGroups errorGroups) {
+		JsonParser.Event event = jsonParser.next();
+
+		while (event == JsonParser.Event.START_OBJECT) {
+			event = jsonParser.next();
+
+			while (event == JsonParser.Event.KEY_NAME) {
+				String keyName = jsonParser.getString();
+
+				event = jsonParser.next();
+
+				if (keyName.equals("_source") &&
+					(event == JsonParser.Event.START_OBJECT)) {
+
+					_addSourceMessage(jsonParser, errorGroups);
+				}
+				else {
+					_skip(jsonParser, event);
+				}
+
+				event = jsonParser.next();
+			}
+
+			event = jsonParser.next();
+		}
+	}
+
+	private void _addSourceMessage(
+		JsonParser jsonParser, ErrorGroups errorGroups) {
+
+		JsonParser.Event event = jsonParser.next();
+
+		while (event == JsonParser.Event.KEY_NAME) {
+			String keyName = jsonParser.getString();
+
+			event = jsonParser.next();
+
+			if (keyName.equals("message") &&
+				(event == JsonParser.Event.VALUE_STRING)) {
+
+				errorGroups.add(jsonParser.getString(), 1);
+			}
+			else {
+				_skip(jsonParser, event);
+			}
+
+			event = jsonParser.next();
+		}
+	}
+
+	private void _addValue(
+		JsonArrayBuilder jsonArrayBuilder, JsonParser jsonParser,
+		JsonParser.Event event) {
+
+		if (event == JsonParser.Event.START_ARRAY) {
+			jsonArrayBuilder.add(_readArray(jsonParser));
+		}
+		else if (event == JsonParser.Event.START_OBJECT) {
+			jsonArrayBuilder.add(_readObject(jsonParser));
+		}
+		else if (event == JsonParser.Event.VALUE_FALSE) {
+			jsonArrayBuilder.add(false);
+		}
+		else if (event == JsonParser.Event.VALUE_NULL) {
+			jsonArrayBuilder.addNull();
+		}
+		else if (event == JsonParser.Event.VALUE_NUMBER) {
+			if (jsonParser.isIntegralNumber()) {
+				jsonArrayBuilder.add(jsonParser.getLong());
+			}
+			else {
+				jsonArrayBuilder.add(jsonParser.getBigDecimal());
+			}
+		}
+		else if (event == JsonParser.Event.VALUE_STRING) {
+			jsonArrayBuilder.add(jsonParser.getString());
+		}
+		else if (event == JsonParser.Event.VALUE_TRUE) {
+			jsonArrayBuilder.add(true);
+		}
+	}
+
+	private void _addValue(
+		JsonObjectBuilder jsonObjectBuilder, String name, JsonParser jsonParser,
+		JsonParser.Event event) {
+
+		if (event == JsonParser.Event.START_ARRAY) {
+			jsonObjectBuilder.add(name, _readArray(jsonParser));
+		}
+		else if (event == JsonParser.Event.START_OBJECT) {
+			jsonObjectBuilder.add(name, _readObject(jsonParser));
+		}
+		else if (event == JsonParser.Event.VALUE_FALSE) {
+			jsonObjectBuilder.add(name, false);
+		}
+		else if (event == JsonParser.Event.VALUE_NULL) {
+			jsonObjectBuilder.addNull(name);
+		}
+		else if (event == JsonParser.Event.VALUE_NUMBER) {
+			if (jsonParser.isIntegralNumber()) {
+				jsonObjectBuilder.add(name, jsonParser.getLong());
+			}
+			else {
+				jsonObjectBuilder.add(name, jsonParser.getBigDecimal());
+			}
+		}
+		else if (event == JsonParser.Event.VALUE_STRING) {
+			jsonObjectBuilder.add(name, jsonParser.getString());
+		}
+		else if (event == JsonParser.Event.VALUE_TRUE) {
+			jsonObjectBuilder.add(name, true);
+		}
+	}
+
+	private JsonArrayBuilder _readArray(JsonParser jsonParser) {
+		JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
+
+		JsonParser.Event event = jsonParser.next();
+
+		while (event != JsonParser.Event.END_ARRAY) {
+			_addValue(jsonArrayBuilder, jsonParser, event);
+
+			event = jsonParser.next();
+		}
+
+		return jsonArrayBuilder;
+	}
+
+	private JsonObjectBuilder _readObject(JsonParser jsonParser) {
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		JsonParser.Event event = jsonParser.next();
+
+		while (event == JsonParser.Event.KEY_NAME) {
+			String keyName = jsonParser.getString();
+
+			_addValue(
+				jsonObjectBuilder, keyName, jsonParser, jsonParser.next());
+
+			event = jsonParser.next();
+		}
+
+		return jsonObjectBuilder;
+	}
+
+	private SearchResponse _readSearchResponse(JsonParser jsonParser) {
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		ErrorGroups errorGroups = null;
+
+		JsonParser.Event event = jsonParser.next();
+
+		while (event == JsonParser.Event.KEY_NAME) {
+			String keyName = jsonParser.getString();
+
+			event = jsonParser.next();
+
+			if (!keyName.equals("hits") ||
+				(event != JsonParser.Event.START_OBJECT)) {
+
+				_addValue(jsonObjectBuilder, keyName, jsonParser, event);
+
+				event = jsonParser.next();
+
+				continue;
+			}
+
+			JsonObjectBuilder hitsJsonObjectBuilder =
+				Json.createObjectBuilder();
+
+			event = jsonParser.next();
+
+			while (event == JsonParser.Event.KEY_NAME) {
+				String hitsKeyName = jsonParser.getString();
+
+				event = jsonParser.next();
+
+				if (hitsKeyName.equals("hits") &&
+					(event == JsonParser.Event.START_ARRAY)) {
+
+					errorGroups = new ErrorGroups(_maxMessagePrefixLength);
+
+					_addMessages(jsonParser, errorGroups);
+				}
+				else {
+					_addValue(
+						hitsJsonObjectBuilder, hitsKeyName, jsonParser, event);
+				}
+
+				event = jsonParser.next();
+			}
+
+			jsonObjectBuilder.add(keyName, hitsJsonObjectBuilder);
+
+			event = jsonParser.next();
+		}
+
+		return new SearchResponse(jsonObjectBuilder.build(), errorGroups);
+	}
+
+	private void _skip(JsonParser jsonParser, JsonParser.Event event) {
+		if ((event != JsonParser.Event.START_ARRAY) &&
+			(event != JsonParser.Event.START_OBJECT)) {
+
+			return;
+		}
+
+		int depth = 1;
+
+		while (depth > 0) {
+			event = jsonParser.next();
+
+			if ((event == JsonParser.Event.START_ARRAY) ||
+				(event == JsonParser.Event.START_OBJECT)) {
+
+				depth++;
+			}
+			else if ((event == JsonParser.Event.END_ARRAY) ||
+					 (event == JsonParser.Event.END_OBJECT)) {
+
+				depth--;
+			}
+		}
+	}
+
+	private final int _maxMessagePrefixLength;
+
+}
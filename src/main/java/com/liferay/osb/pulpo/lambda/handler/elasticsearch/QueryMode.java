@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+/**
+ * The ways the counts of an environment can be retrieved from Elasticsearch.
+ *
+ * @author Ruben Pulido
+ */
+public enum QueryMode {
+
+	/**
+	 * All the counts are retrieved in a single size 0 search request with a
+	 * filters aggregation with one bucket per count, so that the matching
+	 * documents are read only once.
+	 */
+	AGGREGATION,
+
+	/**
+	 * The log entries are counted first and, if there are any, the errors
+	 * count, the errors search and the truncated messages count queries are
+	 * sent in parallel.
+	 */
+	CONCURRENT,
+
+	/**
+	 * The counts of all the requested intervals are retrieved in a single
+	 * search request with a date histogram over the widest interval, and are
+	 * added up in the Lambda by a {@link MultiIntervalCounter}.
+	 */
+	HISTOGRAM,
+
+	/**
+	 * The counts are retrieved like in {@link #AGGREGATION}, but only for the
+	 * minutes which have not been counted by a previous invocation. The
+	 * per-minute counts are cached in the local disk by a {@link
+	 * SlidingWindowCounter}.
+	 */
+	INCREMENTAL,
+
+	/**
+	 * All the count queries and the errors search query are sent in a single
+	 * _msearch request.
+	 */
+	MULTI_SEARCH,
+
+	/**
+	 * Every count query and the errors search query are sent one after
+	 * another, skipping the queries which are not needed.
+	 */
+	SEQUENTIAL;
+
+	/**
+	 * Gets the query mode with the given name, ignoring case.
+	 *
+	 * @param name the name of the query mode
+	 * @param defaultQueryMode the query mode returned if the name is empty or
+	 *        unknown
+	 * @return the query mode
+	 */
+	public static QueryMode parse(String name, QueryMode defaultQueryMode) {
+		if (name == null) {
+			return defaultQueryMode;
+		}
+
+		for (QueryMode queryMode : values()) {
+			if (queryMode.name().equalsIgnoreCase(name.trim())) {
+				return queryMode;
+			}
+		}
+
+		return defaultQueryMode;
+	}
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query template compiled once into literal segments and argument
+ * placeholders, so that building a query only appends strings.
+ *
+ * The templates use the subset of the {@link String#format} syntax needed by
+ * the queries: <code>%s</code>, <code>%n$s</code> and <code>%%</code>.
+ * Building a query with this class returns the same string that
+ * {@link String#format} would return for the same template and arguments.
+ *
+ * @author Ruben Pulido
+ */
+public class QueryTemplate {
+
+	/**
+	 * Compiles a template.
+	 *
+	 * @param template the template
+	 * @throws IllegalArgumentException if the template has an unsupported
+	 *         format specifier
+	 */
+	public QueryTemplate(String template) {
+		List<String> literals = new ArrayList<>();
+		List<Integer> argumentIndexes = new ArrayList<>();
+
+		StringBuilder sb = new StringBuilder();
+
+		int nextArgumentIndex = 0;
+
+		int i = 0;
+
+		while (i < template.length()) {
+			char c = template.charAt(i);
+
+			if (c != '%') {
+				sb.append(c);
+
+				i++;
+
+				continue;
+			}
+
+			int j = i + 1;
+
+			while ((j < template.length()) &&
+				Character.isDigit(template.charAt(j))) {
+
+				j++;
+			}
+
+			if ((j == (i + 1)) && (j < template.length()) &&
+				(template.charAt(j) == '%')) {
+
+				sb.append('%');
+
+				i = j + 1;
+
+				continue;
+			}
+
+			int argumentIndex;
+
+			if (j == (i + 1)) {
+				argumentIndex = nextArgumentIndex++;
+			}
+			else if ((j < template.length()) && (template.charAt(j) == '$')) {
+				String argumentPosition = template.substring(i + 1, j);
+
+				argumentIndex = Integer.parseInt(argumentPosition) - 1;
+
+				j++;
+			}
+			else {
+				throw new IllegalArgumentException(
+					"Unsupported format specifier at position " + i);
+			}
+
+			if ((argumentIndex < 0) || (j >= template.length()) ||
+				(template.charAt(j) != 's')) {
+
+				throw new IllegalArgumentException(
+					"Unsupported format specifier at position " + i);
+			}
+
+			literals.add(sb.toString());
+			argumentIndexes.add(argumentIndex);
+
+			sb.setLength(0);
+
+			i = j + 1;
+		}
+
+		literals.add(sb.toString());
+
+		_literals = literals.toArray(new String[0]);
+
+		_argumentIndexes = new int[argumentIndexes.size()];
+
+		int literalsLength = 0;
+		int argumentsCount = 0;
+
+		for (int k = 0; k < _argumentIndexes.length; k++) {
+			_argumentIndexes[k] = argumentIndexes.get(k);
+
+			argumentsCount = Math.max(argumentsCount, _argumentIndexes[k] + 1);
+		}
+
+		for (String literal : _literals) {
+			literalsLength += literal.length();
+		}
+
+		_argumentsCount = argumentsCount;
+		_literalsLength = literalsLength;
+	}
+
+	/**
+	 * Builds a query replacing the placeholders with the given arguments.
+	 *
+	 * @param arguments the arguments
+	 * @return the query
+	 * @throws IllegalArgumentException if there are fewer arguments than
+	 *         placeholders
+	 */
+	public String build(Object... arguments) {
+		if (arguments.length < _argumentsCount) {
+			throw new IllegalArgumentException(
+				"Expected " + _argumentsCount + " arguments but got " +
+					arguments.length);
+		}
+
+		StringBuilder sb = new StringBuilder(_literalsLength + 256);
+
+		for (int i = 0; i < _argumentIndexes.length; i++) {
+			sb.append(_literals[i]);
+			sb.append(String.valueOf(arguments[_argumentIndexes[i]]));
+		}
+
+		sb.append(_literals[_argumentIndexes.length]);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the number of arguments needed to build a query.
+	 *
+	 * @return the number of arguments
+	 */
+	public int getArgumentsCount() {
+		return _argumentsCount;
+	}
+
+	private final int[] _argumentIndexes;
+	private final int _argumentsCount;
+	private final String[] _literals;
+	private final int _literalsLength;
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.file.FileUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the query templates in the classpath.
+ *
+ * All the templates are read and compiled once, when the class is
+ * initialized, so building a query for an invocation does not touch the
+ * classpath again.
+ *
+ * @author Ruben Pulido
+ */
+public class QueryTemplateUtil {
+
+	/**
+	 * Builds a query from a template. The environment and the interval are
+	 * the first two arguments of every template.
+	 *
+	 * @param templateFileName the file name of the template
+	 * @param environment the environment
+	 * @param interval the interval
+	 * @param arguments the additional arguments of the template
+	 * @return the query
+	 * @throws IllegalArgumentException if there is no template with the given
+	 *         name
+	 */
+	public static String getQuery(
+		String templateFileName, String environment, String interval,
+		Object... arguments) {
+
+		QueryTemplate queryTemplate = getQueryTemplate(templateFileName);
+
+		Object[] queryArguments = new Object[arguments.length + 2];
+
+		queryArguments[0] = environment;
+		queryArguments[1] = interval;
+
+		System.arraycopy(arguments, 0, queryArguments, 2, arguments.length);
+
+		return queryTemplate.build(queryArguments);
+	}
+
+	/**
+	 * Returns a compiled template.
+	 *
+	 * @param templateFileName the file name of the template
+	 * @return the compiled template
+	 * @throws IllegalArgumentException if there is no template with the given
+	 *         name
+	 */
+	public static QueryTemplate getQueryTemplate(String templateFileName) {
+		QueryTemplate queryTemplate = _queryTemplates.get(templateFileName);
+
+		if (queryTemplate == null) {
+			throw new IllegalArgumentException(
+				"Unknown query template: " + templateFileName);
+		}
+
+		return queryTemplate;
+	}
+
+	private static Map<String, QueryTemplate> _loadQueryTemplates() {
+		FileUtil fileUtil = new FileUtil();
+
+		Map<String, QueryTemplate> queryTemplates = new HashMap<>();
+
+		for (String templateFileName : _TEMPLATE_FILE_NAMES) {
+			try {
+				queryTemplates.put(
+					templateFileName,
+					new QueryTemplate(
+						fileUtil.fileInClasspathToString(templateFileName)));
+			}
+			catch (IOException ioe) {
+				throw new UncheckedIOException(
+					"Could not read from classpath file: " + templateFileName,
+					ioe);
+			}
+		}
+
+		return Collections.unmodifiableMap(queryTemplates);
+	}
+
+	private static final String[] _TEMPLATE_FILE_NAMES = {
+		"countAggregationQueryTemplate.json", "countErrorsQueryTemplate.json",
+		"countHistogramQueryTemplate.json", "countMinutesQueryTemplate.json",
+		"countTruncatedMessagesQueryTemplate.json",
+		"groupErrorsByIntervalQueryTemplate.json",
+		"groupErrorsQueryTemplate.json", "queryTemplate.json",
+		"searchErrorsQueryTemplate.json",
+		"searchUngroupedErrorsQueryTemplate.json"
+	};
+
+	private static final Map<String, QueryTemplate> _queryTemplates =
+		_loadQueryTemplates();
+
+}
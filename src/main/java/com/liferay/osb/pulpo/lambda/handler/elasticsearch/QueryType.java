@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The kinds of queries sent to Elasticsearch.
+ *
+ * Every kind declares the fields of the response it reads, which are sent as
+ * the <code>filter_path</code> and <code>_source</code> request parameters so
+ * that Elasticsearch does not return anything else.
+ *
+ * @author Ruben Pulido
+ */
+public enum QueryType {
+
+	AGGREGATION("_search", "hits.total,aggregations", null),
+
+	COUNT("_count", "count", null),
+
+	HITS("_search", "hits.total,hits.hits._source.message", "message"),
+
+	HITS_PAGE(
+		"_search", "hits.total,hits.hits._source.message,hits.hits.sort",
+		"message"),
+
+	MULTI_SEARCH(
+		"_msearch",
+		"responses.status,responses.error,responses.hits.total," +
+			"responses.hits.hits._source.message,responses.aggregations",
+		null);
+
+	/**
+	 * Gets the request parameters which limit the response to the fields
+	 * read for this kind of query.
+	 *
+	 * @return the request parameters
+	 */
+	public Map<String, List<String>> getParameters() {
+		return _parameters;
+	}
+
+	/**
+	 * Gets the path of the endpoint.
+	 *
+	 * @return the path
+	 */
+	public String getPath() {
+		return _path;
+	}
+
+	private QueryType(String path, String filterPath, String sourceIncludes) {
+		_path = path;
+
+		Map<String, List<String>> parameters = new HashMap<>();
+
+		parameters.put("filter_path", Collections.singletonList(filterPath));
+
+		if (sourceIncludes != null) {
+			parameters.put(
+				"_source", Collections.singletonList(sourceIncludes));
+		}
+
+		_parameters = Collections.unmodifiableMap(parameters);
+	}
+
+	private final Map<String, List<String>> _parameters;
+	private final String _path;
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroups;
+
+import javax.json.JsonObject;
+
+/**
+ * The response to one of the queries of a multi search request.
+ *
+ * The hits are not kept: their messages are grouped by {@link ErrorGroups}
+ * while the response is read. The rest of the response, like the total
+ * number of hits, the aggregations or the error of a failed query, is kept as
+ * a JSON object.
+ *
+ * @author Ruben Pulido
+ */
+public class SearchResponse {
+
+	/**
+	 * Creates a search response.
+	 *
+	 * @param jsonObject the response without the hits
+	 * @param errorGroups the groups of the messages of the hits, or
+	 *        <code>null</code> if the response has no hits
+	 */
+	public SearchResponse(JsonObject jsonObject, ErrorGroups errorGroups) {
+		_jsonObject = jsonObject;
+		_errorGroups = errorGroups;
+	}
+
+	/**
+	 * Gets the groups of the messages of the hits.
+	 *
+	 * @return the groups, or <code>null</code> if the response has no hits
+	 */
+	public ErrorGroups getErrorGroups() {
+		return _errorGroups;
+	}
+
+	/**
+	 * Gets the response without the hits.
+	 *
+	 * @return the response
+	 */
+	public JsonObject getJsonObject() {
+		return _jsonObject;
+	}
+
+	private final ErrorGroups _errorGroups;
+	private final JsonObject _jsonObject;
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+/**
+ * Counts the documents of every check in the last interval reusing the
+ * per-minute counts retrieved by the previous invocations.
+ *
+ * The interval ending now is split in three parts:
+ *
+ * - The head: the part of the first minute which is inside the interval. It
+ *   is counted with a range filter.
+ * - The cached minutes: the complete minutes already counted by a previous
+ *   invocation, read from the {@link StateStore}.
+ * - The fetched minutes: the minutes since the checkpoint of the cache,
+ *   counted with a per-minute date histogram.
+ *
+ * A fetched minute is cached only once it is older than the settle minutes,
+ * so documents indexed with some delay are still counted. A new cache is
+ * started whenever the interval changes or the stored state is not usable.
+ *
+ * @author Ruben Pulido
+ */
+public class SlidingWindowCounter {
+
+	/**
+	 * Gets the length in milliseconds of an interval expressed in minutes,
+	 * hours, days or weeks (for example, <code>15m</code> or
+	 * <code>1h</code>).
+	 *
+	 * @param interval the interval
+	 * @return the length of the interval, or <code>-1</code> if the interval
+	 *         is not supported
+	 */
+	public static long getIntervalMillis(String interval) {
+		if ((interval == null) || (interval.length() < 2)) {
+			return -1;
+		}
+
+		long amount;
+
+		try {
+			amount = Long.parseLong(
+				interval.substring(0, interval.length() - 1));
+		}
+		catch (NumberFormatException nfe) {
+			return -1;
+		}
+
+		if (amount <= 0) {
+			return -1;
+		}
+
+		char unit = interval.charAt(interval.length() - 1);
+
+		if (unit == 'm') {
+			return TimeUnit.MINUTES.toMillis(amount);
+		}
+		else if (unit == 'h') {
+			return TimeUnit.HOURS.toMillis(amount);
+		}
+		else if (unit == 'd') {
+			return TimeUnit.DAYS.toMillis(amount);
+		}
+		else if (unit == 'w') {
+			return TimeUnit.DAYS.toMillis(amount * 7);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Creates a counter of the interval ending now.
+	 *
+	 * @param stateStore the store of the per-minute counts
+	 * @param key the key of the per-minute counts in the store
+	 * @param environment the environment
+	 * @param interval the interval, as accepted by {@link
+	 *        #getIntervalMillis(String)}
+	 * @param nowMillis the end of the interval, in milliseconds since the
+	 *        epoch
+	 * @param settleMinutes the number of most recent complete minutes which
+	 *        are never cached
+	 * @throws IllegalArgumentException if the interval is not supported
+	 */
+	public SlidingWindowCounter(
+		StateStore stateStore, String key, String environment, String interval,
+		long nowMillis, int settleMinutes) {
+
+		long intervalMillis = getIntervalMillis(interval);
+
+		if (intervalMillis < 0) {
+			throw new IllegalArgumentException(
+				"Unsupported interval: " + interval);
+		}
+
+		_stateStore = stateStore;
+		_key = key;
+		_environment = environment;
+		_interval = interval;
+		_nowMillis = nowMillis;
+
+		_headFromMillis = nowMillis - intervalMillis;
+
+		_firstMinute = Math.floorDiv(
+			_headFromMillis + _MINUTE_MILLIS - 1, _MINUTE_MILLIS);
+
+		long nowMinute = Math.floorDiv(nowMillis, _MINUTE_MILLIS);
+
+		_cacheToMinute = Math.max(
+			_firstMinute, nowMinute - Math.max(settleMinutes, 0));
+
+		int capacity = (int)TimeUnit.MILLISECONDS.toMinutes(
+			intervalMillis);
+
+		_minuteBuckets = _getMinuteBuckets(capacity);
+
+		_fetchFromMinute = Math.min(
+			Math.max(_minuteBuckets.getCheckpointMinute(), _firstMinute),
+			_cacheToMinute);
+	}
+
+	/**
+	 * Gets the counts of every check from the response to the query of this
+	 * counter, and caches the per-minute counts which are settled. The counts
+	 * are returned even if the cache cannot be persisted.
+	 *
+	 * @param searchResponse the search response
+	 * @param lambdaLogger lambda logger
+	 * @return the number of documents in the interval per check name
+	 */
+	public Map<String, Long> getCounts(
+		JsonObject searchResponse, LambdaLogger lambdaLogger) {
+		Map<String, Long> counts = new HashMap<>();
+
+		// The counts of the filters buckets include documents outside the
+		// interval, but getting them fails if the search failed
+
+		ElasticSearchAWSUtil.getFiltersAggregationCounts(
+			searchResponse, _AGGREGATION_NAME);
+
+		JsonObject aggregationsJsonObject = searchResponse.getJsonObject(
+			"aggregations");
+
+		JsonObject aggregationJsonObject =
+			aggregationsJsonObject.getJsonObject(_AGGREGATION_NAME);
+
+		JsonObject bucketsJsonObject = aggregationJsonObject.getJsonObject(
+			"buckets");
+
+		_minuteBuckets.advance(_cacheToMinute);
+
+		bucketsJsonObject.forEach(
+			(checkName, bucketJsonValue) -> counts.put(
+				checkName,
+				_getCount(checkName, (JsonObject)bucketJsonValue)));
+
+		try {
+			_stateStore.put(_key, _minuteBuckets.toJsonObject());
+		}
+		catch (UncheckedIOException uioe) {
+			lambdaLogger.log(
+				"Could not persist the minute counts of " + _key + ": " +
+					uioe.getMessage() + "\n");
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Gets the first minute which is counted from Elasticsearch instead of
+	 * from the cache.
+	 *
+	 * @return the minute, since the epoch
+	 */
+	public long getFetchFromMinute() {
+		return _fetchFromMinute;
+	}
+
+	/**
+	 * Gets the query counting the head and the fetched minutes of every
+	 * check.
+	 *
+	 * @return the query
+	 */
+	public String getQuery() {
+		return QueryTemplateUtil.getQuery(
+			"countMinutesQueryTemplate.json", _environment, _interval,
+			_headFromMillis, _firstMinute * _MINUTE_MILLIS,
+			_fetchFromMinute * _MINUTE_MILLIS, _nowMillis);
+	}
+
+	private long _getCount(String checkName, JsonObject bucketJsonObject) {
+		JsonObject headJsonObject = bucketJsonObject.getJsonObject("head");
+
+		JsonNumber headDocCountJsonNumber = headJsonObject.getJsonNumber(
+			"doc_count");
+
+		long count = headDocCountJsonNumber.longValue();
+
+		count += _minuteBuckets.sum(
+			checkName, _firstMinute, _fetchFromMinute);
+
+		JsonObject minutesJsonObject = bucketJsonObject.getJsonObject(
+			"minutes");
+
+		JsonArray minuteBucketsJsonArray = minutesJsonObject.getJsonArray(
+			"buckets");
+
+		for (JsonValue minuteBucketJsonValue : minuteBucketsJsonArray) {
+			JsonObject minuteBucketJsonObject =
+				(JsonObject)minuteBucketJsonValue;
+
+			JsonNumber keyJsonNumber = minuteBucketJsonObject.getJsonNumber(
+				"key");
+			JsonNumber docCountJsonNumber =
+				minuteBucketJsonObject.getJsonNumber("doc_count");
+
+			long minute = Math.floorDiv(
+				keyJsonNumber.longValue(), _MINUTE_MILLIS);
+
+			// The minute of the head is already counted by the head filter
+
+			if (minute < _fetchFromMinute) {
+				continue;
+			}
+
+			count += docCountJsonNumber.longValue();
+
+			if (minute < _cacheToMinute) {
+				_minuteBuckets.put(
+					checkName, minute, docCountJsonNumber.longValue());
+			}
+		}
+
+		return count;
+	}
+
+	private MinuteBuckets _getMinuteBuckets(int capacity) {
+		JsonObject jsonObject = _stateStore.get(_key);
+
+		if (jsonObject != null) {
+			try {
+				MinuteBuckets minuteBuckets = MinuteBuckets.fromJsonObject(
+					jsonObject);
+
+				if ((minuteBuckets.getCapacity() == capacity) &&
+					(minuteBuckets.getCheckpointMinute() <= _cacheToMinute)) {
+
+					return minuteBuckets;
+				}
+			}
+			catch (RuntimeException re) {
+
+				// An unusable state is discarded, it is rebuilt from
+				// Elasticsearch
+
+			}
+		}
+
+		return new MinuteBuckets(capacity, _firstMinute);
+	}
+
+	private static final String _AGGREGATION_NAME = "checks";
+
+	private static final long _MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private final long _cacheToMinute;
+	private final String _environment;
+	private final long _fetchFromMinute;
+	private final long _firstMinute;
+	private final long _headFromMillis;
+	private final String _interval;
+	private final String _key;
+	private final MinuteBuckets _minuteBuckets;
+	private final long _nowMillis;
+	private final StateStore _stateStore;
+
+}
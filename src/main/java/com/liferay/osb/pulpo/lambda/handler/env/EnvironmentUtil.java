@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.env;
+
+import com.amazonaws.util.StringUtils;
+
+/**
+ * Util class to read optional configuration values from environment
+ * variables.
+ *
+ * @author Ruben Pulido
+ */
+public class EnvironmentUtil {
+
+	/**
+	 * Gets the boolean value of an environment variable.
+	 *
+	 * @param name the environment variable name
+	 * @param defaultValue the value returned if the variable is not set
+	 * @return the boolean value
+	 */
+	public static boolean getBoolean(String name, boolean defaultValue) {
+		String value = System.getenv(name);
+
+		if (StringUtils.isNullOrEmpty(value)) {
+			return defaultValue;
+		}
+
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Gets the double value of an environment variable.
+	 *
+	 * @param name the environment variable name
+	 * @param defaultValue the value returned if the variable is not set or is
+	 *        not a valid number
+	 * @return the double value
+	 */
+	public static double getDouble(String name, double defaultValue) {
+		String value = System.getenv(name);
+
+		if (StringUtils.isNullOrEmpty(value)) {
+			return defaultValue;
+		}
+
+		try {
+			return Double.parseDouble(value.trim());
+		}
+		catch (NumberFormatException nfe) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Gets the int value of an environment variable.
+	 *
+	 * @param name the environment variable name
+	 * @param defaultValue the value returned if the variable is not set or is
+	 *        not a valid number
+	 * @return the int value
+	 */
+	public static int getInt(String name, int defaultValue) {
+		return (int)getLong(name, defaultValue);
+	}
+
+	/**
+	 * Gets the long value of an environment variable.
+	 *
+	 * @param name the environment variable name
+	 * @param defaultValue the value returned if the variable is not set or is
+	 *        not a valid number
+	 * @return the long value
+	 */
+	public static long getLong(String name, long defaultValue) {
+		String value = System.getenv(name);
+
+		if (StringUtils.isNullOrEmpty(value)) {
+			return defaultValue;
+		}
+
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException nfe) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Gets the value of an environment variable.
+	 *
+	 * @param name the environment variable name
+	 * @param defaultValue the value returned if the variable is not set
+	 * @return the value
+	 */
+	public static String getString(String name, String defaultValue) {
+		String value = System.getenv(name);
+
+		if (StringUtils.isNullOrEmpty(value)) {
+			return defaultValue;
+		}
+
+		return value;
+	}
+
+}
@@ -14,13 +14,12 @@
 
 package com.liferay.osb.pulpo.lambda.handler.file;
 
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Stream;
 
 /**
@@ -31,31 +30,34 @@ public class FileUtil {
 	/**
 	 * Reads a file in the classpath and returns its content as string.
 	 *
+	 * The file is read as a stream, so it can also be read when the classpath
+	 * is a packaged jar.
+	 *
 	 * @param fileName the file name
 	 * @return the string
-	 * @throws URISyntaxException the uri syntax exception
 	 * @throws IOException        the io exception
 	 */
-	public String fileInClasspathToString(String fileName)
-		throws URISyntaxException, IOException {
-
+	public String fileInClasspathToString(String fileName) throws IOException {
 		Class<? extends FileUtil> aClass = getClass();
 
 		ClassLoader classLoader = aClass.getClassLoader();
 
-		URL fileUrl = classLoader.getResource(fileName);
-
-		URI fileUri = fileUrl.toURI();
+		InputStream inputStream = classLoader.getResourceAsStream(fileName);
 
-		Path filePath = Paths.get(fileUri);
+		if (inputStream == null) {
+			throw new FileNotFoundException(
+				"File not found in classpath: " + fileName);
+		}
 
 		StringBuilder stringBuilder = new StringBuilder();
 
-		Stream<String> lines = Files.lines(filePath);
+		try (BufferedReader bufferedReader = new BufferedReader(
+				new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
 
-		lines.forEach(line -> stringBuilder.append(line).append("\n"));
+			Stream<String> lines = bufferedReader.lines();
 
-		lines.close();
+			lines.forEach(line -> stringBuilder.append(line).append("\n"));
+		}
 
 		return stringBuilder.toString().trim();
 	}
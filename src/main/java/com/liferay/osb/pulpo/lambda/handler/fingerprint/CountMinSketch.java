@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+/**
+ * Count-Min sketch of the counts of <code>long</code> keys in fixed memory.
+ *
+ * The estimated count of a key is never lower than its real count. With a
+ * width <code>w</code> and a depth <code>d</code>, it is higher by more than
+ * <code>e / w</code> times the total count with a probability of at most
+ * <code>e^-d</code>.
+ *
+ * @author Ruben Pulido
+ */
+public class CountMinSketch {
+
+	/**
+	 * Creates an empty sketch.
+	 *
+	 * @param width the number of counters per row
+	 * @param depth the number of rows
+	 */
+	public CountMinSketch(int width, int depth) {
+		if ((width <= 0) || (depth <= 0)) {
+			throw new IllegalArgumentException(
+				"Width and depth must be positive: " + width + ", " + depth);
+		}
+
+		_width = width;
+		_depth = depth;
+
+		_counts = new long[depth][width];
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 *
+	 * @param key the key
+	 * @param count the number of occurrences
+	 */
+	public void add(long key, long count) {
+		for (int row = 0; row < _depth; row++) {
+			_counts[row][_getColumn(key, row)] += count;
+		}
+
+		_totalCount += count;
+	}
+
+	/**
+	 * Gets the estimated count of a key.
+	 *
+	 * @param key the key
+	 * @return the estimated count, never lower than the real count
+	 */
+	public long estimate(long key) {
+		long estimate = Long.MAX_VALUE;
+
+		for (int row = 0; row < _depth; row++) {
+			estimate = Math.min(estimate, _counts[row][_getColumn(key, row)]);
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	public int getDepth() {
+		return _depth;
+	}
+
+	/**
+	 * Gets the sum of the counts of all the keys.
+	 *
+	 * @return the total count
+	 */
+	public long getTotalCount() {
+		return _totalCount;
+	}
+
+	/**
+	 * Gets the number of counters per row.
+	 *
+	 * @return the number of counters per row
+	 */
+	public int getWidth() {
+		return _width;
+	}
+
+	private int _getColumn(long key, int row) {
+
+		// SplitMix64 finalizer, with a different seed per row
+
+		long hash = key + ((row + 1) * 0x9e3779b97f4a7c15L);
+
+		hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+		hash = hash ^ (hash >>> 31);
+
+		return (int)Math.floorMod(hash, (long)_width);
+	}
+
+	private final long[][] _counts;
+	private final int _depth;
+	private long _totalCount;
+	private final int _width;
+
+}
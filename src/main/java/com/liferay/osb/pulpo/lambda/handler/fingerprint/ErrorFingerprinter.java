@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+/**
+ * Computes a fingerprint of an error message which does not change with the
+ * variable parts of the message.
+ *
+ * The message is read once, character by character, without allocating any
+ * object. It is split into tokens made of letters, digits, <code>_</code> and
+ * <code>-</code>, so that the parts of dotted class names are kept apart.
+ * Every token which looks like a variable value is replaced with the same
+ * placeholder: tokens starting with a digit (numbers, IP addresses, dates,
+ * line numbers...) and tokens made only of hexadecimal digits and
+ * <code>-</code> with at least one digit (hashes, UUIDs...). Names containing
+ * a digit, like <code>log4j</code> or <code>AmazonS3Exception</code>, are
+ * kept. Runs of whitespace are replaced with a single space. The result is
+ * hashed with 64 bit FNV-1a.
+ *
+ * @author Ruben Pulido
+ */
+public class ErrorFingerprinter {
+
+	/**
+	 * Gets the fingerprint of a message.
+	 *
+	 * @param message the message
+	 * @param maxLength the maximum number of characters of the message which
+	 *        are read
+	 * @return the fingerprint
+	 */
+	public static long getFingerprint(CharSequence message, int maxLength) {
+		int length = Math.min(message.length(), maxLength);
+
+		long hash = _FNV_OFFSET_BASIS;
+		long tokenStartHash = hash;
+
+		boolean token = false;
+		boolean tokenDigit = false;
+		boolean tokenHexadecimal = false;
+		boolean variableToken = false;
+		boolean whitespace = false;
+
+		for (int i = 0; i < length; i++) {
+			char c = message.charAt(i);
+
+			if (_isTokenCharacter(c)) {
+				if (!token) {
+					token = true;
+					tokenDigit = false;
+					tokenHexadecimal = true;
+					tokenStartHash = hash;
+					variableToken = Character.isDigit(c);
+				}
+
+				whitespace = false;
+
+				if (variableToken) {
+					continue;
+				}
+
+				if (Character.isDigit(c)) {
+					tokenDigit = true;
+				}
+				else if (!_isHexadecimalCharacter(c)) {
+					tokenHexadecimal = false;
+				}
+
+				hash = _hash(hash, c);
+
+				continue;
+			}
+
+			if (token) {
+				hash = _endToken(
+					hash, tokenStartHash,
+					variableToken || (tokenDigit && tokenHexadecimal));
+
+				token = false;
+			}
+
+			if (Character.isWhitespace(c)) {
+				if (!whitespace) {
+					hash = _hash(hash, ' ');
+
+					whitespace = true;
+				}
+
+				continue;
+			}
+
+			whitespace = false;
+
+			hash = _hash(hash, c);
+		}
+
+		if (token) {
+			hash = _endToken(
+				hash, tokenStartHash,
+				variableToken || (tokenDigit && tokenHexadecimal));
+		}
+
+		return hash;
+	}
+
+	private static long _endToken(
+		long hash, long tokenStartHash, boolean variableToken) {
+
+		if (variableToken) {
+
+			// The characters of the token already hashed are replaced by the
+			// placeholder
+
+			return _hash(tokenStartHash, _VARIABLE_TOKEN_PLACEHOLDER);
+		}
+
+		return hash;
+	}
+
+	private static long _hash(long hash, char c) {
+		return (hash ^ c) * _FNV_PRIME;
+	}
+
+	private static boolean _isHexadecimalCharacter(char c) {
+		if (((c >= 'a') && (c <= 'f')) || ((c >= 'A') && (c <= 'F')) ||
+			(c == '-')) {
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private static boolean _isTokenCharacter(char c) {
+		if (Character.isLetterOrDigit(c) || (c == '_') || (c == '-')) {
+			return true;
+		}
+
+		return false;
+	}
+
+	private static final long _FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long _FNV_PRIME = 0x100000001b3L;
+
+	private static final char _VARIABLE_TOKEN_PLACEHOLDER = '\u0000';
+
+}
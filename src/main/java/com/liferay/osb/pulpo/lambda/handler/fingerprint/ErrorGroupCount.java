@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The count and the sample message of an error group. The groups are kept by
+ * the fingerprint computed when they were grouped, so that a group can be
+ * identified across runs even if its sample message is truncated.
+ *
+ * @author Ruben Pulido
+ */
+public class ErrorGroupCount {
+
+	/**
+	 * Gets the count of the error groups by sample message. The counts of
+	 * groups with the same sample message are added up.
+	 *
+	 * @param errorGroupCounts the count of every group by fingerprint
+	 * @return the count of every group by sample message
+	 */
+	public static Map<String, Long> getCountByMessagePrefix(
+		Map<Long, ErrorGroupCount> errorGroupCounts) {
+
+		Map<String, Long> countByMessagePrefix = new HashMap<>();
+
+		for (ErrorGroupCount errorGroupCount : errorGroupCounts.values()) {
+			countByMessagePrefix.merge(
+				errorGroupCount.getSampleMessage(), errorGroupCount.getCount(),
+				Long::sum);
+		}
+
+		return countByMessagePrefix;
+	}
+
+	/**
+	 * Creates the count of an error group.
+	 *
+	 * @param sampleMessage the sample message of the group
+	 * @param count the count of the group
+	 */
+	public ErrorGroupCount(String sampleMessage, long count) {
+		_sampleMessage = sampleMessage;
+		_count = count;
+	}
+
+	/**
+	 * Gets the count of the group.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return _count;
+	}
+
+	/**
+	 * Gets the sample message of the group.
+	 *
+	 * @return the sample message
+	 */
+	public String getSampleMessage() {
+		return _sampleMessage;
+	}
+
+	@Override
+	public String toString() {
+		return _sampleMessage + "=" + _count;
+	}
+
+	private final long _count;
+	private final String _sampleMessage;
+
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups error messages by their {@link ErrorFingerprinter} fingerprint in
+ * bounded memory.
+ *
+ * Every group keeps its count and a sample message, which is the prefix of
+ * the first message of the group. The sample is only built when a group is
+ * created, so adding a message of an existing group does not copy it.
+ *
+ * At most a fixed number of groups is kept, following the Space-Saving
+ * algorithm: when a message of a new group arrives and there is no room
+ * left, the group with the lowest count is replaced by the new one, which
+ * inherits its count. With <code>N</code> added messages and at most
+ * <code>K</code> groups:
+ *
+ * - The count of a group is never lower than its real count, and never
+ *   higher by more than <code>N / K</code>.
+ * - Every group with a real count higher than <code>N / K</code> is kept.
+ *
+ * A {@link CountMinSketch}, created at the first replacement, also estimates
+ * the count of every group. Both estimations are upper bounds of the real
+ * count, so the lowest one is returned. With the default sketch, the count of
+ * a group is then higher than its real count by more than
+ * <code>0.07%</code> of <code>N</code> with a probability lower than 2%.
+ *
+ * While there are no more than <code>K</code> different groups the counts
+ * are exact. The following environment variables can be used to tune it:
+ *
+ * - ERROR_FINGERPRINT_MAX_LENGTH: number of characters of a message used to
+ *   compute its fingerprint.
+ * - ERROR_GROUPS_MAX_SIZE: maximum number of groups (<code>K</code>).
+ *
+ * @author Ruben Pulido
+ */
+public class ErrorGroups {
+
+	/**
+	 * Creates empty groups.
+	 *
+	 * @param maxMessagePrefixLength the maximum length of the sample messages
+	 */
+	public ErrorGroups(int maxMessagePrefixLength) {
+		this(maxMessagePrefixLength, _MAX_FINGERPRINT_LENGTH, _MAX_SIZE);
+	}
+
+	/**
+	 * Creates empty groups.
+	 *
+	 * @param maxMessagePrefixLength the maximum length of the sample messages
+	 * @param maxFingerprintLength the maximum number of characters of a
+	 *        message used to compute its fingerprint
+	 * @param maxSize the maximum number of groups
+	 */
+	public ErrorGroups(
+		int maxMessagePrefixLength, int maxFingerprintLength, int maxSize) {
+
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException(
+				"Maximum size must be positive: " + maxSize);
+		}
+
+		_maxMessagePrefixLength = maxMessagePrefixLength;
+		_maxFingerprintLength = maxFingerprintLength;
+		_maxSize = maxSize;
+
+		_errorGroups = new HashMap<>(Math.min(maxSize, _INITIAL_CAPACITY));
+		_heap = new ErrorGroup[Math.min(maxSize, _INITIAL_CAPACITY)];
+	}
+
+	/**
+	 * Adds occurrences of a message to its group.
+	 *
+	 * @param message the message
+	 * @param count the number of occurrences
+	 */
+	public void add(String message, long count) {
+		long fingerprint = ErrorFingerprinter.getFingerprint(
+			message, _maxFingerprintLength);
+
+		_totalCount += count;
+
+		if (_countMinSketch != null) {
+			_countMinSketch.add(fingerprint, count);
+		}
+		else if ((_size == _maxSize) &&
+				 !_errorGroups.containsKey(fingerprint)) {
+
+			_countMinSketch = _createCountMinSketch();
+
+			_countMinSketch.add(fingerprint, count);
+		}
+
+		ErrorGroup errorGroup = _errorGroups.get(fingerprint);
+
+		if (errorGroup != null) {
+			errorGroup._count += count;
+
+			_siftDown(errorGroup._heapIndex);
+
+			return;
+		}
+
+		if (_size < _maxSize) {
+			errorGroup = new ErrorGroup(
+				fingerprint, _getMessagePrefix(message), count, 0);
+
+			_errorGroups.put(fingerprint, errorGroup);
+
+			_addToHeap(errorGroup);
+
+			return;
+		}
+
+		ErrorGroup minErrorGroup = _heap[0];
+
+		_errorGroups.remove(minErrorGroup._fingerprint);
+
+		errorGroup = new ErrorGroup(
+			fingerprint, _getMessagePrefix(message),
+			minErrorGroup._count + count, minErrorGroup._count);
+
+		_errorGroups.put(fingerprint, errorGroup);
+
+		errorGroup._heapIndex = 0;
+
+		_heap[0] = errorGroup;
+
+		_siftDown(0);
+	}
+
+	/**
+	 * Gets the count and the sample message of every group by its
+	 * fingerprint. The sum of the counts is not higher than the number of
+	 * added messages.
+	 *
+	 * @return the count of every group by fingerprint
+	 */
+	public Map<Long, ErrorGroupCount> getCountByFingerprint() {
+		Map<Long, ErrorGroupCount> errorGroupCounts = new HashMap<>();
+
+		for (ErrorGroup errorGroup : _errorGroups.values()) {
+			errorGroupCounts.put(
+				errorGroup._fingerprint,
+				new ErrorGroupCount(
+					errorGroup._sampleMessage, _getCount(errorGroup)));
+		}
+
+		return errorGroupCounts;
+	}
+
+	/**
+	 * Gets the count of every group by its sample message. The counts of
+	 * groups with the same sample message are added up. Their sum is not
+	 * higher than the number of added messages.
+	 *
+	 * @return the count of every group by sample message
+	 */
+	public Map<String, Long> getCountByMessagePrefix() {
+		return ErrorGroupCount.getCountByMessagePrefix(getCountByFingerprint());
+	}
+
+	/**
+	 * Gets the maximum number of occurrences by which the count of any group
+	 * may be higher than its real count.
+	 *
+	 * @return the maximum overestimation, <code>0</code> if the counts are
+	 *         exact
+	 */
+	public long getMaxOverestimation() {
+		long maxOverestimation = 0;
+
+		for (int i = 0; i < _size; i++) {
+			ErrorGroup errorGroup = _heap[i];
+
+			long minCount = errorGroup._count - errorGroup._overestimation;
+
+			maxOverestimation = Math.max(
+				maxOverestimation, _getCount(errorGroup) - minCount);
+		}
+
+		return maxOverestimation;
+	}
+
+	/**
+	 * Gets the number of added messages.
+	 *
+	 * @return the number of added messages
+	 */
+	public long getTotalCount() {
+		return _totalCount;
+	}
+
+	/**
+	 * Gets the number of groups.
+	 *
+	 * @return the number of groups
+	 */
+	public int size() {
+		return _size;
+	}
+
+	private void _addToHeap(ErrorGroup errorGroup) {
+		if (_size == _heap.length) {
+			ErrorGroup[] heap = new ErrorGroup[
+				(int)Math.min((long)_heap.length * 2, _maxSize)];
+
+			System.arraycopy(_heap, 0, heap, 0, _size);
+
+			_heap = heap;
+		}
+
+		errorGroup._heapIndex = _size;
+
+		_heap[_size] = errorGroup;
+
+		_size++;
+
+		_siftUp(errorGroup._heapIndex);
+	}
+
+	private CountMinSketch _createCountMinSketch() {
+		CountMinSketch countMinSketch = new CountMinSketch(
+			_SKETCH_WIDTH, _SKETCH_DEPTH);
+
+		// Until the first replacement the counts of the groups are exact
+
+		for (int i = 0; i < _size; i++) {
+			countMinSketch.add(_heap[i]._fingerprint, _heap[i]._count);
+		}
+
+		return countMinSketch;
+	}
+
+	private long _getCount(ErrorGroup errorGroup) {
+		if (_countMinSketch == null) {
+			return errorGroup._count;
+		}
+
+		return Math.min(
+			errorGroup._count,
+			_countMinSketch.estimate(errorGroup._fingerprint));
+	}
+
+	private String _getMessagePrefix(String message) {
+		if (message.length() > _maxMessagePrefixLength) {
+			return message.substring(0, _maxMessagePrefixLength) + " (...)";
+		}
+
+		return message;
+	}
+
+	private void _siftDown(int index) {
+		ErrorGroup errorGroup = _heap[index];
+
+		while (true) {
+			int childIndex = (index * 2) + 1;
+
+			if (childIndex >= _size) {
+				break;
+			}
+
+			if (((childIndex + 1) < _size) &&
+				(_heap[childIndex + 1]._count < _heap[childIndex]._count)) {
+
+				childIndex++;
+			}
+
+			if (errorGroup._count <= _heap[childIndex]._count) {
+				break;
+			}
+
+			_heap[index] = _heap[childIndex];
+			_heap[index]._heapIndex = index;
+
+			index = childIndex;
+		}
+
+		_heap[index] = errorGroup;
+
+		errorGroup._heapIndex = index;
+	}
+
+	private void _siftUp(int index) {
+		ErrorGroup errorGroup = _heap[index];
+
+		while (index > 0) {
+			int parentIndex = (index - 1) / 2;
+
+			if (_heap[parentIndex]._count <= errorGroup._count) {
+				break;
+			}
+
+			_heap[index] = _heap[parentIndex];
+			_heap[index]._heapIndex = index;
+
+			index = parentIndex;
+		}
+
+		_heap[index] = errorGroup;
+
+		errorGroup._heapIndex = index;
+	}
+
+	private static final int _INITIAL_CAPACITY = 64;
+
+	private static final int _MAX_FINGERPRINT_LENGTH = EnvironmentUtil.getInt(
+		"ERROR_FINGERPRINT_MAX_LENGTH", 1000);
+
+	private static final int _MAX_SIZE = EnvironmentUtil.getInt(
+		"ERROR_GROUPS_MAX_SIZE", 1000);
+
+	private static final int _SKETCH_DEPTH = 4;
+
+	private static final int _SKETCH_WIDTH = 4096;
+
+	private CountMinSketch _countMinSketch;
+	private final Map<Long, ErrorGroup> _errorGroups;
+	private ErrorGroup[] _heap;
+	private final int _maxFingerprintLength;
+	private final int _maxMessagePrefixLength;
+	private final int _maxSize;
+	private int _size;
+	private long _totalCount;
+
+	private static class ErrorGroup {
+
+		private ErrorGroup(
+			long fingerprint, String sampleMessage, long count,
+			long overestimation) {
+
+			_fingerprint = fingerprint;
+			_sampleMessage = sampleMessage;
+			_count = count;
+			_overestimation = overestimation;
+		}
+
+		private long _count;
+		private final long _fingerprint;
+		private int _heapIndex;
+		private final long _overestimation;
+		private final String _sampleMessage;
+
+	}
+
+}
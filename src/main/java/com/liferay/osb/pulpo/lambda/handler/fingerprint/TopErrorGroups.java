@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the error groups with the highest counts, so that the breakdown
+ * sent to Slack has a bounded size whatever the number of groups.
+ *
+ * The groups are ordered by descending count, and groups with the same count
+ * by ascending message. Only the first <code>N</code> groups are kept in a
+ * heap while the groups are read, so selecting them out of <code>n</code>
+ * groups takes <code>O(n log N)</code> time and <code>O(N)</code> memory.
+ *
+ * @author Ruben Pulido
+ */
+public class TopErrorGroups {
+
+	/**
+	 * Gets the ordering of the groups: descending count, then ascending
+	 * message.
+	 *
+	 * @return the comparator of the groups
+	 */
+	public static Comparator<Map.Entry<String, Long>> getComparator() {
+		return _COMPARATOR;
+	}
+
+	/**
+	 * Selects the groups with the highest counts.
+	 *
+	 * @param countByMessage the count of every group by message
+	 * @param maxSize the maximum number of selected groups
+	 * @return the selected groups
+	 */
+	public static TopErrorGroups select(
+		Map<String, Long> countByMessage, int maxSize) {
+
+		if (maxSize < 0) {
+			throw new IllegalArgumentException(
+				"Maximum size must not be negative: " + maxSize);
+		}
+
+		// The head of the heap is the lowest of the selected groups
+
+		PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(
+			Math.max(1, Math.min(countByMessage.size(), maxSize + 1)),
+			_COMPARATOR.reversed());
+
+		long remainingErrorsCount = 0;
+
+		for (Map.Entry<String, Long> entry : countByMessage.entrySet()) {
+			heap.add(entry);
+
+			if (heap.size() > maxSize) {
+				Map.Entry<String, Long> lowestEntry = heap.poll();
+
+				remainingErrorsCount += lowestEntry.getValue();
+			}
+		}
+
+		List<Map.Entry<String, Long>> entries = new ArrayList<>(heap.size());
+
+		while (!heap.isEmpty()) {
+			entries.add(heap.poll());
+		}
+
+		Collections.reverse(entries);
+
+		return new TopErrorGroups(
+			entries, countByMessage.size() - entries.size(),
+			remainingErrorsCount);
+	}
+
+	/**
+	 * Gets the selected groups, ordered by descending count.
+	 *
+	 * @return the selected groups
+	 */
+	public List<Map.Entry<String, Long>> getEntries() {
+		return _entries;
+	}
+
+	/**
+	 * Gets the number of errors of the groups that were not selected.
+	 *
+	 * @return the number of errors of the groups that were not selected
+	 */
+	public long getRemainingErrorsCount() {
+		return _remainingErrorsCount;
+	}
+
+	/**
+	 * Gets the number of groups that were not selected.
+	 *
+	 * @return the number of groups that were not selected
+	 */
+	public int getRemainingGroupsCount() {
+		return _remainingGroupsCount;
+	}
+
+	private TopErrorGroups(
+		List<Map.Entry<String, Long>> entries, int remainingGroupsCount,
+		long remainingErrorsCount) {
+
+		_entries = Collections.unmodifiableList(entries);
+		_remainingGroupsCount = remainingGroupsCount;
+		_remainingErrorsCount = remainingErrorsCount;
+	}
+
+	private static final Comparator<Map.Entry<String, Long>> _COMPARATOR =
+		Map.Entry.<String, Long>comparingByValue(
+		).reversed(
+		).thenComparing(
+			Map.Entry.comparingByKey()
+		);
+
+	private final List<Map.Entry<String, Long>> _entries;
+	private final long _remainingErrorsCount;
+	private final int _remainingGroupsCount;
+
+}
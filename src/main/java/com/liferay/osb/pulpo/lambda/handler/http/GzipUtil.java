@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Util class to compress request bodies with gzip.
+ *
+ * @author Ruben Pulido
+ */
+public class GzipUtil {
+
+	/**
+	 * Compresses the given bytes with gzip.
+	 *
+	 * @param bytes the bytes
+	 * @return the compressed bytes
+	 */
+	public static byte[] compress(byte[] bytes) {
+		ByteArrayOutputStream byteArrayOutputStream =
+			new ByteArrayOutputStream(bytes.length / 4 + 32);
+
+		try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(
+				byteArrayOutputStream)) {
+
+			gzipOutputStream.write(bytes);
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+
+		return byteArrayOutputStream.toByteArray();
+	}
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.http;
+
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.HttpResponseHandler;
+
+import java.io.IOException;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Implementation to return a JSON object read directly from the response,
+ * without materializing the body as a String.
+ *
+ * Like {@link JsonParserResponseHandler}, it closes the response itself.
+ *
+ * @author Ruben Pulido
+ */
+public class JsonObjectResponseHandler
+	implements HttpResponseHandler<AmazonWebServiceResponse<JsonObject>> {
+
+	@Override
+	public AmazonWebServiceResponse<JsonObject> handle(HttpResponse response)
+		throws IOException {
+
+		AmazonWebServiceResponse<JsonObject> awsResponse =
+			new AmazonWebServiceResponse<>();
+
+		try (JsonReader jsonReader = Json.createReader(
+				response.getContent())) {
+
+			awsResponse.setResult(jsonReader.readObject());
+		}
+		catch (JsonException je) {
+			Throwable cause = je.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+
+			throw je;
+		}
+
+		return awsResponse;
+	}
+
+	@Override
+	public boolean needsConnectionLeftOpen() {
+		return true;
+	}
+
+}
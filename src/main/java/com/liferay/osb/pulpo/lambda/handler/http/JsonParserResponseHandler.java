@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.http;
+
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.HttpResponseHandler;
+
+import java.io.IOException;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+
+/**
+ * Base implementation to extract a result from a JSON response while it is
+ * being read, without materializing the whole body as a String or as a tree
+ * of JSON objects.
+ *
+ * The handler closes the response itself, so that the SDK does not buffer it
+ * when the request has a client execution timeout.
+ *
+ * @author Ruben Pulido
+ */
+public abstract class JsonParserResponseHandler<T>
+	implements HttpResponseHandler<AmazonWebServiceResponse<T>> {
+
+	@Override
+	public AmazonWebServiceResponse<T> handle(HttpResponse response)
+		throws IOException {
+
+		AmazonWebServiceResponse<T> awsResponse =
+			new AmazonWebServiceResponse<>();
+
+		try (JsonParser jsonParser = Json.createParser(
+				response.getContent())) {
+
+			awsResponse.setResult(parse(jsonParser));
+		}
+		catch (JsonException je) {
+			Throwable cause = je.getCause();
+
+			// Errors reading the response are rethrown as they are, so that
+			// the request can be retried or reported as timed out
+
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+
+			throw je;
+		}
+
+		return awsResponse;
+	}
+
+	@Override
+	public boolean needsConnectionLeftOpen() {
+		return true;
+	}
+
+	/**
+	 * Extracts the result from the events of the parser.
+	 *
+	 * @param jsonParser the parser positioned at the start of the response
+	 * @return the result
+	 */
+	protected abstract T parse(JsonParser jsonParser);
+
+}
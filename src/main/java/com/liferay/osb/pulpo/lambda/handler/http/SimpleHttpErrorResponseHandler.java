@@ -35,7 +35,9 @@ public class SimpleHttpErrorResponseHandler implements HttpResponseHandler {
 
 			Scanner scannerWithDelimiter = scanner.useDelimiter("\\A");
 
-			errorMessage = scannerWithDelimiter.next();
+			if (scannerWithDelimiter.hasNext()) {
+				errorMessage = scannerWithDelimiter.next();
+			}
 		}
 
 		AmazonServiceException ase = new AmazonServiceException(
@@ -44,6 +46,7 @@ public class SimpleHttpErrorResponseHandler implements HttpResponseHandler {
 		ase.setStatusCode(response.getStatusCode());
 		ase.setServiceName("es");
 		ase.setErrorMessage(errorMessage);
+		ase.setHttpHeaders(response.getHeaders());
 
 		return ase;
 	}
@@ -16,10 +16,18 @@ package com.liferay.osb.pulpo.lambda.handler.slack;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.util.StringUtils;
-import com.jayway.restassured.RestAssured;
-import com.jayway.restassured.response.Response;
-import com.jayway.restassured.response.ResponseBody;
+
 import com.liferay.osb.pulpo.lambda.handler.SendMessageToSlackRequest;
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import javax.json.Json;
 import javax.json.JsonArray;
@@ -29,10 +37,51 @@ import javax.json.JsonObject;
 /**
  * Util class to send a message to a Slack channel
  *
+ * The messages are posted with a {@link SlackWebhookClient} shared by all the
+ * invocations handled by the Lambda container, through a {@link
+ * SlackDeliveryQueue} that paces the posts and keeps the messages that could
+ * not be sent in an outbox. Several messages to the same channel are posted
+ * together, as the attachments of as few Slack messages as the limits allow:
+ *
+ * - SLACK_MAX_ATTACHMENTS: maximum number of attachments of a Slack message.
+ * - SLACK_MAX_ATTACHMENTS_LENGTH: maximum number of characters of the
+ *   attachments of a Slack message. A longer single attachment is still
+ *   posted alone.
+ *
  * @author Ruben Pulido
  */
 public class SlackAWSUtil {
 
+	/**
+	 * Gets the bodies of the Slack messages that post several messages to a
+	 * channel, one attachment with its own Kibana button per message. A new
+	 * body is started whenever the next attachment would exceed any of the
+	 * limits. A body with a single message keeps the format of {@link
+	 * #sendMessageToSlack(SendMessageToSlackRequest, LambdaLogger)}.
+	 *
+	 * @param channel the channel
+	 * @param sendMessageToSlackRequests the messages
+	 * @param maxAttachments the maximum number of attachments of a body
+	 * @param maxAttachmentsLength the maximum number of characters of the
+	 *        attachments of a body
+	 * @return the bodies
+	 */
+	public static List<String> getBodyJsonStrings(
+		String channel,
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests,
+		int maxAttachments, int maxAttachmentsLength) {
+
+		List<String> bodyJsonStrings = new ArrayList<>();
+
+		_forEachBody(
+			channel, sendMessageToSlackRequests, maxAttachments,
+			maxAttachmentsLength,
+			(bodyJsonString, bodySendMessageToSlackRequests) ->
+				bodyJsonStrings.add(bodyJsonString));
+
+		return bodyJsonStrings;
+	}
+
 	/**
 	 * Send a message to Slack.
 	 *
@@ -43,33 +92,232 @@ public class SlackAWSUtil {
 		SendMessageToSlackRequest sendMessageToSlackRequest,
 		LambdaLogger lambdaLogger) {
 
-		_validateInputRequest(sendMessageToSlackRequest);
+		sendMessagesToSlack(
+			Collections.singletonList(sendMessageToSlackRequest),
+			Long.MAX_VALUE, lambdaLogger);
+	}
+
+	/**
+	 * Send several messages to Slack, posting together the messages to the
+	 * same channel of the same web hook. The messages that could not be sent
+	 * before, saved in the outbox, are sent first.
+	 *
+	 * @param sendMessageToSlackRequests input requests
+	 * @param deadlineMillis the time, in milliseconds since the epoch, after
+	 *        which no message is posted, and the messages not sent yet are
+	 *        saved in the outbox
+	 * @param lambdaLogger lambda logger
+	 */
+	public static void sendMessagesToSlack(
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests,
+		long deadlineMillis, LambdaLogger lambdaLogger) {
+
+		sendMessagesToSlack(
+			sendMessageToSlackRequests, deadlineMillis,
+			sendMessageToSlackRequest -> {
+			},
+			lambdaLogger);
+	}
+
+	/**
+	 * Send several messages to Slack, posting together the messages to the
+	 * same channel of the same web hook. The messages that could not be sent
+	 * before, saved in the outbox, are sent first.
+	 *
+	 * @param sendMessageToSlackRequests input requests
+	 * @param deadlineMillis the time, in milliseconds since the epoch, after
+	 *        which no message is posted, and the messages not sent yet are
+	 *        saved in the outbox
+	 * @param deliveredConsumer the consumer of every input request whose
+	 *        Slack message is delivered by this invocation
+	 * @param lambdaLogger lambda logger
+	 */
+	public static void sendMessagesToSlack(
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests,
+		long deadlineMillis,
+		Consumer<SendMessageToSlackRequest> deliveredConsumer,
+		LambdaLogger lambdaLogger) {
+
+		Map<String, List<SendMessageToSlackRequest>>
+			sendMessageToSlackRequestsByDestination = new LinkedHashMap<>();
+
+		for (SendMessageToSlackRequest sendMessageToSlackRequest :
+				sendMessageToSlackRequests) {
+
+			_validateInputRequest(sendMessageToSlackRequest);
+
+			String destination =
+				sendMessageToSlackRequest.getWebHookUrl() + " " +
+					sendMessageToSlackRequest.getChannel();
+
+			List<SendMessageToSlackRequest>
+				destinationSendMessageToSlackRequests =
+					sendMessageToSlackRequestsByDestination.computeIfAbsent(
+						destination, key -> new ArrayList<>());
+
+			destinationSendMessageToSlackRequests.add(
+				sendMessageToSlackRequest);
+		}
+
+		for (List<SendMessageToSlackRequest>
+				destinationSendMessageToSlackRequests :
+					sendMessageToSlackRequestsByDestination.values()) {
+
+			SendMessageToSlackRequest sendMessageToSlackRequest =
+				destinationSendMessageToSlackRequests.get(0);
+
+			String url = sendMessageToSlackRequest.getWebHookUrl();
+
+			List<String> bodyJsonStrings = new ArrayList<>();
 
-		String bodyJsonString = _getBodyJsonString(
-			sendMessageToSlackRequest.getChannel(),
-			sendMessageToSlackRequest.getMessage(),
-			sendMessageToSlackRequest.getButtonUrl());
+			_forEachBody(
+				sendMessageToSlackRequest.getChannel(),
+				destinationSendMessageToSlackRequests, _MAX_ATTACHMENTS,
+				_MAX_ATTACHMENTS_LENGTH,
+				(bodyJsonString, bodySendMessageToSlackRequests) -> {
+					bodyJsonStrings.add(bodyJsonString);
 
-		String url =
-			sendMessageToSlackRequest.getWebHookUrl();
+					_slackDeliveryQueue.add(
+						url, bodyJsonString,
+						() -> bodySendMessageToSlackRequests.forEach(
+							deliveredConsumer));
+				});
 
-		RestAssured.baseURI = url;
+			lambdaLogger.log(
+				"Posting " + destinationSendMessageToSlackRequests.size() +
+					" messages in " + bodyJsonStrings.size() +
+						" Slack messages\n");
 
-		lambdaLogger.log(String.format(
-			"Executing HTTP Request. URL: \n%s. Body: \n%s", url, bodyJsonString));
+			for (String bodyJsonString : bodyJsonStrings) {
+				lambdaLogger.log(
+					String.format(
+						"Executing HTTP Request. URL: \n%s. Body: \n%s", url,
+						bodyJsonString));
+			}
+		}
+
+		_slackDeliveryQueue.deliver(deadlineMillis, lambdaLogger);
+	}
+
+	/**
+	 * Closes the pooled connections of the Slack webhook client shared by all
+	 * the messages sent from this container.
+	 */
+	public static void shutdown() {
+		_slackWebhookClient.shutdown();
+	}
+
+	private static void _forEachBody(
+		String channel,
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests,
+		int maxAttachments, int maxAttachmentsLength,
+		BiConsumer<String, List<SendMessageToSlackRequest>> biConsumer) {
+
+		List<SendMessageToSlackRequest> bodySendMessageToSlackRequests =
+			new ArrayList<>();
+		List<JsonObject> attachmentJsonObjects = new ArrayList<>();
+		int attachmentsLength = 0;
+
+		for (SendMessageToSlackRequest sendMessageToSlackRequest :
+				sendMessageToSlackRequests) {
 
-		Response response = RestAssured.given()
-			.contentType("application/json")
-			.body(bodyJsonString)
-			.when()
-			.post("");
+			JsonObject attachmentJsonObject = _getAttachmentJsonObject(
+				sendMessageToSlackRequest.getMessage(),
+				sendMessageToSlackRequest.getButtonUrl());
 
-		ResponseBody responseBody = response.getBody();
+			String attachmentJsonString = attachmentJsonObject.toString();
+
+			int attachmentLength = attachmentJsonString.length();
+
+			if (!attachmentJsonObjects.isEmpty() &&
+				((attachmentJsonObjects.size() >= maxAttachments) ||
+				 ((attachmentsLength + attachmentLength) >
+					 maxAttachmentsLength))) {
+
+				biConsumer.accept(
+					_getBodyJsonString(
+						channel, bodySendMessageToSlackRequests,
+						attachmentJsonObjects),
+					bodySendMessageToSlackRequests);
+
+				bodySendMessageToSlackRequests = new ArrayList<>();
+				attachmentJsonObjects.clear();
+				attachmentsLength = 0;
+			}
+
+			bodySendMessageToSlackRequests.add(sendMessageToSlackRequest);
+			attachmentJsonObjects.add(attachmentJsonObject);
+			attachmentsLength += attachmentLength;
+		}
+
+		if (!attachmentJsonObjects.isEmpty()) {
+			biConsumer.accept(
+				_getBodyJsonString(
+					channel, bodySendMessageToSlackRequests,
+					attachmentJsonObjects),
+				bodySendMessageToSlackRequests);
+		}
+	}
 
-		String responseBodyString = responseBody.asString();
+	private static JsonObject _getAttachmentJsonObject(
+		String text, String kibanaUrl) {
 
-		lambdaLogger.log("HTTP Response body: \n" + responseBodyString + "\n");
+		JsonObject actionJsonObject = Json.createObjectBuilder(
+		).add(
+			"type", "button"
+		).add(
+			"text", "Go to Kibana"
+		).add(
+			"url", kibanaUrl
+		).build();
 
+		return Json.createObjectBuilder(
+		).add(
+			"fallback", text
+		).add(
+			"text", text
+		).add(
+			"mrkdwn_in", Json.createArrayBuilder().add("text")
+		).add(
+			"actions", Json.createArrayBuilder().add(actionJsonObject)
+		).add(
+			"color", "#F35A00"
+		).build();
+	}
+
+	private static String _getBodyJsonString(
+		String channel,
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests,
+		List<JsonObject> attachmentJsonObjects) {
+
+		if (sendMessageToSlackRequests.size() == 1) {
+			SendMessageToSlackRequest sendMessageToSlackRequest =
+				sendMessageToSlackRequests.get(0);
+
+			return _getBodyJsonString(
+				channel, sendMessageToSlackRequest.getMessage(),
+				sendMessageToSlackRequest.getButtonUrl());
+		}
+
+		JsonArrayBuilder attachmentsJsonArrayBuilder =
+			Json.createArrayBuilder();
+
+		for (JsonObject attachmentJsonObject : attachmentJsonObjects) {
+			attachmentsJsonArrayBuilder.add(attachmentJsonObject);
+		}
+
+		JsonObject bodyJsonObject = Json.createObjectBuilder(
+		).add(
+			"channel", channel
+		).add(
+			"icon_emoji", _ICON_EMOJI
+		).add(
+			"username", _USER_NAME
+		).add(
+			"attachments", attachmentsJsonArrayBuilder
+		).build();
+
+		return bodyJsonObject.toString();
 	}
 
 	private static String _getBodyJsonString(
@@ -130,6 +378,25 @@ public class SlackAWSUtil {
 
 	private static final String _ICON_EMOJI = ":octopus:";
 
+	private static final int _MAX_ATTACHMENTS = EnvironmentUtil.getInt(
+		"SLACK_MAX_ATTACHMENTS", 20);
+
+	private static final int _MAX_ATTACHMENTS_LENGTH = EnvironmentUtil.getInt(
+		"SLACK_MAX_ATTACHMENTS_LENGTH", 30000);
+
 	private static final String _USER_NAME = "pulpo-aws-to-slack";
 
+	private static final SlackWebhookClient _slackWebhookClient =
+		new SlackWebhookClient();
+
+	static {
+		Runtime runtime = Runtime.getRuntime();
+
+		runtime.addShutdownHook(new Thread(SlackAWSUtil::shutdown));
+	}
+
+	private static final SlackDeliveryQueue _slackDeliveryQueue =
+		new SlackDeliveryQueue(
+			_slackWebhookClient, new StateStore("slack-outbox.json"));
+
 }
\ No newline at end of file
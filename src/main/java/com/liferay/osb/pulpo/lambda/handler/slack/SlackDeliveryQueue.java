@@ -0,0 +1,487 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+/**
+ * Queue of the bodies to post to Slack web hooks, which delivers them
+ * without exceeding the rate limit of each web hook and without losing them
+ * when Slack can not take them in time.
+ *
+ * - The posts to every web hook are paced by a {@link TokenBucket} shared by
+ *   all the invocations handled by the Lambda container
+ *   (SLACK_RATE_LIMIT_PER_SECOND, SLACK_RATE_LIMIT_BURST).
+ * - A post rejected with 429 is retried after the time in its Retry-After
+ *   header. A post that failed with 5xx or an I/O error is retried after an
+ *   exponential backoff (SLACK_RETRY_BASE_DELAY_MILLIS). No post is attempted
+ *   more than SLACK_MAX_ATTEMPTS times, nor waits past the deadline.
+ * - No post waits for Slack past the deadline, its timeouts are shortened to
+ *   the time left.
+ * - The bodies not delivered yet are saved in an outbox file in the state
+ *   directory before the first post, and the outbox is saved again after
+ *   every delivered or dropped body, so a Lambda killed in the middle of the
+ *   delivery loses none of them. They are delivered first by the next
+ *   invocation handled by the container. The outbox keeps the latest
+ *   SLACK_OUTBOX_MAX_MESSAGES bodies, for SLACK_OUTBOX_MAX_AGE_MILLIS at
+ *   most.
+ *
+ * A body rejected for any other reason, like an invalid payload, is dropped,
+ * since posting it again would fail again.
+ *
+ * @author Ruben Pulido
+ */
+public class SlackDeliveryQueue {
+
+	/**
+	 * Creates a queue configured from the environment variables.
+	 *
+	 * @param slackWebhookClient the client used to post the bodies
+	 * @param outboxStateStore the store of the undelivered bodies
+	 */
+	public SlackDeliveryQueue(
+		SlackWebhookClient slackWebhookClient, StateStore outboxStateStore) {
+
+		this(
+			slackWebhookClient, outboxStateStore,
+			EnvironmentUtil.getInt("SLACK_MAX_ATTEMPTS", _DEFAULT_MAX_ATTEMPTS),
+			EnvironmentUtil.getLong(
+				"SLACK_RETRY_BASE_DELAY_MILLIS", _DEFAULT_BASE_DELAY_MILLIS),
+			EnvironmentUtil.getDouble(
+				"SLACK_RATE_LIMIT_PER_SECOND", _DEFAULT_RATE_LIMIT_PER_SECOND),
+			EnvironmentUtil.getInt(
+				"SLACK_RATE_LIMIT_BURST", _DEFAULT_RATE_LIMIT_BURST),
+			EnvironmentUtil.getInt(
+				"SLACK_OUTBOX_MAX_MESSAGES", _DEFAULT_OUTBOX_MAX_MESSAGES),
+			EnvironmentUtil.getLong(
+				"SLACK_OUTBOX_MAX_AGE_MILLIS", _DEFAULT_OUTBOX_MAX_AGE_MILLIS));
+	}
+
+	/**
+	 * Creates a queue.
+	 *
+	 * @param slackWebhookClient the client used to post the bodies
+	 * @param outboxStateStore the store of the undelivered bodies
+	 * @param maxAttempts the maximum number of attempts to post a body
+	 * @param baseDelayMillis the wait before the first retry of a body that
+	 *        failed with 5xx or an I/O error. It doubles on every retry.
+	 * @param rateLimitPerSecond the sustained number of posts per second to a
+	 *        web hook
+	 * @param rateLimitBurst the number of posts to a web hook that can be
+	 *        done at once
+	 * @param outboxMaxMessages the maximum number of bodies in the outbox
+	 * @param outboxMaxAgeMillis the time after which a body of the outbox is
+	 *        discarded
+	 */
+	public SlackDeliveryQueue(
+		SlackWebhookClient slackWebhookClient, StateStore outboxStateStore,
+		int maxAttempts, long baseDelayMillis, double rateLimitPerSecond,
+		int rateLimitBurst, int outboxMaxMessages, long outboxMaxAgeMillis) {
+
+		_slackWebhookClient = slackWebhookClient;
+		_outboxStateStore = outboxStateStore;
+		_maxAttempts = maxAttempts;
+		_baseDelayMillis = baseDelayMillis;
+		_rateLimitPerSecond = rateLimitPerSecond;
+		_rateLimitBurst = rateLimitBurst;
+		_outboxMaxMessages = outboxMaxMessages;
+		_outboxMaxAgeMillis = outboxMaxAgeMillis;
+	}
+
+	/**
+	 * Adds a body to post to a web hook, with a callback run when it is
+	 * delivered. The callback is not saved in the outbox, so it is not run if
+	 * the body is delivered by a later invocation.
+	 *
+	 * @param webHookUrl the URL of the web hook
+	 * @param body the JSON body
+	 * @param deliveredCallback the callback run when the body is delivered,
+	 *        or <code>null</code>
+	 */
+	public synchronized void add(
+		String webHookUrl, String body, Runnable deliveredCallback) {
+
+		_deliveries.add(
+			new Delivery(
+				webHookUrl, body, System.currentTimeMillis(),
+				deliveredCallback));
+	}
+
+	/**
+	 * Delivers the bodies of the outbox and then the added ones. The bodies
+	 * are saved in the outbox until they are delivered or dropped, so the
+	 * ones that can not be delivered before the deadline stay in it.
+	 *
+	 * @param deadlineMillis the time, in milliseconds since the epoch, after
+	 *        which no post is attempted
+	 * @param lambdaLogger lambda logger
+	 * @return the number of delivered bodies
+	 */
+	public synchronized int deliver(
+		long deadlineMillis, LambdaLogger lambdaLogger) {
+
+		List<Delivery> deliveries = _readOutbox();
+
+		boolean outboxEmpty = deliveries.isEmpty();
+
+		long minCreatedMillis =
+			System.currentTimeMillis() - _outboxMaxAgeMillis;
+
+		int outboxSize = deliveries.size();
+
+		deliveries.removeIf(
+			delivery -> delivery._createdMillis < minCreatedMillis);
+
+		if (deliveries.size() < outboxSize) {
+			lambdaLogger.log(
+				"Dropping " + (outboxSize - deliveries.size()) +
+					" expired Slack messages of the outbox\n");
+		}
+
+		if (!deliveries.isEmpty()) {
+			lambdaLogger.log(
+				"Delivering " + deliveries.size() +
+					" Slack messages from the outbox\n");
+		}
+
+		deliveries.addAll(_deliveries);
+
+		_deliveries.clear();
+
+		if (outboxEmpty && deliveries.isEmpty()) {
+			return 0;
+		}
+
+		// The bodies not delivered yet are saved before any post, and every
+		// one is removed from the outbox once it is delivered or dropped
+
+		List<Delivery> pendingDeliveries = new ArrayList<>(deliveries);
+
+		_writeOutbox(pendingDeliveries, lambdaLogger);
+
+		int deliveredCount = 0;
+
+		for (Delivery delivery : deliveries) {
+			DeliveryStatus deliveryStatus = _deliver(
+				delivery, deadlineMillis, lambdaLogger);
+
+			if (deliveryStatus == DeliveryStatus.UNDELIVERED) {
+				continue;
+			}
+
+			if (deliveryStatus == DeliveryStatus.DELIVERED) {
+				deliveredCount++;
+
+				if (delivery._deliveredCallback != null) {
+					delivery._deliveredCallback.run();
+				}
+			}
+
+			pendingDeliveries.remove(delivery);
+
+			_writeOutbox(pendingDeliveries, lambdaLogger);
+		}
+
+		if (!pendingDeliveries.isEmpty()) {
+			lambdaLogger.log(
+				"Kept " + pendingDeliveries.size() +
+					" undelivered Slack messages in the outbox\n");
+
+			int droppedCount = pendingDeliveries.size() - _outboxMaxMessages;
+
+			if (droppedCount > 0) {
+				lambdaLogger.log(
+					"Dropped the " + droppedCount + " oldest Slack " +
+						"messages of the outbox\n");
+			}
+		}
+
+		return deliveredCount;
+	}
+
+	/**
+	 * Gets the token bucket that paces the posts to a web hook, creating it
+	 * the first time.
+	 *
+	 * @param webHookUrl the URL of the web hook
+	 * @return the token bucket
+	 */
+	public TokenBucket getTokenBucket(String webHookUrl) {
+		return _tokenBuckets.computeIfAbsent(
+			webHookUrl,
+			key -> new TokenBucket(
+				_rateLimitBurst, _rateLimitPerSecond,
+				System.currentTimeMillis()));
+	}
+
+	private DeliveryStatus _deliver(
+		Delivery delivery, long deadlineMillis, LambdaLogger lambdaLogger) {
+
+		TokenBucket tokenBucket = getTokenBucket(delivery._webHookUrl);
+
+		for (int attempt = 0; attempt < _maxAttempts; attempt++) {
+			if (!_acquire(tokenBucket, deadlineMillis)) {
+				lambdaLogger.log(
+					"Not posting Slack message, the deadline is too close\n");
+
+				return DeliveryStatus.UNDELIVERED;
+			}
+
+			long timeoutMillis = deadlineMillis - System.currentTimeMillis();
+
+			if (timeoutMillis < _MIN_POST_TIMEOUT_MILLIS) {
+				lambdaLogger.log(
+					"Not posting Slack message, the deadline is too close\n");
+
+				return DeliveryStatus.UNDELIVERED;
+			}
+
+			long delayMillis = _getDelayMillis(attempt);
+
+			try {
+				long startTime = System.nanoTime();
+
+				SlackWebhookResponse slackWebhookResponse =
+					_slackWebhookClient.post(
+						delivery._webHookUrl, delivery._body, timeoutMillis);
+
+				long postTime = System.nanoTime() - startTime;
+
+				lambdaLogger.log(
+					String.format(
+						"HTTP Response status: %d in %.3f ms. Body: \n%s\n",
+						slackWebhookResponse.getStatusCode(),
+						postTime / 1000000.0, slackWebhookResponse.getBody()));
+
+				if (slackWebhookResponse.isSuccessful()) {
+					return DeliveryStatus.DELIVERED;
+				}
+
+				if (!slackWebhookResponse.isRetryable()) {
+					lambdaLogger.log(
+						"Dropping Slack message rejected by the web hook\n");
+
+					return DeliveryStatus.DROPPED;
+				}
+
+				long retryAfterMillis =
+					slackWebhookResponse.getRetryAfterMillis();
+
+				if (retryAfterMillis >= 0) {
+					delayMillis = retryAfterMillis;
+				}
+			}
+			catch (UncheckedIOException uioe) {
+				lambdaLogger.log(
+					"Could not post Slack message: " + uioe.getMessage() +
+						"\n");
+			}
+
+			// Other posts to the same web hook wait as well
+
+			tokenBucket.pauseUntil(System.currentTimeMillis() + delayMillis);
+		}
+
+		return DeliveryStatus.UNDELIVERED;
+	}
+
+	private boolean _acquire(TokenBucket tokenBucket, long deadlineMillis) {
+		while (true) {
+			long nowMillis = System.currentTimeMillis();
+
+			if (tokenBucket.tryAcquire(nowMillis)) {
+				return true;
+			}
+
+			long waitMillis = tokenBucket.getWaitMillis(nowMillis);
+
+			if ((nowMillis + waitMillis) >= deadlineMillis) {
+				return false;
+			}
+
+			try {
+				Thread.sleep(waitMillis);
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+
+				return false;
+			}
+		}
+	}
+
+	private long _getDelayMillis(int attempt) {
+		return _baseDelayMillis << Math.min(attempt, 30);
+	}
+
+	private List<Delivery> _readOutbox() {
+		List<Delivery> deliveries = new ArrayList<>();
+
+		JsonObject outboxJsonObject = _outboxStateStore.get(_OUTBOX_KEY);
+
+		if (outboxJsonObject == null) {
+			return deliveries;
+		}
+
+		JsonArray deliveriesJsonArray = outboxJsonObject.getJsonArray(
+			"deliveries");
+
+		if (deliveriesJsonArray == null) {
+			return deliveries;
+		}
+
+		for (JsonValue jsonValue : deliveriesJsonArray) {
+			if (jsonValue.getValueType() != JsonValue.ValueType.OBJECT) {
+				continue;
+			}
+
+			JsonObject deliveryJsonObject = (JsonObject)jsonValue;
+
+			String webHookUrl = deliveryJsonObject.getString(
+				"webHookUrl", null);
+			String body = deliveryJsonObject.getString("body", null);
+
+			JsonNumber createdMillisJsonNumber =
+				deliveryJsonObject.getJsonNumber("createdMillis");
+
+			if ((webHookUrl == null) || (body == null) ||
+				(createdMillisJsonNumber == null)) {
+
+				continue;
+			}
+
+			deliveries.add(
+				new Delivery(
+					webHookUrl, body, createdMillisJsonNumber.longValue(),
+					null));
+		}
+
+		return deliveries;
+	}
+
+	private JsonObject _toJsonObject(List<Delivery> deliveries) {
+		if (deliveries.isEmpty()) {
+			return null;
+		}
+
+		int fromIndex = Math.max(0, deliveries.size() - _outboxMaxMessages);
+
+		JsonArrayBuilder deliveriesJsonArrayBuilder =
+			Json.createArrayBuilder();
+
+		for (Delivery delivery :
+				deliveries.subList(fromIndex, deliveries.size())) {
+
+			deliveriesJsonArrayBuilder.add(
+				Json.createObjectBuilder(
+				).add(
+					"body", delivery._body
+				).add(
+					"createdMillis", delivery._createdMillis
+				).add(
+					"webHookUrl", delivery._webHookUrl
+				));
+		}
+
+		return Json.createObjectBuilder(
+		).add(
+			"deliveries", deliveriesJsonArrayBuilder
+		).build();
+	}
+
+	private void _writeOutbox(
+		List<Delivery> deliveries, LambdaLogger lambdaLogger) {
+
+		try {
+			_outboxStateStore.put(_OUTBOX_KEY, _toJsonObject(deliveries));
+		}
+		catch (UncheckedIOException uioe) {
+			lambdaLogger.log(
+				"Could not save the Slack outbox: " + uioe.getMessage() +
+					"\n");
+		}
+	}
+
+	private static final long _DEFAULT_BASE_DELAY_MILLIS = 500;
+
+	private static final int _DEFAULT_MAX_ATTEMPTS = 3;
+
+	private static final long _DEFAULT_OUTBOX_MAX_AGE_MILLIS =
+		24 * 60 * 60 * 1000;
+
+	private static final int _DEFAULT_OUTBOX_MAX_MESSAGES = 100;
+
+	private static final int _DEFAULT_RATE_LIMIT_BURST = 3;
+
+	private static final double _DEFAULT_RATE_LIMIT_PER_SECOND = 1;
+
+	private static final long _MIN_POST_TIMEOUT_MILLIS = 100;
+
+	private static final String _OUTBOX_KEY = "outbox";
+
+	private final long _baseDelayMillis;
+	private final List<Delivery> _deliveries = new ArrayList<>();
+	private final int _maxAttempts;
+	private final long _outboxMaxAgeMillis;
+	private final int _outboxMaxMessages;
+	private final StateStore _outboxStateStore;
+	private final int _rateLimitBurst;
+	private final double _rateLimitPerSecond;
+	private final SlackWebhookClient _slackWebhookClient;
+	private final Map<String, TokenBucket> _tokenBuckets =
+		new ConcurrentHashMap<>();
+
+	private enum DeliveryStatus {
+
+		DELIVERED, DROPPED, UNDELIVERED
+
+	}
+
+	private static class Delivery {
+
+		private Delivery(
+			String webHookUrl, String body, long createdMillis,
+			Runnable deliveredCallback) {
+
+			_webHookUrl = webHookUrl;
+			_body = body;
+			_createdMillis = createdMillis;
+			_deliveredCallback = deliveredCallback;
+		}
+
+		private final String _body;
+		private final long _createdMillis;
+		private final Runnable _deliveredCallback;
+		private final String _webHookUrl;
+
+	}
+
+}
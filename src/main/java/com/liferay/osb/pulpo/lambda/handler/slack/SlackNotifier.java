@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import com.liferay.osb.pulpo.lambda.handler.SendMessageToSlackRequest;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the messages produced while handling a request, so that they are
+ * sent to Slack together at the end, in as few web hook posts as possible.
+ *
+ * @author Ruben Pulido
+ */
+public class SlackNotifier {
+
+	/**
+	 * Adds a message to be sent.
+	 *
+	 * @param sendMessageToSlackRequest the message
+	 */
+	public void add(SendMessageToSlackRequest sendMessageToSlackRequest) {
+		add(sendMessageToSlackRequest, null);
+	}
+
+	/**
+	 * Adds a message to be sent, with a callback run when it is delivered by
+	 * {@link #send(long, LambdaLogger)}. It is not run if the message is left
+	 * in the outbox.
+	 *
+	 * @param sendMessageToSlackRequest the message
+	 * @param deliveredCallback the callback run when the message is
+	 *        delivered, or <code>null</code>
+	 */
+	public synchronized void add(
+		SendMessageToSlackRequest sendMessageToSlackRequest,
+		Runnable deliveredCallback) {
+
+		_sendMessageToSlackRequests.add(sendMessageToSlackRequest);
+
+		if (deliveredCallback != null) {
+			_deliveredCallbacks.put(
+				sendMessageToSlackRequest, deliveredCallback);
+		}
+	}
+
+	/**
+	 * Gets the messages added since they were last sent.
+	 *
+	 * @return the messages
+	 */
+	public synchronized List<SendMessageToSlackRequest>
+		getSendMessageToSlackRequests() {
+
+		return new ArrayList<>(_sendMessageToSlackRequests);
+	}
+
+	/**
+	 * Sends the added messages to Slack, after the messages of previous
+	 * invocations that could not be sent in time.
+	 *
+	 * @param deadlineMillis the time, in milliseconds since the epoch, after
+	 *        which no message is posted
+	 * @param lambdaLogger lambda logger
+	 */
+	public void send(long deadlineMillis, LambdaLogger lambdaLogger) {
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests;
+		Map<SendMessageToSlackRequest, Runnable> deliveredCallbacks;
+
+		synchronized (this) {
+			sendMessageToSlackRequests = new ArrayList<>(
+				_sendMessageToSlackRequests);
+
+			_sendMessageToSlackRequests.clear();
+
+			deliveredCallbacks = new IdentityHashMap<>(_deliveredCallbacks);
+
+			_deliveredCallbacks.clear();
+		}
+
+		SlackAWSUtil.sendMessagesToSlack(
+			sendMessageToSlackRequests, deadlineMillis,
+			sendMessageToSlackRequest -> {
+				Runnable deliveredCallback = deliveredCallbacks.get(
+					sendMessageToSlackRequest);
+
+				if (deliveredCallback != null) {
+					deliveredCallback.run();
+				}
+			},
+			lambdaLogger);
+	}
+
+	private final Map<SendMessageToSlackRequest, Runnable>
+		_deliveredCallbacks = new IdentityHashMap<>();
+	private final List<SendMessageToSlackRequest> _sendMessageToSlackRequests =
+		new ArrayList<>();
+
+}
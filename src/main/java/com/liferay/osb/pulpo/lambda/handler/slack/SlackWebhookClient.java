@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Client used to post messages to Slack incoming webhooks.
+ *
+ * It wraps a single pooled HTTP client whose keep-alive connections are meant
+ * to live as long as the Lambda container, so that consecutive messages and
+ * warm invocations reuse the connection to the webhook host instead of paying
+ * for a new TLS handshake every time. Every post builds its own request and
+ * the client holds no other mutable state, so it can be used from several
+ * threads at the same time.
+ *
+ * The pool can be tuned with the following environment variables:
+ *
+ * - SLACK_MAX_CONNECTIONS: maximum number of pooled connections.
+ * - SLACK_CONNECTION_MAX_IDLE_MILLIS: idle time after which a pooled
+ *   connection is discarded.
+ * - SLACK_CONNECTION_TIMEOUT_MILLIS: timeout to establish a connection.
+ * - SLACK_SOCKET_TIMEOUT_MILLIS: timeout waiting for data on an established
+ *   connection.
+ *
+ * @author Ruben Pulido
+ */
+public class SlackWebhookClient {
+
+	/**
+	 * Creates a client configured from the environment variables.
+	 */
+	public SlackWebhookClient() {
+		this(
+			EnvironmentUtil.getInt(
+				"SLACK_MAX_CONNECTIONS", _DEFAULT_MAX_CONNECTIONS),
+			EnvironmentUtil.getLong(
+				"SLACK_CONNECTION_MAX_IDLE_MILLIS",
+				_DEFAULT_CONNECTION_MAX_IDLE_MILLIS),
+			EnvironmentUtil.getInt(
+				"SLACK_CONNECTION_TIMEOUT_MILLIS",
+				_DEFAULT_CONNECTION_TIMEOUT_MILLIS),
+			EnvironmentUtil.getInt(
+				"SLACK_SOCKET_TIMEOUT_MILLIS",
+				_DEFAULT_SOCKET_TIMEOUT_MILLIS));
+	}
+
+	/**
+	 * Creates a client.
+	 *
+	 * @param maxConnections the maximum number of pooled connections
+	 * @param connectionMaxIdleMillis the idle time after which a pooled
+	 *        connection is discarded
+	 * @param connectionTimeoutMillis the timeout to establish a connection
+	 * @param socketTimeoutMillis the timeout waiting for data
+	 */
+	public SlackWebhookClient(
+		int maxConnections, long connectionMaxIdleMillis,
+		int connectionTimeoutMillis, int socketTimeoutMillis) {
+
+		PoolingHttpClientConnectionManager poolingHttpClientConnectionManager =
+			new PoolingHttpClientConnectionManager();
+
+		poolingHttpClientConnectionManager.setDefaultMaxPerRoute(
+			maxConnections);
+		poolingHttpClientConnectionManager.setMaxTotal(maxConnections);
+
+		_requestConfig = RequestConfig.custom(
+		).setConnectionRequestTimeout(
+			connectionTimeoutMillis
+		).setConnectTimeout(
+			connectionTimeoutMillis
+		).setSocketTimeout(
+			socketTimeoutMillis
+		).build();
+
+		_closeableHttpClient = HttpClients.custom(
+		).setConnectionManager(
+			poolingHttpClientConnectionManager
+		).setDefaultRequestConfig(
+			_requestConfig
+		).evictExpiredConnections(
+		).evictIdleConnections(
+			connectionMaxIdleMillis, TimeUnit.MILLISECONDS
+		).disableCookieManagement(
+		).build();
+	}
+
+	/**
+	 * Posts a JSON body to a webhook.
+	 *
+	 * @param webHookUrl the URL of the webhook
+	 * @param body the JSON body
+	 * @return the response of the webhook
+	 * @throws UncheckedIOException if the body could not be posted
+	 */
+	public SlackWebhookResponse post(String webHookUrl, String body) {
+		return post(webHookUrl, body, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Posts a JSON body to a webhook, waiting no longer than the given time
+	 * for a connection, for the connection to be established or for data. A
+	 * shorter timeout of the client is kept.
+	 *
+	 * @param webHookUrl the URL of the webhook
+	 * @param body the JSON body
+	 * @param timeoutMillis the maximum time to wait in each of those steps
+	 * @return the response of the webhook
+	 * @throws UncheckedIOException if the body could not be posted
+	 */
+	public SlackWebhookResponse post(
+		String webHookUrl, String body, long timeoutMillis) {
+
+		if (_shutdown) {
+			throw new IllegalStateException(
+				"Slack webhook client has been shut down");
+		}
+
+		HttpPost httpPost = new HttpPost(webHookUrl);
+
+		if (timeoutMillis < Integer.MAX_VALUE) {
+			httpPost.setConfig(
+				_getRequestConfig((int)Math.max(timeoutMillis, 1)));
+		}
+
+		httpPost.setEntity(
+			new StringEntity(
+				body,
+				ContentType.create(
+					"application/json", StandardCharsets.UTF_8)));
+
+		try (CloseableHttpResponse closeableHttpResponse =
+				_closeableHttpClient.execute(httpPost)) {
+
+			HttpEntity httpEntity = closeableHttpResponse.getEntity();
+
+			// Reading the whole entity releases the connection to the pool
+
+			String responseBody = null;
+
+			if (httpEntity != null) {
+				responseBody = EntityUtils.toString(
+					httpEntity, StandardCharsets.UTF_8);
+			}
+
+			StatusLine statusLine = closeableHttpResponse.getStatusLine();
+
+			return new SlackWebhookResponse(
+				statusLine.getStatusCode(), responseBody,
+				_getRetryAfterMillis(
+					closeableHttpResponse.getFirstHeader("Retry-After")));
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(
+				"Unable to post message to Slack webhook", ioe);
+		}
+	}
+
+	/**
+	 * Closes all the pooled connections. The client can not be used after
+	 * calling this method.
+	 */
+	public synchronized void shutdown() {
+		if (_shutdown) {
+			return;
+		}
+
+		_shutdown = true;
+
+		try {
+			_closeableHttpClient.close();
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	private int _getMinTimeoutMillis(int timeoutMillis1, int timeoutMillis2) {
+
+		// A timeout of 0 or less waits forever
+
+		if (timeoutMillis1 <= 0) {
+			return timeoutMillis2;
+		}
+
+		return Math.min(timeoutMillis1, timeoutMillis2);
+	}
+
+	private RequestConfig _getRequestConfig(int timeoutMillis) {
+		return RequestConfig.copy(
+			_requestConfig
+		).setConnectionRequestTimeout(
+			_getMinTimeoutMillis(
+				_requestConfig.getConnectionRequestTimeout(), timeoutMillis)
+		).setConnectTimeout(
+			_getMinTimeoutMillis(
+				_requestConfig.getConnectTimeout(), timeoutMillis)
+		).setSocketTimeout(
+			_getMinTimeoutMillis(
+				_requestConfig.getSocketTimeout(), timeoutMillis)
+		).build();
+	}
+
+	private long _getRetryAfterMillis(Header header) {
+		if (header == null) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(header.getValue().trim()) * 1000;
+		}
+		catch (NumberFormatException nfe) {
+			return -1;
+		}
+	}
+
+	private static final long _DEFAULT_CONNECTION_MAX_IDLE_MILLIS = 60 * 1000;
+
+	private static final int _DEFAULT_CONNECTION_TIMEOUT_MILLIS = 2 * 1000;
+
+	private static final int _DEFAULT_MAX_CONNECTIONS = 4;
+
+	private static final int _DEFAULT_SOCKET_TIMEOUT_MILLIS = 10 * 1000;
+
+	private final CloseableHttpClient _closeableHttpClient;
+	private final RequestConfig _requestConfig;
+	private volatile boolean _shutdown;
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+/**
+ * Response of a Slack incoming webhook.
+ *
+ * @author Ruben Pulido
+ */
+public class SlackWebhookResponse {
+
+	/**
+	 * Creates a response.
+	 *
+	 * @param statusCode the HTTP status code
+	 * @param body the body, or <code>null</code> if there is no body
+	 */
+	public SlackWebhookResponse(int statusCode, String body) {
+		this(statusCode, body, -1);
+	}
+
+	/**
+	 * Creates a response.
+	 *
+	 * @param statusCode the HTTP status code
+	 * @param body the body, or <code>null</code> if there is no body
+	 * @param retryAfterMillis the time to wait before posting again to the
+	 *        web hook, or <code>-1</code> if the response does not say it
+	 */
+	public SlackWebhookResponse(
+		int statusCode, String body, long retryAfterMillis) {
+
+		_statusCode = statusCode;
+		_body = body;
+		_retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * Gets the body.
+	 *
+	 * @return the body, or <code>null</code> if there is no body
+	 */
+	public String getBody() {
+		return _body;
+	}
+
+	/**
+	 * Gets the time to wait before posting again to the web hook, from the
+	 * Retry-After header.
+	 *
+	 * @return the time to wait in milliseconds, or <code>-1</code> if the
+	 *         response does not say it
+	 */
+	public long getRetryAfterMillis() {
+		return _retryAfterMillis;
+	}
+
+	/**
+	 * Gets the HTTP status code.
+	 *
+	 * @return the HTTP status code
+	 */
+	public int getStatusCode() {
+		return _statusCode;
+	}
+
+	/**
+	 * Returns whether posting the same message again may succeed, because
+	 * the web hook is rate limited or temporarily unavailable.
+	 *
+	 * @return <code>true</code> if the status code is 429 or 5xx
+	 */
+	public boolean isRetryable() {
+		if ((_statusCode == 429) || (_statusCode >= 500)) {
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns whether the message was accepted.
+	 *
+	 * @return <code>true</code> if the status code is 2xx
+	 */
+	public boolean isSuccessful() {
+		if ((_statusCode >= 200) && (_statusCode < 300)) {
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(8);
+
+		sb.append("SlackWebhookResponse{");
+		sb.append("_body='");
+		sb.append(_body);
+		sb.append("', _retryAfterMillis=");
+		sb.append(_retryAfterMillis);
+		sb.append(", _statusCode=");
+		sb.append(_statusCode);
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	private final String _body;
+	private final long _retryAfterMillis;
+	private final int _statusCode;
+
+}
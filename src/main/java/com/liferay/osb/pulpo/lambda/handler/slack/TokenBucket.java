@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+/**
+ * Token bucket that paces the posts to a Slack web hook.
+ *
+ * The bucket holds up to a number of tokens, which are refilled at a steady
+ * rate. Every post takes a token, so short bursts are let through while the
+ * sustained rate stays below the rate limit of the web hook. When the web
+ * hook answers with a Retry-After header, the bucket is emptied and stays
+ * paused until that time.
+ *
+ * @author Ruben Pulido
+ */
+public class TokenBucket {
+
+	/**
+	 * Creates a full bucket.
+	 *
+	 * @param capacity the maximum number of tokens
+	 * @param refillPerSecond the number of tokens added every second
+	 * @param nowMillis the current time in milliseconds
+	 */
+	public TokenBucket(int capacity, double refillPerSecond, long nowMillis) {
+		if ((capacity <= 0) || (refillPerSecond <= 0)) {
+			throw new IllegalArgumentException(
+				"Capacity and refill rate must be positive: " + capacity +
+					", " + refillPerSecond);
+		}
+
+		_capacity = capacity;
+		_refillPerMillis = refillPerSecond / 1000;
+
+		_lastRefillMillis = nowMillis;
+		_tokens = capacity;
+	}
+
+	/**
+	 * Gets the time until a token is available.
+	 *
+	 * @param nowMillis the current time in milliseconds
+	 * @return the time to wait in milliseconds, <code>0</code> if a token is
+	 *         available
+	 */
+	public synchronized long getWaitMillis(long nowMillis) {
+		_refill(nowMillis);
+
+		if (nowMillis < _pausedUntilMillis) {
+			return _pausedUntilMillis - nowMillis;
+		}
+
+		if (_tokens >= 1) {
+			return 0;
+		}
+
+		return (long)Math.ceil((1 - _tokens) / _refillPerMillis);
+	}
+
+	/**
+	 * Empties the bucket and pauses it until the given time.
+	 *
+	 * @param untilMillis the time in milliseconds until which no token is
+	 *        available
+	 */
+	public synchronized void pauseUntil(long untilMillis) {
+		_tokens = 0;
+
+		_pausedUntilMillis = Math.max(_pausedUntilMillis, untilMillis);
+		_lastRefillMillis = Math.max(_lastRefillMillis, _pausedUntilMillis);
+	}
+
+	/**
+	 * Takes a token if there is one available.
+	 *
+	 * @param nowMillis the current time in milliseconds
+	 * @return <code>true</code> if a token was taken
+	 */
+	public synchronized boolean tryAcquire(long nowMillis) {
+		if (getWaitMillis(nowMillis) > 0) {
+			return false;
+		}
+
+		_tokens--;
+
+		return true;
+	}
+
+	private void _refill(long nowMillis) {
+		if (nowMillis <= _lastRefillMillis) {
+			return;
+		}
+
+		_tokens = Math.min(
+			_capacity,
+			_tokens + ((nowMillis - _lastRefillMillis) * _refillPerMillis));
+
+		_lastRefillMillis = nowMillis;
+	}
+
+	private final int _capacity;
+	private long _lastRefillMillis;
+	private long _pausedUntilMillis;
+	private final double _refillPerMillis;
+	private double _tokens;
+
+}
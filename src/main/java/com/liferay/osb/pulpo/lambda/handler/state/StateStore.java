@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.osb.pulpo.lambda.handler.state;
+
+import com.liferay.osb.pulpo.lambda.handler.env.EnvironmentUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * Small key-value store persisted as a JSON file in the local disk of the
+ * Lambda container.
+ *
+ * The file lives in the directory set in the STATE_DIR environment variable
+ * (by default, a directory in /tmp), so the state survives across the warm
+ * invocations of a container and is lost, like any other cache, when the
+ * container is recycled.
+ *
+ * The file is read once and then kept in memory. Every update rewrites it
+ * through a temporary file which is atomically moved over the previous one,
+ * so a Lambda frozen or killed in the middle of a write never leaves a
+ * truncated file behind.
+ *
+ * @author Ruben Pulido
+ */
+public class StateStore {
+
+	/**
+	 * Gets the directory where the state files are stored.
+	 *
+	 * @return the directory
+	 */
+	public static Path getStateDir() {
+		return Paths.get(
+			EnvironmentUtil.getString("STATE_DIR", _DEFAULT_STATE_DIR));
+	}
+
+	/**
+	 * Creates a store persisted in a file of the state directory.
+	 *
+	 * @param fileName the file name
+	 */
+	public StateStore(String fileName) {
+		this(getStateDir().resolve(fileName));
+	}
+
+	/**
+	 * Creates a store persisted in the given file.
+	 *
+	 * @param path the file
+	 */
+	public StateStore(Path path) {
+		_path = path;
+	}
+
+	/**
+	 * Gets the value stored with a key.
+	 *
+	 * @param key the key
+	 * @return the value, or <code>null</code> if there is no value
+	 */
+	public synchronized JsonObject get(String key) {
+		JsonObject stateJsonObject = _getStateJsonObject();
+
+		JsonValue jsonValue = stateJsonObject.get(key);
+
+		if ((jsonValue == null) ||
+			(jsonValue.getValueType() != JsonValue.ValueType.OBJECT)) {
+
+			return null;
+		}
+
+		return (JsonObject)jsonValue;
+	}
+
+	/**
+	 * Gets the file where the state is persisted.
+	 *
+	 * @return the file
+	 */
+	public Path getPath() {
+		return _path;
+	}
+
+	/**
+	 * Stores a value with a key and persists the store.
+	 *
+	 * @param key the key
+	 * @param value the value, or <code>null</code> to remove the key
+	 */
+	public synchronized void put(String key, JsonObject value) {
+		JsonObject stateJsonObject = _getStateJsonObject();
+
+		JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+
+		stateJsonObject.forEach(
+			(stateKey, stateValue) -> {
+				if (!stateKey.equals(key)) {
+					jsonObjectBuilder.add(stateKey, stateValue);
+				}
+			});
+
+		if (value != null) {
+			jsonObjectBuilder.add(key, value);
+		}
+
+		_stateJsonObject = jsonObjectBuilder.build();
+
+		_write(_stateJsonObject);
+	}
+
+	private JsonObject _getStateJsonObject() {
+		if (_stateJsonObject == null) {
+			_stateJsonObject = _read();
+		}
+
+		return _stateJsonObject;
+	}
+
+	private JsonObject _read() {
+		if (!Files.isRegularFile(_path)) {
+			return JsonValue.EMPTY_JSON_OBJECT;
+		}
+
+		try (Reader reader = Files.newBufferedReader(
+				_path, StandardCharsets.UTF_8);
+			JsonReader jsonReader = Json.createReader(reader)) {
+
+			return jsonReader.readObject();
+		}
+		catch (IOException | JsonException | ClassCastException e) {
+
+			// A corrupt state is discarded, it is rebuilt from Elasticsearch
+
+			return JsonValue.EMPTY_JSON_OBJECT;
+		}
+	}
+
+	private void _write(JsonObject stateJsonObject) {
+		try {
+			Path parentPath = _path.toAbsolutePath().getParent();
+
+			Files.createDirectories(parentPath);
+
+			Path tempPath = Files.createTempFile(
+				parentPath, _path.getFileName().toString(), ".tmp");
+
+			try {
+				try (Writer writer = Files.newBufferedWriter(
+						tempPath, StandardCharsets.UTF_8)) {
+
+					writer.write(stateJsonObject.toString());
+				}
+
+				Files.move(
+					tempPath, _path, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (IOException | RuntimeException e) {
+
+				// A failed write must not leave a temporary file behind on
+				// every invocation
+
+				try {
+					Files.deleteIfExists(tempPath);
+				}
+				catch (IOException ioe) {
+					e.addSuppressed(ioe);
+				}
+
+				throw e;
+			}
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(
+				"Could not write state file " + _path, ioe);
+		}
+	}
+
+	private static final String _DEFAULT_STATE_DIR =
+		"/tmp/elasticsearch-to-slack";
+
+	private final Path _path;
+	private JsonObject _stateJsonObject;
+
+}
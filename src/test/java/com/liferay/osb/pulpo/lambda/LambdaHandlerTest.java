@@ -6,14 +6,25 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent;
 import com.liferay.osb.pulpo.lambda.handler.elasticsearch.CountRequest;
+import com.liferay.osb.pulpo.lambda.handler.elasticsearch.ElasticSearchAWSUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Ruben Pulido
@@ -82,6 +93,65 @@ public class LambdaHandlerTest {
             "errors found in *prod* environment in the last *2h*"));
   }
 
+  @Test
+  public void handleRequestTestFailedErrorsCheckIsSentToSlack()
+      throws IOException {
+
+    // Given
+    System.setProperty("aws.accessKeyId", "access");
+    System.setProperty("aws.secretKey", "secret");
+
+    List<String> slackBodies = new CopyOnWriteArrayList<>();
+
+    HttpServer elasticSearchHttpServer = _startHttpServer(
+        httpExchange -> _sendResponse(
+            httpExchange,
+            _getMultiSearchResponse(_read(httpExchange.getRequestBody()))));
+    HttpServer slackHttpServer = _startHttpServer(
+        httpExchange -> {
+          slackBodies.add(_read(httpExchange.getRequestBody()));
+
+          _sendResponse(httpExchange, "ok");
+        });
+
+    try {
+      String host = _getUrl(elasticSearchHttpServer);
+
+      ElasticSearchAWSUtil.setRegion(host, "us-east-1");
+
+      LambdaHandler lambdaHandler = new LambdaHandler(
+          _getUrl(slackHttpServer) + "/hook", "#alerts");
+
+      // When
+      CountRequest inputCountRequest = new CountRequest();
+
+      inputCountRequest.setHost(host);
+      inputCountRequest.setEnvironment("prod");
+      inputCountRequest.setInterval("1h");
+
+      List<String> messages = lambdaHandler.handleRequest(
+          inputCountRequest, _getContext());
+
+      // Then
+      Assert.assertEquals(1, messages.size());
+
+      String message = messages.get(0);
+
+      Assert.assertTrue(
+          message.startsWith(
+              "*1* checks failed in *prod* environment in the last *1h*"));
+      Assert.assertTrue(message.contains("*errorsCount*"));
+      Assert.assertTrue(message.contains("Status Code: 500"));
+
+      Assert.assertEquals(1, slackBodies.size());
+      Assert.assertTrue(slackBodies.get(0).contains("checks failed"));
+    }
+    finally {
+      elasticSearchHttpServer.stop(0);
+      slackHttpServer.stop(0);
+    }
+  }
+
   private Context _getContext() {
     return new Context() {
       @Override
@@ -141,4 +211,72 @@ public class LambdaHandlerTest {
     };
   }
 
+  private String _getMultiSearchResponse(String body) {
+
+    // The log entries, errors and truncated messages counts and the errors
+    // grouping of every environment, where the errors count fails
+
+    String[] responses = {
+        "{\"hits\":{\"total\":5},\"status\":200}",
+        "{\"error\":{\"type\":\"search_phase_execution_exception\"}," +
+            "\"status\":500}",
+        "{\"hits\":{\"total\":0},\"status\":200}",
+        "{\"hits\":{\"total\":0},\"aggregations\":{\"errorGroups\":" +
+            "{\"sum_other_doc_count\":0,\"buckets\":[]}},\"status\":200}"
+    };
+
+    String[] lines = body.split("\n");
+
+    StringBuilder sb = new StringBuilder("{\"responses\":[");
+
+    for (int i = 0; i < (lines.length / 2); i++) {
+      if (i > 0) {
+        sb.append(",");
+      }
+
+      sb.append(responses[i % responses.length]);
+    }
+
+    sb.append("]}");
+
+    return sb.toString();
+  }
+
+  private String _getUrl(HttpServer httpServer) {
+    return "http://127.0.0.1:" + httpServer.getAddress().getPort();
+  }
+
+  private String _read(InputStream inputStream) throws IOException {
+    try (Scanner scanner = new Scanner(inputStream, "UTF-8")) {
+      scanner.useDelimiter("\\A");
+
+      return scanner.hasNext() ? scanner.next() : "";
+    }
+  }
+
+  private void _sendResponse(HttpExchange httpExchange, String body)
+      throws IOException {
+
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+    httpExchange.sendResponseHeaders(200, bytes.length);
+
+    try (OutputStream outputStream = httpExchange.getResponseBody()) {
+      outputStream.write(bytes);
+    }
+  }
+
+  private HttpServer _startHttpServer(HttpHandler httpHandler)
+      throws IOException {
+
+    HttpServer httpServer = HttpServer.create(
+        new InetSocketAddress("127.0.0.1", 0), 0);
+
+    httpServer.createContext("/", httpHandler);
+
+    httpServer.start();
+
+    return httpServer;
+  }
+
 }
\ No newline at end of file
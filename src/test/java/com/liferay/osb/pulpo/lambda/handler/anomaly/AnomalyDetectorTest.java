@@ -0,0 +1,114 @@
+package com.liferay.osb.pulpo.lambda.handler.anomaly;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Ruben Pulido
+ */
+public class AnomalyDetectorTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_stateDirPath = Files.createTempDirectory("state");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(_stateDirPath.resolve("baselines.json"));
+		Files.deleteIfExists(_stateDirPath);
+	}
+
+	@Test
+	public void testBaselineIsPersisted() {
+		AnomalyDetector anomalyDetector = _createAnomalyDetector();
+
+		for (int i = 0; i < 10; i++) {
+			anomalyDetector.evaluate("errorsCount", 10 + (i % 3), _logger);
+		}
+
+		EwmaBaseline ewmaBaseline = _createAnomalyDetector().getBaseline(
+			"errorsCount");
+
+		Assert.assertEquals(10, ewmaBaseline.getSamples());
+		Assert.assertEquals(11, ewmaBaseline.getMean(), 1);
+		Assert.assertTrue(ewmaBaseline.getVariance() > 0);
+	}
+
+	@Test
+	public void testOnlySignificantDeviationsAreAnomalies() {
+		AnomalyDetector anomalyDetector = _createAnomalyDetector();
+
+		for (int i = 0; i < 50; i++) {
+			anomalyDetector.evaluate("errorsCount", 20 + (i % 5), _logger);
+		}
+
+		boolean usualCountAnomaly = anomalyDetector.evaluate(
+			"errorsCount", 24, _logger);
+		boolean spikeAnomaly = anomalyDetector.evaluate(
+			"errorsCount", 60, _logger);
+
+		Assert.assertFalse(usualCountAnomaly);
+		Assert.assertTrue(spikeAnomaly);
+	}
+
+	@Test
+	public void testUnwritableBaselineIsKeptInMemory() throws IOException {
+		Path filePath = Files.createFile(_stateDirPath.resolve("file"));
+
+		try {
+			AnomalyDetector anomalyDetector = new AnomalyDetector(
+				new StateStore(filePath.resolve("baselines.json")), 0.1, 3, 5,
+				1);
+
+			List<String> logs = new ArrayList<>();
+
+			Assert.assertTrue(
+				anomalyDetector.evaluate("errorsCount", 1, logs::add));
+			Assert.assertEquals(
+				1, anomalyDetector.getBaseline("errorsCount").getSamples());
+			Assert.assertEquals(1, logs.size());
+			Assert.assertTrue(
+				logs.get(0).startsWith(
+					"Could not persist the baseline of errorsCount"));
+		}
+		finally {
+			Files.delete(filePath);
+		}
+	}
+
+	@Test
+	public void testUntrustedBaselineAlertsAnyCount() {
+		AnomalyDetector anomalyDetector = _createAnomalyDetector();
+
+		boolean firstCountAnomaly = anomalyDetector.evaluate(
+			"errorsCount", 1, _logger);
+		boolean noCountAnomaly = anomalyDetector.evaluate(
+			"errorsCount", 0, _logger);
+
+		Assert.assertTrue(firstCountAnomaly);
+		Assert.assertFalse(noCountAnomaly);
+	}
+
+	private AnomalyDetector _createAnomalyDetector() {
+		return new AnomalyDetector(
+			new StateStore(_stateDirPath.resolve("baselines.json")), 0.1, 3, 5,
+			1);
+	}
+
+	private static final LambdaLogger _logger = message -> {
+	};
+
+	private Path _stateDirPath;
+
+}
@@ -0,0 +1,165 @@
+package com.liferay.osb.pulpo.lambda.handler.check;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Ruben Pulido
+ */
+public class CheckRunnerTest {
+
+	@Before
+	public void setUp() {
+		_executorService = CheckRunner.createExecutorService("test", 2);
+	}
+
+	@After
+	public void tearDown() {
+		_executorService.shutdownNow();
+	}
+
+	@Test
+	public void testCheckNotFinishedBeforeTheDeadlineIsCancelled()
+		throws Exception {
+
+		CheckRunner checkRunner = new CheckRunner(
+			_executorService, System.currentTimeMillis() + 200, _lambdaLogger);
+
+		CountDownLatch startedCountDownLatch = new CountDownLatch(1);
+		CountDownLatch interruptedCountDownLatch = new CountDownLatch(1);
+
+		Future<Long> slowFuture = checkRunner.submit(
+			"slow",
+			() -> {
+				startedCountDownLatch.countDown();
+
+				try {
+					Thread.sleep(60000);
+				}
+				catch (InterruptedException ie) {
+					interruptedCountDownLatch.countDown();
+
+					throw ie;
+				}
+
+				return 1L;
+			});
+		Future<Long> fastFuture = checkRunner.submit("fast", () -> 2L);
+
+		Assert.assertTrue(startedCountDownLatch.await(10, TimeUnit.SECONDS));
+
+		long startTime = System.currentTimeMillis();
+
+		CheckResult<Long> slowCheckResult = checkRunner.join(
+			"slow", slowFuture);
+
+		Assert.assertTrue((System.currentTimeMillis() - startTime) < 5000);
+		Assert.assertFalse(slowCheckResult.isSuccessful());
+		Assert.assertTrue(
+			slowCheckResult.getThrowable() instanceof TimeoutException);
+		Assert.assertTrue(slowFuture.isCancelled());
+		Assert.assertTrue(
+			interruptedCountDownLatch.await(10, TimeUnit.SECONDS));
+
+		CheckResult<Long> fastCheckResult = checkRunner.join(
+			"fast", fastFuture);
+
+		Assert.assertTrue(fastCheckResult.isSuccessful());
+		Assert.assertEquals(Long.valueOf(2), fastCheckResult.getValue());
+	}
+
+	@Test
+	public void testChecksAreJoinedAfterThePassedDeadlineIfFinished()
+		throws Exception {
+
+		CheckRunner checkRunner = new CheckRunner(
+			_executorService, System.currentTimeMillis() - 1000,
+			_lambdaLogger);
+
+		Future<Long> future = checkRunner.submit("done", () -> 3L);
+
+		future.get(10, TimeUnit.SECONDS);
+
+		CheckResult<Long> checkResult = checkRunner.join("done", future);
+
+		Assert.assertTrue(checkResult.isSuccessful());
+		Assert.assertEquals(Long.valueOf(3), checkResult.getValue());
+	}
+
+	@Test
+	public void testFailedCheckDoesNotAffectTheOthers() {
+		CheckRunner checkRunner = new CheckRunner(
+			_executorService, System.currentTimeMillis() + 10000,
+			_lambdaLogger);
+
+		IllegalStateException illegalStateException =
+			new IllegalStateException();
+
+		Future<Long> failedFuture = checkRunner.submit(
+			"failed",
+			() -> {
+				throw illegalStateException;
+			});
+		Future<Long> successfulFuture = checkRunner.submit(
+			"successful", () -> 4L);
+
+		CheckResult<Long> failedCheckResult = checkRunner.join(
+			"failed", failedFuture);
+
+		Assert.assertFalse(failedCheckResult.isSuccessful());
+		Assert.assertSame(
+			illegalStateException, failedCheckResult.getThrowable());
+		Assert.assertEquals("failed", failedCheckResult.getCheckName());
+
+		CheckResult<Long> successfulCheckResult = checkRunner.join(
+			"successful", successfulFuture);
+
+		Assert.assertTrue(successfulCheckResult.isSuccessful());
+		Assert.assertEquals(Long.valueOf(4), successfulCheckResult.getValue());
+	}
+
+	@Test
+	public void testInterruptedJoinKeepsTheInterruptStatus() {
+		CheckRunner checkRunner = new CheckRunner(
+			_executorService, System.currentTimeMillis() + 10000,
+			_lambdaLogger);
+
+		Future<Long> future = checkRunner.submit(
+			"slow",
+			() -> {
+				Thread.sleep(60000);
+
+				return 5L;
+			});
+
+		Thread.currentThread().interrupt();
+
+		try {
+			CheckResult<Long> checkResult = checkRunner.join("slow", future);
+
+			Assert.assertFalse(checkResult.isSuccessful());
+			Assert.assertTrue(
+				checkResult.getThrowable() instanceof InterruptedException);
+			Assert.assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally {
+			Thread.interrupted();
+
+			future.cancel(true);
+		}
+	}
+
+	private ExecutorService _executorService;
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+
+}
@@ -0,0 +1,181 @@
+package com.liferay.osb.pulpo.lambda.handler.dedup;
+
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @author Ruben Pulido
+ */
+public class AlertDeduplicatorTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_stateDirPath = Files.createTempDirectory("state");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(_stateDirPath.resolve("sent-alerts.json"));
+		Files.deleteIfExists(_stateDirPath);
+	}
+
+	@Test
+	public void testAlertIsNotRecordedUntilItIsSent() {
+		AlertDeduplicator alertDeduplicator = _createAlertDeduplicator();
+
+		long key = _getKey(alertDeduplicator, _FINGERPRINT);
+
+		boolean newBeforeSent = alertDeduplicator.isNew(key, 10, _NOW);
+		boolean newAgainBeforeSent = alertDeduplicator.isNew(
+			key, 10, _NOW + 1);
+
+		alertDeduplicator.markSent(key, 10, _NOW + 2);
+
+		boolean newAfterSent = alertDeduplicator.isNew(key, 10, _NOW + 3);
+
+		Assert.assertTrue(newBeforeSent);
+		Assert.assertTrue(newAgainBeforeSent);
+		Assert.assertFalse(newAfterSent);
+	}
+
+	@Test
+	public void testAlertIsSentAgainAfterTtl() {
+		AlertDeduplicator alertDeduplicator = _createAlertDeduplicator();
+
+		long key = _getKey(alertDeduplicator, _FINGERPRINT);
+
+		alertDeduplicator.markSent(key, 10, _NOW);
+
+		boolean newWithinTtl = alertDeduplicator.isNew(
+			key, 10, _NOW + _TTL_MILLIS - 1);
+		boolean newAfterTtl = alertDeduplicator.isNew(
+			key, 10, _NOW + _TTL_MILLIS);
+
+		Assert.assertFalse(newWithinTtl);
+		Assert.assertTrue(newAfterTtl);
+	}
+
+	@Test
+	public void testAlertIsSentAgainWhenCountGrows() {
+		AlertDeduplicator alertDeduplicator = _createAlertDeduplicator();
+
+		long key = _getKey(alertDeduplicator, _FINGERPRINT);
+
+		alertDeduplicator.markSent(key, 10, _NOW);
+
+		boolean newWithSimilarCount = alertDeduplicator.isNew(
+			key, 19, _NOW + 1);
+		boolean newWithGrownCount = alertDeduplicator.isNew(key, 20, _NOW + 2);
+
+		Assert.assertFalse(newWithSimilarCount);
+		Assert.assertTrue(newWithGrownCount);
+	}
+
+	@Test
+	public void testKeysIncludeHostEnvironmentIntervalAndCheck() {
+		AlertDeduplicator alertDeduplicator = _createAlertDeduplicator();
+
+		long key = alertDeduplicator.getKey(
+			"host1", "prod", "1h", "errorsCount", _FINGERPRINT);
+
+		Assert.assertEquals(
+			key,
+			alertDeduplicator.getKey(
+				"host1", "prod", "1h", "errorsCount", _FINGERPRINT));
+		Assert.assertNotEquals(
+			key,
+			alertDeduplicator.getKey(
+				"host2", "prod", "1h", "errorsCount", _FINGERPRINT));
+		Assert.assertNotEquals(
+			key,
+			alertDeduplicator.getKey(
+				"host1", "pre", "1h", "errorsCount", _FINGERPRINT));
+		Assert.assertNotEquals(
+			key,
+			alertDeduplicator.getKey(
+				"host1", "prod", "1d", "errorsCount", _FINGERPRINT));
+		Assert.assertNotEquals(
+			key,
+			alertDeduplicator.getKey(
+				"host1", "prod", "1h", "truncatedMessagesCount",
+				_FINGERPRINT));
+		Assert.assertNotEquals(
+			key,
+			alertDeduplicator.getKey(
+				"host1", "prod", "1h", "errorsCount", _FINGERPRINT + 1));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedAlertsAreEvicted() {
+		AlertDeduplicator alertDeduplicator = new AlertDeduplicator(
+			_createStateStore(), _TTL_MILLIS, 2, 100);
+
+		long firstKey = _getKey(alertDeduplicator, 0);
+
+		alertDeduplicator.markSent(firstKey, 1, _NOW);
+
+		for (int i = 1; i <= 1000; i++) {
+			alertDeduplicator.markSent(
+				_getKey(alertDeduplicator, i), 1, _NOW);
+
+			// Keeps the first alert recently used
+
+			alertDeduplicator.isNew(firstKey, 1, _NOW);
+		}
+
+		Assert.assertEquals(100, alertDeduplicator.size());
+		Assert.assertFalse(alertDeduplicator.isNew(firstKey, 1, _NOW));
+		Assert.assertTrue(
+			alertDeduplicator.isNew(_getKey(alertDeduplicator, 1), 1, _NOW));
+	}
+
+	@Test
+	public void testSentAlertsArePersisted() {
+		AlertDeduplicator alertDeduplicator = _createAlertDeduplicator();
+
+		long key = _getKey(alertDeduplicator, _FINGERPRINT);
+
+		long now = System.currentTimeMillis();
+
+		alertDeduplicator.markSent(key, 10, now);
+
+		alertDeduplicator.save();
+
+		boolean newAfterReload = _createAlertDeduplicator().isNew(
+			key, 10, now + 1);
+
+		Assert.assertFalse(newAfterReload);
+	}
+
+	private AlertDeduplicator _createAlertDeduplicator() {
+		return new AlertDeduplicator(
+			_createStateStore(), _TTL_MILLIS, 2, 10000);
+	}
+
+	private StateStore _createStateStore() {
+		return new StateStore(_stateDirPath.resolve("sent-alerts.json"));
+	}
+
+	private long _getKey(
+		AlertDeduplicator alertDeduplicator, long groupFingerprint) {
+
+		return alertDeduplicator.getKey(
+			"host", "prod", "1h", "errorsCount", groupFingerprint);
+	}
+
+	private static final long _FINGERPRINT = 0x5a17e0c3b2d4f196L;
+
+	private static final long _NOW = 1532512500000L;
+
+	private static final long _TTL_MILLIS = 6 * 60 * 60 * 1000;
+
+	private Path _stateDirPath;
+
+}
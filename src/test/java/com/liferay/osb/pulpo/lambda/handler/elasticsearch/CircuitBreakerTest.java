@@ -0,0 +1,54 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Ruben Pulido
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void testFailedTrialRequestOpensCircuitAgain() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(1, 10);
+
+		circuitBreaker.recordFailure();
+
+		Thread.sleep(20);
+
+		boolean trialAllowed = circuitBreaker.allowRequest();
+		boolean concurrentRequestAllowed = circuitBreaker.allowRequest();
+
+		circuitBreaker.recordFailure();
+
+		Assert.assertTrue(trialAllowed);
+		Assert.assertFalse(concurrentRequestAllowed);
+		Assert.assertEquals(
+			CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		Assert.assertFalse(circuitBreaker.allowRequest());
+	}
+
+	@Test
+	public void testSuccessfulTrialRequestClosesCircuit() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(2, 10);
+
+		circuitBreaker.recordFailure();
+
+		Assert.assertTrue(circuitBreaker.allowRequest());
+
+		circuitBreaker.recordFailure();
+
+		Assert.assertFalse(circuitBreaker.allowRequest());
+
+		Thread.sleep(20);
+
+		Assert.assertTrue(circuitBreaker.allowRequest());
+
+		circuitBreaker.recordSuccess();
+
+		Assert.assertEquals(
+			CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		Assert.assertTrue(circuitBreaker.allowRequest());
+	}
+
+}
@@ -2,6 +2,7 @@ package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.liferay.osb.pulpo.lambda.handler.file.FileUtil;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -89,12 +90,12 @@ public class ElasticSearchAWSUtilTest {
 
 		LambdaLogger lambdaLogger = _getLambdaLogger();
 
-		Map<String, Long> errorsCountByMessagePrefix =
-			elasticSearchAWSUtil.getErrorsCountByMessagePrefix(
+		Map<Long, ErrorGroupCount> errorGroupCounts =
+			elasticSearchAWSUtil.getErrorGroupCounts(
 				host, query, 200, lambdaLogger);
 
-		Assert.assertNotNull(errorsCountByMessagePrefix);
-		Assert.assertFalse(errorsCountByMessagePrefix.isEmpty());
+		Assert.assertNotNull(errorGroupCounts);
+		Assert.assertFalse(errorGroupCounts.isEmpty());
 	}
 
 	private LambdaLogger _getLambdaLogger() {
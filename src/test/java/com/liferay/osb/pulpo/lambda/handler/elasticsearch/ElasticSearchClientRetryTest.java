@@ -0,0 +1,251 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.http.HttpMethodName;
+import com.liferay.osb.pulpo.lambda.handler.http.StringResponseHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Ruben Pulido
+ */
+public class ElasticSearchClientRetryTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_httpServer = HttpServer.create(new InetSocketAddress(0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			try (InputStream inputStream = httpExchange.getRequestBody();
+				Scanner scanner = new Scanner(
+					inputStream, StandardCharsets.UTF_8.name())) {
+
+				Scanner scannerWithDelimiter = scanner.useDelimiter("\\A");
+
+				_requestBodies.add(
+					scannerWithDelimiter.hasNext() ?
+						scannerWithDelimiter.next() : "");
+			}
+
+			Integer statusCode = _statusCodes.poll();
+
+			if (statusCode == null) {
+				statusCode = 200;
+			}
+
+			byte[] body = "{\"count\":3}".getBytes(StandardCharsets.UTF_8);
+
+			if (_retryAfter != null) {
+				httpExchange.getResponseHeaders().add(
+					"Retry-After", _retryAfter);
+			}
+
+			httpExchange.sendResponseHeaders(statusCode, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		_httpServer.start();
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testCircuitOpensAfterConsecutiveFailures() {
+		ElasticSearchClient elasticSearchClient = _createClient(0, 2);
+
+		for (int i = 0; i < 3; i++) {
+			_statusCodes.add(503);
+		}
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				_execute(elasticSearchClient, Long.MAX_VALUE);
+
+				Assert.fail();
+			}
+			catch (AmazonServiceException ase) {
+				Assert.assertEquals(503, ase.getStatusCode());
+			}
+		}
+
+		try {
+			_execute(elasticSearchClient, Long.MAX_VALUE);
+
+			Assert.fail();
+		}
+		catch (SdkClientException sce) {
+
+			Assert.assertFalse(sce instanceof AmazonServiceException);
+			Assert.assertEquals(2, _requestBodies.size());
+		}
+		finally {
+			elasticSearchClient.shutdown();
+		}
+	}
+
+	@Test
+	public void testClientErrorIsNotRetried() {
+		ElasticSearchClient elasticSearchClient = _createClient(3, 5);
+
+		_statusCodes.add(400);
+
+		try {
+			_execute(elasticSearchClient, Long.MAX_VALUE);
+
+			Assert.fail();
+		}
+		catch (AmazonServiceException ase) {
+
+			Assert.assertEquals(400, ase.getStatusCode());
+			Assert.assertEquals(1, _requestBodies.size());
+		}
+		finally {
+			elasticSearchClient.shutdown();
+		}
+	}
+
+	@Test
+	public void testRetryAfterIsNotCappedByTheBackoff() {
+		ElasticSearchRetryPolicy elasticSearchRetryPolicy =
+			new ElasticSearchRetryPolicy(3, 100, 2000);
+
+		AmazonServiceException ase = new AmazonServiceException("Throttled");
+
+		ase.setHttpHeaders(Collections.singletonMap("Retry-After", "5"));
+		ase.setStatusCode(429);
+
+		Assert.assertEquals(
+			5000, elasticSearchRetryPolicy.getDelayMillis(0, ase));
+	}
+
+	@Test
+	public void testRetryIsNotDoneAfterDeadline() {
+		ElasticSearchClient elasticSearchClient = new ElasticSearchClient(
+			ElasticSearchClient.createClientConfiguration(),
+			new ElasticSearchRetryPolicy(3, 60000, 60000), 5, 60000);
+
+		// The backoff is jittered and could end before the deadline, unlike
+		// the wait asked by the response
+
+		_retryAfter = "60";
+
+		_statusCodes.add(503);
+
+		long startTime = System.currentTimeMillis();
+
+		try {
+			_execute(elasticSearchClient, startTime + 1000);
+
+			Assert.fail();
+		}
+		catch (AmazonServiceException ase) {
+
+			Assert.assertEquals(503, ase.getStatusCode());
+			Assert.assertEquals(1, _requestBodies.size());
+			Assert.assertTrue(
+				(System.currentTimeMillis() - startTime) < 60000);
+		}
+		finally {
+			elasticSearchClient.shutdown();
+		}
+	}
+
+	@Test
+	public void testThrottledRequestIsRetriedWithSameBody() {
+		ElasticSearchClient elasticSearchClient = _createClient(3, 5);
+
+		_statusCodes.add(429);
+		_statusCodes.add(503);
+
+		String result = _execute(elasticSearchClient, Long.MAX_VALUE);
+
+		elasticSearchClient.shutdown();
+
+		Assert.assertEquals("{\"count\":3}", result);
+		Assert.assertEquals(3, _requestBodies.size());
+
+		for (String requestBody : _requestBodies) {
+			Assert.assertEquals(_QUERY, requestBody);
+		}
+
+		CircuitBreaker circuitBreaker = elasticSearchClient.getCircuitBreaker(
+			"127.0.0.1:" + _httpServer.getAddress().getPort());
+
+		Assert.assertEquals(
+			CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+	}
+
+	private ElasticSearchClient _createClient(
+		int maxRetries, int circuitBreakerFailureThreshold) {
+
+		return new ElasticSearchClient(
+			ElasticSearchClient.createClientConfiguration(),
+			new ElasticSearchRetryPolicy(maxRetries, 10, 50),
+			circuitBreakerFailureThreshold, 60000);
+	}
+
+	private String _execute(
+		ElasticSearchClient elasticSearchClient, long deadlineMillis) {
+
+		Request<Void> request = new DefaultRequest<>("es");
+
+		request.setHttpMethod(HttpMethodName.POST);
+
+		request.setEndpoint(
+			URI.create(
+				"http://127.0.0.1:" + _httpServer.getAddress().getPort()));
+
+		request.setResourcePath("_count");
+
+		request.addHeader("Content-Type", "application/json");
+		request.setContent(
+			new ByteArrayInputStream(
+				_QUERY.getBytes(StandardCharsets.UTF_8)));
+
+		Response<AmazonWebServiceResponse<String>> response =
+			elasticSearchClient.execute(
+				request, new StringResponseHandler(), deadlineMillis,
+				System.out::print);
+
+		AmazonWebServiceResponse<String> awsResponse =
+			response.getAwsResponse();
+
+		return awsResponse.getResult();
+	}
+
+	private static final String _QUERY = "{\"query\":{\"match_all\":{}}}";
+
+	private HttpServer _httpServer;
+	private final List<String> _requestBodies = new CopyOnWriteArrayList<>();
+	private volatile String _retryAfter;
+	private final Queue<Integer> _statusCodes = new ConcurrentLinkedQueue<>();
+
+}
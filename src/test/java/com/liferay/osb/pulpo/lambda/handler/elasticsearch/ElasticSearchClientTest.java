@@ -0,0 +1,216 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.liferay.osb.pulpo.lambda.handler.http.JsonObjectResponseHandler;
+import com.liferay.osb.pulpo.lambda.handler.http.StringResponseHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Ruben Pulido
+ */
+public class ElasticSearchClientTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_httpServer = HttpServer.create(new InetSocketAddress(0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			_remoteAddresses.add(httpExchange.getRemoteAddress());
+
+			byte[] body = "{\"count\":3}".getBytes(StandardCharsets.UTF_8);
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+		_httpServer.createContext("/_slow", httpExchange -> {
+			httpExchange.sendResponseHeaders(200, 0);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(
+					"{\"count\":".getBytes(StandardCharsets.UTF_8));
+				outputStream.flush();
+
+				Thread.sleep(5000);
+
+				outputStream.write("3}".getBytes(StandardCharsets.UTF_8));
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			catch (IOException ioe) {
+			}
+		});
+
+		_httpServer.setExecutor(Executors.newCachedThreadPool());
+
+		_httpServer.start();
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testConnectionIsReusedAcrossCalls() {
+		ElasticSearchClient elasticSearchClient = new ElasticSearchClient();
+
+		for (int i = 0; i < 4; i++) {
+			String result = _execute(elasticSearchClient);
+
+			Assert.assertEquals("{\"count\":3}", result);
+		}
+
+		elasticSearchClient.shutdown();
+
+		Assert.assertEquals(1, _remoteAddresses.size());
+	}
+
+	@Test
+	public void testDifferentClientsDoNotShareConnections() {
+		ElasticSearchClient elasticSearchClient1 = new ElasticSearchClient();
+		ElasticSearchClient elasticSearchClient2 = new ElasticSearchClient();
+
+		_execute(elasticSearchClient1);
+		_execute(elasticSearchClient2);
+
+		elasticSearchClient1.shutdown();
+		elasticSearchClient2.shutdown();
+
+		Assert.assertEquals(2, _remoteAddresses.size());
+	}
+
+	@Test
+	public void testConnectionIsReusedByStreamedResponsesWithADeadline() {
+		ElasticSearchClient elasticSearchClient = new ElasticSearchClient();
+
+		for (int i = 0; i < 4; i++) {
+			JsonObject jsonObject = _execute(
+				elasticSearchClient, "_count",
+				System.currentTimeMillis() + 10000);
+
+			Assert.assertEquals(3, jsonObject.getInt("count"));
+		}
+
+		elasticSearchClient.shutdown();
+
+		Assert.assertEquals(1, _remoteAddresses.size());
+	}
+
+	@Test
+	public void testRequestIsAbortedAtTheDeadline() {
+		ElasticSearchClient elasticSearchClient = new ElasticSearchClient();
+
+		long startTime = System.currentTimeMillis();
+
+		try {
+			_execute(elasticSearchClient, "_slow", startTime + 500);
+
+			Assert.fail();
+		}
+		catch (ClientExecutionTimeoutException cete) {
+			Assert.assertTrue((System.currentTimeMillis() - startTime) < 3000);
+			Assert.assertFalse(Thread.currentThread().isInterrupted());
+		}
+		finally {
+			elasticSearchClient.shutdown();
+		}
+	}
+
+	@Test(expected = ClientExecutionTimeoutException.class)
+	public void testRequestIsNotSentAfterTheDeadline() {
+		ElasticSearchClient elasticSearchClient = new ElasticSearchClient();
+
+		try {
+			_execute(
+				elasticSearchClient, "_count", System.currentTimeMillis() - 1);
+		}
+		finally {
+			elasticSearchClient.shutdown();
+
+			Assert.assertTrue(_remoteAddresses.isEmpty());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testExecuteAfterShutdown() {
+		ElasticSearchClient elasticSearchClient = new ElasticSearchClient();
+
+		elasticSearchClient.shutdown();
+
+		_execute(elasticSearchClient);
+	}
+
+	private String _execute(ElasticSearchClient elasticSearchClient) {
+		Request<Void> request = new DefaultRequest<>("es");
+
+		request.setHttpMethod(HttpMethodName.GET);
+
+		request.setEndpoint(
+			URI.create(
+				"http://127.0.0.1:" + _httpServer.getAddress().getPort()));
+
+		request.setResourcePath("_count");
+
+		Response<AmazonWebServiceResponse<String>> response =
+			elasticSearchClient.execute(request, new StringResponseHandler());
+
+		AmazonWebServiceResponse<String> awsResponse =
+			response.getAwsResponse();
+
+		return awsResponse.getResult();
+	}
+
+	private JsonObject _execute(
+		ElasticSearchClient elasticSearchClient, String resourcePath,
+		long deadlineMillis) {
+
+		Request<Void> request = new DefaultRequest<>("es");
+
+		request.setHttpMethod(HttpMethodName.GET);
+
+		request.setEndpoint(
+			URI.create(
+				"http://127.0.0.1:" + _httpServer.getAddress().getPort()));
+
+		request.setResourcePath(resourcePath);
+
+		Response<AmazonWebServiceResponse<JsonObject>> response =
+			elasticSearchClient.execute(
+				request, new JsonObjectResponseHandler(), deadlineMillis,
+				message -> {
+				});
+
+		AmazonWebServiceResponse<JsonObject> awsResponse =
+			response.getAwsResponse();
+
+		return awsResponse.getResult();
+	}
+
+	private HttpServer _httpServer;
+	private final Set<InetSocketAddress> _remoteAddresses =
+		ConcurrentHashMap.newKeySet();
+
+}
@@ -0,0 +1,74 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Ruben Pulido
+ */
+public class ElasticSearchRequestSignerTest {
+
+	@Test
+	public void testCredentialsAreResolvedAgainPeriodically()
+		throws Exception {
+
+		AtomicInteger count = new AtomicInteger();
+
+		AWSCredentialsProvider awsCredentialsProvider =
+			new AWSCredentialsProvider() {
+
+				@Override
+				public AWSCredentials getCredentials() {
+					count.incrementAndGet();
+
+					return new BasicAWSCredentials("access", "secret");
+				}
+
+				@Override
+				public void refresh() {
+				}
+
+			};
+
+		ElasticSearchRequestSigner elasticSearchRequestSigner =
+			new ElasticSearchRequestSigner(
+				awsCredentialsProvider, "us-east-1", 1000);
+
+		_sign(elasticSearchRequestSigner);
+		_sign(elasticSearchRequestSigner);
+
+		Assert.assertEquals(1, count.get());
+
+		Thread.sleep(1100);
+
+		_sign(elasticSearchRequestSigner);
+
+		Assert.assertEquals(2, count.get());
+	}
+
+	private void _sign(ElasticSearchRequestSigner elasticSearchRequestSigner) {
+		Request<Void> request = new DefaultRequest<>("es");
+
+		request.setEndpoint(URI.create("https://127.0.0.1"));
+		request.setHttpMethod(HttpMethodName.GET);
+		request.setResourcePath("_count");
+
+		elasticSearchRequestSigner.sign(request, null, _lambdaLogger);
+
+		Assert.assertTrue(request.getHeaders().containsKey("Authorization"));
+	}
+
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+
+}
@@ -0,0 +1,295 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.liferay.osb.pulpo.lambda.handler.http.GzipUtil;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Ruben Pulido
+ */
+public class GzipCompressionTest {
+
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("aws.accessKeyId", _ACCESS_KEY_ID);
+		System.setProperty("aws.secretKey", _SECRET_KEY);
+
+		_searchResponse = _getSearchResponse();
+
+		_gzipSearchResponse = GzipUtil.compress(_searchResponse);
+
+		_httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			Headers requestHeaders = httpExchange.getRequestHeaders();
+
+			byte[] requestBody = _readFully(httpExchange.getRequestBody());
+
+			_validSignature = _isValidSignature(httpExchange, requestBody);
+
+			_requestContentEncoding = requestHeaders.getFirst(
+				"Content-Encoding");
+
+			if ("gzip".equals(_requestContentEncoding)) {
+				requestBody = _readFully(
+					new GZIPInputStream(
+						new ByteArrayInputStream(requestBody)));
+			}
+
+			_requestBody = new String(requestBody, StandardCharsets.UTF_8);
+
+			byte[] body = _searchResponse;
+
+			String acceptEncoding = requestHeaders.getFirst(
+				"Accept-Encoding");
+
+			if ((acceptEncoding != null) && acceptEncoding.contains("gzip")) {
+				body = _gzipSearchResponse;
+
+				httpExchange.getResponseHeaders().add(
+					"Content-Encoding", "gzip");
+			}
+
+			_responseBytes = body.length;
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		_httpServer.start();
+
+		_host = "http://127.0.0.1:" + _httpServer.getAddress().getPort();
+
+		ElasticSearchAWSUtil.setRegion(_host, _REGION);
+	}
+
+	@After
+	public void tearDown() {
+		ElasticSearchAWSUtil.setGzipRequests(false);
+
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testCompressedRequestIsSignedAndReceivedUncompressed() {
+		ElasticSearchAWSUtil.setGzipRequests(true);
+
+		_getErrorsCountByMessagePrefix();
+
+		Assert.assertEquals("gzip", _requestContentEncoding);
+		Assert.assertEquals(_QUERY, _requestBody);
+		Assert.assertTrue(_validSignature);
+	}
+
+	@Test
+	public void testCompressedResponseIsSmallerAndSameResult() {
+		Map<String, Long> errorsCountByMessagePrefix =
+			_getErrorsCountByMessagePrefix();
+
+		Assert.assertEquals(1, errorsCountByMessagePrefix.size());
+		Assert.assertEquals(
+			Long.valueOf(_HITS),
+			errorsCountByMessagePrefix.values().iterator().next());
+		Assert.assertEquals(_gzipSearchResponse.length, _responseBytes);
+		Assert.assertTrue(_responseBytes < (_searchResponse.length / 4));
+	}
+
+	@Test
+	public void testUncompressedRequestIsSigned() {
+		_getErrorsCountByMessagePrefix();
+
+		Assert.assertNull(_requestContentEncoding);
+		Assert.assertEquals(_QUERY, _requestBody);
+		Assert.assertTrue(_validSignature);
+	}
+
+	private Map<String, Long> _getErrorsCountByMessagePrefix() {
+		return ErrorGroupCount.getCountByMessagePrefix(
+			ElasticSearchAWSUtil.getErrorGroupCounts(
+				_host, _QUERY, _MAX_MESSAGE_PREFIX_LENGTH, _lambdaLogger));
+	}
+
+	private byte[] _getSearchResponse() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("{\"hits\":{\"total\":");
+		sb.append(_HITS);
+		sb.append(",\"hits\":[");
+
+		for (int i = 0; i < _HITS; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+
+			sb.append("{\"_source\":{\"message\":\"Unable to process contact ");
+			sb.append(i * 7919);
+			sb.append("\\n");
+			sb.append(_STACK_TRACE);
+			sb.append("\"}}");
+		}
+
+		sb.append("]}}");
+
+		String searchResponse = sb.toString();
+
+		return searchResponse.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private boolean _isValidSignature(
+			HttpExchange httpExchange, byte[] requestBody)
+		throws IOException {
+
+		// Signs again what was received, which only matches the signature of
+		// the request if the body that was signed is the one that was sent
+
+		Headers requestHeaders = httpExchange.getRequestHeaders();
+
+		String authorization = requestHeaders.getFirst("Authorization");
+
+		if (authorization == null) {
+			return false;
+		}
+
+		Request<Void> request = new DefaultRequest<>("es");
+
+		URI requestURI = httpExchange.getRequestURI();
+
+		request.setContent(new ByteArrayInputStream(requestBody));
+		request.setEndpoint(URI.create(_host));
+		request.setHttpMethod(
+			HttpMethodName.fromValue(httpExchange.getRequestMethod()));
+		request.setResourcePath(requestURI.getPath());
+
+		String query = requestURI.getRawQuery();
+
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int index = parameter.indexOf('=');
+
+				request.addParameter(
+					URLDecoder.decode(parameter.substring(0, index), "UTF-8"),
+					URLDecoder.decode(parameter.substring(index + 1), "UTF-8"));
+			}
+		}
+
+		int index = authorization.indexOf("SignedHeaders=");
+
+		String signedHeaders = authorization.substring(
+			index + "SignedHeaders=".length(),
+			authorization.indexOf(',', index));
+
+		for (String signedHeader : signedHeaders.split(";")) {
+			if (!signedHeader.equals("host") &&
+				!signedHeader.equals("x-amz-date")) {
+
+				request.addHeader(
+					signedHeader, requestHeaders.getFirst(signedHeader));
+			}
+		}
+
+		AWS4Signer aws4Signer = new AWS4Signer();
+
+		aws4Signer.setOverrideDate(
+			_parseAmzDate(requestHeaders.getFirst("X-Amz-Date")));
+		aws4Signer.setRegionName(_REGION);
+		aws4Signer.setServiceName("es");
+
+		aws4Signer.sign(
+			request, new BasicAWSCredentials(_ACCESS_KEY_ID, _SECRET_KEY));
+
+		Map<String, String> headers = request.getHeaders();
+
+		return authorization.equals(headers.get("Authorization"));
+	}
+
+	private Date _parseAmzDate(String amzDate) throws IOException {
+		SimpleDateFormat simpleDateFormat = new SimpleDateFormat(
+			"yyyyMMdd'T'HHmmss'Z'");
+
+		simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		try {
+			return simpleDateFormat.parse(amzDate);
+		}
+		catch (ParseException pe) {
+			throw new IOException(pe);
+		}
+	}
+
+	private byte[] _readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream =
+			new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[8192];
+
+		int read;
+
+		while ((read = inputStream.read(buffer)) != -1) {
+			byteArrayOutputStream.write(buffer, 0, read);
+		}
+
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	private static final String _ACCESS_KEY_ID = "access";
+
+	private static final int _HITS = 1000;
+
+	private static final int _MAX_MESSAGE_PREFIX_LENGTH = 200;
+
+	private static final String _QUERY = "{\"query\":{\"match_all\":{}}}";
+
+	private static final String _REGION = "us-east-1";
+
+	private static final String _SECRET_KEY = "secret";
+
+	private static final String _STACK_TRACE =
+		"java.lang.IllegalStateException: Data source is not available\\n" +
+			"\\tat com.liferay.osb.pulpo.engine.contacts.ContactsProcessor." +
+				"process(ContactsProcessor.java:128)\\n" +
+			"\\tat java.lang.Thread.run(Thread.java:748)";
+
+	private byte[] _gzipSearchResponse;
+	private String _host;
+	private HttpServer _httpServer;
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+	private volatile String _requestBody;
+	private volatile String _requestContentEncoding;
+	private volatile int _responseBytes;
+	private byte[] _searchResponse;
+	private volatile boolean _validSignature;
+
+}
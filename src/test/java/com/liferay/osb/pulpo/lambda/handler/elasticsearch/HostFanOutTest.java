@@ -0,0 +1,357 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.LambdaHandler;
+import com.liferay.osb.pulpo.lambda.handler.check.CheckResult;
+import com.liferay.osb.pulpo.lambda.handler.check.CheckRunner;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Ruben Pulido
+ */
+public class HostFanOutTest {
+
+	@Before
+	public void setUp() {
+		System.setProperty("aws.accessKeyId", "access");
+		System.setProperty("aws.secretKey", "secret");
+
+		_executorService = CheckRunner.createExecutorService("test", 3);
+	}
+
+	@After
+	public void tearDown() {
+		ElasticSearchAWSUtil.setDeadline(Long.MAX_VALUE);
+
+		_releaseCountDownLatch.countDown();
+
+		_executorService.shutdownNow();
+
+		for (HttpServer httpServer : _httpServers) {
+			httpServer.stop(0);
+		}
+	}
+
+	@Test
+	public void testFailedHostIsSentToSlack() throws Exception {
+		String failedHost = _startHttpServer(
+			httpExchange -> {
+				_drain(httpExchange.getRequestBody());
+
+				_sendResponse(httpExchange, 500, "{\"error\":\"down\"}");
+			});
+
+		ElasticSearchAWSUtil.setRegion(failedHost, "us-east-1");
+
+		List<String> slackBodies = new CopyOnWriteArrayList<>();
+
+		String slackUrl = _startHttpServer(
+			httpExchange -> {
+				slackBodies.add(_read(httpExchange.getRequestBody()));
+
+				_sendResponse(httpExchange, 200, "ok");
+			});
+
+		CountTarget countTarget = new CountTarget();
+
+		countTarget.setEnvironment("prod");
+		countTarget.setHost(failedHost);
+
+		CountRequest countRequest = new CountRequest();
+
+		countRequest.setInterval("1h");
+		countRequest.setTargets(Collections.singletonList(countTarget));
+
+		LambdaHandler lambdaHandler = new LambdaHandler(
+			slackUrl + "/hook", "#alerts");
+
+		List<String> messages = lambdaHandler.handleRequest(
+			countRequest, _getContext());
+
+		Assert.assertEquals(1, messages.size());
+
+		String message = messages.get(0);
+
+		Assert.assertTrue(
+			message.startsWith("Could not check host *" + failedHost + "*"));
+		Assert.assertTrue(message.contains("Status Code: 500"));
+
+		Assert.assertEquals(1, slackBodies.size());
+		Assert.assertTrue(slackBodies.get(0).contains(failedHost));
+	}
+
+	@Test
+	public void testSlowHostIsCutOffAtTheDeadlineWhileTheOthersReport()
+		throws Exception {
+
+		Map<String, Callable<Map<String, CountResponse>>> callables =
+			new LinkedHashMap<>();
+
+		String slowHost = _startHost(0, true);
+
+		callables.put(slowHost, _getCallable(slowHost));
+
+		String firstHost = _startHost(10, false);
+
+		callables.put(firstHost, _getCallable(firstHost));
+
+		String secondHost = _startHost(20, false);
+
+		callables.put(secondHost, _getCallable(secondHost));
+
+		// Loads the classes of the client, so that the deadline is only spent
+		// in the requests
+
+		Callable<Map<String, CountResponse>> callable = _getCallable(
+			firstHost);
+
+		callable.call();
+
+		long deadlineMillis = System.currentTimeMillis() + 2000;
+
+		ElasticSearchAWSUtil.setDeadline(deadlineMillis);
+
+		CheckRunner checkRunner = new CheckRunner(
+			_executorService, deadlineMillis, _lambdaLogger);
+
+		long startTime = System.currentTimeMillis();
+
+		Map<String, CheckResult<Map<String, CountResponse>>> checkResults =
+			checkRunner.runAll(callables);
+
+		Assert.assertTrue((System.currentTimeMillis() - startTime) < 5000);
+
+		CheckResult<Map<String, CountResponse>> slowCheckResult =
+			checkResults.get(slowHost);
+
+		// Either the check or its request reaches the deadline first
+
+		Throwable throwable = slowCheckResult.getThrowable();
+
+		Assert.assertFalse(slowCheckResult.isSuccessful());
+		Assert.assertTrue(
+			(throwable instanceof ClientExecutionTimeoutException) ||
+			(throwable instanceof TimeoutException));
+
+		_assertLogEntriesCount(checkResults.get(firstHost), 10);
+		_assertLogEntriesCount(checkResults.get(secondHost), 20);
+
+		// The slow request is aborted at the deadline, which frees the thread
+		// of the host
+
+		Assert.assertTrue(_abortedCountDownLatch.await(5, TimeUnit.SECONDS));
+	}
+
+	private void _assertLogEntriesCount(
+		CheckResult<Map<String, CountResponse>> checkResult,
+		long logEntriesCount) {
+
+		Assert.assertTrue(checkResult.isSuccessful());
+
+		Map<String, CountResponse> countResponses = checkResult.getValue();
+
+		CountResponse countResponse = countResponses.get("prod");
+
+		Assert.assertEquals(
+			logEntriesCount, countResponse.getLogEntriesCount());
+		Assert.assertTrue(countResponse.getCheckFailures().isEmpty());
+	}
+
+	private void _drain(InputStream inputStream) throws IOException {
+		byte[] buffer = new byte[1024];
+
+		while (inputStream.read(buffer) != -1) {
+		}
+	}
+
+	private Callable<Map<String, CountResponse>> _getCallable(String host) {
+		return () -> {
+			MultiSearchCounter multiSearchCounter = new MultiSearchCounter(
+				"1h");
+
+			multiSearchCounter.addEnvironment("prod", null);
+
+			try {
+				return multiSearchCounter.getCountResponses(
+					ElasticSearchAWSUtil.multiSearch(
+						host, multiSearchCounter.getQueries(), 200,
+						_lambdaLogger),
+					searchResponse -> null);
+			}
+			catch (RuntimeException re) {
+				_abortedCountDownLatch.countDown();
+
+				throw re;
+			}
+		};
+	}
+
+	private Context _getContext() {
+		return new Context() {
+
+			@Override
+			public String getAwsRequestId() {
+				return null;
+			}
+
+			@Override
+			public ClientContext getClientContext() {
+				return null;
+			}
+
+			@Override
+			public String getFunctionName() {
+				return null;
+			}
+
+			@Override
+			public String getFunctionVersion() {
+				return null;
+			}
+
+			@Override
+			public CognitoIdentity getIdentity() {
+				return null;
+			}
+
+			@Override
+			public String getInvokedFunctionArn() {
+				return null;
+			}
+
+			@Override
+			public LambdaLogger getLogger() {
+				return _lambdaLogger;
+			}
+
+			@Override
+			public String getLogGroupName() {
+				return null;
+			}
+
+			@Override
+			public String getLogStreamName() {
+				return null;
+			}
+
+			@Override
+			public int getMemoryLimitInMB() {
+				return 512;
+			}
+
+			@Override
+			public int getRemainingTimeInMillis() {
+				return 20000;
+			}
+
+		};
+	}
+
+	private String _read(InputStream inputStream) throws IOException {
+		try (Scanner scanner = new Scanner(inputStream, "UTF-8")) {
+			scanner.useDelimiter("\\A");
+
+			return scanner.hasNext() ? scanner.next() : "";
+		}
+	}
+
+	private void _sendResponse(
+			HttpExchange httpExchange, int statusCode, String body)
+		throws IOException {
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		httpExchange.sendResponseHeaders(statusCode, bytes.length);
+
+		try (OutputStream outputStream = httpExchange.getResponseBody()) {
+			outputStream.write(bytes);
+		}
+		catch (IOException ioe) {
+		}
+	}
+
+	private String _startHost(long logEntriesCount, boolean slow)
+		throws IOException {
+
+		String host = _startHttpServer(
+			httpExchange -> {
+				_drain(httpExchange.getRequestBody());
+
+				if (slow) {
+					try {
+						_releaseCountDownLatch.await(30, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				_sendResponse(
+					httpExchange, 200,
+					"{\"responses\":[{\"hits\":{\"total\":" +
+						logEntriesCount + "},\"status\":200},{\"hits\":" +
+							"{\"total\":0},\"status\":200},{\"hits\":" +
+								"{\"total\":0},\"status\":200}]}");
+			});
+
+		ElasticSearchAWSUtil.setRegion(host, "us-east-1");
+
+		return host;
+	}
+
+	private String _startHttpServer(HttpHandler httpHandler)
+		throws IOException {
+
+		HttpServer httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		httpServer.createContext("/", httpHandler);
+
+		httpServer.setExecutor(Executors.newCachedThreadPool());
+
+		httpServer.start();
+
+		_httpServers.add(httpServer);
+
+		return "http://127.0.0.1:" + httpServer.getAddress().getPort();
+	}
+
+	private final CountDownLatch _abortedCountDownLatch = new CountDownLatch(
+		1);
+	private ExecutorService _executorService;
+	private final List<HttpServer> _httpServers = new ArrayList<>();
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+	private final CountDownLatch _releaseCountDownLatch = new CountDownLatch(
+		1);
+
+}
@@ -0,0 +1,355 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * @author Ruben Pulido
+ */
+public class MultiIntervalCounterTest {
+
+	@Test
+	public void testCountsMatchEveryIntervalCounts() {
+		long nowMillis = 1532516112345L;
+
+		List<Long> timestamps = new ArrayList<>();
+
+		Random random = new Random(42);
+
+		for (int i = 0; i < 20000; i++) {
+			timestamps.add(
+				nowMillis - (long)(random.nextDouble() * 26 * 60 * 60 * 1000));
+		}
+
+		List<String> intervals = Arrays.asList("5m", "1h", "24h");
+
+		MultiIntervalCounter multiIntervalCounter = new MultiIntervalCounter(
+			"prod", intervals, nowMillis);
+
+		Map<String, Map<String, Long>> countsByInterval =
+			multiIntervalCounter.getCounts(
+				_search(multiIntervalCounter.getQuery(), timestamps));
+
+		Assert.assertEquals(
+			5 * 60 * 1000, multiIntervalCounter.getBucketMillis());
+		Assert.assertEquals(
+			intervals, new ArrayList<>(countsByInterval.keySet()));
+
+		for (String interval : intervals) {
+			Map<String, Long> counts = countsByInterval.get(interval);
+
+			long fromMillis =
+				nowMillis - SlidingWindowCounter.getIntervalMillis(interval);
+
+			Assert.assertEquals(
+				interval,
+				Long.valueOf(_count(timestamps, fromMillis, nowMillis)),
+				counts.get("logEntries"));
+		}
+	}
+
+	@Test
+	public void testErrorsOfEveryIntervalAreGroupedByASingleQuery() {
+		long nowMillis = 1532516112345L;
+
+		MultiIntervalCounter multiIntervalCounter = new MultiIntervalCounter(
+			"prod", Arrays.asList("5m", "1h"), nowMillis);
+
+		JsonObject queryJsonObject = _readJsonObject(
+			multiIntervalCounter.getErrorsQuery("message.keyword", 50));
+
+		JsonObject aggregationJsonObject = queryJsonObject.getJsonObject(
+			"aggs"
+		).getJsonObject(
+			"intervals"
+		);
+
+		JsonObject filtersJsonObject = aggregationJsonObject.getJsonObject(
+			"filters"
+		).getJsonObject(
+			"filters"
+		);
+
+		Assert.assertEquals(2, filtersJsonObject.size());
+
+		JsonObject timestampJsonObject = filtersJsonObject.getJsonObject(
+			"5m"
+		).getJsonObject(
+			"range"
+		).getJsonObject(
+			"@timestamp"
+		);
+
+		Assert.assertEquals(
+			nowMillis - (5 * 60 * 1000),
+			timestampJsonObject.getJsonNumber("gte").longValue());
+		Assert.assertEquals(
+			nowMillis, timestampJsonObject.getJsonNumber("lte").longValue());
+
+		JsonObject termsJsonObject = aggregationJsonObject.getJsonObject(
+			"aggs"
+		).getJsonObject(
+			"errorGroups"
+		).getJsonObject(
+			"terms"
+		);
+
+		Assert.assertEquals(
+			"message.keyword", termsJsonObject.getString("field"));
+		Assert.assertEquals(50, termsJsonObject.getInt("size"));
+
+		JsonObject searchResponse = Json.createObjectBuilder(
+		).add(
+			"hits",
+			Json.createObjectBuilder(
+			).add(
+				"total", 9
+			)
+		).add(
+			"aggregations",
+			Json.createObjectBuilder(
+			).add(
+				"intervals",
+				Json.createObjectBuilder(
+				).add(
+					"buckets",
+					Json.createObjectBuilder(
+					).add(
+						"1h", _createIntervalBucket(9, 4, 3, 2)
+					).add(
+						"5m", _createIntervalBucket(2, 2, 0, 0)
+					)
+				)
+			)
+		).build();
+
+		Map<String, JsonObject> errorsSearchResponses =
+			multiIntervalCounter.getErrorsSearchResponses(searchResponse);
+
+		Assert.assertEquals(
+			Arrays.asList("5m", "1h"),
+			new ArrayList<>(errorsSearchResponses.keySet()));
+
+		Map<String, Long> expectedErrorsCountByMessagePrefix =
+			new HashMap<>();
+
+		expectedErrorsCountByMessagePrefix.put("Connection refused", 3L);
+		expectedErrorsCountByMessagePrefix.put("Timeout", 4L);
+		expectedErrorsCountByMessagePrefix.put(_OTHER_ERRORS_KEY, 2L);
+
+		Assert.assertEquals(
+			expectedErrorsCountByMessagePrefix,
+			ErrorGroupCount.getCountByMessagePrefix(
+				ElasticSearchAWSUtil.getErrorsCountByTermsAggregation(
+					errorsSearchResponses.get("1h"), "errorGroups", 200)));
+		Assert.assertEquals(
+			Collections.singletonMap("Timeout", 2L),
+			ErrorGroupCount.getCountByMessagePrefix(
+				ElasticSearchAWSUtil.getErrorsCountByTermsAggregation(
+					errorsSearchResponses.get("5m"), "errorGroups", 200)));
+	}
+
+	@Test
+	public void testIsSupported() {
+		Assert.assertTrue(
+			MultiIntervalCounter.isSupported(Arrays.asList("15m", "1d")));
+		Assert.assertFalse(
+			MultiIntervalCounter.isSupported(Arrays.asList("15m", "30s")));
+	}
+
+	@Test
+	public void testIsSupportedWithinTheMaximumBuckets() {
+		Assert.assertTrue(
+			MultiIntervalCounter.isSupported(
+				Arrays.asList("5m", "1h", "24h"), 10000));
+
+		// 3 histograms of 10081 one minute buckets
+
+		Assert.assertFalse(
+			MultiIntervalCounter.isSupported(Arrays.asList("1m", "1w"), 10000));
+		Assert.assertTrue(
+			MultiIntervalCounter.isSupported(Arrays.asList("1m", "1w"), 30243));
+		Assert.assertFalse(
+			MultiIntervalCounter.isSupported(
+				Arrays.asList("15m", "30s"), 10000));
+	}
+
+	private JsonObjectBuilder _createIntervalBucket(
+		long docCount, long timeoutsCount, long connectionsRefusedCount,
+		long otherErrorsCount) {
+
+		JsonArrayBuilder bucketsJsonArrayBuilder = Json.createArrayBuilder(
+		).add(
+			Json.createObjectBuilder(
+			).add(
+				"key", "Timeout"
+			).add(
+				"doc_count", timeoutsCount
+			)
+		);
+
+		if (connectionsRefusedCount > 0) {
+			bucketsJsonArrayBuilder.add(
+				Json.createObjectBuilder(
+				).add(
+					"key", "Connection refused"
+				).add(
+					"doc_count", connectionsRefusedCount
+				));
+		}
+
+		return Json.createObjectBuilder(
+		).add(
+			"doc_count", docCount
+		).add(
+			"errorGroups",
+			Json.createObjectBuilder(
+			).add(
+				"sum_other_doc_count", otherErrorsCount
+			).add(
+				"buckets", bucketsJsonArrayBuilder
+			)
+		);
+	}
+
+	private long _count(List<Long> timestamps, long fromMillis, long toMillis) {
+		long count = 0;
+
+		for (long timestamp : timestamps) {
+			if ((timestamp >= fromMillis) && (timestamp <= toMillis)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private JsonObject _readJsonObject(String json) {
+		JsonReader jsonReader = Json.createReader(new StringReader(json));
+
+		JsonObject jsonObject = jsonReader.readObject();
+
+		jsonReader.close();
+
+		return jsonObject;
+	}
+
+	private JsonObject _search(String query, List<Long> timestamps) {
+		JsonObject queryJsonObject = _readJsonObject(query);
+
+		JsonObject rangeJsonObject = queryJsonObject.getJsonObject(
+			"query"
+		).getJsonObject(
+			"bool"
+		).getJsonArray(
+			"must"
+		).getJsonObject(
+			0
+		).getJsonObject(
+			"range"
+		).getJsonObject(
+			"@timestamp"
+		);
+
+		JsonObject dateHistogramJsonObject = queryJsonObject.getJsonObject(
+			"aggs"
+		).getJsonObject(
+			"checks"
+		).getJsonObject(
+			"aggs"
+		).getJsonObject(
+			"histogram"
+		).getJsonObject(
+			"date_histogram"
+		);
+
+		long fromMillis = rangeJsonObject.getJsonNumber("gte").longValue();
+		long toMillis = rangeJsonObject.getJsonNumber("lte").longValue();
+
+		String interval = dateHistogramJsonObject.getString("interval");
+		String offset = dateHistogramJsonObject.getString("offset");
+
+		long bucketMillis =
+			SlidingWindowCounter.getIntervalMillis(interval);
+		long offsetMillis = Long.parseLong(
+			offset.substring(1, offset.length() - 2));
+
+		// Same rounding as Elasticsearch for fixed intervals with an offset
+
+		long docCount = 0;
+		SortedMap<Long, Long> docCounts = new TreeMap<>();
+
+		for (long timestamp : timestamps) {
+			if ((timestamp < fromMillis) || (timestamp > toMillis)) {
+				continue;
+			}
+
+			long key =
+				(Math.floorDiv(timestamp - offsetMillis, bucketMillis) *
+					bucketMillis) + offsetMillis;
+
+			docCount++;
+
+			docCounts.merge(key, 1L, Long::sum);
+		}
+
+		JsonArrayBuilder bucketsJsonArrayBuilder = Json.createArrayBuilder();
+
+		docCounts.forEach(
+			(key, bucketDocCount) -> bucketsJsonArrayBuilder.add(
+				Json.createObjectBuilder(
+				).add(
+					"key", key
+				).add(
+					"doc_count", bucketDocCount
+				)));
+
+		return Json.createObjectBuilder(
+		).add(
+			"aggregations",
+			Json.createObjectBuilder(
+			).add(
+				"checks",
+				Json.createObjectBuilder(
+				).add(
+					"buckets",
+					Json.createObjectBuilder(
+					).add(
+						"logEntries",
+						Json.createObjectBuilder(
+						).add(
+							"doc_count", docCount
+						).add(
+							"histogram",
+							Json.createObjectBuilder(
+							).add(
+								"buckets", bucketsJsonArrayBuilder
+							)
+						)
+					)
+				)
+			)
+		).build();
+	}
+
+	private static final String _OTHER_ERRORS_KEY =
+		"(errors with less frequent messages)";
+
+}
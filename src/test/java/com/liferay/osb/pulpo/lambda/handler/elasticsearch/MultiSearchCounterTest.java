@@ -0,0 +1,354 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ruben Pulido
+ */
+public class MultiSearchCounterTest {
+
+	@Test
+	public void testAggregationSearchResponsesAreSplitByEnvironment() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter(
+			"1h", true);
+
+		multiSearchCounter.addEnvironment("prod", "{\"size\":0}");
+		multiSearchCounter.addEnvironment("uat", null);
+		multiSearchCounter.addEnvironment("dev", "{\"size\":1000}");
+
+		List<String> queries = multiSearchCounter.getQueries();
+
+		Assert.assertEquals(5, queries.size());
+
+		JsonObject queryJsonObject = _readJsonObject(queries.get(0));
+
+		Assert.assertEquals(0, queryJsonObject.getInt("size"));
+
+		JsonObject aggsJsonObject = queryJsonObject.getJsonObject("aggs");
+
+		Assert.assertTrue(aggsJsonObject.containsKey("checks"));
+		Assert.assertEquals("{\"size\":0}", queries.get(1));
+		Assert.assertEquals("{\"size\":1000}", queries.get(4));
+
+		Map<String, CountResponse> countResponses =
+			multiSearchCounter.getCountResponses(
+				Arrays.asList(
+					_createAggregationSearchResponse(10, 2, 1),
+					_createSearchResponse(200),
+					_createAggregationSearchResponse(20, 0, 3),
+					_createAggregationSearchResponse(30, 4, 0),
+					_createSearchResponse(400)),
+				this::_getErrorGroupCounts);
+
+		Assert.assertEquals(
+			Arrays.asList("prod", "uat", "dev"),
+			Arrays.asList(countResponses.keySet().toArray()));
+
+		_assertCountResponse(
+			countResponses.get("prod"), 10, 2, 1,
+			Collections.singletonMap("errors", 200L));
+		_assertCountResponse(countResponses.get("uat"), 20, 0, 3, null);
+		_assertCountResponse(
+			countResponses.get("dev"), 30, 4, 0,
+			Collections.singletonMap("errors", 400L));
+	}
+
+	@Test
+	public void testCountQueriesTrackTotalHits() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter("1h");
+
+		multiSearchCounter.addEnvironment("prod", null);
+
+		List<String> queries = multiSearchCounter.getQueries();
+
+		Assert.assertEquals(3, queries.size());
+
+		for (String query : queries) {
+			JsonObject queryJsonObject = _readJsonObject(query);
+
+			Assert.assertEquals(0, queryJsonObject.getInt("size"));
+			Assert.assertTrue(queryJsonObject.getBoolean("track_total_hits"));
+		}
+	}
+
+	@Test
+	public void testFailedSearchIsReportedAsFailedCheck() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter("1h");
+
+		multiSearchCounter.addEnvironment("prod", null);
+		multiSearchCounter.addEnvironment("uat", null);
+
+		Map<String, CountResponse> countResponses =
+			multiSearchCounter.getCountResponses(
+				Arrays.asList(
+					_createSearchResponse(10), _createErrorSearchResponse(),
+					_createSearchResponse(1), _createSearchResponse(20),
+					_createSearchResponse(2), _createSearchResponse(3)),
+				searchResponse -> null);
+
+		CountResponse prodCountResponse = countResponses.get("prod");
+
+		Assert.assertEquals(10, prodCountResponse.getLogEntriesCount());
+		Assert.assertEquals(0, prodCountResponse.getErrorsCount());
+		Assert.assertEquals(1, prodCountResponse.getTruncatedMessagesCount());
+
+		Map<String, String> checkFailures =
+			prodCountResponse.getCheckFailures();
+
+		Assert.assertEquals(
+			Collections.singleton("errorsCount"), checkFailures.keySet());
+
+		CountResponse uatCountResponse = countResponses.get("uat");
+
+		Assert.assertEquals(20, uatCountResponse.getLogEntriesCount());
+		Assert.assertEquals(2, uatCountResponse.getErrorsCount());
+		Assert.assertEquals(3, uatCountResponse.getTruncatedMessagesCount());
+		Assert.assertTrue(uatCountResponse.getCheckFailures().isEmpty());
+	}
+
+	@Test
+	public void testFailedAggregationSearchFailsAllTheChecksOfItsEnvironment() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter(
+			"1h", true);
+
+		multiSearchCounter.addEnvironment("prod", "{}");
+		multiSearchCounter.addEnvironment("uat", "{}");
+
+		Map<String, CountResponse> countResponses =
+			multiSearchCounter.getCountResponses(
+				Arrays.asList(
+					_createErrorSearchResponse(), _createSearchResponse(5),
+					_createAggregationSearchResponse(20, 2, 3),
+					_createErrorSearchResponse()),
+				searchResponse -> {
+					try {
+						return _getErrorGroupCounts(searchResponse);
+					}
+					catch (AmazonServiceException ase) {
+						return null;
+					}
+				});
+
+		CountResponse prodCountResponse = countResponses.get("prod");
+
+		Map<String, String> checkFailures =
+			prodCountResponse.getCheckFailures();
+
+		Assert.assertEquals(
+			new HashSet<>(
+				Arrays.asList(
+					"errorsCount", "logEntriesCount",
+					"truncatedMessagesCount")),
+			checkFailures.keySet());
+		Assert.assertEquals(
+			Collections.singletonMap("errors", 5L),
+			ErrorGroupCount.getCountByMessagePrefix(
+				prodCountResponse.getErrorGroupCounts()));
+
+		CountResponse uatCountResponse = countResponses.get("uat");
+
+		Assert.assertEquals(20, uatCountResponse.getLogEntriesCount());
+		Assert.assertEquals(2, uatCountResponse.getErrorsCount());
+		Assert.assertEquals(3, uatCountResponse.getTruncatedMessagesCount());
+		Assert.assertNull(uatCountResponse.getErrorGroupCounts());
+		Assert.assertTrue(uatCountResponse.getCheckFailures().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingAggregationSearchResponsesAreRejected() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter(
+			"1h", true);
+
+		multiSearchCounter.addEnvironment("prod", "{}");
+
+		multiSearchCounter.getCountResponses(
+			Collections.singletonList(
+				_createAggregationSearchResponse(10, 2, 1)),
+			searchResponse -> null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingSearchResponsesAreRejected() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter("1h");
+
+		multiSearchCounter.addEnvironment("prod", "{}");
+
+		multiSearchCounter.getCountResponses(
+			Arrays.asList(
+				_createSearchResponse(10), _createSearchResponse(2),
+				_createSearchResponse(1)),
+			searchResponse -> null);
+	}
+
+	@Test
+	public void testSearchResponsesAreSplitByEnvironment() {
+		MultiSearchCounter multiSearchCounter = new MultiSearchCounter("1h");
+
+		multiSearchCounter.addEnvironment("prod", "{\"size\":0}");
+		multiSearchCounter.addEnvironment("uat", null);
+		multiSearchCounter.addEnvironment("dev", "{\"size\":1000}");
+
+		List<String> queries = multiSearchCounter.getQueries();
+
+		Assert.assertEquals(11, queries.size());
+		Assert.assertEquals("{\"size\":0}", queries.get(3));
+		Assert.assertEquals("{\"size\":1000}", queries.get(10));
+
+		Map<String, CountResponse> countResponses =
+			multiSearchCounter.getCountResponses(
+				Arrays.asList(
+					_createSearchResponse(10), _createSearchResponse(2),
+					_createSearchResponse(1), _createSearchResponse(200),
+					_createSearchResponse(20), _createSearchResponse(0),
+					_createSearchResponse(3), _createSearchResponse(30),
+					_createSearchResponse(4), _createSearchResponse(0),
+					_createSearchResponse(400)),
+				this::_getErrorGroupCounts);
+
+		Assert.assertEquals(
+			Arrays.asList("prod", "uat", "dev"),
+			Arrays.asList(countResponses.keySet().toArray()));
+
+		_assertCountResponse(
+			countResponses.get("prod"), 10, 2, 1,
+			Collections.singletonMap("errors", 200L));
+		_assertCountResponse(countResponses.get("uat"), 20, 0, 3, null);
+		_assertCountResponse(
+			countResponses.get("dev"), 30, 4, 0,
+			Collections.singletonMap("errors", 400L));
+	}
+
+	private void _assertCountResponse(
+		CountResponse countResponse, long logEntriesCount, long errorsCount,
+		long truncatedMessagesCount,
+		Map<String, Long> errorsCountByMessagePrefix) {
+
+		Assert.assertEquals(
+			logEntriesCount, countResponse.getLogEntriesCount());
+		Assert.assertEquals(errorsCount, countResponse.getErrorsCount());
+		Assert.assertEquals(
+			truncatedMessagesCount, countResponse.getTruncatedMessagesCount());
+		Assert.assertTrue(countResponse.getCheckFailures().isEmpty());
+
+		Map<Long, ErrorGroupCount> errorGroupCounts =
+			countResponse.getErrorGroupCounts();
+
+		if (errorsCountByMessagePrefix == null) {
+			Assert.assertNull(errorGroupCounts);
+		}
+		else {
+			Assert.assertEquals(
+				errorsCountByMessagePrefix,
+				ErrorGroupCount.getCountByMessagePrefix(errorGroupCounts));
+		}
+	}
+
+	private SearchResponse _createAggregationSearchResponse(
+		long logEntriesCount, long errorsCount, long truncatedMessagesCount) {
+
+		JsonObject jsonObject = Json.createObjectBuilder(
+		).add(
+			"aggregations",
+			Json.createObjectBuilder(
+			).add(
+				"checks",
+				Json.createObjectBuilder(
+				).add(
+					"buckets",
+					Json.createObjectBuilder(
+					).add(
+						"errors", _createBucket(errorsCount)
+					).add(
+						"logEntries", _createBucket(logEntriesCount)
+					).add(
+						"truncatedMessages",
+						_createBucket(truncatedMessagesCount)
+					)
+				)
+			)
+		).add(
+			"status", 200
+		).build();
+
+		return new SearchResponse(jsonObject, null);
+	}
+
+	private JsonObjectBuilder _createBucket(long docCount) {
+		return Json.createObjectBuilder(
+		).add(
+			"doc_count", docCount
+		);
+	}
+
+	private SearchResponse _createErrorSearchResponse() {
+		JsonObject jsonObject = Json.createObjectBuilder(
+		).add(
+			"error",
+			Json.createObjectBuilder(
+			).add(
+				"type", "search_phase_execution_exception"
+			)
+		).add(
+			"status", 500
+		).build();
+
+		return new SearchResponse(jsonObject, null);
+	}
+
+	private SearchResponse _createSearchResponse(long totalHitsCount) {
+		JsonObject jsonObject = Json.createObjectBuilder(
+		).add(
+			"hits",
+			Json.createObjectBuilder(
+			).add(
+				"total",
+				Json.createObjectBuilder(
+				).add(
+					"value", totalHitsCount
+				).add(
+					"relation", "eq"
+				)
+			)
+		).add(
+			"status", 200
+		).build();
+
+		return new SearchResponse(jsonObject, null);
+	}
+
+	private Map<Long, ErrorGroupCount> _getErrorGroupCounts(
+		SearchResponse searchResponse) {
+
+		return Collections.singletonMap(
+			0L,
+			new ErrorGroupCount(
+				"errors",
+				ElasticSearchAWSUtil.getHitsCount(
+					searchResponse.getJsonObject())));
+	}
+
+	private JsonObject _readJsonObject(String json) {
+		JsonReader jsonReader = Json.createReader(new StringReader(json));
+
+		JsonObject jsonObject = jsonReader.readObject();
+
+		jsonReader.close();
+
+		return jsonObject;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonParser;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ruben Pulido
+ */
+public class MultiSearchResponseHandlerTest {
+
+	@Test
+	public void testAggregationsAreKept() {
+		List<SearchResponse> searchResponses = _parse(
+			"{\"responses\":[{\"hits\":{\"total\":{\"value\":3," +
+				"\"relation\":\"eq\"}},\"aggregations\":{\"checks\":" +
+					"{\"buckets\":{\"errorsCount\":{\"doc_count\":2}}}}," +
+						"\"status\":200}]}");
+
+		Assert.assertEquals(1, searchResponses.size());
+
+		SearchResponse searchResponse = searchResponses.get(0);
+
+		Assert.assertNull(searchResponse.getErrorGroups());
+		Assert.assertEquals(
+			3,
+			ElasticSearchAWSUtil.getHitsCount(searchResponse.getJsonObject()));
+		Assert.assertEquals(
+			Collections.singletonMap("errorsCount", 2L),
+			ElasticSearchAWSUtil.getFiltersAggregationCounts(
+				searchResponse.getJsonObject(), "checks"));
+	}
+
+	@Test
+	public void testFailedQueryDoesNotPreventReadingTheOthers() {
+		List<SearchResponse> searchResponses = _parse(
+			"{\"took\":5,\"responses\":[{\"error\":{\"type\":" +
+				"\"search_phase_execution_exception\",\"root_cause\":[]}," +
+					"\"status\":500},{\"hits\":{\"total\":7}," +
+						"\"status\":200}]}");
+
+		Assert.assertEquals(2, searchResponses.size());
+
+		try {
+			ElasticSearchAWSUtil.getHitsCount(
+				searchResponses.get(0).getJsonObject());
+
+			Assert.fail();
+		}
+		catch (AmazonServiceException ase) {
+		}
+
+		Assert.assertEquals(
+			7,
+			ElasticSearchAWSUtil.getHitsCount(
+				searchResponses.get(1).getJsonObject()));
+	}
+
+	@Test
+	public void testHitsAreGroupedByMessageWithoutBeingKept() {
+		List<SearchResponse> searchResponses = _parse(
+			"{\"responses\":[{\"hits\":{\"total\":3,\"hits\":[" +
+				"{\"_id\":\"1\",\"_source\":{\"message\":\"Timeout\"}}," +
+					"{\"_source\":{\"message\":\"Timeout\",\"level\":" +
+						"\"ERROR\"}},{\"_source\":{\"message\":" +
+							"\"Connection refused\"}}]},\"status\":200}]}");
+
+		SearchResponse searchResponse = searchResponses.get(0);
+
+		JsonObject jsonObject = searchResponse.getJsonObject();
+
+		JsonObject hitsJsonObject = jsonObject.getJsonObject("hits");
+
+		Assert.assertFalse(hitsJsonObject.containsKey("hits"));
+		Assert.assertEquals(3, ElasticSearchAWSUtil.getHitsCount(jsonObject));
+
+		Map<String, Long> expectedErrorsCountByMessagePrefix = new HashMap<>();
+
+		expectedErrorsCountByMessagePrefix.put("Connection refused", 1L);
+		expectedErrorsCountByMessagePrefix.put("Timeout", 2L);
+
+		Assert.assertEquals(
+			expectedErrorsCountByMessagePrefix,
+			ErrorGroupCount.getCountByMessagePrefix(
+				ElasticSearchAWSUtil.getErrorGroupCounts(searchResponse)));
+	}
+
+	private List<SearchResponse> _parse(String json) {
+		MultiSearchResponseHandler multiSearchResponseHandler =
+			new MultiSearchResponseHandler(200);
+
+		try (JsonParser jsonParser = Json.createParser(
+				new StringReader(json))) {
+
+			return multiSearchResponseHandler.parse(jsonParser);
+		}
+	}
+
+}
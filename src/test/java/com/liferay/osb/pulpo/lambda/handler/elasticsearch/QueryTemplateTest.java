@@ -0,0 +1,76 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.liferay.osb.pulpo.lambda.handler.file.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * @author Ruben Pulido
+ */
+public class QueryTemplateTest {
+
+	@Test
+	public void testBuildMatchesStringFormatForAllTemplates()
+		throws IOException {
+
+		FileUtil fileUtil = new FileUtil();
+
+		for (String templateFileName : _TEMPLATE_FILE_NAMES) {
+			String template = fileUtil.fileInClasspathToString(
+				templateFileName);
+
+			String query = QueryTemplateUtil.getQuery(
+				templateFileName, "prod", "15m", "message.keyword", 100,
+				1532512500000L, 1532516100000L, "{}");
+
+			Assert.assertEquals(
+				templateFileName,
+				String.format(
+					template, "prod", "15m", "message.keyword", 100,
+					1532512500000L, 1532516100000L, "{}"),
+				query);
+		}
+	}
+
+	@Test
+	public void testBuildWithEscapedPercentAndExplicitIndexes() {
+		QueryTemplate queryTemplate = new QueryTemplate(
+			"%2$s-%1$s 100%% %s %s");
+
+		String query = queryTemplate.build("a", "b");
+
+		Assert.assertEquals(
+			String.format("%2$s-%1$s 100%% %s %s", "a", "b"), query);
+		Assert.assertEquals(2, queryTemplate.getArgumentsCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBuildWithMissingArguments() {
+		QueryTemplate queryTemplate = new QueryTemplate("%1$s %3$s");
+
+		queryTemplate.build("a", "b");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownTemplate() {
+		QueryTemplateUtil.getQuery("unknownQueryTemplate.json", "prod", "1s");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedFormatSpecifier() {
+		new QueryTemplate("\"size\": %d");
+	}
+
+	private static final String[] _TEMPLATE_FILE_NAMES = {
+		"countAggregationQueryTemplate.json", "countErrorsQueryTemplate.json",
+		"countHistogramQueryTemplate.json", "countMinutesQueryTemplate.json",
+		"countTruncatedMessagesQueryTemplate.json",
+		"groupErrorsByIntervalQueryTemplate.json",
+		"groupErrorsQueryTemplate.json", "queryTemplate.json",
+		"searchErrorsQueryTemplate.json",
+		"searchUngroupedErrorsQueryTemplate.json"
+	};
+
+}
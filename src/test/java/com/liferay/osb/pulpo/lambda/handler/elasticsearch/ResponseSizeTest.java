@@ -0,0 +1,160 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Ruben Pulido
+ */
+public class ResponseSizeTest {
+
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("aws.accessKeyId", "access");
+		System.setProperty("aws.secretKey", "secret");
+
+		_httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			_drain(httpExchange.getRequestBody());
+
+			_path = httpExchange.getRequestURI().getPath();
+
+			_parameters = _parseQuery(
+				httpExchange.getRequestURI().getRawQuery());
+
+			byte[] body = _searchResponse.getBytes(StandardCharsets.UTF_8);
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		_httpServer.start();
+
+		_host = "http://127.0.0.1:" + _httpServer.getAddress().getPort();
+
+		ElasticSearchAWSUtil.setRegion(_host, "us-east-1");
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testAggregationSearchRequestsOnlyTheAggregations() {
+		_searchResponse =
+			"{\"hits\":{\"total\":2},\"aggregations\":{\"checks\":" +
+				"{\"buckets\":{\"errorsCount\":{\"doc_count\":2}}}}}";
+
+		ElasticSearchAWSUtil.getFiltersAggregationCounts(
+			_host, "{}", "checks", _lambdaLogger);
+
+		Assert.assertEquals("/_search", _path);
+
+		Map<String, String> expectedParameters = new HashMap<>();
+
+		expectedParameters.put("filter_path", "hits.total,aggregations");
+
+		Assert.assertEquals(expectedParameters, _parameters);
+	}
+
+	@Test
+	public void testHitsSearchRequestsOnlyTheMessages() {
+		_searchResponse =
+			"{\"hits\":{\"total\":1,\"hits\":[{\"_source\":" +
+				"{\"message\":\"Timeout\"}}]}}";
+
+		Map<String, Long> errorsCountByMessagePrefix =
+			ErrorGroupCount.getCountByMessagePrefix(
+				ElasticSearchAWSUtil.getErrorGroupCounts(
+					_host, "{}", 200, _lambdaLogger));
+
+		Assert.assertEquals(
+			Collections.singletonMap("Timeout", 1L),
+			errorsCountByMessagePrefix);
+		Assert.assertEquals("/_search", _path);
+
+		Map<String, String> expectedParameters = new HashMap<>();
+
+		expectedParameters.put("_source", "message");
+		expectedParameters.put(
+			"filter_path", "hits.total,hits.hits._source.message");
+
+		Assert.assertEquals(expectedParameters, _parameters);
+	}
+
+	@Test
+	public void testMultiSearchRequestsOnlyTheFieldsItReads() {
+		_searchResponse =
+			"{\"responses\":[{\"hits\":{\"total\":3},\"status\":200}]}";
+
+		ElasticSearchAWSUtil.multiSearch(
+			_host, Collections.singletonList("{\"size\":0}"), 200,
+			_lambdaLogger);
+
+		Assert.assertEquals("/_msearch", _path);
+
+		Map<String, String> expectedParameters = new HashMap<>();
+
+		expectedParameters.put(
+			"filter_path",
+			"responses.status,responses.error,responses.hits.total," +
+				"responses.hits.hits._source.message,responses.aggregations");
+
+		Assert.assertEquals(expectedParameters, _parameters);
+	}
+
+	private void _drain(InputStream inputStream) throws IOException {
+		byte[] buffer = new byte[1024];
+
+		while (inputStream.read(buffer) != -1) {
+		}
+	}
+
+	private Map<String, String> _parseQuery(String query) throws IOException {
+		Map<String, String> parameters = new HashMap<>();
+
+		if (query == null) {
+			return parameters;
+		}
+
+		for (String parameter : query.split("&")) {
+			int index = parameter.indexOf('=');
+
+			parameters.put(
+				URLDecoder.decode(parameter.substring(0, index), "UTF-8"),
+				URLDecoder.decode(parameter.substring(index + 1), "UTF-8"));
+		}
+
+		return parameters;
+	}
+
+	private String _host;
+	private HttpServer _httpServer;
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+	private volatile Map<String, String> _parameters;
+	private volatile String _path;
+	private String _searchResponse;
+
+}
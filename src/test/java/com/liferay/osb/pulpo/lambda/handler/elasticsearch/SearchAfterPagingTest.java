@@ -0,0 +1,213 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ruben Pulido
+ */
+public class SearchAfterPagingTest {
+
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("aws.accessKeyId", "access");
+		System.setProperty("aws.secretKey", "secret");
+
+		_httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			_pageQueries.add(_readJsonObject(httpExchange.getRequestBody()));
+
+			byte[] body = _pages.remove(0).getBytes(StandardCharsets.UTF_8);
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		_httpServer.start();
+
+		_host = "http://127.0.0.1:" + _httpServer.getAddress().getPort();
+
+		ElasticSearchAWSUtil.setRegion(_host, "us-east-1");
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testOnlyTheFirstPageTracksTotalHits() {
+		_pages.add(_getPage(10, 0, "Timeout", "Timeout"));
+		_pages.add(_getPage(10, 2, "Timeout"));
+
+		_getErrorsCountByMessagePrefix(50);
+
+		Assert.assertEquals(2, _pageQueries.size());
+
+		JsonObject firstPageQuery = _pageQueries.get(0);
+
+		Assert.assertTrue(firstPageQuery.getBoolean("track_total_hits"));
+		Assert.assertFalse(firstPageQuery.containsKey("search_after"));
+
+		JsonObject secondPageQuery = _pageQueries.get(1);
+
+		Assert.assertFalse(secondPageQuery.getBoolean("track_total_hits"));
+
+		JsonArray searchAfterJsonArray = secondPageQuery.getJsonArray(
+			"search_after");
+
+		JsonNumber timestampJsonNumber = searchAfterJsonArray.getJsonNumber(0);
+
+		Assert.assertEquals(1001, timestampJsonNumber.intValue());
+
+		JsonNumber tiebreakerJsonNumber = searchAfterJsonArray.getJsonNumber(1);
+
+		Assert.assertEquals(1, tiebreakerJsonNumber.intValue());
+	}
+
+	@Test
+	public void testPagesAreReadPastACappedTotal() {
+		_pages.add(_getPage(2, 0, "Timeout", "Timeout"));
+		_pages.add(_getPage(2, 2, "Timeout", "Connection refused"));
+		_pages.add(_getPage(2, 4));
+
+		Map<String, Long> errorsCountByMessagePrefix =
+			_getErrorsCountByMessagePrefix(50);
+
+		Map<String, Long> expectedErrorsCountByMessagePrefix = new HashMap<>();
+
+		expectedErrorsCountByMessagePrefix.put("Connection refused", 1L);
+		expectedErrorsCountByMessagePrefix.put("Timeout", 3L);
+
+		Assert.assertEquals(
+			expectedErrorsCountByMessagePrefix, errorsCountByMessagePrefix);
+		Assert.assertEquals(3, _pageQueries.size());
+	}
+
+	@Test
+	public void testPagesAreSortedByTimestampAndTiebreaker() {
+		_pages.add(_getPage(1, 0, "Timeout"));
+
+		_getErrorsCountByMessagePrefix(50);
+
+		JsonObject pageQuery = _pageQueries.get(0);
+
+		JsonArray sortJsonArray = pageQuery.getJsonArray("sort");
+
+		Assert.assertEquals(2, sortJsonArray.size());
+		Assert.assertEquals(
+			"asc", sortJsonArray.getJsonObject(0).getString("@timestamp"));
+		Assert.assertEquals(
+			"asc", sortJsonArray.getJsonObject(1).getString("_doc"));
+		Assert.assertEquals(2, pageQuery.getInt("size"));
+	}
+
+	@Test
+	public void testUnreadErrorsAreReportedWhenTheMaximumPagesAreRead() {
+		_pages.add(_getPage(5, 0, "Timeout", "Timeout"));
+
+		Map<String, Long> errorsCountByMessagePrefix =
+			_getErrorsCountByMessagePrefix(1);
+
+		Map<String, Long> expectedErrorsCountByMessagePrefix = new HashMap<>();
+
+		expectedErrorsCountByMessagePrefix.put("Timeout", 2L);
+		expectedErrorsCountByMessagePrefix.put(_UNGROUPED_ERRORS_KEY, 3L);
+
+		Assert.assertEquals(
+			expectedErrorsCountByMessagePrefix, errorsCountByMessagePrefix);
+		Assert.assertEquals(1, _pageQueries.size());
+	}
+
+	private Map<String, Long> _getErrorsCountByMessagePrefix(int maxPages) {
+		return ErrorGroupCount.getCountByMessagePrefix(
+			ElasticSearchAWSUtil.getErrorGroupCounts(
+				_host, "{\"size\":2,\"sort\":[{\"@timestamp\":\"desc\"}]}",
+				200, "_doc", maxPages, 60000, _lambdaLogger));
+	}
+
+	private String _getPage(
+		long totalHitsCount, int firstHit, String... messages) {
+
+		JsonArrayBuilder hitsJsonArrayBuilder = Json.createArrayBuilder();
+
+		for (int i = 0; i < messages.length; i++) {
+			hitsJsonArrayBuilder.add(
+				Json.createObjectBuilder(
+				).add(
+					"_source",
+					Json.createObjectBuilder(
+					).add(
+						"message", messages[i]
+					)
+				).add(
+					"sort",
+					Json.createArrayBuilder(
+					).add(
+						1000 + firstHit + i
+					).add(
+						firstHit + i
+					)
+				));
+		}
+
+		JsonObject searchResponse = Json.createObjectBuilder(
+		).add(
+			"hits",
+			Json.createObjectBuilder(
+			).add(
+				"total", totalHitsCount
+			).add(
+				"hits", hitsJsonArrayBuilder
+			)
+		).build();
+
+		return searchResponse.toString();
+	}
+
+	private JsonObject _readJsonObject(InputStream inputStream) {
+		try (JsonReader jsonReader = Json.createReader(inputStream)) {
+			return jsonReader.readObject();
+		}
+	}
+
+	private static final String _UNGROUPED_ERRORS_KEY =
+		"(errors not grouped by message)";
+
+	private String _host;
+	private HttpServer _httpServer;
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+	private final List<JsonObject> _pageQueries = Collections.synchronizedList(
+		new ArrayList<>());
+	private final List<String> _pages = Collections.synchronizedList(
+		new ArrayList<>());
+
+}
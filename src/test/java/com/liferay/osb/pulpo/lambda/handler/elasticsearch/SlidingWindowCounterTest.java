@@ -0,0 +1,310 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author Ruben Pulido
+ */
+public class SlidingWindowCounterTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_stateDirPath = Files.createTempDirectory("state");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(_stateDirPath.resolve("minute-counts.json"));
+		Files.deleteIfExists(_stateDirPath);
+	}
+
+	@Test
+	public void testCountsAreReturnedIfTheCacheCannotBePersisted()
+		throws IOException {
+
+		// The state file cannot replace a directory which is not empty
+
+		Path path = _stateDirPath.resolve("minute-counts.json");
+
+		Path blockingPath = Files.createDirectories(path).resolve("blocking");
+
+		Files.createFile(blockingPath);
+
+		try {
+			List<Long> timestamps = _getTimestamps(_START_MILLIS, 120);
+
+			long nowMillis = _START_MILLIS + (90 * 60 * 1000);
+
+			SlidingWindowCounter slidingWindowCounter =
+				new SlidingWindowCounter(
+					new StateStore(path), "key", "prod", "1h", nowMillis, 2);
+
+			List<String> messages = new ArrayList<>();
+
+			Map<String, Long> counts = slidingWindowCounter.getCounts(
+				_search(slidingWindowCounter.getQuery(), timestamps),
+				messages::add);
+
+			Assert.assertEquals(
+				Long.valueOf(
+					_count(
+						timestamps, nowMillis - (60 * 60 * 1000), nowMillis)),
+				counts.get("logEntries"));
+			Assert.assertEquals(1, messages.size());
+			Assert.assertTrue(
+				messages.get(0).startsWith(
+					"Could not persist the minute counts of key"));
+
+			try (Stream<Path> stream = Files.list(_stateDirPath)) {
+				Assert.assertEquals(
+					Collections.singletonList(path),
+					stream.collect(Collectors.toList()));
+			}
+		}
+		finally {
+			Files.delete(blockingPath);
+		}
+	}
+
+	@Test
+	public void testCountsMatchFullWindowCounts() {
+		Path path = _stateDirPath.resolve("minute-counts.json");
+
+		List<Long> timestamps = _getTimestamps(_START_MILLIS, 3 * 60);
+
+		long nowMillis = _START_MILLIS + (61 * 60 * 1000) + 1234;
+		long previousNowMinute = 0;
+
+		for (int i = 0; i < 90; i++) {
+
+			StateStore stateStore = new StateStore(path);
+
+			SlidingWindowCounter slidingWindowCounter =
+				new SlidingWindowCounter(
+					stateStore, "host|prod|1h", "prod", "1h", nowMillis, 2);
+
+			Map<String, Long> counts = slidingWindowCounter.getCounts(
+				_search(slidingWindowCounter.getQuery(), timestamps),
+				_lambdaLogger);
+
+			long expectedCount = _count(
+				timestamps, nowMillis - (60 * 60 * 1000), nowMillis);
+
+			Assert.assertEquals(
+				Long.valueOf(expectedCount), counts.get("logEntries"));
+
+			if (i > 0) {
+				Assert.assertEquals(
+					previousNowMinute - 2,
+					slidingWindowCounter.getFetchFromMinute());
+			}
+
+			previousNowMinute = nowMillis / (60 * 1000);
+
+			nowMillis += (60 * 1000) + (i % 7) * 1000;
+		}
+	}
+
+	@Test
+	public void testIntervalChangeDiscardsCache() {
+		StateStore stateStore = new StateStore(
+			_stateDirPath.resolve("minute-counts.json"));
+
+		List<Long> timestamps = _getTimestamps(_START_MILLIS, 120);
+
+		long nowMillis = _START_MILLIS + (90 * 60 * 1000);
+
+		SlidingWindowCounter slidingWindowCounter = new SlidingWindowCounter(
+			stateStore, "key", "prod", "1h", nowMillis, 2);
+
+		slidingWindowCounter.getCounts(
+			_search(slidingWindowCounter.getQuery(), timestamps),
+			_lambdaLogger);
+
+		slidingWindowCounter = new SlidingWindowCounter(
+			stateStore, "key", "prod", "15m", nowMillis + (60 * 1000), 2);
+
+		long windowStartMillis = nowMillis + (60 * 1000) - (15 * 60 * 1000);
+
+		Assert.assertEquals(
+			(windowStartMillis / (60 * 1000)) + 1,
+			slidingWindowCounter.getFetchFromMinute());
+	}
+
+	@Test
+	public void testIntervalMillis() {
+		Assert.assertEquals(
+			15 * 60 * 1000, SlidingWindowCounter.getIntervalMillis("15m"));
+		Assert.assertEquals(
+			2 * 60 * 60 * 1000, SlidingWindowCounter.getIntervalMillis("2h"));
+		Assert.assertEquals(
+			7 * 24 * 60 * 60 * 1000,
+			SlidingWindowCounter.getIntervalMillis("1w"));
+		Assert.assertEquals(-1, SlidingWindowCounter.getIntervalMillis("30s"));
+		Assert.assertEquals(-1, SlidingWindowCounter.getIntervalMillis("h"));
+		Assert.assertEquals(-1, SlidingWindowCounter.getIntervalMillis("0m"));
+	}
+
+	private long _count(List<Long> timestamps, long fromMillis, long toMillis) {
+		long count = 0;
+
+		for (long timestamp : timestamps) {
+			if ((timestamp >= fromMillis) && (timestamp <= toMillis)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private JsonObject _getRange(JsonObject rangeClauseJsonObject) {
+		JsonObject rangeJsonObject = rangeClauseJsonObject.getJsonObject(
+			"range");
+
+		return rangeJsonObject.getJsonObject("@timestamp");
+	}
+
+	private List<Long> _getTimestamps(long startMillis, int minutes) {
+		Random random = new Random(42);
+
+		List<Long> timestamps = new ArrayList<>();
+
+		for (int i = 0; i < (minutes * 10); i++) {
+			timestamps.add(
+				startMillis + (long)(random.nextDouble() * minutes * 60000));
+		}
+
+		return timestamps;
+	}
+
+	private JsonObject _readJsonObject(String json) {
+		try (JsonReader jsonReader = Json.createReader(
+				new StringReader(json))) {
+
+			return jsonReader.readObject();
+		}
+	}
+
+	private JsonObject _search(String query, List<Long> timestamps) {
+		JsonObject queryJsonObject = _readJsonObject(query);
+
+		JsonObject boolJsonObject = queryJsonObject.getJsonObject(
+			"query"
+		).getJsonObject(
+			"bool"
+		);
+
+		JsonArray filterJsonArray = boolJsonObject.getJsonArray("filter");
+
+		JsonArray shouldJsonArray = filterJsonArray.getJsonObject(
+			0
+		).getJsonObject(
+			"bool"
+		).getJsonArray(
+			"should"
+		);
+
+		JsonObject headRange = _getRange(shouldJsonArray.getJsonObject(0));
+		JsonObject minutesRange = _getRange(shouldJsonArray.getJsonObject(1));
+
+		long headFrom = headRange.getJsonNumber("gte").longValue();
+		long headTo = headRange.getJsonNumber("lt").longValue();
+		long minutesFrom = minutesRange.getJsonNumber("gte").longValue();
+		long minutesTo = minutesRange.getJsonNumber("lte").longValue();
+
+		long docCount = 0;
+		long headCount = 0;
+		SortedMap<Long, Long> minuteCounts = new TreeMap<>();
+
+		for (long timestamp : timestamps) {
+			boolean head = (timestamp >= headFrom) && (timestamp < headTo);
+			boolean minutes =
+				(timestamp >= minutesFrom) && (timestamp <= minutesTo);
+
+			if (head) {
+				headCount++;
+			}
+
+			if (head || minutes) {
+				docCount++;
+
+				minuteCounts.merge(
+					timestamp - (timestamp % (60 * 1000)), 1L, Long::sum);
+			}
+		}
+
+		JsonArrayBuilder minuteBucketsJsonArrayBuilder =
+			Json.createArrayBuilder();
+
+		minuteCounts.forEach(
+			(key, minuteCount) -> minuteBucketsJsonArrayBuilder.add(
+				Json.createObjectBuilder(
+				).add(
+					"key", key
+				).add(
+					"doc_count", minuteCount
+				)));
+
+		JsonObjectBuilder bucketJsonObjectBuilder = Json.createObjectBuilder(
+		).add(
+			"doc_count", docCount
+		).add(
+			"head", Json.createObjectBuilder().add("doc_count", headCount)
+		).add(
+			"minutes",
+			Json.createObjectBuilder(
+			).add(
+				"buckets", minuteBucketsJsonArrayBuilder
+			)
+		);
+
+		return Json.createObjectBuilder(
+		).add(
+			"aggregations",
+			Json.createObjectBuilder(
+			).add(
+				"checks",
+				Json.createObjectBuilder(
+				).add(
+					"buckets",
+					Json.createObjectBuilder(
+					).add(
+						"logEntries", bucketJsonObjectBuilder
+					)
+				)
+			)
+		).build();
+	}
+
+	private static final long _START_MILLIS = 1532512512345L;
+
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+	private Path _stateDirPath;
+
+}
@@ -0,0 +1,238 @@
+package com.liferay.osb.pulpo.lambda.handler.elasticsearch;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorFingerprinter;
+import com.liferay.osb.pulpo.lambda.handler.fingerprint.ErrorGroupCount;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Ruben Pulido
+ */
+public class TermsAggregationGroupingTest {
+
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("aws.accessKeyId", "access");
+		System.setProperty("aws.secretKey", "secret");
+
+		_httpServer = HttpServer.create(
+			new InetSocketAddress("127.0.0.1", 0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			_drain(httpExchange.getRequestBody());
+
+			_requestsCount.incrementAndGet();
+
+			byte[] body = _hitsSearchResponse.getBytes(
+				StandardCharsets.UTF_8);
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		_httpServer.start();
+
+		_host = "http://127.0.0.1:" + _httpServer.getAddress().getPort();
+
+		ElasticSearchAWSUtil.setRegion(_host, "us-east-1");
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testErrorsBeyondTheBucketLimitAreReportedApart() {
+		JsonArrayBuilder bucketsJsonArrayBuilder = Json.createArrayBuilder();
+
+		bucketsJsonArrayBuilder.add(_createBucket("Timeout after 10 ms", 40));
+		bucketsJsonArrayBuilder.add(_createBucket("Timeout after 20 ms", 30));
+
+		JsonObject searchResponse = Json.createObjectBuilder(
+		).add(
+			"hits",
+			Json.createObjectBuilder(
+			).add(
+				"total", 100
+			)
+		).add(
+			"aggregations",
+			Json.createObjectBuilder(
+			).add(
+				"errorGroups",
+				Json.createObjectBuilder(
+				).add(
+					"sum_other_doc_count", 20
+				).add(
+					"buckets", bucketsJsonArrayBuilder
+				)
+			)
+		).build();
+
+		Map<String, Long> errorsCountByMessagePrefix =
+			ErrorGroupCount.getCountByMessagePrefix(
+				ElasticSearchAWSUtil.getErrorsCountByTermsAggregation(
+					searchResponse, "errorGroups", 200));
+
+		Map<String, Long> expectedErrorsCountByMessagePrefix = new HashMap<>();
+
+		expectedErrorsCountByMessagePrefix.put("Timeout after 10 ms", 70L);
+		expectedErrorsCountByMessagePrefix.put(_OTHER_ERRORS_KEY, 20L);
+		expectedErrorsCountByMessagePrefix.put(_UNGROUPED_ERRORS_KEY, 10L);
+
+		Assert.assertEquals(
+			expectedErrorsCountByMessagePrefix, errorsCountByMessagePrefix);
+	}
+
+	@Test
+	public void testErrorsWithoutTheAggregatedFieldAreGroupedByTheirHits() {
+		String longMessage = _getLongMessage(1);
+
+		_hitsSearchResponse = _getHitsSearchResponse(
+			longMessage, _getLongMessage(2));
+
+		Map<Long, ErrorGroupCount> errorGroupCounts = new HashMap<>();
+
+		_putErrorGroupCount(errorGroupCounts, "Timeout after 10 ms", 5);
+		_putErrorGroupCount(errorGroupCounts, _UNGROUPED_ERRORS_KEY, 3);
+
+		Map<Long, ErrorGroupCount> groupedErrorGroupCounts =
+			ElasticSearchAWSUtil.groupUngroupedErrors(
+				_host, errorGroupCounts, "{}", 200, _lambdaLogger);
+
+		Map<String, Long> expectedErrorsCountByMessagePrefix = new HashMap<>();
+
+		expectedErrorsCountByMessagePrefix.put("Timeout after 10 ms", 5L);
+		expectedErrorsCountByMessagePrefix.put(
+			longMessage.substring(0, 200) + " (...)", 2L);
+		expectedErrorsCountByMessagePrefix.put(_UNGROUPED_ERRORS_KEY, 1L);
+
+		Assert.assertEquals(
+			expectedErrorsCountByMessagePrefix,
+			ErrorGroupCount.getCountByMessagePrefix(groupedErrorGroupCounts));
+		Assert.assertEquals(1, _requestsCount.get());
+
+		// The group of the long messages is kept by the fingerprint of the
+		// whole messages, not of its truncated sample message
+
+		ErrorGroupCount errorGroupCount = groupedErrorGroupCounts.get(
+			ErrorFingerprinter.getFingerprint(longMessage, 1000));
+
+		Assert.assertEquals(2, errorGroupCount.getCount());
+	}
+
+	@Test
+	public void testHitsAreNotSearchedIfAllErrorsAreGrouped() {
+		Map<Long, ErrorGroupCount> errorGroupCounts = new HashMap<>();
+
+		_putErrorGroupCount(errorGroupCounts, "Timeout after 10 ms", 5);
+
+		Assert.assertSame(
+			errorGroupCounts,
+			ElasticSearchAWSUtil.groupUngroupedErrors(
+				_host, errorGroupCounts, "{}", 200, _lambdaLogger));
+		Assert.assertEquals(0, _requestsCount.get());
+	}
+
+	private JsonObject _createBucket(String key, long docCount) {
+		return Json.createObjectBuilder(
+		).add(
+			"key", key
+		).add(
+			"doc_count", docCount
+		).build();
+	}
+
+	private void _drain(InputStream inputStream) throws IOException {
+		byte[] buffer = new byte[1024];
+
+		while (inputStream.read(buffer) != -1) {
+		}
+	}
+
+	private String _getHitsSearchResponse(String... messages) {
+		JsonArrayBuilder hitsJsonArrayBuilder = Json.createArrayBuilder();
+
+		for (String message : messages) {
+			hitsJsonArrayBuilder.add(
+				Json.createObjectBuilder(
+				).add(
+					"_source",
+					Json.createObjectBuilder(
+					).add(
+						"message", message
+					)
+				));
+		}
+
+		JsonObject searchResponse = Json.createObjectBuilder(
+		).add(
+			"hits",
+			Json.createObjectBuilder(
+			).add(
+				"total", messages.length
+			).add(
+				"hits", hitsJsonArrayBuilder
+			)
+		).build();
+
+		return searchResponse.toString();
+	}
+
+	private String _getLongMessage(int contactId) {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("Unable to process contact ");
+		sb.append(contactId);
+
+		while (sb.length() < 300) {
+			sb.append("\n\tat com.liferay.osb.pulpo.engine.contacts.");
+			sb.append("ContactsProcessor.process(ContactsProcessor.java:128)");
+		}
+
+		return sb.toString();
+	}
+
+	private void _putErrorGroupCount(
+		Map<Long, ErrorGroupCount> errorGroupCounts, String message,
+		long count) {
+
+		errorGroupCounts.put(
+			ErrorFingerprinter.getFingerprint(message, Integer.MAX_VALUE),
+			new ErrorGroupCount(message, count));
+	}
+
+	private static final String _OTHER_ERRORS_KEY =
+		"(errors with less frequent messages)";
+
+	private static final String _UNGROUPED_ERRORS_KEY =
+		"(errors not grouped by message)";
+
+	private String _hitsSearchResponse;
+	private String _host;
+	private HttpServer _httpServer;
+	private final LambdaLogger _lambdaLogger = string -> {
+	};
+	private final AtomicInteger _requestsCount = new AtomicInteger();
+
+}
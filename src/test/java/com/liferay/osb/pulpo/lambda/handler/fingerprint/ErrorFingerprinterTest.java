@@ -0,0 +1,132 @@
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * @author Ruben Pulido
+ */
+public class ErrorFingerprinterTest {
+
+	@Test
+	public void testDifferentMessagesHaveDifferentFingerprints() {
+		long fingerprint1 = ErrorFingerprinter.getFingerprint(
+			"Unable to process contact 42", 1000);
+		long fingerprint2 = ErrorFingerprinter.getFingerprint(
+			"Unable to delete contact 42", 1000);
+
+		Assert.assertNotEquals(fingerprint1, fingerprint2);
+	}
+
+	@Test
+	public void testDottedNamesWithDigitsHaveDifferentFingerprints() {
+		Assert.assertNotEquals(
+			ErrorFingerprinter.getFingerprint(
+				"org.apache.log4j.FooException: boom", 1000),
+			ErrorFingerprinter.getFingerprint(
+				"org.apache.log4j.BarException: boom", 1000));
+		Assert.assertNotEquals(
+			ErrorFingerprinter.getFingerprint(
+				"com.amazonaws.services.s3.model.AmazonS3Exception: " +
+					"Access Denied",
+				1000),
+			ErrorFingerprinter.getFingerprint(
+				"com.example.Ec2Exception: Access Denied", 1000));
+		Assert.assertNotEquals(
+			ErrorFingerprinter.getFingerprint(
+				"com.example.S3Exception: Access Denied", 1000),
+			ErrorFingerprinter.getFingerprint(
+				"com.example.Ec2Exception: Access Denied", 1000));
+	}
+
+	@Test
+	public void testFingerprintGroupsMessagesOfTheSameError() {
+		ErrorGroups errorGroups = new ErrorGroups(_MAX_MESSAGE_PREFIX_LENGTH);
+
+		Map<String, Long> countByMessagePrefix = new HashMap<>();
+
+		for (String message : _getMessages()) {
+			errorGroups.add(message, 1);
+
+			if (message.length() > _MAX_MESSAGE_PREFIX_LENGTH) {
+				message = message.substring(0, _MAX_MESSAGE_PREFIX_LENGTH);
+			}
+
+			countByMessagePrefix.merge(message, 1L, Long::sum);
+		}
+
+		Map<String, Long> countByFingerprint =
+			errorGroups.getCountByMessagePrefix();
+
+		Assert.assertEquals(_MESSAGES, countByMessagePrefix.size());
+		Assert.assertEquals(2, countByFingerprint.size());
+
+		long count = 0;
+
+		for (long groupCount : countByFingerprint.values()) {
+			count += groupCount;
+		}
+
+		Assert.assertEquals(_MESSAGES, count);
+	}
+
+	@Test
+	public void testVariableTokensAreIgnored() {
+		long fingerprint1 = ErrorFingerprinter.getFingerprint(
+			"2018-07-25T10:15:30.123Z Unable to process contact 42 " +
+				"(id=3f2b7c1e-90ab-4cde-8f01-23456789abcd) from 10.0.0.12",
+			1000);
+		long fingerprint2 = ErrorFingerprinter.getFingerprint(
+			"2018-07-26T23:01:02.9Z Unable to process contact 1337 " +
+				"(id=deadbeef-cafe-4bad-a001-000000000001) from  10.0.3.4",
+			1000);
+
+		Assert.assertEquals(fingerprint1, fingerprint2);
+
+		fingerprint1 = ErrorFingerprinter.getFingerprint(
+			"Checksum a3f9c2 of object 1f2e does not match", 1000);
+		fingerprint2 = ErrorFingerprinter.getFingerprint(
+			"Checksum 0b7d of object e4c8d1 does not match", 1000);
+
+		Assert.assertEquals(fingerprint1, fingerprint2);
+	}
+
+	private List<String> _getMessages() {
+		List<String> messages = new ArrayList<>();
+
+		for (int i = 0; i < _MESSAGES; i++) {
+			if ((i % 2) == 0) {
+				messages.add(
+					String.format(
+						"Unable to process contact %d in data source %d " +
+							"(request %s)%n%s",
+						i, i % 13, UUID.randomUUID(), _STACK_TRACE));
+			}
+			else {
+				messages.add(
+					String.format(
+						"Timeout after %d ms waiting for data source %d%n%s",
+						i % 5000, i % 13, _STACK_TRACE));
+			}
+		}
+
+		return messages;
+	}
+
+	private static final int _MAX_MESSAGE_PREFIX_LENGTH = 200;
+
+	private static final int _MESSAGES = 1000;
+
+	private static final String _STACK_TRACE =
+		"java.lang.IllegalStateException: Data source is not available\n" +
+			"\tat com.liferay.osb.pulpo.engine.contacts.ContactsProcessor." +
+				"process(ContactsProcessor.java:128)\n" +
+			"\tat java.lang.Thread.run(Thread.java:748)";
+
+}
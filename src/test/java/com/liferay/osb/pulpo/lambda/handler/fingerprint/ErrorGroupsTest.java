@@ -0,0 +1,170 @@
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Ruben Pulido
+ */
+public class ErrorGroupsTest {
+
+	@Test
+	public void testCountsAreExactWhileThereIsRoom() {
+		ErrorGroups errorGroups = new ErrorGroups(200, 1000, 10);
+
+		for (int i = 0; i < 10; i++) {
+			errorGroups.add(_getMessage(i), i + 1);
+		}
+
+		Map<String, Long> countByMessagePrefix =
+			errorGroups.getCountByMessagePrefix();
+
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals(
+				Long.valueOf(i + 1), countByMessagePrefix.get(_getMessage(i)));
+		}
+
+		Assert.assertEquals(0, errorGroups.getMaxOverestimation());
+	}
+
+	@Test
+	public void testGroupsAreIdentifiedByTheFingerprintOfTheirMessages() {
+		ErrorGroups errorGroups = new ErrorGroups(20, 1000, 10);
+
+		String message =
+			"Unable to process contact 42 of the segment because the data " +
+				"source is not available";
+
+		errorGroups.add(message, 3);
+
+		Map<String, Long> countByMessagePrefix =
+			errorGroups.getCountByMessagePrefix();
+
+		String messagePrefix = message.substring(0, 20) + " (...)";
+
+		Assert.assertEquals(
+			Long.valueOf(3), countByMessagePrefix.get(messagePrefix));
+
+		// The sample message is truncated, so its own fingerprint differs
+
+		long fingerprint = ErrorFingerprinter.getFingerprint(message, 1000);
+
+		Map<Long, ErrorGroupCount> countByFingerprint =
+			errorGroups.getCountByFingerprint();
+
+		Assert.assertEquals(1, countByFingerprint.size());
+
+		ErrorGroupCount errorGroupCount = countByFingerprint.get(fingerprint);
+
+		Assert.assertEquals(3, errorGroupCount.getCount());
+		Assert.assertEquals(messagePrefix, errorGroupCount.getSampleMessage());
+		Assert.assertNotEquals(
+			fingerprint,
+			ErrorFingerprinter.getFingerprint(messagePrefix, 1000));
+	}
+
+	@Test
+	public void testHeavyHittersAreKeptWithBoundedMemory() {
+		ErrorGroups errorGroups = new ErrorGroups(200, 1000, _MAX_SIZE);
+
+		Map<String, Long> realCountByMessage = new HashMap<>();
+
+		Random random = new Random(42);
+
+		for (int i = 0; i < _MESSAGES; i++) {
+			String message = _getMessage(_getZipfRank(random));
+
+			errorGroups.add(message, 1);
+
+			realCountByMessage.merge(message, 1L, Long::sum);
+		}
+
+		Assert.assertEquals(_MAX_SIZE, errorGroups.size());
+		Assert.assertEquals(_MESSAGES, errorGroups.getTotalCount());
+		Assert.assertTrue(realCountByMessage.size() > (_MAX_SIZE * 10));
+
+		long maxOverestimation = _MESSAGES / _MAX_SIZE;
+
+		Assert.assertTrue(
+			errorGroups.getMaxOverestimation() <= maxOverestimation);
+
+		Map<String, Long> countByMessagePrefix =
+			errorGroups.getCountByMessagePrefix();
+
+		long totalCount = 0;
+
+		for (Map.Entry<String, Long> entry : countByMessagePrefix.entrySet()) {
+			long count = entry.getValue();
+			long realCount = realCountByMessage.get(entry.getKey());
+
+			Assert.assertTrue(count >= realCount);
+			Assert.assertTrue(count <= (realCount + maxOverestimation));
+
+			totalCount += count;
+		}
+
+		Assert.assertTrue(totalCount <= _MESSAGES);
+
+		for (Map.Entry<String, Long> entry : realCountByMessage.entrySet()) {
+			if (entry.getValue() > maxOverestimation) {
+				Assert.assertTrue(
+					countByMessagePrefix.containsKey(entry.getKey()));
+			}
+		}
+	}
+
+	@Test
+	public void testSketchNeverUnderestimates() {
+		CountMinSketch countMinSketch = new CountMinSketch(64, 4);
+
+		Random random = new Random(42);
+
+		long[] realCounts = new long[1000];
+
+		for (int i = 0; i < 100000; i++) {
+			int key = random.nextInt(realCounts.length);
+
+			countMinSketch.add(key, 1);
+
+			realCounts[key]++;
+		}
+
+		Assert.assertEquals(100000, countMinSketch.getTotalCount());
+
+		for (int key = 0; key < realCounts.length; key++) {
+			Assert.assertTrue(countMinSketch.estimate(key) >= realCounts[key]);
+		}
+	}
+
+	private String _getMessage(int rank) {
+		StringBuilder sb = new StringBuilder("Unable to process contact ");
+
+		// Numbers are replaced by a placeholder in the fingerprints
+
+		do {
+			sb.append((char)('a' + (rank % 26)));
+
+			rank /= 26;
+		}
+		while (rank > 0);
+
+		return sb.toString();
+	}
+
+	private int _getZipfRank(Random random) {
+		double rank = Math.pow(_DISTINCT_MESSAGES, random.nextDouble());
+
+		return (int)rank;
+	}
+
+	private static final int _DISTINCT_MESSAGES = 100000;
+
+	private static final int _MAX_SIZE = 100;
+
+	private static final int _MESSAGES = 200000;
+
+}
@@ -0,0 +1,93 @@
+package com.liferay.osb.pulpo.lambda.handler.fingerprint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ruben Pulido
+ */
+public class TopErrorGroupsTest {
+
+	@Test
+	public void testComparatorIsConsistentForEqualCounts() {
+		Map.Entry<String, Long> entry1 = _entry("Timeout", 5L);
+		Map.Entry<String, Long> entry2 = _entry("Timeout", 5L);
+		Map.Entry<String, Long> entry3 = _entry("Connection refused", 5L);
+
+		Assert.assertEquals(
+			0, TopErrorGroups.getComparator().compare(entry1, entry2));
+		Assert.assertTrue(
+			TopErrorGroups.getComparator().compare(entry1, entry3) > 0);
+		Assert.assertTrue(
+			TopErrorGroups.getComparator().compare(entry3, entry1) < 0);
+	}
+
+	@Test
+	public void testGroupsAreSelectedByDescendingCount() {
+		Map<String, Long> countByMessage = new HashMap<>();
+
+		countByMessage.put("a", 3L);
+		countByMessage.put("b", 7L);
+		countByMessage.put("c", 3L);
+		countByMessage.put("d", 1L);
+		countByMessage.put("e", 5L);
+
+		TopErrorGroups topErrorGroups = TopErrorGroups.select(
+			countByMessage, 3);
+
+		List<String> messages = new ArrayList<>();
+
+		for (Map.Entry<String, Long> entry : topErrorGroups.getEntries()) {
+			messages.add(entry.getKey());
+		}
+
+		Assert.assertEquals(Arrays.asList("b", "e", "a"), messages);
+		Assert.assertEquals(2, topErrorGroups.getRemainingGroupsCount());
+		Assert.assertEquals(4, topErrorGroups.getRemainingErrorsCount());
+	}
+
+	@Test
+	public void testSelectionMatchesFullSort() {
+		Map<String, Long> countByMessage = new HashMap<>();
+
+		for (int i = 0; i < 10000; i++) {
+			countByMessage.put("Error " + i, (long)((i * 7919) % 97));
+		}
+
+		List<Map.Entry<String, Long>> sortedEntries = new ArrayList<>(
+			countByMessage.entrySet());
+
+		Collections.sort(sortedEntries, TopErrorGroups.getComparator());
+
+		TopErrorGroups topErrorGroups = TopErrorGroups.select(
+			countByMessage, 20);
+
+		Assert.assertEquals(
+			sortedEntries.subList(0, 20), topErrorGroups.getEntries());
+
+		long remainingErrorsCount = 0;
+
+		for (Map.Entry<String, Long> entry :
+				sortedEntries.subList(20, sortedEntries.size())) {
+
+			remainingErrorsCount += entry.getValue();
+		}
+
+		Assert.assertEquals(
+			remainingErrorsCount, topErrorGroups.getRemainingErrorsCount());
+		Assert.assertEquals(9980, topErrorGroups.getRemainingGroupsCount());
+	}
+
+	private Map.Entry<String, Long> _entry(String message, long count) {
+		return new AbstractMap.SimpleEntry<>(message, count);
+	}
+
+}
@@ -0,0 +1,315 @@
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.state.StateStore;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * @author Ruben Pulido
+ */
+public class SlackDeliveryQueueTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_stateDir = Files.createTempDirectory("slack-delivery-queue");
+
+		_httpServer = HttpServer.create(new InetSocketAddress(0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			String body;
+
+			try (InputStream inputStream = httpExchange.getRequestBody();
+				Scanner scanner = new Scanner(inputStream, "UTF-8")) {
+
+				scanner.useDelimiter("\\A");
+
+				body = scanner.next();
+			}
+
+			_requestTimes.add(System.currentTimeMillis());
+
+			StateStore stateStore = new StateStore(_getOutboxPath());
+
+			JsonObject outboxJsonObject = stateStore.get("outbox");
+
+			if (outboxJsonObject != null) {
+				JsonArray deliveriesJsonArray = outboxJsonObject.getJsonArray(
+					"deliveries");
+
+				_outboxSizes.add(deliveriesJsonArray.size());
+			}
+
+			if (body.contains("slow")) {
+				try {
+					_releaseCountDownLatch.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (_rateLimitedRequests.getAndDecrement() > 0) {
+				Headers headers = httpExchange.getResponseHeaders();
+
+				headers.add("Retry-After", "1");
+
+				httpExchange.sendResponseHeaders(429, -1);
+			}
+			else if (body.contains("invalid")) {
+				httpExchange.sendResponseHeaders(400, -1);
+			}
+			else {
+				_deliveredBodies.add(body);
+
+				httpExchange.sendResponseHeaders(200, -1);
+			}
+
+			httpExchange.close();
+		});
+
+		_httpServer.setExecutor(Executors.newCachedThreadPool());
+
+		_httpServer.start();
+
+		_slackWebhookClient = new SlackWebhookClient();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		_releaseCountDownLatch.countDown();
+
+		_slackWebhookClient.shutdown();
+
+		_httpServer.stop(0);
+
+		try (Stream<Path> stream = Files.walk(_stateDir)) {
+			stream.sorted(
+				Comparator.reverseOrder()
+			).forEach(
+				path -> path.toFile().delete()
+			);
+		}
+	}
+
+	@Test
+	public void testInvalidMessageIsDropped() {
+		SlackDeliveryQueue slackDeliveryQueue = _createSlackDeliveryQueue();
+
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"invalid\"}", null);
+
+		int deliveredCount = slackDeliveryQueue.deliver(
+			Long.MAX_VALUE, _logger);
+
+		Assert.assertEquals(0, deliveredCount);
+		Assert.assertEquals(1, _requestTimes.size());
+
+		StateStore stateStore = new StateStore(_getOutboxPath());
+
+		Assert.assertNull(stateStore.get("outbox"));
+	}
+
+	@Test
+	public void testMessagesStayInTheOutboxUntilTheyAreDelivered() {
+		SlackDeliveryQueue slackDeliveryQueue = _createSlackDeliveryQueue();
+
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"invalid\"}", null);
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"5 errors\"}", null);
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"2 truncated messages\"}", null);
+
+		int deliveredCount = slackDeliveryQueue.deliver(
+			Long.MAX_VALUE, _logger);
+
+		Assert.assertEquals(2, deliveredCount);
+		Assert.assertEquals(Arrays.asList(3, 2, 1), _outboxSizes);
+
+		StateStore stateStore = new StateStore(_getOutboxPath());
+
+		Assert.assertNull(stateStore.get("outbox"));
+	}
+
+	@Test
+	public void testOnlyDeliveredMessagesRunTheirCallback() {
+		SlackDeliveryQueue slackDeliveryQueue = _createSlackDeliveryQueue();
+
+		List<String> deliveredTexts = new CopyOnWriteArrayList<>();
+
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"invalid\"}",
+			() -> deliveredTexts.add("invalid"));
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"5 errors\"}",
+			() -> deliveredTexts.add("5 errors"));
+
+		slackDeliveryQueue.deliver(Long.MAX_VALUE, _logger);
+
+		_rateLimitedRequests.set(Integer.MAX_VALUE);
+
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"2 truncated messages\"}",
+			() -> deliveredTexts.add("2 truncated messages"));
+
+		slackDeliveryQueue.deliver(System.currentTimeMillis() + 500, _logger);
+
+		Assert.assertEquals(
+			Collections.singletonList("5 errors"), deliveredTexts);
+	}
+
+	@Test
+	public void testPostIsCutOffAtTheDeadline() {
+		SlackDeliveryQueue slackDeliveryQueue = _createSlackDeliveryQueue();
+
+		slackDeliveryQueue.add(_getWebHookUrl(), "{\"text\":\"slow\"}", null);
+
+		long startTime = System.currentTimeMillis();
+
+		int deliveredCount = slackDeliveryQueue.deliver(
+			startTime + 500, _logger);
+
+		long elapsedTime = System.currentTimeMillis() - startTime;
+
+		Assert.assertEquals(0, deliveredCount);
+		Assert.assertTrue("Elapsed time " + elapsedTime, elapsedTime < 2000);
+
+		StateStore stateStore = new StateStore(_getOutboxPath());
+
+		Assert.assertNotNull(stateStore.get("outbox"));
+	}
+
+	@Test
+	public void testPostsArePacedByTokenBucket() {
+		SlackDeliveryQueue slackDeliveryQueue = new SlackDeliveryQueue(
+			_slackWebhookClient, new StateStore(_getOutboxPath()), 3, 100, 10,
+			2, 100, 60000);
+
+		for (int i = 0; i < 6; i++) {
+			slackDeliveryQueue.add(
+				_getWebHookUrl(), "{\"text\":\"" + i + "\"}", null);
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		int deliveredCount = slackDeliveryQueue.deliver(
+			Long.MAX_VALUE, _logger);
+
+		long elapsedTime = System.currentTimeMillis() - startTime;
+
+		Assert.assertEquals(6, deliveredCount);
+
+		// A burst of 2 posts, then one post every 100 ms
+
+		Assert.assertTrue(
+			"Elapsed time " + elapsedTime, elapsedTime >= 350);
+	}
+
+	@Test
+	public void testRateLimitedMessageIsRetriedAfterRetryAfter() {
+		_rateLimitedRequests.set(1);
+
+		SlackDeliveryQueue slackDeliveryQueue = _createSlackDeliveryQueue();
+
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"5 errors\"}", null);
+
+		int deliveredCount = slackDeliveryQueue.deliver(
+			System.currentTimeMillis() + 10000, _logger);
+
+		Assert.assertEquals(1, deliveredCount);
+		Assert.assertEquals(2, _requestTimes.size());
+		Assert.assertTrue(
+			(_requestTimes.get(1) - _requestTimes.get(0)) >= 900);
+		Assert.assertEquals(1, _deliveredBodies.size());
+	}
+
+	@Test
+	public void testUndeliveredMessageIsDeliveredByNextInvocation() {
+		_rateLimitedRequests.set(Integer.MAX_VALUE);
+
+		SlackDeliveryQueue slackDeliveryQueue = _createSlackDeliveryQueue();
+
+		slackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"5 errors\"}", null);
+
+		int deliveredCount = slackDeliveryQueue.deliver(
+			System.currentTimeMillis() + 500, _logger);
+
+		Assert.assertEquals(0, deliveredCount);
+		Assert.assertTrue(Files.exists(_getOutboxPath()));
+
+		_rateLimitedRequests.set(0);
+
+		SlackDeliveryQueue nextSlackDeliveryQueue =
+			_createSlackDeliveryQueue();
+
+		nextSlackDeliveryQueue.add(
+			_getWebHookUrl(), "{\"text\":\"2 truncated messages\"}", null);
+
+		deliveredCount = nextSlackDeliveryQueue.deliver(
+			System.currentTimeMillis() + 10000, _logger);
+
+		Assert.assertEquals(2, deliveredCount);
+		Assert.assertEquals("{\"text\":\"5 errors\"}", _deliveredBodies.get(0));
+		Assert.assertEquals(
+			"{\"text\":\"2 truncated messages\"}", _deliveredBodies.get(1));
+
+		StateStore stateStore = new StateStore(_getOutboxPath());
+
+		Assert.assertNull(stateStore.get("outbox"));
+	}
+
+	private SlackDeliveryQueue _createSlackDeliveryQueue() {
+		return new SlackDeliveryQueue(
+			_slackWebhookClient, new StateStore(_getOutboxPath()), 3, 100, 1,
+			3, 100, 60000);
+	}
+
+	private Path _getOutboxPath() {
+		return _stateDir.resolve("slack-outbox.json");
+	}
+
+	private String _getWebHookUrl() {
+		return "http://127.0.0.1:" + _httpServer.getAddress().getPort() +
+			"/services/T000/B000/XXXX";
+	}
+
+	private static final LambdaLogger _logger = message -> {
+	};
+
+	private final List<String> _deliveredBodies = new CopyOnWriteArrayList<>();
+	private HttpServer _httpServer;
+	private final List<Integer> _outboxSizes = new CopyOnWriteArrayList<>();
+	private final AtomicInteger _rateLimitedRequests = new AtomicInteger();
+	private final CountDownLatch _releaseCountDownLatch = new CountDownLatch(
+		1);
+	private final List<Long> _requestTimes = new CopyOnWriteArrayList<>();
+	private SlackWebhookClient _slackWebhookClient;
+	private Path _stateDir;
+
+}
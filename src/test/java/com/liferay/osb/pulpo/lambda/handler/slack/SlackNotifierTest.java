@@ -0,0 +1,234 @@
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.liferay.osb.pulpo.lambda.handler.SendMessageToSlackRequest;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Ruben Pulido
+ */
+public class SlackNotifierTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_httpServer = HttpServer.create(new InetSocketAddress(0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			try (InputStream inputStream = httpExchange.getRequestBody();
+				Scanner scanner = new Scanner(inputStream, "UTF-8")) {
+
+				scanner.useDelimiter("\\A");
+
+				_bodies.add(_readJsonObject(scanner.next()));
+			}
+
+			httpExchange.sendResponseHeaders(200, -1);
+
+			httpExchange.close();
+		});
+
+		_httpServer.start();
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testDeliveredCallbacksOfEveryMessageInAPostAreRun() {
+		SlackNotifier slackNotifier = new SlackNotifier();
+
+		List<String> deliveredMessages = new CopyOnWriteArrayList<>();
+
+		slackNotifier.add(
+			_getSendMessageToSlackRequest(
+				"*5* errors found", "http://kibana/errors"),
+			() -> deliveredMessages.add("errors"));
+		slackNotifier.add(
+			_getSendMessageToSlackRequest(
+				"No log entries found", "http://kibana/logs"));
+		slackNotifier.add(
+			_getSendMessageToSlackRequest(
+				"*2* messages truncated", "http://kibana/truncated"),
+			() -> deliveredMessages.add("truncated"));
+
+		slackNotifier.send(Long.MAX_VALUE, _logger);
+
+		Assert.assertEquals(1, _bodies.size());
+		Assert.assertEquals(
+			Arrays.asList("errors", "truncated"), deliveredMessages);
+	}
+
+	@Test
+	public void testLongMessagesAreSplit() {
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests =
+			new ArrayList<>();
+
+		for (int i = 0; i < 5; i++) {
+			sendMessageToSlackRequests.add(
+				_getSendMessageToSlackRequest(
+					_repeat('x', 400), "http://kibana/" + i));
+		}
+
+		List<String> bodyJsonStrings = SlackAWSUtil.getBodyJsonStrings(
+			"#alerts", sendMessageToSlackRequests, 20, 2000);
+
+		Assert.assertEquals(3, bodyJsonStrings.size());
+
+		for (String bodyJsonString : bodyJsonStrings) {
+			Assert.assertTrue(bodyJsonString.length() < 2200);
+		}
+	}
+
+	@Test
+	public void testMessagesAreSentInOnePost() {
+		SlackNotifier slackNotifier = new SlackNotifier();
+
+		slackNotifier.add(
+			_getSendMessageToSlackRequest(
+				"*5* errors found", "http://kibana/errors"));
+		slackNotifier.add(
+			_getSendMessageToSlackRequest(
+				"*2* messages truncated", "http://kibana/truncated"));
+		slackNotifier.add(
+			_getSendMessageToSlackRequest(
+				"No log entries found", "http://kibana/logs"));
+
+		slackNotifier.send(Long.MAX_VALUE, _logger);
+
+		Assert.assertEquals(1, _bodies.size());
+
+		JsonObject bodyJsonObject = _bodies.get(0);
+
+		Assert.assertEquals("#alerts", bodyJsonObject.getString("channel"));
+
+		JsonArray attachmentsJsonArray = bodyJsonObject.getJsonArray(
+			"attachments");
+
+		Assert.assertEquals(3, attachmentsJsonArray.size());
+
+		JsonObject attachmentJsonObject =
+			attachmentsJsonArray.getJsonObject(1);
+
+		Assert.assertEquals(
+			"*2* messages truncated", attachmentJsonObject.getString("text"));
+
+		JsonArray actionsJsonArray = attachmentJsonObject.getJsonArray(
+			"actions");
+
+		JsonObject actionJsonObject = actionsJsonArray.getJsonObject(0);
+
+		Assert.assertEquals(
+			"http://kibana/truncated", actionJsonObject.getString("url"));
+
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests =
+			slackNotifier.getSendMessageToSlackRequests();
+
+		Assert.assertTrue(sendMessageToSlackRequests.isEmpty());
+	}
+
+	@Test
+	public void testMessagesAreSplitByNumberOfAttachments() {
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests =
+			new ArrayList<>();
+
+		for (int i = 0; i < 45; i++) {
+			sendMessageToSlackRequests.add(
+				_getSendMessageToSlackRequest(
+					"Message " + i, "http://kibana/" + i));
+		}
+
+		List<String> bodyJsonStrings = SlackAWSUtil.getBodyJsonStrings(
+			"#alerts", sendMessageToSlackRequests, 20, 30000);
+
+		Assert.assertEquals(3, bodyJsonStrings.size());
+
+		JsonObject lastBodyJsonObject = _readJsonObject(
+			bodyJsonStrings.get(2));
+
+		JsonArray attachmentsJsonArray = lastBodyJsonObject.getJsonArray(
+			"attachments");
+
+		Assert.assertEquals(5, attachmentsJsonArray.size());
+	}
+
+	@Test
+	public void testSingleMessageKeepsItsFormat() {
+		List<SendMessageToSlackRequest> sendMessageToSlackRequests =
+			new ArrayList<>();
+
+		sendMessageToSlackRequests.add(
+			_getSendMessageToSlackRequest(
+				"*5* errors found", "http://kibana/errors"));
+
+		List<String> bodyJsonStrings = SlackAWSUtil.getBodyJsonStrings(
+			"#alerts", sendMessageToSlackRequests, 20, 30000);
+
+		Assert.assertEquals(1, bodyJsonStrings.size());
+
+		JsonObject bodyJsonObject = _readJsonObject(bodyJsonStrings.get(0));
+
+		Assert.assertEquals(
+			"*5* errors found", bodyJsonObject.getString("text"));
+	}
+
+	private SendMessageToSlackRequest _getSendMessageToSlackRequest(
+		String message, String buttonUrl) {
+
+		SendMessageToSlackRequest sendMessageToSlackRequest =
+			new SendMessageToSlackRequest();
+
+		sendMessageToSlackRequest.setButtonUrl(buttonUrl);
+		sendMessageToSlackRequest.setChannel("#alerts");
+		sendMessageToSlackRequest.setMessage(message);
+		sendMessageToSlackRequest.setWebHookUrl(
+			"http://127.0.0.1:" + _httpServer.getAddress().getPort() +
+				"/services/T000/B000/XXXX");
+
+		return sendMessageToSlackRequest;
+	}
+
+	private JsonObject _readJsonObject(String json) {
+		try (JsonReader jsonReader = Json.createReader(
+				new StringReader(json))) {
+
+			return jsonReader.readObject();
+		}
+	}
+
+	private String _repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder(count);
+
+		for (int i = 0; i < count; i++) {
+			sb.append(c);
+		}
+
+		return sb.toString();
+	}
+
+	private static final LambdaLogger _logger = message -> {
+	};
+
+	private final List<JsonObject> _bodies = new CopyOnWriteArrayList<>();
+	private HttpServer _httpServer;
+
+}
@@ -0,0 +1,141 @@
+package com.liferay.osb.pulpo.lambda.handler.slack;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author Ruben Pulido
+ */
+public class SlackWebhookClientTest {
+
+	@Before
+	public void setUp() throws IOException {
+		_httpServer = HttpServer.create(new InetSocketAddress(0), 0);
+
+		_httpServer.createContext("/", httpExchange -> {
+			_remoteAddresses.add(httpExchange.getRemoteAddress());
+
+			// Echo the body, so that every sender can check its response
+
+			byte[] body = _read(httpExchange.getRequestBody());
+
+			httpExchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream outputStream = httpExchange.getResponseBody()) {
+				outputStream.write(body);
+			}
+		});
+
+		_httpServer.setExecutor(Executors.newFixedThreadPool(_THREADS));
+
+		_httpServer.start();
+	}
+
+	@After
+	public void tearDown() {
+		_httpServer.stop(0);
+	}
+
+	@Test
+	public void testConcurrentPostsGetTheirOwnResponses() throws Exception {
+		SlackWebhookClient slackWebhookClient = new SlackWebhookClient();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(
+			_THREADS);
+
+		List<Future<SlackWebhookResponse>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++) {
+			String body = "{\"text\":\"message " + i + "\"}";
+
+			futures.add(
+				executorService.submit(
+					() -> slackWebhookClient.post(_getWebHookUrl(), body)));
+		}
+
+		for (int i = 0; i < 100; i++) {
+			SlackWebhookResponse slackWebhookResponse = futures.get(i).get();
+
+			Assert.assertTrue(slackWebhookResponse.isSuccessful());
+			Assert.assertEquals(
+				"{\"text\":\"message " + i + "\"}",
+				slackWebhookResponse.getBody());
+		}
+
+		executorService.shutdown();
+		slackWebhookClient.shutdown();
+
+		Assert.assertTrue(_remoteAddresses.size() <= 4);
+	}
+
+	@Test
+	public void testConnectionIsReusedAcrossPosts() {
+		SlackWebhookClient slackWebhookClient = new SlackWebhookClient();
+
+		for (int i = 0; i < 4; i++) {
+			SlackWebhookResponse slackWebhookResponse = slackWebhookClient.post(
+				_getWebHookUrl(), "{\"text\":\"message\"}");
+
+			Assert.assertEquals(200, slackWebhookResponse.getStatusCode());
+		}
+
+		slackWebhookClient.shutdown();
+
+		Assert.assertEquals(1, _remoteAddresses.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPostAfterShutdown() {
+		SlackWebhookClient slackWebhookClient = new SlackWebhookClient();
+
+		slackWebhookClient.shutdown();
+
+		slackWebhookClient.post(_getWebHookUrl(), _BODY);
+	}
+
+	private String _getWebHookUrl() {
+		return "http://127.0.0.1:" + _httpServer.getAddress().getPort() +
+			"/services/T000/B000/XXXX";
+	}
+
+	private byte[] _read(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream =
+			new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[1024];
+
+		int length;
+
+		while ((length = inputStream.read(buffer)) != -1) {
+			byteArrayOutputStream.write(buffer, 0, length);
+		}
+
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	private static final String _BODY = "{\"text\":\"3 errors found\"}";
+
+	private static final int _THREADS = 8;
+
+	private HttpServer _httpServer;
+	private final Set<InetSocketAddress> _remoteAddresses =
+		ConcurrentHashMap.newKeySet();
+
+}